@@ -0,0 +1,274 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+import cascading.operation.OperationCall;
+import cascading.tuple.Tuple;
+
+import com.scaleunlimited.cascading.LoggingFlowProcess;
+import com.scaleunlimited.cascading.NullContext;
+import com.scaleunlimited.classify.StageTimer.Stage;
+import com.scaleunlimited.classify.analyzer.IAnalyzer;
+import com.scaleunlimited.classify.analyzer.TextDatumAnalyzer;
+import com.scaleunlimited.classify.datum.DocDatum;
+import com.scaleunlimited.classify.datum.LabeledDatum;
+import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.datum.TextDatum;
+
+/**
+ * Analyzes and then classifies each input tuple in a single call, which is
+ * the same as {@link AnalyzeTuple} followed by {@link ClassifyTerms}, but
+ * without the intermediate {@link TermsDatum} tuple. For a
+ * {@link TextDatumAnalyzer} the term map goes straight from the analyzer to
+ * the model; other analyzers still produce a {@link TermsDatum}, but it's
+ * never emitted.
+ * 
+ * The same counters are updated, and the payload is passed through to the
+ * output {@link DocDatum}. When a cache size is set, classification results
+ * are cached by a fingerprint of the document's content, so exact duplicates
+ * are neither analyzed nor classified again.
+ */
+@SuppressWarnings({"serial", "rawtypes"})
+public class AnalyzeAndClassify
+    extends BaseOperation<NullContext>
+    implements Function<NullContext> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AnalyzeAndClassify.class);
+
+    private IAnalyzer _analyzer;
+    private ClassifyTaskState _state;
+    
+    private transient TextDatumAnalyzer _textAnalyzer;
+    private transient LruCache<ContentFingerprint, CachedResult> _cache;
+    private transient BaseModel _model;
+    private transient LoggingFlowProcess _flowProcess;
+    private transient StageTimer _stageTimer;
+    
+    public AnalyzeAndClassify(IAnalyzer analyzer, BaseModel model) {
+        super(DocDatum.FIELDS);
+        _analyzer = analyzer;
+        _state = new ClassifyTaskState(model);
+    }
+    
+    /**
+     * @param analyzer used to convert each input tuple into terms
+     * @param modelReference reference to the model, which each task loads
+     * when it's prepared, versus the model being serialized with the operation.
+     */
+    public AnalyzeAndClassify(IAnalyzer analyzer, ModelReference modelReference) {
+        super(DocDatum.FIELDS);
+        _analyzer = analyzer;
+        _state = new ClassifyTaskState(modelReference);
+    }
+    
+    public int getCacheSize() {
+        return _state.getCacheSize();
+    }
+    
+    /**
+     * @param cacheSize max number of documents whose classification is
+     * cached, keyed by a fingerprint of their content; 0 => no caching.
+     * @return this operation
+     */
+    public AnalyzeAndClassify setCacheSize(int cacheSize) {
+        _state.setCacheSize(cacheSize);
+        return this;
+    }
+    
+    /**
+     * @param labelPolicy which classified documents to output, or null
+     * to output all of them.
+     * @return this operation
+     */
+    public AnalyzeAndClassify setLabelPolicy(LabelPolicy labelPolicy) {
+        _state.setLabelPolicy(labelPolicy);
+        return this;
+    }
+    
+    // Classification is an expensive operation, so we don't want it repeated
+    // if our output ends up getting split into two pipes.
+    @Override
+    public boolean isSafe() {
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void prepare(FlowProcess flowProcess, OperationCall<NullContext> operationCall) {
+        super.prepare(flowProcess, operationCall);
+        _state.prepare(flowProcess);
+        _model = _state.getModel();
+        _flowProcess = _state.getFlowProcess();
+        _stageTimer = _state.getStageTimer();
+        
+        _analyzer.reset();
+        _textAnalyzer = (_analyzer instanceof TextDatumAnalyzer ? (TextDatumAnalyzer)_analyzer : null);
+        
+        // We only know how to get the content out of a TextDatum.
+        if (_textAnalyzer != null) {
+            _cache = _state.makeCache();
+        } else {
+            _cache = null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void operate(FlowProcess flowProcess, FunctionCall<NullContext> functionCall) {
+        Tuple tuple = functionCall.getArguments().getTuple();
+        
+        LabeledDatum inputDatum;
+        DocDatum docDatum;
+        if (_textAnalyzer == null) {
+            long startTime = _stageTimer.start();
+            TermsDatum termsDatum = _analyzer.getTermsDatum(tuple);
+            _stageTimer.stop(Stage.ANALYSIS, startTime);
+            if (!countAnalysis(termsDatum != null, _analyzer.wasTruncated())) {
+                return;
+            }
+            
+            inputDatum = termsDatum;
+            startTime = _stageTimer.start();
+            docDatum = _model.classify(termsDatum, _stageTimer);
+            _stageTimer.stop(Stage.CLASSIFICATION, startTime);
+        } else {
+            TextDatum textDatum = new TextDatum(tuple);
+            inputDatum = textDatum;
+            docDatum = classify(textDatum);
+            if (docDatum == null) {
+                return;
+            }
+        }
+        
+        // Don't bother with the payload of documents we're discarding.
+        if (!_state.countClassification(inputDatum.getLabel(), docDatum)) {
+            return;
+        }
+        
+        docDatum.setPayload(inputDatum.getPayload());
+        functionCall.getOutputCollector().add(docDatum.getTuple());
+    }
+
+    @Override
+    public void cleanup(FlowProcess flowProcess, OperationCall<NullContext> operationCall) {
+        _state.cleanup(LOGGER);
+        super.cleanup(flowProcess, operationCall);
+    }
+    
+    /**
+     * @param textDatum document to analyze and classify
+     * @return classification of the document, or null if it was skipped
+     */
+    private DocDatum classify(TextDatum textDatum) {
+        ContentFingerprint fingerprint = null;
+        if (_cache != null) {
+            String content = textDatum.getContent();
+            if (content != null) {
+                fingerprint = ContentFingerprint.fromText(content);
+                CachedResult cached = _cache.get(fingerprint);
+                if (cached != null) {
+                    _flowProcess.increment(ClassifyCounters.ANALYSIS_CACHE_HIT, 1);
+                    _flowProcess.increment(ClassifyCounters.CLASSIFICATION_CACHE_HIT, 1);
+                    countAnalysis(!cached.isSkipped(), cached.isTruncated());
+                    return (cached.isSkipped() ? null : new DocDatum(cached.getLabel(), cached.getScore()));
+                }
+                
+                _flowProcess.increment(ClassifyCounters.ANALYSIS_CACHE_MISS, 1);
+                _flowProcess.increment(ClassifyCounters.CLASSIFICATION_CACHE_MISS, 1);
+            }
+        }
+        
+        long startTime = _stageTimer.start();
+        Map<String, Integer> termMap = _textAnalyzer.getTermMap(textDatum);
+        _stageTimer.stop(Stage.ANALYSIS, startTime);
+        
+        boolean truncated = _textAnalyzer.wasTruncated();
+        DocDatum result = null;
+        if (countAnalysis(termMap != null, truncated)) {
+            startTime = _stageTimer.start();
+            result = _model.classifyTerms(termMap, _stageTimer);
+            _stageTimer.stop(Stage.CLASSIFICATION, startTime);
+        }
+        
+        if (fingerprint != null) {
+            _cache.put(fingerprint, new CachedResult(result, truncated));
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Update the same counters as {@link AnalyzeTuple}.
+     * 
+     * @return analyzed
+     */
+    private boolean countAnalysis(boolean analyzed, boolean truncated) {
+        if (analyzed) {
+            _flowProcess.increment(ClassifyCounters.ANALYZED_INPUT_TUPLE, 1);
+        } else {
+            _flowProcess.increment(ClassifyCounters.SKIPPED_INPUT_TUPLE, 1);
+        }
+        
+        if (truncated) {
+            _flowProcess.increment(ClassifyCounters.TRUNCATED_INPUT_TUPLE, 1);
+        }
+        
+        return analyzed;
+    }
+    
+    private static class CachedResult {
+        private String _label;
+        private float _score;
+        private boolean _skipped;
+        private boolean _truncated;
+        
+        /**
+         * @param docDatum classification result, or null if the document was skipped
+         * @param truncated true => the analyzer's budget cut the content short
+         */
+        public CachedResult(DocDatum docDatum, boolean truncated) {
+            _skipped = (docDatum == null);
+            _label = (_skipped ? null : docDatum.getLabel());
+            _score = (_skipped ? 0.0f : docDatum.getScore());
+            _truncated = truncated;
+        }
+        
+        public String getLabel() {
+            return _label;
+        }
+        
+        public float getScore() {
+            return _score;
+        }
+        
+        public boolean isSkipped() {
+            return _skipped;
+        }
+        
+        public boolean isTruncated() {
+            return _truncated;
+        }
+    }
+}
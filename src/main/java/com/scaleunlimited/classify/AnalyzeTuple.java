@@ -15,29 +15,135 @@
  */
 package com.scaleunlimited.classify;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import cascading.flow.FlowProcess;
 import cascading.operation.BaseOperation;
 import cascading.operation.Function;
 import cascading.operation.FunctionCall;
 import cascading.operation.OperationCall;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntryCollector;
 
 import com.scaleunlimited.cascading.LoggingFlowProcess;
 import com.scaleunlimited.cascading.LoggingFlowReporter;
 import com.scaleunlimited.cascading.NullContext;
+import com.scaleunlimited.classify.StageTimer.Stage;
 import com.scaleunlimited.classify.analyzer.IAnalyzer;
+import com.scaleunlimited.classify.analyzer.TextDatumAnalyzer;
 import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.datum.TextDatum;
 
+/**
+ * Analyzes each input tuple into a {@link TermsDatum}.
+ * 
+ * By default this happens on the operation's thread, one tuple at a time.
+ * If more than one analysis thread is requested, tuples are instead handed
+ * off to a bounded pool of worker threads, each with its own copy of the
+ * analyzer, and the results are emitted either in input order or in the
+ * order they complete. Any results still pending are emitted during
+ * {@link #flush(FlowProcess, OperationCall)}.
+ * 
+ * When a cache size is set and the analyzer is a {@link TextDatumAnalyzer},
+ * the terms extracted from each document are cached by a fingerprint of
+ * its content, so exact duplicates (mirrors, templated pages, etc.) are only
+ * analyzed once per task.
+ */
 @SuppressWarnings({"serial", "rawtypes"})
 public class AnalyzeTuple extends BaseOperation<NullContext> implements Function<NullContext> {
     
+    // Number of tuples per analysis thread that can be waiting to be analyzed
+    // or emitted, before we block the operation's thread.
+    private static final int PENDING_TUPLES_PER_THREAD = 16;
+    
+    private static final Runnable NO_OP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+    
     private IAnalyzer _analyzer;
+    private int _numThreads;
+    private boolean _ordered;
+    private int _cacheSize = 0;
+    
+	private transient LruCache<ContentFingerprint, CachedTerms> _cache;
 	private transient LoggingFlowProcess _flowProcess;
+	private transient StageTimer _stageTimer;
+	private transient ExecutorService _executor;
+	private transient ThreadLocal<IAnalyzer> _threadAnalyzers;
+	private transient Queue<Future<AnalysisResult>> _orderedResults;
+	private transient CompletionService<AnalysisResult> _unorderedResults;
+	private transient int _numPending;
+	private transient int _maxPending;
+	private transient TupleEntryCollector _outputCollector;
 
     public AnalyzeTuple(IAnalyzer analyzer) {
+        this(analyzer, 1, true);
+    }
+
+    /**
+     * @param analyzer used to convert each input tuple into terms
+     * @param numThreads number of threads to use for analysis; 1 => analyze
+     * on the operation's thread.
+     * @param ordered true => emit results in the same order as the input
+     * tuples, which costs some throughput when documents vary in size.
+     */
+    public AnalyzeTuple(IAnalyzer analyzer, int numThreads, boolean ordered) {
         super(TermsDatum.FIELDS);
+        
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of analysis threads must be at least 1: " + numThreads);
+        }
+        
         _analyzer = analyzer;
+        _numThreads = numThreads;
+        _ordered = ordered;
     }
 
+    public int getNumThreads() {
+        return _numThreads;
+    }
+    
+    public boolean isOrdered() {
+        return _ordered;
+    }
+    
+    public int getCacheSize() {
+        return _cacheSize;
+    }
+    
+    /**
+     * @param cacheSize max number of documents whose terms are cached;
+     * 0 => no caching.
+     * @return this operation
+     */
+    public AnalyzeTuple setCacheSize(int cacheSize) {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Cache size can't be negative: " + cacheSize);
+        }
+        
+        _cacheSize = cacheSize;
+        return this;
+    }
+    
     @SuppressWarnings("unchecked")
 	@Override
     public void prepare(FlowProcess flowProcess, OperationCall<NullContext> operationCall) {
@@ -45,26 +151,322 @@ public class AnalyzeTuple extends BaseOperation<NullContext> implements Function
 
         _flowProcess = new LoggingFlowProcess(flowProcess);
         _flowProcess.addReporter(new LoggingFlowReporter());
+        _stageTimer = StageTimer.fromFlow(flowProcess);
         _analyzer.reset();
+        
+        // We only know how to get the content out of a TextDatum.
+        if ((_cacheSize > 0) && (_analyzer instanceof TextDatumAnalyzer)) {
+            _cache = new LruCache<ContentFingerprint, CachedTerms>(_cacheSize);
+        } else {
+            _cache = null;
+        }
+        
+        if (_numThreads > 1) {
+            final byte[] analyzerBytes = serializeAnalyzer(_analyzer);
+            _threadAnalyzers = new ThreadLocal<IAnalyzer>() {
+                @Override
+                protected IAnalyzer initialValue() {
+                    IAnalyzer result = deserializeAnalyzer(analyzerBytes);
+                    result.reset();
+                    return result;
+                }
+            };
+            
+            _executor = Executors.newFixedThreadPool(_numThreads, new AnalysisThreadFactory());
+            _orderedResults = new ArrayDeque<Future<AnalysisResult>>();
+            _unorderedResults = new ExecutorCompletionService<AnalysisResult>(_executor);
+            _numPending = 0;
+            _maxPending = _numThreads * PENDING_TUPLES_PER_THREAD;
+        }
     }
     
     @Override
     public void operate(FlowProcess flowProcess,
                         FunctionCall<NullContext> functionCall) {
-        TermsDatum termsDatum =
-            _analyzer.getTermsDatum(functionCall.getArguments().getTuple());
-        if (termsDatum == null) {
-            _flowProcess.increment(ClassifyCounters.SKIPPED_INPUT_TUPLE, 1);
+        _outputCollector = functionCall.getOutputCollector();
+        Tuple tuple = functionCall.getArguments().getTuple();
+        
+        ContentFingerprint fingerprint = null;
+        if (_cache != null) {
+            TextDatum textDatum = new TextDatum(tuple);
+            String content = textDatum.getContent();
+            if (content != null) {
+                fingerprint = ContentFingerprint.fromText(content);
+                CachedTerms cachedTerms = _cache.get(fingerprint);
+                if (cachedTerms != null) {
+                    _flowProcess.increment(ClassifyCounters.ANALYSIS_CACHE_HIT, 1);
+                    emitCachedResult(new AnalysisResult(cachedTerms.makeTermsDatum(textDatum),
+                                                        cachedTerms.isTruncated(),
+                                                        null,
+                                                        AnalysisResult.NOT_ANALYZED));
+                    return;
+                }
+                
+                _flowProcess.increment(ClassifyCounters.ANALYSIS_CACHE_MISS, 1);
+            }
+        }
+        
+        if (_executor == null) {
+            long startTime = System.nanoTime();
+            TermsDatum termsDatum = _analyzer.getTermsDatum(tuple);
+            long analysisNanos = System.nanoTime() - startTime;
+            emitResult(new AnalysisResult(termsDatum, _analyzer.wasTruncated(), fingerprint, analysisNanos));
+            return;
+        }
+        
+        // The arguments tuple gets reused by Cascading, so hand the worker its own copy.
+        AnalysisTask task = new AnalysisTask(new Tuple(tuple), fingerprint);
+        if (_ordered) {
+            _orderedResults.add(_executor.submit(task));
         } else {
-            functionCall.getOutputCollector().add(termsDatum.getTuple());
-            _flowProcess.increment(ClassifyCounters.ANALYZED_INPUT_TUPLE, 1);
+            _unorderedResults.submit(task);
         }
+        
+        _numPending += 1;
+        emitResults(_maxPending);
     }
 
+    /**
+     * Emit any results that are still pending. Cascading calls this after the
+     * last tuple, while the output collector can still be used (which isn't
+     * true by the time cleanup() is called).
+     */
+    @Override
+    public void flush(FlowProcess flowProcess,
+                      OperationCall<NullContext> operationCall) {
+        if (_executor != null) {
+            emitResults(0);
+        }
+        
+        super.flush(flowProcess, operationCall);
+    }
+    
     @Override
     public void cleanup(FlowProcess flowProcess,
                         OperationCall<NullContext> operationCall) {
+        if (_executor != null) {
+            _executor.shutdownNow();
+            _executor = null;
+        }
+        
+        _stageTimer.report(_flowProcess);
         _flowProcess.dumpCounters();
         super.cleanup(flowProcess, operationCall);
     }
-}
\ No newline at end of file
+    
+    /**
+     * Emit every result that's ready, and block until no more than
+     * maxPending tuples are still waiting to be analyzed or emitted.
+     * 
+     * @param maxPending max tuples left pending on return
+     */
+    private void emitResults(int maxPending) {
+        while (_numPending > 0) {
+            Future<AnalysisResult> result;
+            if (_ordered) {
+                result = _orderedResults.peek();
+                if ((_numPending <= maxPending) && !result.isDone()) {
+                    break;
+                }
+                
+                _orderedResults.remove();
+            } else if (_numPending > maxPending) {
+                result = takeResult();
+            } else {
+                result = _unorderedResults.poll();
+                if (result == null) {
+                    break;
+                }
+            }
+            
+            _numPending -= 1;
+            emitResult(getResult(result));
+        }
+    }
+    
+    private void emitCachedResult(AnalysisResult result) {
+        // A cached result can't jump ahead of earlier tuples that are still being analyzed.
+        if ((_executor != null) && _ordered && (_numPending > 0)) {
+            FutureTask<AnalysisResult> completedResult = new FutureTask<AnalysisResult>(NO_OP, result);
+            completedResult.run();
+            _orderedResults.add(completedResult);
+            _numPending += 1;
+        } else {
+            emitResult(result);
+        }
+    }
+    
+    // Counters, timing and the cache are only updated from the operation's thread.
+    private void emitResult(AnalysisResult result) {
+        if (result.getAnalysisNanos() != AnalysisResult.NOT_ANALYZED) {
+            _stageTimer.addTime(Stage.ANALYSIS, result.getAnalysisNanos());
+        }
+        
+        TermsDatum termsDatum = result.getTermsDatum();
+        if (result.getFingerprint() != null) {
+            Map<String, Integer> termMap = (termsDatum == null ? null : termsDatum.getTermMap());
+            _cache.put(result.getFingerprint(), new CachedTerms(termMap, result.isTruncated()));
+        }
+        
+        if (termsDatum == null) {
+            _flowProcess.increment(ClassifyCounters.SKIPPED_INPUT_TUPLE, 1);
+        } else {
+            _outputCollector.add(termsDatum.getTuple());
+            _flowProcess.increment(ClassifyCounters.ANALYZED_INPUT_TUPLE, 1);
+        }
+        
+        if (result.isTruncated()) {
+            _flowProcess.increment(ClassifyCounters.TRUNCATED_INPUT_TUPLE, 1);
+        }
+    }
+    
+    private Future<AnalysisResult> takeResult() {
+        try {
+            // Let Hadoop know we're still alive while waiting on a big document.
+            _flowProcess.keepAlive();
+            return _unorderedResults.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for analysis results", e);
+        }
+    }
+    
+    private AnalysisResult getResult(Future<AnalysisResult> result) {
+        try {
+            if (!result.isDone()) {
+                _flowProcess.keepAlive();
+            }
+            
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for analysis results", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error analyzing input tuple", e.getCause());
+        }
+    }
+    
+    private static byte[] serializeAnalyzer(IAnalyzer analyzer) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(analyzer);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("Can't serialize analyzer " + analyzer.getClass().getName(), e);
+        }
+    }
+    
+    private static IAnalyzer deserializeAnalyzer(byte[] analyzerBytes) {
+        try {
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(analyzerBytes));
+            try {
+                return (IAnalyzer)in.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Can't deserialize analyzer", e);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("Can't deserialize analyzer", e);
+        }
+    }
+    
+    private class AnalysisTask implements Callable<AnalysisResult> {
+        private Tuple _tuple;
+        private ContentFingerprint _fingerprint;
+        
+        public AnalysisTask(Tuple tuple, ContentFingerprint fingerprint) {
+            _tuple = tuple;
+            _fingerprint = fingerprint;
+        }
+        
+        @Override
+        public AnalysisResult call() throws Exception {
+            IAnalyzer analyzer = _threadAnalyzers.get();
+            long startTime = System.nanoTime();
+            TermsDatum termsDatum = analyzer.getTermsDatum(_tuple);
+            long analysisNanos = System.nanoTime() - startTime;
+            return new AnalysisResult(termsDatum, analyzer.wasTruncated(), _fingerprint, analysisNanos);
+        }
+    }
+    
+    private static class AnalysisResult {
+        public static final long NOT_ANALYZED = -1;
+        
+        private TermsDatum _termsDatum;
+        private boolean _truncated;
+        private ContentFingerprint _fingerprint;
+        private long _analysisNanos;
+        
+        /**
+         * @param termsDatum analyzed terms, or null if the tuple was skipped
+         * @param truncated true => the analyzer's budget cut the content short
+         * @param fingerprint key for caching this result, or null
+         * @param analysisNanos time spent analyzing, or NOT_ANALYZED if the
+         * result came from the cache
+         */
+        public AnalysisResult(TermsDatum termsDatum, boolean truncated, ContentFingerprint fingerprint, long analysisNanos) {
+            _termsDatum = termsDatum;
+            _truncated = truncated;
+            _fingerprint = fingerprint;
+            _analysisNanos = analysisNanos;
+        }
+        
+        public long getAnalysisNanos() {
+            return _analysisNanos;
+        }
+        
+        public ContentFingerprint getFingerprint() {
+            return _fingerprint;
+        }
+        
+        public TermsDatum getTermsDatum() {
+            return _termsDatum;
+        }
+        
+        public boolean isTruncated() {
+            return _truncated;
+        }
+    }
+    
+    private static class CachedTerms {
+        private Map<String, Integer> _termMap;
+        private boolean _truncated;
+        
+        public CachedTerms(Map<String, Integer> termMap, boolean truncated) {
+            _termMap = termMap;
+            _truncated = truncated;
+        }
+        
+        public boolean isTruncated() {
+            return _truncated;
+        }
+        
+        // Same as what TextDatumAnalyzer would return, but with the label
+        // and payload of this particular document.
+        public TermsDatum makeTermsDatum(TextDatum textDatum) {
+            if (_termMap == null) {
+                return null;
+            }
+            
+            TermsDatum result = new TermsDatum(_termMap, textDatum.getLabel());
+            result.setPayload(textDatum.getPayload());
+            return result;
+        }
+    }
+    
+    private static class AnalysisThreadFactory implements ThreadFactory {
+        private final AtomicInteger _threadNumber = new AtomicInteger(1);
+        
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread result = new Thread(r, "AnalyzeTuple-" + _threadNumber.getAndIncrement());
+            
+            // Don't let a stuck analysis thread keep the task's JVM alive.
+            result.setDaemon(true);
+            return result;
+        }
+    }
+}
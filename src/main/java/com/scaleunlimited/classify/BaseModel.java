@@ -20,12 +20,16 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.io.Writable;
 
 import com.scaleunlimited.classify.datum.DocDatum;
+import com.scaleunlimited.classify.datum.FeaturesDatum;
 import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.datum.VectorDatum;
 
 
 /**
@@ -47,6 +51,20 @@ public abstract class BaseModel<T> implements Writable, Serializable {
      * @param datum input document terms (with label) to help train model
      */
     abstract public void addTrainingTerms(T datum);
+    
+    /**
+     * Add terms that haven't been put into a datum (e.g. decoded from a
+     * {@link com.scaleunlimited.classify.datum.CompactTermsDatum}). The default
+     * is to wrap them in a {@link TermsDatum}, but models that only need the
+     * term map should skip that.
+     * 
+     * @param termMap document terms and their counts
+     * @param label label of the document
+     */
+    @SuppressWarnings("unchecked")
+    public void addTrainingTerms(Map<String, Integer> termMap, String label) {
+        addTrainingTerms((T)new TermsDatum(termMap, label));
+    }
 
     /**
      * Use all training documents added via {@link #addTrainingTerms(T)}
@@ -61,6 +79,43 @@ public abstract class BaseModel<T> implements Writable, Serializable {
      */
     abstract public DocDatum classify(T datum);
     
+    /**
+     * Same as {@link #classify(Object)}, but also recording the time spent in
+     * each stage of classification. The timer belongs to the caller, so that
+     * a model shared between threads never holds on to one. By default
+     * nothing gets recorded.
+     * 
+     * @param datum (unlabeled) input document terms to be classified
+     * @param timer where to record time spent in each stage
+     * @return classification of input document terms
+     */
+    public DocDatum classify(T datum, StageTimer timer) {
+        return classify(datum);
+    }
+    
+    /**
+     * Classify terms that haven't been put into a datum (e.g. straight from
+     * an analyzer). The default is to wrap them in a {@link TermsDatum}, but
+     * models that only need the term map should skip that.
+     * 
+     * @param termMap (unlabeled) terms and their counts to be classified
+     * @return classification of the terms
+     */
+    @SuppressWarnings("unchecked")
+    public DocDatum classifyTerms(Map<String, Integer> termMap) {
+        return classify((T)new TermsDatum(termMap));
+    }
+    
+    /**
+     * @param termMap (unlabeled) terms and their counts to be classified
+     * @param timer where to record time spent in each stage
+     * @return classification of the terms
+     * @see #classify(Object, StageTimer)
+     */
+    public DocDatum classifyTerms(Map<String, Integer> termMap, StageTimer timer) {
+        return classifyTerms(termMap);
+    }
+    
     /**
      * @param datum (unlabeled) input document terms to be classified
      * @return top <n> results from classification
@@ -68,6 +123,80 @@ public abstract class BaseModel<T> implements Writable, Serializable {
 	abstract public DocDatum[] classifyNResults(T datum, int n);
 
 
+    /**
+     * @return true if this model can be trained on, and classify, documents
+     * that have been pre-hashed into {@link VectorDatum}s.
+     */
+    public boolean supportsVectors() {
+        return false;
+    }
+    
+    /**
+     * @param datum input document feature vector (with label) to help train model
+     * @see #supportsVectors()
+     */
+    public void addTrainingVector(VectorDatum datum) {
+        throw new UnsupportedOperationException(String.format( "%s can't be trained on feature vectors",
+                                                                getClass().getSimpleName()));
+    }
+    
+    /**
+     * @param datum (unlabeled) input document feature vector to be classified
+     * @return classification of input document
+     * @see #supportsVectors()
+     */
+    public DocDatum classifyVector(VectorDatum datum) {
+        throw new UnsupportedOperationException(String.format( "%s can't classify feature vectors",
+                                                                getClass().getSimpleName()));
+    }
+    
+    /**
+     * @param datum (unlabeled) input document feature vector to be classified
+     * @param timer where to record time spent in each stage
+     * @return classification of input document
+     * @see #classify(Object, StageTimer)
+     */
+    public DocDatum classifyVector(VectorDatum datum, StageTimer timer) {
+        return classifyVector(datum);
+    }
+
+    /**
+     * @return true if this model can be trained on, and classify, documents
+     * with pre-computed feature values, as {@link FeaturesDatum}s.
+     */
+    public boolean supportsFeatures() {
+        return false;
+    }
+    
+    /**
+     * @param datum input document feature values (with label) to help train model
+     * @see #supportsFeatures()
+     */
+    public void addTrainingFeatures(FeaturesDatum datum) {
+        throw new UnsupportedOperationException(String.format( "%s can't be trained on feature values",
+                                                                getClass().getSimpleName()));
+    }
+    
+    /**
+     * @param datum (unlabeled) input document feature values to be classified
+     * @return classification of input document
+     * @see #supportsFeatures()
+     */
+    public DocDatum classifyFeatures(FeaturesDatum datum) {
+        throw new UnsupportedOperationException(String.format( "%s can't classify feature values",
+                                                                getClass().getSimpleName()));
+    }
+    
+    /**
+     * @param datum (unlabeled) input document feature values to be classified
+     * @param timer where to record time spent in each stage
+     * @return classification of input document
+     * @see #classify(Object, StageTimer)
+     */
+    public DocDatum classifyFeatures(FeaturesDatum datum, StageTimer timer) {
+        return classifyFeatures(datum);
+    }
+
     /**
      * Generate details about the model.
      * 
@@ -75,6 +204,35 @@ public abstract class BaseModel<T> implements Writable, Serializable {
      */
     abstract public String getDetails();
     
+    /**
+     * @return names of the labels this model can assign, or an empty list
+     * if that's not known (e.g. it hasn't been trained yet).
+     */
+    public List<String> getLabelNames() {
+        return Collections.emptyList();
+    }
+    
+    /**
+     * Serialize the trained model in its most compact form, which (unlike
+     * {@link #write(DataOutput)}) is allowed to lose a little precision.
+     * The default is to just use {@link #write(DataOutput)}.
+     * 
+     * @param out stream into which the model should be serialized
+     * @throws IOException
+     */
+    public void writeModel(DataOutput out) throws IOException {
+        write(out);
+    }
+    
+    /**
+     * @param in stream from which a model written by {@link #writeModel(DataOutput)}
+     * should be deserialized
+     * @throws IOException
+     */
+    public void readModel(DataInput in) throws IOException {
+        readFields(in);
+    }
+    
     /**
      * Reset model for another training run.
      */
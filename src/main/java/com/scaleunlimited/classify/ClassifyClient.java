@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import com.scaleunlimited.classify.datum.DocDatum;
+
+/**
+ * Client for a {@link ClassifyServer}, which keeps one connection open for
+ * any number of requests. Clients aren't thread-safe, so each thread should
+ * use its own.
+ */
+public class ClassifyClient implements Closeable {
+
+    private final Socket _socket;
+    private final DataInputStream _in;
+    private final DataOutputStream _out;
+    
+    public ClassifyClient(String host, int port) throws IOException {
+        _socket = new Socket(host, port);
+        _socket.setTcpNoDelay(true);
+        _in = new DataInputStream(new BufferedInputStream(_socket.getInputStream()));
+        _out = new DataOutputStream(new BufferedOutputStream(_socket.getOutputStream()));
+    }
+    
+    /**
+     * @param text document to classify
+     * @return classification (label and score), or null if the analyzer skipped the text
+     * @throws IOException if the request fails, or the server had an error
+     */
+    public DocDatum classify(String text) throws IOException {
+        String response = sendRequest(ClassifyServer.CLASSIFY_COMMAND, text);
+        if (response == null) {
+            return null;
+        }
+        
+        int tabPos = response.lastIndexOf('\t');
+        if (tabPos == -1) {
+            throw new IOException("Invalid classify response: " + response);
+        }
+        
+        return new DocDatum(response.substring(0, tabPos), Float.parseFloat(response.substring(tabPos + 1)));
+    }
+    
+    /**
+     * @return the server's stats, as one name=value line per stat
+     * @throws IOException
+     */
+    public String getStats() throws IOException {
+        return sendRequest(ClassifyServer.STATS_COMMAND, "");
+    }
+    
+    @Override
+    public void close() throws IOException {
+        _socket.close();
+    }
+    
+    /**
+     * @return response text, or null if the status was {@link ClassifyServer#STATUS_SKIPPED}
+     */
+    private String sendRequest(byte command, String text) throws IOException {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        _out.writeByte(command);
+        _out.writeInt(data.length);
+        _out.write(data);
+        _out.flush();
+        
+        byte status = _in.readByte();
+        int length = _in.readInt();
+        if ((length < 0) || (length > ClassifyServer.MAX_REQUEST_LENGTH)) {
+            throw new IOException("Invalid response length: " + length);
+        }
+        
+        byte[] responseData = new byte[length];
+        _in.readFully(responseData);
+        String response = new String(responseData, StandardCharsets.UTF_8);
+        if (status == ClassifyServer.STATUS_OK) {
+            return response;
+        } else if (status == ClassifyServer.STATUS_SKIPPED) {
+            return null;
+        } else {
+            throw new IOException("Classify server error: " + response);
+        }
+    }
+}
@@ -19,8 +19,12 @@ public class ClassifyConfig {
 
     public static final String TRAINING_SUBDIR_NAME = "classifier-training";
     public static final String MODEL_SUBDIR_NAME = "classifier-model";
+    public static final String MAPPED_MODEL_FILENAME = "classifier-model.mapped";
 
     public static final String UNCLASSIFIED_SUBDIR_NAME = "classifier-input";
     public static final String CLASSIFIED_SUBDIR_NAME = "classifier-output";
+    public static final String CLASSIFIED_STATE_SUBDIR_NAME = "classifier-state";
+    public static final String PREVIOUS_CLASSIFIED_STATE_SUBDIR_NAME = "classifier-state-previous";
+    public static final String COMPLETED_CLASSIFIED_STATE_SUBDIR_NAME = "classifier-state-completed";
 
 }
@@ -18,9 +18,18 @@ package com.scaleunlimited.classify;
 public enum ClassifyCounters {
     SKIPPED_INPUT_TUPLE,
     ANALYZED_INPUT_TUPLE,
+    TRUNCATED_INPUT_TUPLE,
 
     TRAINING_TERMS_DATUM,
     
     CLASSIFIED_INPUT_TUPLE,
+    REJECTED_BY_LABEL_POLICY,
+    REUSED_CLASSIFICATION,
+    FRESH_CLASSIFICATION,
+    
+    ANALYSIS_CACHE_HIT,
+    ANALYSIS_CACHE_MISS,
+    CLASSIFICATION_CACHE_HIT,
+    CLASSIFICATION_CACHE_MISS,
 
 }
@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import org.kohsuke.args4j.Option;
+
+/**
+ * Options for {@link ClassifyDocsTool}, which add what to output and whether
+ * to reuse the previous run's classifications to the options that are shared
+ * with the training tools.
+ */
+public class ClassifyDocsOptions extends ClassifyOptions {
+
+    private boolean _incremental = false;
+    private String _targetLabels = null;
+    private String _minScores = null;
+    private boolean _mappedModel = false;
+
+    @Option(name = "-incremental", usage = "reuse the previous run's classification of docs whose content and model haven't changed", required = false)
+    public void setIncremental(boolean incremental) {
+        _incremental = incremental;
+    }
+
+    public boolean isIncremental() {
+        return _incremental;
+    }
+
+    @Option(name = "-labels", usage = "comma-separated labels to output, each to its own subdirectory", required = false)
+    public void setTargetLabels(String targetLabels) {
+        _targetLabels = targetLabels;
+    }
+
+    public String getTargetLabels() {
+        return _targetLabels;
+    }
+
+    @Option(name = "-minscores", usage = "comma-separated min scores for output docs, as label=score (or just score, for all labels)", required = false)
+    public void setMinScores(String minScores) {
+        _minScores = minScores;
+    }
+
+    public String getMinScores() {
+        return _minScores;
+    }
+
+    @Option(name = "-mappedmodel", usage = "classify with a memory-mapped copy of the (liblinear) model, shipped to each task", required = false)
+    public void setMappedModel(boolean mappedModel) {
+        _mappedModel = mappedModel;
+    }
+
+    public boolean isMappedModel() {
+        return _mappedModel;
+    }
+
+    /**
+     * @return policy for which classified docs to output, or null if
+     * they should all be output.
+     */
+    public LabelPolicy getLabelPolicy() {
+        return LabelPolicy.parse(_targetLabels, _minScores);
+    }
+}
@@ -15,10 +15,20 @@
  */
 package com.scaleunlimited.classify;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import cascading.flow.Flow;
 import cascading.flow.FlowConnector;
+import cascading.flow.FlowListener;
+import cascading.operation.regex.RegexFilter;
 import cascading.pipe.Each;
 import cascading.pipe.Pipe;
 import cascading.pipe.SubAssembly;
@@ -30,12 +40,17 @@ import cascading.tuple.TupleEntry;
 
 import com.scaleunlimited.cascading.BasePath;
 import com.scaleunlimited.cascading.BasePlatform;
-import com.scaleunlimited.cascading.TupleLogger;
 import com.scaleunlimited.classify.analyzer.IAnalyzer;
+import com.scaleunlimited.classify.analyzer.NullAnalyzer;
+import com.scaleunlimited.classify.datum.ClassificationStateDatum;
 import com.scaleunlimited.classify.datum.DocDatum;
+import com.scaleunlimited.classify.datum.FeaturesDatum;
 import com.scaleunlimited.classify.datum.ModelDatum;
+import com.scaleunlimited.classify.datum.SerializationTokens;
 import com.scaleunlimited.classify.datum.TermsDatum;
 import com.scaleunlimited.classify.datum.TextDatum;
+import com.scaleunlimited.classify.model.BaseLibLinearModel;
+import com.scaleunlimited.classify.model.MappedLibLinearModel;
 
 /**
  * Classifies each input {@link Tuple} using a classification model
@@ -45,6 +60,9 @@ import com.scaleunlimited.classify.datum.TextDatum;
  * responsible for extracting the terms from the input {@link Tuple}.
  * Most analyzers also payload the input {@link Tuple} (or its payload) in the
  * {@link TermsDatum} so that it can be payloaded in the output {@link DocDatum}.
+ * If the analyzer is a {@link NullAnalyzer}, the input is already analyzed
+ * (as terms, compact terms, feature vectors or feature values), and goes
+ * straight to the model.
  * 
  * @see {@link TrainModelPipe}, which builds such models from pre-labeled
  * training {@link Tuple} documents.
@@ -52,31 +70,218 @@ import com.scaleunlimited.classify.datum.TextDatum;
  */
 @SuppressWarnings({"serial", "rawtypes"})
 public class ClassifyDocsPipe extends SubAssembly {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClassifyDocsPipe.class);
+
+    // Set if the output is split by label.
+    private List<String> _targetLabels;
 
+    /**
+     * How a {@link ClassifyDocsPipe} analyzes and classifies documents, and
+     * which of them it outputs. The defaults are one analysis thread, no
+     * caching, no label policy and {@link TupleLoggingPolicy#FULL} logging.
+     */
+    public static class Settings {
+        private int _numAnalysisThreads = 1;
+        private int _cacheSize = 0;
+        private LabelPolicy _labelPolicy = null;
+        private TupleLoggingPolicy _loggingPolicy = TupleLoggingPolicy.FULL;
+        
+        public int getNumAnalysisThreads() {
+            return _numAnalysisThreads;
+        }
+        
+        /**
+         * @param numAnalysisThreads number of threads used by each task to
+         * analyze documents (output order is preserved). With just one thread,
+         * analysis and classification are done by a single operation.
+         * @return these settings
+         */
+        public Settings setNumAnalysisThreads(int numAnalysisThreads) {
+            if (numAnalysisThreads < 1) {
+                throw new IllegalArgumentException("Number of analysis threads must be at least 1: " + numAnalysisThreads);
+            }
+            
+            _numAnalysisThreads = numAnalysisThreads;
+            return this;
+        }
+        
+        public int getCacheSize() {
+            return _cacheSize;
+        }
+        
+        /**
+         * @param cacheSize max number of documents per task whose analysis and
+         * classification results are cached, to skip work on duplicates; 0 => no caching.
+         * @return these settings
+         */
+        public Settings setCacheSize(int cacheSize) {
+            if (cacheSize < 0) {
+                throw new IllegalArgumentException("Cache size can't be negative: " + cacheSize);
+            }
+            
+            _cacheSize = cacheSize;
+            return this;
+        }
+        
+        public LabelPolicy getLabelPolicy() {
+            return _labelPolicy;
+        }
+        
+        /**
+         * @param labelPolicy which classified documents to output (and if it has
+         * target labels, one tail per label); null => output everything.
+         * @return these settings
+         */
+        public Settings setLabelPolicy(LabelPolicy labelPolicy) {
+            _labelPolicy = labelPolicy;
+            return this;
+        }
+        
+        public TupleLoggingPolicy getLoggingPolicy() {
+            return _loggingPolicy;
+        }
+        
+        /**
+         * @param loggingPolicy how much (debug) logging of tuples to plan into the flow
+         * @return these settings
+         */
+        public Settings setLoggingPolicy(TupleLoggingPolicy loggingPolicy) {
+            if (loggingPolicy == null) {
+                throw new IllegalArgumentException("Logging policy can't be null");
+            }
+            
+            _loggingPolicy = loggingPolicy;
+            return this;
+        }
+    }
+    
     public ClassifyDocsPipe(Pipe inputPipe, IAnalyzer analyzer, BaseModel model) {
+        this(inputPipe, analyzer, model, new Settings());
+    }
+    
+    /**
+     * @param inputPipe documents to be classified
+     * @param analyzer used to convert each document into terms
+     * @param model used to classify the terms
+     * @param settings how to analyze and classify the documents, and which to output
+     */
+    public ClassifyDocsPipe(Pipe inputPipe, IAnalyzer analyzer, BaseModel model, Settings settings) {
+        this(inputPipe, analyzer, model, null, settings);
+    }
+    
+    /**
+     * @param inputPipe documents to be classified
+     * @param analyzer used to convert each document into terms
+     * @param modelReference reference to the model used to classify the terms,
+     * which each task loads itself (versus the model being serialized into the job).
+     * @param settings how to analyze and classify the documents, and which to output
+     */
+    public ClassifyDocsPipe(Pipe inputPipe, IAnalyzer analyzer, ModelReference modelReference, Settings settings) {
+        this(inputPipe, analyzer, null, modelReference, settings);
+    }
+    
+    private ClassifyDocsPipe(Pipe inputPipe, IAnalyzer analyzer, BaseModel model, ModelReference modelReference, Settings settings) {
         super(inputPipe);
         
-        // Analyze the input text into terms
-        Pipe termsPipe = new Pipe("input terms", inputPipe);
-        termsPipe = new Each(termsPipe, new AnalyzeTuple(analyzer));
-        termsPipe = TupleLogger.makePipe(termsPipe, true);
+        int numAnalysisThreads = settings.getNumAnalysisThreads();
+        int cacheSize = settings.getCacheSize();
+        LabelPolicy labelPolicy = settings.getLabelPolicy();
+        TupleLoggingPolicy loggingPolicy = settings.getLoggingPolicy();
+        
+        Pipe outputPipe;
+        if ((numAnalysisThreads == 1) && !(analyzer instanceof NullAnalyzer)) {
+            // Analyze and classify in one step, so we never have to build
+            // (and then take apart) a tuple with the terms.
+            AnalyzeAndClassify classifier = (modelReference == null ?
+                                                new AnalyzeAndClassify(analyzer, model) :
+                                                new AnalyzeAndClassify(analyzer, modelReference));
+            outputPipe = new Pipe("output docs", inputPipe);
+            outputPipe = new Each(outputPipe, classifier.setCacheSize(cacheSize).setLabelPolicy(labelPolicy));
+        } else {
+            // Analyze the input text into terms
+            Pipe termsPipe = new Pipe("input terms", inputPipe);
+            if (!(analyzer instanceof NullAnalyzer)) {
+                termsPipe = new Each(termsPipe, new AnalyzeTuple(analyzer, numAnalysisThreads, true).setCacheSize(cacheSize));
+                termsPipe = loggingPolicy.makePipe(termsPipe);
+            }
+            
+            ClassifyTerms classifier = (modelReference == null ?
+                                            new ClassifyTerms(model) :
+                                            new ClassifyTerms(modelReference));
+            outputPipe = new Pipe("output docs", termsPipe);
+            outputPipe = new Each(outputPipe, classifier.setCacheSize(cacheSize).setLabelPolicy(labelPolicy));
+        }
+        
+        outputPipe = loggingPolicy.makePipe(outputPipe);
+        
+        if ((labelPolicy == null) || !labelPolicy.hasTargetLabels()) {
+            setTails(outputPipe);
+            return;
+        }
         
-        Pipe outputPipe = new Pipe("output docs", termsPipe);
-        outputPipe = new Each(outputPipe, new ClassifyTerms(model));
-        outputPipe = TupleLogger.makePipe(outputPipe, true);
-        setTails(outputPipe);
+        // Documents with other labels have already been discarded, so just
+        // route each document to the tail for its label.
+        List<String> targetLabels = labelPolicy.getTargetLabels();
+        Pipe[] labelPipes = new Pipe[targetLabels.size()];
+        for (int i = 0; i < labelPipes.length; i++) {
+            String label = targetLabels.get(i);
+            labelPipes[i] = new Pipe(getLabelPipeName(label), outputPipe);
+            labelPipes[i] = new Each(   labelPipes[i],
+                                        new Fields(DocDatum.LABEL_FN),
+                                        new RegexFilter("^" + Pattern.quote(label) + "$"));
+        }
+        
+        _targetLabels = new ArrayList<String>(targetLabels);
+        setTails(labelPipes);
     }
     
+    /**
+     * @return the classified documents
+     * @throws IllegalStateException if the output was split by label
+     */
     public Pipe getOutputPipe() {
+        if (_targetLabels != null) {
+            throw new IllegalStateException("Output is split by label, use getLabelPipe()");
+        }
+        
         return getTails()[0];
     }
+    
+    /**
+     * @param label one of the label policy's target labels
+     * @return the classified documents that were assigned <label>
+     */
+    public Pipe getLabelPipe(String label) {
+        int labelIndex = (_targetLabels == null ? -1 : _targetLabels.indexOf(label));
+        if (labelIndex == -1) {
+            throw new IllegalArgumentException("Not a target label: " + label);
+        }
+        
+        return getTails()[labelIndex];
+    }
+    
+    public static String getLabelPipeName(String label) {
+        return "output docs-" + label;
+    }
 
-    public static Flow createTextFlow(BasePlatform platform, ClassifyOptions options)
+    public static Flow createTextFlow(BasePlatform platform, ClassifyDocsOptions options)
         throws Exception {
         
         return createFlow(platform, options, TextDatum.FIELDS);
     }
 
+    /**
+     * Return a workflow that classifies {@link FeaturesDatum} documents, which
+     * already have their (double) feature values, using a model that was
+     * trained on the same kind of documents (e.g. by
+     * {@link TrainModelPipe#createFeaturesFlow(BasePlatform, TrainModelOptions)}).
+     */
+    public static Flow createFeaturesFlow(BasePlatform platform, ClassifyDocsOptions options)
+        throws Exception {
+        
+        return createFlow(platform, options, FeaturesDatum.FIELDS);
+    }
+
     /**
      * Return a workflow that uses a classification model read from a sequence
      * file to classify unlabeled {@link Tuple} documents read from another
@@ -84,7 +289,7 @@ public class ClassifyDocsPipe extends SubAssembly {
      * classification of each.
      * 
      * @param platform      The cascading platform to use for running the flow
-     * @param options       {@link ClassifyOptions#getWorkingDir()} contains
+     * @param options       {@link ClassifyDocsOptions#getWorkingDir()} contains
      * both {@link ClassifyConfig#UNCLASSIFIED_SUBDIR_NAME} and
      * {@link ClassifyConfig#MODEL_SUBDIR_NAME}, and is where
      * {@link ClassifyConfig#CLASSIFIED_SUBDIR_NAME} will be created.
@@ -93,7 +298,7 @@ public class ClassifyDocsPipe extends SubAssembly {
      * the workflow
      * @throws              Exception
      */
-    public static Flow createFlow(  BasePlatform platform, ClassifyOptions options,
+    public static Flow createFlow(  BasePlatform platform, ClassifyDocsOptions options,
                                     Fields inputFields)
         throws Exception {
         
@@ -110,24 +315,244 @@ public class ClassifyDocsPipe extends SubAssembly {
         inputPath.assertExists("Input directory");
         Tap inputSource = platform.makeTap(platform.makeBinaryScheme(inputFields), inputPath);
         
-        // Analyze the input text into terms and then classify the result
+        if (options.isMappedModel() && options.isModelByReference()) {
+            throw new IllegalArgumentException("A mapped model can't also be passed by reference");
+        }
+        
+        FlowConnector flowConnector = platform.makeFlowConnector();
+        SerializationTokens.register(flowConnector.getProperties());
+        StageTimer.setHistograms(flowConnector.getProperties(), options.isTimingHistograms());
+        
+        if (options.isIncremental()) {
+            return createIncrementalFlow(platform, options, flowConnector, workingDirPath, modelPath, modelDatum, inputFields, inputSource);
+        }
+        
+        // Analyze the input text into terms and then classify the result.
+        // The model isn't deserialized until a task uses it, and if it's
+        // passed by reference then it isn't even part of the job.
         Pipe inputPipe = new Pipe("input pipe");
-        ClassifyDocsPipe classifierPipe =
-            new ClassifyDocsPipe(   inputPipe,
-                                    modelDatum.getAnalyzer(),
-                                    modelDatum.getModel());
+        LabelPolicy labelPolicy = options.getLabelPolicy();
+        Settings settings = new Settings()
+            .setNumAnalysisThreads(options.getNumAnalysisThreads())
+            .setCacheSize(options.getCacheSize())
+            .setLabelPolicy(labelPolicy)
+            .setLoggingPolicy(options.getTupleLoggingPolicy());
+        ClassifyDocsPipe classifierPipe;
+        if (options.isModelByReference()) {
+            ModelReference modelReference = ModelReference.create(platform, modelPath, modelDatum);
+            modelReference.setSharedPerJvm(options.isShareModel());
+            classifierPipe = new ClassifyDocsPipe(  inputPipe,
+                                                    modelDatum.getAnalyzer(),
+                                                    modelReference,
+                                                    settings);
+        } else {
+            classifierPipe = new ClassifyDocsPipe(  inputPipe,
+                                                    modelDatum.getAnalyzer(),
+                                                    makeModel(platform, options, flowConnector, workingDirPath, modelDatum),
+                                                    settings);
+        }
 
         // Set up the output sink
         BasePath outputPath = platform.makePath(workingDirPath, ClassifyConfig.CLASSIFIED_SUBDIR_NAME);
-        Tap outputSink = platform.makeTap(   platform.makeBinaryScheme(DocDatum.FIELDS),
-                                    outputPath,
-                                    SinkMode.REPLACE);
+        if ((labelPolicy == null) || !labelPolicy.hasTargetLabels()) {
+            Tap outputSink = platform.makeTap(   platform.makeBinaryScheme(DocDatum.FIELDS),
+                                        outputPath,
+                                        SinkMode.REPLACE);
+            
+            // Build and return the workflow
+            return flowConnector.connect(   inputSource,
+                                            outputSink,
+                                            classifierPipe.getOutputPipe());
+        }
         
-        // Build and return the workflow
-        FlowConnector flowConnector = platform.makeFlowConnector();
-        return flowConnector.connect(   inputSource,
-                                        outputSink,
-                                        classifierPipe.getOutputPipe());
+        // Each target label gets its own subdirectory of the output directory.
+        Map<String, Tap> outputSinks = new HashMap<String, Tap>();
+        for (String label : labelPolicy.getTargetLabels()) {
+            Tap outputSink = platform.makeTap(  platform.makeBinaryScheme(DocDatum.FIELDS),
+                                                platform.makePath(outputPath, label),
+                                                SinkMode.REPLACE);
+            outputSinks.put(getLabelPipeName(label), outputSink);
+        }
+        
+        Map<String, Tap> inputSources = new HashMap<String, Tap>();
+        inputSources.put(inputPipe.getName(), inputSource);
+        return flowConnector.connect(inputSources, outputSinks, classifierPipe.getTails());
+    }
+
+    /**
+     * Return a workflow that only classifies documents whose content (or the
+     * model) has changed since the previous incremental run, and reuses the
+     * previous classification of everything else. The classification state
+     * is kept in {@link ClassifyConfig#CLASSIFIED_STATE_SUBDIR_NAME}, and the
+     * previous run's state is moved to
+     * {@link ClassifyConfig#PREVIOUS_CLASSIFIED_STATE_SUBDIR_NAME} before
+     * the workflow is created.
+     * 
+     * The state is only moved if the run that wrote it completed, which is
+     * marked by {@link ClassifyConfig#COMPLETED_CLASSIFIED_STATE_SUBDIR_NAME}
+     * (Hadoop's _SUCCESS file isn't written in local mode). The state left
+     * behind by a failed run is deleted, and the previous state is used again.
+     */
+    private static Flow createIncrementalFlow(  BasePlatform platform,
+                                                ClassifyDocsOptions options,
+                                                FlowConnector flowConnector,
+                                                BasePath workingDirPath,
+                                                BasePath modelPath,
+                                                ModelDatum modelDatum,
+                                                Fields inputFields,
+                                                Tap inputSource)
+        throws Exception {
+        
+        if (!inputFields.equals(TextDatum.FIELDS)) {
+            throw new IllegalArgumentException("Incremental classification requires TextDatum input");
+        }
+        
+        if (options.getLabelPolicy() != null) {
+            throw new IllegalArgumentException("Incremental classification doesn't support target labels or min scores");
+        }
+        
+        // Move the previous run's state out of the way, since we're about
+        // to replace it. If there's no state then either this is the first
+        // incremental run, or the previous run failed after moving the state,
+        // in which case we can still use it. If the state is incomplete then
+        // the previous run failed while writing it, and we use the state that
+        // run started with.
+        BasePath statePath = platform.makePath(workingDirPath, ClassifyConfig.CLASSIFIED_STATE_SUBDIR_NAME);
+        BasePath previousStatePath = platform.makePath(workingDirPath, ClassifyConfig.PREVIOUS_CLASSIFIED_STATE_SUBDIR_NAME);
+        BasePath completedPath = platform.makePath(workingDirPath, ClassifyConfig.COMPLETED_CLASSIFIED_STATE_SUBDIR_NAME);
+        if (statePath.exists()) {
+            if (completedPath.exists()) {
+                if (previousStatePath.exists()) {
+                    previousStatePath.delete(true);
+                }
+                
+                platform.rename(statePath, previousStatePath);
+            } else {
+                LOGGER.warn(String.format(  "Classification state in %s is incomplete, so using %s",
+                                            statePath,
+                                            previousStatePath));
+                statePath.delete(true);
+            }
+        }
+        
+        if (completedPath.exists()) {
+            completedPath.delete(true);
+        }
+        
+        if (!previousStatePath.exists()) {
+            LOGGER.info("No previous classification state, so all documents will be classified");
+            Tap emptyStateSink = platform.makeTap(  platform.makeBinaryScheme(ClassificationStateDatum.FIELDS),
+                                                    previousStatePath,
+                                                    SinkMode.REPLACE);
+            emptyStateSink.openForWrite(SerializationTokens.makeFlowProcess(platform)).close();
+        }
+        
+        Tap previousStateSource = platform.makeTap( platform.makeBinaryScheme(ClassificationStateDatum.FIELDS),
+                                                    previousStatePath);
+        
+        Pipe inputPipe = new Pipe("input pipe");
+        Pipe previousStatePipe = new Pipe("previous state");
+        String modelChecksum = IncrementalClassifyDocsPipe.getModelChecksum(modelDatum);
+        IncrementalClassifyDocsPipe classifierPipe;
+        if (options.isModelByReference()) {
+            ModelReference modelReference = ModelReference.create(platform, modelPath, modelDatum);
+            modelReference.setSharedPerJvm(options.isShareModel());
+            classifierPipe = new IncrementalClassifyDocsPipe(   inputPipe,
+                                                                previousStatePipe,
+                                                                modelDatum.getAnalyzer(),
+                                                                modelReference,
+                                                                modelChecksum,
+                                                                options.getCacheSize(),
+                                                                options.getTupleLoggingPolicy());
+        } else {
+            classifierPipe = new IncrementalClassifyDocsPipe(   inputPipe,
+                                                                previousStatePipe,
+                                                                modelDatum.getAnalyzer(),
+                                                                makeModel(platform, options, flowConnector, workingDirPath, modelDatum),
+                                                                modelChecksum,
+                                                                options.getCacheSize(),
+                                                                options.getTupleLoggingPolicy());
+        }
+        
+        Map<String, Tap> sources = new HashMap<String, Tap>();
+        sources.put(inputPipe.getName(), inputSource);
+        sources.put(previousStatePipe.getName(), previousStateSource);
+        
+        Map<String, Tap> sinks = new HashMap<String, Tap>();
+        sinks.put(  classifierPipe.getOutputPipe().getName(),
+                    platform.makeTap(   platform.makeBinaryScheme(DocDatum.FIELDS),
+                                        platform.makePath(workingDirPath, ClassifyConfig.CLASSIFIED_SUBDIR_NAME),
+                                        SinkMode.REPLACE));
+        sinks.put(  classifierPipe.getStatePipe().getName(),
+                    platform.makeTap(   platform.makeBinaryScheme(ClassificationStateDatum.FIELDS),
+                                        statePath,
+                                        SinkMode.REPLACE));
+        
+        Flow result = flowConnector.connect(sources, sinks, classifierPipe.getTails());
+        result.addListener(new StateCompletedListener(completedPath));
+        return result;
+    }
+    
+    /**
+     * @return model to serialize into the job, which is either the lazily
+     * deserialized model, or a mapped copy of it whose file is written to
+     * {@link ClassifyConfig#MAPPED_MODEL_FILENAME} in the working directory
+     * and shipped to each task.
+     */
+    private static BaseModel makeModel( BasePlatform platform,
+                                        ClassifyDocsOptions options,
+                                        FlowConnector flowConnector,
+                                        BasePath workingDirPath,
+                                        ModelDatum modelDatum)
+        throws Exception {
+        
+        if (!options.isMappedModel()) {
+            return modelDatum.getLazyModel().setSharedPerJvm(options.isShareModel());
+        }
+        
+        BaseModel model = modelDatum.getModel();
+        if (!(model instanceof BaseLibLinearModel)) {
+            throw new IllegalArgumentException(String.format(   "%s can't be mapped",
+                                                                model.getClass().getSimpleName()));
+        }
+        
+        return MappedLibLinearModel.createShipped(  platform,
+                                                    platform.makePath(workingDirPath, ClassifyConfig.MAPPED_MODEL_FILENAME),
+                                                    (BaseLibLinearModel)model,
+                                                    flowConnector.getProperties());
+    }
+    
+    /**
+     * Marks the classification state as completed when the incremental flow
+     * that writes it succeeds.
+     */
+    private static class StateCompletedListener implements FlowListener {
+        private BasePath _completedPath;
+        
+        public StateCompletedListener(BasePath completedPath) {
+            _completedPath = completedPath;
+        }
+        
+        @Override
+        public void onStarting(Flow flow) {
+        }
+
+        @Override
+        public void onStopping(Flow flow) {
+        }
+
+        @Override
+        public void onCompleted(Flow flow) {
+            // Also called when the flow fails.
+            if (flow.getFlowStats().isSuccessful()) {
+                _completedPath.mkdirs();
+            }
+        }
+
+        @Override
+        public boolean onThrowable(Flow flow, Throwable throwable) {
+            return false;
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -137,7 +562,7 @@ public class ClassifyDocsPipe extends SubAssembly {
         
         modelPath.assertExists("Model directory");
         Tap modelSource = platform.makeTap(platform.makeBinaryScheme(ModelDatum.FIELDS), modelPath);
-        Iterator<TupleEntry> iter = modelSource.openForRead(platform.makeFlowProcess());
+        Iterator<TupleEntry> iter = modelSource.openForRead(SerializationTokens.makeFlowProcess(platform));
         if (!(iter.hasNext())) {
             throw new IllegalStateException(String.format(  "Model directory %s doesn't contain any classifiers",
                                                             modelPath));
@@ -29,7 +29,7 @@ public class ClassifyDocsTool extends BaseTool {
 
     @SuppressWarnings("rawtypes")
 	public static void main(String[] args) {
-        ClassifyOptions options = new ClassifyOptions();
+        ClassifyDocsOptions options = new ClassifyDocsOptions();
         CmdLineParser parser = parse(args, options);
         try {
             parser.parseArgument(args);
@@ -0,0 +1,465 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.scaleunlimited.cascading.local.LocalPlatform;
+import com.scaleunlimited.classify.ModelHolder.LoadedModel;
+import com.scaleunlimited.classify.analyzer.IAnalyzer;
+import com.scaleunlimited.classify.analyzer.TextDatumAnalyzer;
+import com.scaleunlimited.classify.datum.DocDatum;
+import com.scaleunlimited.classify.datum.ModelDatum;
+import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.datum.TextDatum;
+
+/**
+ * Classifies text without Cascading, for use inline in other code (e.g. a
+ * fetcher) where the latency of a workflow isn't acceptable. It uses the
+ * same analyzer and model code as {@link ClassifyDocsPipe}.
+ * 
+ * Text can be classified synchronously via {@link #classify(String)}, which
+ * runs in the caller's thread, or asynchronously via {@link #submit(String)}.
+ * Asynchronous classification is a bounded worker pool: submitted text goes
+ * into a bounded queue, and a fixed number of worker tasks take texts from
+ * the queue and classify them one at a time. When the queue is full,
+ * {@link #submit(String)} blocks (and {@link #trySubmit(String, long, TimeUnit)}
+ * gives up after its timeout), so callers can't get too far ahead of the
+ * workers.
+ * 
+ * The model is loaded once and shared by all threads, as it's only read when
+ * classifying. Analyzers keep per-document state, so each thread gets its own.
+ * With a {@link ModelHolder} that watches the model directory, a new model
+ * can be swapped in while the engine is running.
+ */
+public class ClassifyEngine implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClassifyEngine.class);
+
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+    
+    // How long an idle worker waits before checking whether we've been closed.
+    private static final long WORKER_POLL_INTERVAL_MS = 100;
+    
+    private final ModelHolder _modelHolder;
+    private final ThreadLocal<ThreadAnalyzer> _analyzers = new ThreadLocal<ThreadAnalyzer>();
+    private final BlockingQueue<ClassifyRequest> _queue;
+    private final ExecutorService _ownedExecutor;
+    private final CountDownLatch _workersDone;
+    
+    private volatile boolean _closed = false;
+    
+    /**
+     * Create an engine with its own (daemon) worker threads.
+     * 
+     * @param modelDatum model and analyzer to use
+     * @param numWorkers number of threads classifying submitted text
+     * @param queueSize max number of submitted texts waiting to be classified
+     * @throws Exception if the model can't be loaded
+     */
+    public ClassifyEngine(ModelDatum modelDatum, int numWorkers, int queueSize) throws Exception {
+        this(new ModelHolder(modelDatum), makeExecutor(numWorkers), true, numWorkers, queueSize);
+    }
+    
+    /**
+     * Create an engine with its own (daemon) worker threads, which always
+     * uses the holder's current model (so it can be reloaded).
+     * 
+     * @param modelHolder holds the model and analyzer to use
+     * @param numWorkers number of threads classifying submitted text
+     * @param queueSize max number of submitted texts waiting to be classified
+     */
+    public ClassifyEngine(ModelHolder modelHolder, int numWorkers, int queueSize) {
+        this(modelHolder, makeExecutor(numWorkers), true, numWorkers, queueSize);
+    }
+    
+    /**
+     * Create an engine whose workers run on <executor>, which must be able
+     * to run <numWorkers> long-lived tasks at the same time. The executor
+     * isn't shut down when the engine is closed.
+     * 
+     * @param modelDatum model and analyzer to use
+     * @param executor runs the worker tasks
+     * @param numWorkers number of worker tasks classifying submitted text
+     * @param queueSize max number of submitted texts waiting to be classified
+     * @throws Exception if the model can't be loaded
+     */
+    public ClassifyEngine(ModelDatum modelDatum, Executor executor, int numWorkers, int queueSize) throws Exception {
+        this(new ModelHolder(modelDatum), executor, false, numWorkers, queueSize);
+    }
+    
+    /**
+     * Create an engine whose workers run on <executor>, and which always
+     * uses the holder's current model (so it can be reloaded).
+     * 
+     * @param modelHolder holds the model and analyzer to use
+     * @param executor runs the worker tasks
+     * @param numWorkers number of worker tasks classifying submitted text
+     * @param queueSize max number of submitted texts waiting to be classified
+     */
+    public ClassifyEngine(ModelHolder modelHolder, Executor executor, int numWorkers, int queueSize) {
+        this(modelHolder, executor, false, numWorkers, queueSize);
+    }
+    
+    private ClassifyEngine(ModelHolder modelHolder, Executor executor, boolean ownsExecutor, int numWorkers, int queueSize) {
+        if (numWorkers < 1) {
+            throw new IllegalArgumentException("Number of workers must be at least 1: " + numWorkers);
+        }
+        
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("Queue size must be at least 1: " + queueSize);
+        }
+        
+        _modelHolder = modelHolder;
+        _queue = new ArrayBlockingQueue<ClassifyRequest>(queueSize);
+        _ownedExecutor = (ownsExecutor ? (ExecutorService)executor : null);
+        _workersDone = new CountDownLatch(numWorkers);
+        for (int i = 0; i < numWorkers; i++) {
+            executor.execute(new Worker());
+        }
+    }
+    
+    /**
+     * @param modelDir local directory with the model, as written by {@link TrainModelPipe}
+     * @param numWorkers number of threads classifying submitted text
+     * @return engine using the default queue size
+     * @throws Exception if the model can't be read
+     */
+    public static ClassifyEngine load(File modelDir, int numWorkers) throws Exception {
+        return new ClassifyEngine(readModel(modelDir), numWorkers, DEFAULT_QUEUE_SIZE);
+    }
+    
+    /**
+     * @param modelDir local directory with the model, as written by {@link TrainModelPipe}
+     * @return the model (and analyzer)
+     * @throws Exception if the model can't be read
+     */
+    public static ModelDatum readModel(File modelDir) throws Exception {
+        LocalPlatform platform = new LocalPlatform(ClassifyEngine.class);
+        return ClassifyDocsPipe.readModel(platform, platform.makePath(modelDir.getAbsolutePath()));
+    }
+    
+    /**
+     * Classify <text> in the calling thread.
+     * 
+     * @param text document to classify
+     * @return classification (label and score), or null if the analyzer skipped the text
+     */
+    public DocDatum classify(String text) {
+        if (_closed) {
+            throw new IllegalStateException("Engine has been closed");
+        }
+        
+        return doClassify(text);
+    }
+    
+    /**
+     * Queue up <text> to be classified, blocking while the queue is full.
+     * 
+     * @param text document to classify
+     * @return future classification, which is null if the analyzer skipped the text
+     * @throws InterruptedException if interrupted while waiting for space in the queue
+     */
+    public Future<DocDatum> submit(String text) throws InterruptedException {
+        ClassifyRequest request = new ClassifyRequest(text);
+        enqueue(request, true, 0);
+        return request;
+    }
+    
+    /**
+     * Queue up <text> to be classified, waiting up to <timeout> for space in the queue.
+     * 
+     * @param text document to classify
+     * @param timeout max time to wait for space in the queue
+     * @param unit units of <timeout>
+     * @return future classification, or null if the queue stayed full
+     * @throws InterruptedException if interrupted while waiting for space in the queue
+     */
+    public Future<DocDatum> trySubmit(String text, long timeout, TimeUnit unit) throws InterruptedException {
+        ClassifyRequest request = new ClassifyRequest(text);
+        return (enqueue(request, false, unit.toNanos(timeout)) ? request : null);
+    }
+    
+    /**
+     * Add <request> to the queue, waiting for space in short slices so that we
+     * notice if the engine gets closed while we're blocked (the workers would
+     * never make room for us).
+     * 
+     * If the engine gets closed just as the request goes into the queue, the
+     * workers and the final drain in {@link #close()} might both have missed
+     * it, so in that case we take it back out and cancel it ourselves.
+     * 
+     * @param request request to queue
+     * @param waitForever true to wait as long as it takes for space in the queue
+     * @param timeoutNanos max time to wait, if not <waitForever>
+     * @return true if the request was queued (it might have been cancelled), false if we timed out
+     * @throws InterruptedException if interrupted while waiting for space in the queue
+     */
+    private boolean enqueue(ClassifyRequest request, boolean waitForever, long timeoutNanos) throws InterruptedException {
+        final long pollNanos = TimeUnit.MILLISECONDS.toNanos(WORKER_POLL_INTERVAL_MS);
+        long deadline = System.nanoTime() + timeoutNanos;
+        
+        while (true) {
+            if (_closed) {
+                throw new IllegalStateException("Engine has been closed");
+            }
+            
+            long waitNanos = pollNanos;
+            if (!waitForever) {
+                waitNanos = Math.max(0, Math.min(pollNanos, deadline - System.nanoTime()));
+            }
+            
+            if (_queue.offer(request, waitNanos, TimeUnit.NANOSECONDS)) {
+                break;
+            } else if (!waitForever && (deadline - System.nanoTime() <= 0)) {
+                return false;
+            }
+        }
+        
+        if (_closed && _queue.remove(request)) {
+            request.cancel(false);
+        }
+        
+        return true;
+    }
+    
+    /**
+     * @return number of submitted texts waiting to be classified
+     */
+    public int getQueueSize() {
+        return _queue.size();
+    }
+    
+    /**
+     * Stop accepting text, wait for the workers to finish what's already been
+     * submitted, and shut down our own worker threads (if we have them).
+     */
+    @Override
+    public void close() {
+        _closed = true;
+        
+        try {
+            _workersDone.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        // Anything that was submitted after the workers stopped never gets classified.
+        // A request that's queued after this drain is cancelled by its submitter.
+        ClassifyRequest request;
+        while ((request = _queue.poll()) != null) {
+            request.cancel(false);
+        }
+        
+        if (_ownedExecutor != null) {
+            _ownedExecutor.shutdown();
+        }
+    }
+    
+    public ModelHolder getModelHolder() {
+        return _modelHolder;
+    }
+    
+    private DocDatum doClassify(String text) {
+        // Use the same model for the entire classification, even if a new
+        // one gets swapped in while we're working.
+        LoadedModel loadedModel = _modelHolder.getModel();
+        IAnalyzer analyzer = getAnalyzer(loadedModel);
+        TextDatum textDatum = new TextDatum(text);
+        if (analyzer instanceof TextDatumAnalyzer) {
+            Map<String, Integer> termMap = ((TextDatumAnalyzer)analyzer).getTermMap(textDatum);
+            return (termMap == null ? null : loadedModel.getModel().classifyTerms(termMap));
+        }
+        
+        TermsDatum termsDatum = analyzer.getTermsDatum(textDatum.getTuple());
+        return (termsDatum == null ? null : loadedModel.getModel().classifyTerms(termsDatum.getTermMap()));
+    }
+    
+    /**
+     * @return this thread's analyzer for <loadedModel>
+     */
+    private IAnalyzer getAnalyzer(LoadedModel loadedModel) {
+        ThreadAnalyzer threadAnalyzer = _analyzers.get();
+        if ((threadAnalyzer == null) || (threadAnalyzer.getLoadedModel() != loadedModel)) {
+            threadAnalyzer = new ThreadAnalyzer(loadedModel, loadedModel.makeAnalyzer());
+            _analyzers.set(threadAnalyzer);
+        }
+        
+        return threadAnalyzer.getAnalyzer();
+    }
+    
+    private static ExecutorService makeExecutor(int numWorkers) {
+        return Executors.newFixedThreadPool(numWorkers, new ThreadFactory() {
+            private int _threadIndex = 0;
+            
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread result = new Thread(r, "ClassifyEngine-" + _threadIndex++);
+                result.setDaemon(true);
+                return result;
+            }
+        });
+    }
+    
+    /**
+     * Takes requests from the queue and classifies them, until the engine is
+     * closed and the queue is empty.
+     */
+    private class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    ClassifyRequest request = _queue.poll(WORKER_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    if (request == null) {
+                        if (_closed) {
+                            break;
+                        }
+                        
+                        continue;
+                    }
+                    
+                    try {
+                        request.setResult(doClassify(request.getText()));
+                    } catch (RuntimeException e) {
+                        request.setError(e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                LOGGER.warn("Classify engine worker interrupted");
+                Thread.currentThread().interrupt();
+            } finally {
+                _workersDone.countDown();
+            }
+        }
+    }
+    
+    /**
+     * A thread's analyzer, and the model it was created for.
+     */
+    private static class ThreadAnalyzer {
+        private final LoadedModel _loadedModel;
+        private final IAnalyzer _analyzer;
+        
+        public ThreadAnalyzer(LoadedModel loadedModel, IAnalyzer analyzer) {
+            _loadedModel = loadedModel;
+            _analyzer = analyzer;
+        }
+        
+        public LoadedModel getLoadedModel() {
+            return _loadedModel;
+        }
+        
+        public IAnalyzer getAnalyzer() {
+            return _analyzer;
+        }
+    }
+    
+    /**
+     * Text waiting to be classified, and its future classification.
+     */
+    private static class ClassifyRequest implements Future<DocDatum> {
+        private final String _text;
+        private final CountDownLatch _done = new CountDownLatch(1);
+        private volatile DocDatum _result;
+        private volatile Throwable _error;
+        private volatile boolean _cancelled = false;
+        
+        public ClassifyRequest(String text) {
+            _text = text;
+        }
+        
+        public String getText() {
+            return _text;
+        }
+        
+        public void setResult(DocDatum result) {
+            _result = result;
+            _done.countDown();
+        }
+        
+        public void setError(Throwable error) {
+            _error = error;
+            _done.countDown();
+        }
+        
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            // We can only cancel requests that never made it to a worker.
+            if (isDone()) {
+                return false;
+            }
+            
+            _cancelled = true;
+            _done.countDown();
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return _cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return _done.getCount() == 0;
+        }
+
+        @Override
+        public DocDatum get() throws InterruptedException, ExecutionException {
+            _done.await();
+            return getResult();
+        }
+
+        @Override
+        public DocDatum get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!_done.await(timeout, unit)) {
+                throw new TimeoutException("Text hasn't been classified yet");
+            }
+            
+            return getResult();
+        }
+        
+        private DocDatum getResult() throws ExecutionException {
+            if (_cancelled) {
+                throw new CancellationException("Engine was closed before the text was classified");
+            }
+            
+            if (_error != null) {
+                throw new ExecutionException(_error);
+            }
+            
+            return _result;
+        }
+    }
+}
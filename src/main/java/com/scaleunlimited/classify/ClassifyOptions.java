@@ -18,12 +18,22 @@ package com.scaleunlimited.classify;
 import org.kohsuke.args4j.Option;
 
 import com.scaleunlimited.cascading.BaseOptions;
+import com.scaleunlimited.classify.analyzer.AnalysisBudget;
 
 
 
 public class ClassifyOptions extends BaseOptions {
 
     private String _workingDir;
+    private int _numAnalysisThreads = 1;
+    private int _cacheSize = 0;
+    private boolean _modelByReference = false;
+    private boolean _shareModel = false;
+    private String _tupleLogging = null;
+    private boolean _timingHistograms = false;
+    private int _maxChars = AnalysisBudget.NO_LIMIT;
+    private int _maxTokens = AnalysisBudget.NO_LIMIT;
+    private boolean _headAndTail = false;
 
     @Option(name = "-workingdir", usage = "working directory", required = true)
     public void setWorkingDir(String workingDir) {
@@ -33,4 +43,89 @@ public class ClassifyOptions extends BaseOptions {
     public String getWorkingDir() {
         return _workingDir;
     }
+
+    @Option(name = "-analysisthreads", usage = "number of threads per task used to analyze documents", required = false)
+    public void setNumAnalysisThreads(int numAnalysisThreads) {
+        _numAnalysisThreads = numAnalysisThreads;
+    }
+
+    public int getNumAnalysisThreads() {
+        return _numAnalysisThreads;
+    }
+
+    @Option(name = "-cachesize", usage = "max documents per task in the analysis and classification caches (0 => no caching)", required = false)
+    public void setCacheSize(int cacheSize) {
+        _cacheSize = cacheSize;
+    }
+
+    public int getCacheSize() {
+        return _cacheSize;
+    }
+
+    @Option(name = "-modelbyref", usage = "tasks read the model from the model directory, versus it being serialized into the job", required = false)
+    public void setModelByReference(boolean modelByReference) {
+        _modelByReference = modelByReference;
+    }
+
+    public boolean isModelByReference() {
+        return _modelByReference;
+    }
+
+    @Option(name = "-sharemodel", usage = "only load the model once per JVM (for use with JVM reuse)", required = false)
+    public void setShareModel(boolean shareModel) {
+        _shareModel = shareModel;
+    }
+
+    public boolean isShareModel() {
+        return _shareModel;
+    }
+
+    @Option(name = "-maxchars", usage = "max content chars to analyze per training document (0 => no limit); classification uses the model's limits", required = false)
+    public void setMaxChars(int maxChars) {
+        _maxChars = maxChars;
+    }
+
+    @Option(name = "-maxtokens", usage = "max tokens to extract per training document (0 => no limit); classification uses the model's limits", required = false)
+    public void setMaxTokens(int maxTokens) {
+        _maxTokens = maxTokens;
+    }
+
+    @Option(name = "-headtail", usage = "analyze head and tail of training documents longer than -maxchars", required = false)
+    public void setHeadAndTail(boolean headAndTail) {
+        _headAndTail = headAndTail;
+    }
+
+    /**
+     * @return limits on how much of each document gets analyzed when
+     * training; they're saved with the model's analyzer.
+     */
+    public AnalysisBudget getAnalysisBudget() {
+        return new AnalysisBudget(_maxChars, _maxTokens, _headAndTail);
+    }
+
+    @Option(name = "-timinghistograms", usage = "also count calls per latency bucket for each timed stage", required = false)
+    public void setTimingHistograms(boolean timingHistograms) {
+        _timingHistograms = timingHistograms;
+    }
+
+    public boolean isTimingHistograms() {
+        return _timingHistograms;
+    }
+
+    @Option(name = "-tuplelogging", usage = "debug logging of tuples: off, full, sampled, or N to log 1 in N tuples", required = false)
+    public void setTupleLogging(String tupleLogging) {
+        _tupleLogging = tupleLogging;
+    }
+
+    public String getTupleLogging() {
+        return _tupleLogging;
+    }
+
+    /**
+     * @return policy for logging tuples, which is {@link TupleLoggingPolicy#FULL}
+     * if none was specified
+     */
+    public TupleLoggingPolicy getTupleLoggingPolicy() {
+        return (_tupleLogging == null ? TupleLoggingPolicy.FULL : TupleLoggingPolicy.parse(_tupleLogging));
+    }
 }
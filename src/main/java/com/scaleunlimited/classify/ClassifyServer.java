@@ -0,0 +1,342 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.scaleunlimited.classify.datum.DocDatum;
+
+/**
+ * Serves classification requests over a local TCP socket, so that many
+ * processes on the same box can share one loaded model. All requests go
+ * through a {@link ClassifyEngine}, so the number of documents being
+ * classified at once is bounded by its number of workers.
+ * 
+ * Each request is a one byte command, a four byte (big-endian) length, and
+ * then that many bytes of UTF-8 text. Each response is a one byte status,
+ * followed by a length and UTF-8 text in the same format. Any number of
+ * requests can be sent over one connection, one after another.
+ * 
+ * <ul>
+ * <li>{@link #CLASSIFY_COMMAND}: the text is the document to classify, and the
+ * response is the label and score, separated by a tab.</li>
+ * <li>{@link #STATS_COMMAND}: the text is ignored, and the response is one
+ * name=value line per stat (request count, throughput, latency percentiles,
+ * queue size and model reloads).</li>
+ * </ul>
+ * 
+ * The response status is {@link #STATUS_OK}, {@link #STATUS_SKIPPED} (the
+ * analyzer skipped the document, and the text is empty) or
+ * {@link #STATUS_ERROR} (the text is the error message).
+ */
+public class ClassifyServer implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClassifyServer.class);
+
+    public static final byte CLASSIFY_COMMAND = 'C';
+    public static final byte STATS_COMMAND = 'S';
+    
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_SKIPPED = 1;
+    public static final byte STATUS_ERROR = 2;
+    
+    public static final int MAX_REQUEST_LENGTH = 16 * 1024 * 1024;
+    
+    // Latency percentiles are calculated from this many of the most recent requests.
+    private static final int NUM_RECENT_LATENCIES = 10000;
+    
+    private final ClassifyEngine _engine;
+    private final ServerSocket _serverSocket;
+    private final ExecutorService _connectionExecutor;
+    private final Set<Socket> _connections = Collections.synchronizedSet(new HashSet<Socket>());
+    private final Thread _acceptThread;
+    
+    private final AtomicLong _numRequests = new AtomicLong();
+    private final AtomicLong _numErrors = new AtomicLong();
+    private final long[] _recentLatencies = new long[NUM_RECENT_LATENCIES];
+    private long _numLatencies = 0;
+    private volatile long _startTime;
+    
+    private volatile boolean _closed = false;
+    
+    /**
+     * @param engine used to classify documents, which isn't closed when the server is closed.
+     * @param address address to listen on (typically loopback)
+     * @param port port to listen on; 0 => any free port.
+     * @throws IOException if the server socket can't be opened
+     */
+    public ClassifyServer(ClassifyEngine engine, InetAddress address, int port) throws IOException {
+        _engine = engine;
+        _serverSocket = new ServerSocket(port, 0, address);
+        _connectionExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private int _threadIndex = 0;
+            
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread result = new Thread(r, "ClassifyServer-connection-" + _threadIndex++);
+                result.setDaemon(true);
+                return result;
+            }
+        });
+        
+        _acceptThread = new Thread(new Runnable() {
+            
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        }, "ClassifyServer-accept");
+    }
+    
+    /**
+     * @return the port we're listening on
+     */
+    public int getPort() {
+        return _serverSocket.getLocalPort();
+    }
+    
+    public void start() {
+        _startTime = System.currentTimeMillis();
+        _acceptThread.start();
+        LOGGER.info("Classify server listening on " + _serverSocket.getLocalSocketAddress());
+    }
+    
+    /**
+     * Wait until the server has been closed.
+     * 
+     * @throws InterruptedException
+     */
+    public void join() throws InterruptedException {
+        _acceptThread.join();
+    }
+    
+    /**
+     * @return one name=value line per stat
+     */
+    public String getStats() {
+        long elapsedMS = Math.max(1, System.currentTimeMillis() - _startTime);
+        long numRequests = _numRequests.get();
+        long[] latencies = getRecentLatencies();
+        
+        StringBuilder result = new StringBuilder();
+        appendStat(result, "uptime_ms", elapsedMS);
+        appendStat(result, "requests", numRequests);
+        appendStat(result, "errors", _numErrors.get());
+        appendStat(result, "requests_per_sec", String.format(Locale.ROOT, "%.1f", (numRequests * 1000.0) / elapsedMS));
+        appendStat(result, "latency_p50_us", getPercentile(latencies, 50) / 1000);
+        appendStat(result, "latency_p90_us", getPercentile(latencies, 90) / 1000);
+        appendStat(result, "latency_p99_us", getPercentile(latencies, 99) / 1000);
+        appendStat(result, "queue_size", _engine.getQueueSize());
+        appendStat(result, "model", _engine.getModelHolder().getModel().getFingerprint());
+        appendStat(result, "model_reloads", _engine.getModelHolder().getNumReloads());
+        appendStat(result, "failed_model_reloads", _engine.getModelHolder().getNumFailedReloads());
+        return result.toString();
+    }
+    
+    /**
+     * Stop accepting connections, and close the ones that are open.
+     */
+    @Override
+    public void close() {
+        _closed = true;
+        
+        try {
+            _serverSocket.close();
+        } catch (IOException e) {
+            LOGGER.warn("Exception closing server socket", e);
+        }
+        
+        synchronized (_connections) {
+            for (Socket socket : _connections) {
+                closeQuietly(socket);
+            }
+        }
+        
+        _connectionExecutor.shutdownNow();
+    }
+    
+    private void acceptConnections() {
+        while (!_closed) {
+            try {
+                final Socket socket = _serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                _connections.add(socket);
+                try {
+                    _connectionExecutor.execute(new Runnable() {
+                        
+                        @Override
+                        public void run() {
+                            try {
+                                handleConnection(socket);
+                            } catch (IOException e) {
+                                if (!_closed) {
+                                    LOGGER.warn("Exception handling connection", e);
+                                }
+                            } finally {
+                                _connections.remove(socket);
+                                closeQuietly(socket);
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // We were closed after accepting the connection, but
+                    // (maybe) before close() got around to closing it.
+                    _connections.remove(socket);
+                    closeQuietly(socket);
+                    if (!_closed) {
+                        LOGGER.error("Connection executor rejected connection", e);
+                    }
+                    
+                    break;
+                }
+            } catch (SocketException e) {
+                // Server socket was closed.
+                if (!_closed) {
+                    LOGGER.error("Server socket failed", e);
+                }
+                
+                break;
+            } catch (IOException e) {
+                LOGGER.warn("Exception accepting connection", e);
+            }
+        }
+    }
+    
+    private void handleConnection(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        
+        int command;
+        while ((command = in.read()) != -1) {
+            int length = in.readInt();
+            if ((length < 0) || (length > MAX_REQUEST_LENGTH)) {
+                writeResponse(out, STATUS_ERROR, "Invalid request length: " + length);
+                break;
+            }
+            
+            byte[] data = new byte[length];
+            in.readFully(data);
+            
+            if (command == CLASSIFY_COMMAND) {
+                classify(out, new String(data, StandardCharsets.UTF_8));
+            } else if (command == STATS_COMMAND) {
+                writeResponse(out, STATUS_OK, getStats());
+            } else {
+                writeResponse(out, STATUS_ERROR, "Unknown command: " + command);
+            }
+        }
+    }
+    
+    private void classify(DataOutputStream out, String text) throws IOException {
+        long startTime = System.nanoTime();
+        _numRequests.incrementAndGet();
+        
+        byte status;
+        String response;
+        try {
+            DocDatum docDatum = _engine.submit(text).get();
+            if (docDatum == null) {
+                status = STATUS_SKIPPED;
+                response = "";
+            } else {
+                status = STATUS_OK;
+                response = docDatum.getLabel() + "\t" + docDatum.getScore();
+            }
+        } catch (ExecutionException e) {
+            _numErrors.incrementAndGet();
+            status = STATUS_ERROR;
+            response = String.valueOf(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while classifying", e);
+        } catch (RuntimeException e) {
+            // E.g. the engine has been closed, or the document was cancelled.
+            _numErrors.incrementAndGet();
+            status = STATUS_ERROR;
+            response = String.valueOf(e);
+        }
+        
+        addLatency(System.nanoTime() - startTime);
+        writeResponse(out, status, response);
+    }
+    
+    private synchronized void addLatency(long latency) {
+        _recentLatencies[(int)(_numLatencies % NUM_RECENT_LATENCIES)] = latency;
+        _numLatencies++;
+    }
+    
+    private synchronized long[] getRecentLatencies() {
+        int numLatencies = (int)Math.min(_numLatencies, NUM_RECENT_LATENCIES);
+        long[] result = Arrays.copyOf(_recentLatencies, numLatencies);
+        Arrays.sort(result);
+        return result;
+    }
+    
+    private static long getPercentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        
+        int index = (int)Math.ceil((percentile / 100.0) * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+    
+    private static void appendStat(StringBuilder stats, String name, Object value) {
+        stats.append(name);
+        stats.append('=');
+        stats.append(value);
+        stats.append('\n');
+    }
+    
+    private static void writeResponse(DataOutputStream out, byte status, String text) throws IOException {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(status);
+        out.writeInt(data.length);
+        out.write(data);
+        out.flush();
+    }
+    
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing we can do about it.
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import org.kohsuke.args4j.Option;
+
+import com.scaleunlimited.cascading.BaseOptions;
+
+public class ClassifyServerOptions extends BaseOptions {
+
+    public static final String DEFAULT_HOST = "127.0.0.1";
+    public static final int DEFAULT_PORT = 7387;
+    
+    private String _modelDir;
+    private String _host = DEFAULT_HOST;
+    private int _port = DEFAULT_PORT;
+    private int _numWorkers = 1;
+    private int _queueSize = ClassifyEngine.DEFAULT_QUEUE_SIZE;
+    private int _reloadIntervalSecs = 0;
+
+    @Option(name = "-modeldir", usage = "local model directory", required = true)
+    public void setModelDir(String modelDir) {
+        _modelDir = modelDir;
+    }
+
+    public String getModelDir() {
+        return _modelDir;
+    }
+
+    @Option(name = "-host", usage = "address to listen on (defaults to loopback)", required = false)
+    public void setHost(String host) {
+        _host = host;
+    }
+
+    public String getHost() {
+        return _host;
+    }
+
+    @Option(name = "-port", usage = "port to listen on", required = false)
+    public void setPort(int port) {
+        _port = port;
+    }
+
+    public int getPort() {
+        return _port;
+    }
+
+    @Option(name = "-workers", usage = "number of threads classifying documents", required = false)
+    public void setNumWorkers(int numWorkers) {
+        _numWorkers = numWorkers;
+    }
+
+    public int getNumWorkers() {
+        return _numWorkers;
+    }
+
+    @Option(name = "-queuesize", usage = "max number of requests waiting to be classified", required = false)
+    public void setQueueSize(int queueSize) {
+        _queueSize = queueSize;
+    }
+
+    public int getQueueSize() {
+        return _queueSize;
+    }
+
+    @Option(name = "-reloadinterval", usage = "seconds between checks for a new model in the model dir (0 => never reload)", required = false)
+    public void setReloadIntervalSecs(int reloadIntervalSecs) {
+        _reloadIntervalSecs = reloadIntervalSecs;
+    }
+
+    public int getReloadIntervalSecs() {
+        return _reloadIntervalSecs;
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+
+import com.scaleunlimited.cascading.BaseTool;
+import com.scaleunlimited.cascading.local.LocalPlatform;
+
+/**
+ * Loads a model once, and then serves classification requests from other
+ * processes via a {@link ClassifyServer} until it's killed. If a reload
+ * interval is set, new models in the model directory get swapped in without
+ * a restart.
+ */
+public class ClassifyServerTool extends BaseTool {
+
+    public static void main(String[] args) {
+        ClassifyServerOptions options = new ClassifyServerOptions();
+        CmdLineParser parser = parse(args, options);
+        try {
+            parser.parseArgument(args);
+
+            LocalPlatform platform = new LocalPlatform(ClassifyServerTool.class);
+            final ModelHolder modelHolder = new ModelHolder(platform, platform.makePath(new File(options.getModelDir()).getAbsolutePath()));
+            if (options.getReloadIntervalSecs() > 0) {
+                modelHolder.startWatching(options.getReloadIntervalSecs(), TimeUnit.SECONDS);
+            }
+            
+            final ClassifyEngine engine = new ClassifyEngine(   modelHolder,
+                                                                options.getNumWorkers(),
+                                                                options.getQueueSize());
+            
+            final ClassifyServer server = new ClassifyServer(engine, InetAddress.getByName(options.getHost()), options.getPort());
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    server.close();
+                    modelHolder.close();
+                    engine.close();
+                }
+            });
+            
+            server.start();
+            server.join();
+        } catch (CmdLineException e)  {
+            System.err.println(e.getMessage());
+            printUsageAndExit(parser);
+        } catch (Exception e) {
+            System.err.println("Exception running tool: " + e.getMessage());
+            e.printStackTrace(System.err);
+            System.exit(-1);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import java.io.Serializable;
+
+import org.slf4j.Logger;
+
+import cascading.flow.FlowProcess;
+
+import com.scaleunlimited.cascading.LoggingFlowProcess;
+import com.scaleunlimited.cascading.LoggingFlowReporter;
+import com.scaleunlimited.classify.datum.DocDatum;
+
+/**
+ * The model, cache settings and label policy of an operation that classifies
+ * documents ({@link ClassifyTerms} and {@link AnalyzeAndClassify}), plus the
+ * counters, stage timings and confusion matrix it keeps while it runs and
+ * reports when it's cleaned up.
+ */
+@SuppressWarnings({"serial", "rawtypes"})
+class ClassifyTaskState implements Serializable {
+
+    private BaseModel _model;
+    private ModelReference _modelReference;
+    private int _cacheSize = 0;
+    private LabelPolicy _labelPolicy;
+
+    private transient ConfusionMatrix _confusionMatrix;
+    private transient LoggingFlowProcess _flowProcess;
+    private transient StageTimer _stageTimer;
+
+    ClassifyTaskState(BaseModel model) {
+        _model = model;
+    }
+
+    /**
+     * @param modelReference reference to the model, which each task loads
+     * when it's prepared, versus the model being serialized with the operation.
+     */
+    ClassifyTaskState(ModelReference modelReference) {
+        _modelReference = modelReference;
+    }
+
+    int getCacheSize() {
+        return _cacheSize;
+    }
+
+    void setCacheSize(int cacheSize) {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Cache size can't be negative: " + cacheSize);
+        }
+
+        _cacheSize = cacheSize;
+    }
+
+    void setLabelPolicy(LabelPolicy labelPolicy) {
+        _labelPolicy = labelPolicy;
+    }
+
+    void prepare(FlowProcess flowProcess) {
+        _flowProcess = new LoggingFlowProcess(flowProcess);
+        _flowProcess.addReporter(new LoggingFlowReporter());
+
+        // Models from a reference may be shared with other tasks (via the
+        // ModelRegistry), so they're read-only.
+        if (_modelReference != null) {
+            _model = _modelReference.getModel(flowProcess);
+        } else {
+            _model.reset();
+        }
+
+        _stageTimer = StageTimer.fromFlow(flowProcess);
+        _confusionMatrix = new ConfusionMatrix(_model.getLabelNames());
+    }
+
+    BaseModel getModel() {
+        return _model;
+    }
+
+    LoggingFlowProcess getFlowProcess() {
+        return _flowProcess;
+    }
+
+    StageTimer getStageTimer() {
+        return _stageTimer;
+    }
+
+    /**
+     * @return a new cache for classification results, or null if caching
+     * is turned off.
+     */
+    <T> LruCache<ContentFingerprint, T> makeCache() {
+        return (_cacheSize > 0 ? new LruCache<ContentFingerprint, T>(_cacheSize) : null);
+    }
+
+    /**
+     * Update the confusion matrix and counters for one classified document.
+     *
+     * @param inputLabel label of the input document, if it had one
+     * @param docDatum classification of the document
+     * @return true if the label policy accepts the classification, and thus
+     * the document should be output.
+     */
+    boolean countClassification(String inputLabel, DocDatum docDatum) {
+        _confusionMatrix.add(inputLabel, docDatum.getLabel());
+        _flowProcess.increment(ClassifyCounters.CLASSIFIED_INPUT_TUPLE, 1);
+
+        if  (   (_labelPolicy != null)
+            &&  !_labelPolicy.isAccepted(docDatum.getLabel(), docDatum.getScore())) {
+            _flowProcess.increment(ClassifyCounters.REJECTED_BY_LABEL_POLICY, 1);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Log the accuracy (and at debug level, the confusion matrix), then
+     * report the matrix, stage timings and counters.
+     *
+     * @param logger the operation's logger
+     */
+    void cleanup(Logger logger) {
+        if (_confusionMatrix.getNumLabeled() > 0) {
+            logger.info(String.format(  "Accuracy for %d labeled documents: %.3f",
+                                        _confusionMatrix.getNumLabeled(),
+                                        _confusionMatrix.getAccuracy()));
+        }
+        if (logger.isDebugEnabled()) {
+            for (String label : _confusionMatrix.getLabels()) {
+                logger.debug(String.format( "Label %s: %d classified, precision %.3f, recall %.3f, F1 %.3f",
+                                            label,
+                                            _confusionMatrix.getNumClassified(label),
+                                            _confusionMatrix.getPrecision(label),
+                                            _confusionMatrix.getRecall(label),
+                                            _confusionMatrix.getF1(label)));
+            }
+            logger.debug("Confusion matrix:\n" + _confusionMatrix);
+        }
+        _confusionMatrix.report(_flowProcess);
+        _stageTimer.report(_flowProcess);
+        _flowProcess.dumpCounters();
+    }
+}
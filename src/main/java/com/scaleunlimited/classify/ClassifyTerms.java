@@ -15,7 +15,6 @@
  */
 package com.scaleunlimited.classify;
 
-import java.util.HashMap;
 import java.util.Map;
 
 import org.slf4j.Logger;
@@ -27,12 +26,14 @@ import cascading.operation.BaseOperation;
 import cascading.operation.Function;
 import cascading.operation.FunctionCall;
 import cascading.operation.OperationCall;
+import cascading.tuple.Tuple;
 
 import com.scaleunlimited.cascading.LoggingFlowProcess;
-import com.scaleunlimited.cascading.LoggingFlowReporter;
 import com.scaleunlimited.cascading.NullContext;
+import com.scaleunlimited.classify.StageTimer.Stage;
+import com.scaleunlimited.classify.datum.CompactTermsDatum;
 import com.scaleunlimited.classify.datum.DocDatum;
-import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.datum.LabeledDatum;
 
 @SuppressWarnings({"serial", "rawtypes"})
 public class ClassifyTerms
@@ -41,14 +42,47 @@ public class ClassifyTerms
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ClassifyTerms.class);
 
-    private BaseModel _model;
-    private transient Map<String, Integer> _totalClassifications;
-    private transient Map<String, Integer> _numBadClassifications;
+    private ClassifyTaskState _state;
+    private transient ModelInput _input;
+    private transient LruCache<ContentFingerprint, CachedClassification> _cache;
+    private transient BaseModel _model;
     private transient LoggingFlowProcess _flowProcess;
+    private transient StageTimer _stageTimer;
     
     ClassifyTerms(BaseModel model) {
         super(DocDatum.FIELDS);
-        _model = model;
+        _state = new ClassifyTaskState(model);
+    }
+    
+    /**
+     * @param modelReference reference to the model, which each task loads
+     * when it's prepared, versus the model being serialized with the operation.
+     */
+    ClassifyTerms(ModelReference modelReference) {
+        super(DocDatum.FIELDS);
+        _state = new ClassifyTaskState(modelReference);
+    }
+    
+    /**
+     * @param cacheSize max number of classifications to cache, keyed by a
+     * fingerprint of the document's terms; 0 => no caching. Documents that
+     * have been hashed into feature vectors, or that only have feature values,
+     * are never cached.
+     * @return this operation
+     */
+    public ClassifyTerms setCacheSize(int cacheSize) {
+        _state.setCacheSize(cacheSize);
+        return this;
+    }
+    
+    /**
+     * @param labelPolicy which classified documents to output, or null
+     * to output all of them.
+     * @return this operation
+     */
+    public ClassifyTerms setLabelPolicy(LabelPolicy labelPolicy) {
+        _state.setLabelPolicy(labelPolicy);
+        return this;
     }
     
     // Classification is an expensive operation, so we don't want it repeated
@@ -62,64 +96,86 @@ public class ClassifyTerms
 	@Override
     public void prepare(FlowProcess flowProcess, OperationCall<NullContext> operationCall) {
         super.prepare(flowProcess, operationCall);
-        _flowProcess = new LoggingFlowProcess(flowProcess);
-        _flowProcess.addReporter(new LoggingFlowReporter());
-        _model.reset();
-        _totalClassifications = new HashMap<String, Integer>();
-        _numBadClassifications = new HashMap<String, Integer>();
+        _state.prepare(flowProcess);
+        _model = _state.getModel();
+        _flowProcess = _state.getFlowProcess();
+        _stageTimer = _state.getStageTimer();
+        _input = ModelInput.fromFields(operationCall.getArgumentFields());
+        _cache = _state.makeCache();
     }
 
     @SuppressWarnings("unchecked")
 	@Override
     public void operate(FlowProcess flowProcess,
                         FunctionCall<NullContext> functionCall) {
-        TermsDatum termsDatum =
-            new TermsDatum(functionCall.getArguments().getTuple());
-        DocDatum docDatum = _model.classify(termsDatum);
-        docDatum.setPayload(termsDatum.getPayload());
-        countClassifications(termsDatum, docDatum);
+        Tuple tuple = functionCall.getArguments().getTuple();
+        LabeledDatum inputDatum = _input.makeLabeledDatum(tuple);
+        long startTime = _stageTimer.start();
+        DocDatum docDatum = classify(tuple);
+        _stageTimer.stop(Stage.CLASSIFICATION, startTime);
+        
+        // Don't bother with the payload of documents we're discarding.
+        if (!_state.countClassification(inputDatum.getLabel(), docDatum)) {
+            return;
+        }
+        
+        docDatum.setPayload(inputDatum.getPayload());
         functionCall.getOutputCollector().add(docDatum.getTuple());
     }
 
     @Override
     public void cleanup(FlowProcess flowProcess, OperationCall<NullContext> operationCall) {
-        if (LOGGER.isDebugEnabled()) {
-            for (Map.Entry<String, Integer> entry : _numBadClassifications.entrySet()) {
-                LOGGER.debug(String.format("Number of training documents misclassified as %s: %d",
-                                            entry.getKey(),
-                                            entry.getValue()));
-            }
-            for (Map.Entry<String, Integer> entry : _totalClassifications.entrySet()) {
-                LOGGER.debug(String.format("Total documents classified as %s: %d",
-                                            entry.getKey(),
-                                            entry.getValue()));
-            }
-        }
-        _flowProcess.dumpCounters();
+        _state.cleanup(LOGGER);
         super.cleanup(flowProcess, operationCall);
     }
 
-    private void countClassifications(  TermsDatum termsDatum,
-                                        DocDatum docDatum) {
-        String termsLabel = termsDatum.getLabel();
-        String docLabel = docDatum.getLabel();
-        if  (   (termsLabel != null)
-            &&  (!(termsLabel.equals(BaseModel.NOT_YET_LABELED)))) {
-            if (!(docLabel.equals(termsLabel))) {
-                Integer numBad = _numBadClassifications.get(docLabel);
-                if (numBad == null) {
-                    _numBadClassifications.put(docLabel, 1);
-                } else {
-                    _numBadClassifications.put(docLabel, ++numBad);
-                }
-            }
+    private DocDatum classify(Tuple tuple) {
+        if ((_cache == null) || !_input.hasTerms()) {
+            return _input.classify(_model, tuple, _stageTimer);
         }
-        Integer total = _totalClassifications.get(docLabel);
-        if (total == null) {
-            _totalClassifications.put(docLabel, 1);
+        
+        // Compact terms are fingerprinted straight from their block, so the
+        // term map is only decoded if we actually have to classify them.
+        Map<String, Integer> termMap = null;
+        ContentFingerprint fingerprint;
+        if (_input == ModelInput.COMPACT_TERMS) {
+            fingerprint = ContentFingerprint.fromTerms(new CompactTermsDatum(tuple).iterator());
         } else {
-            _totalClassifications.put(docLabel, ++total);
+            termMap = _input.getTermMap(tuple);
+            fingerprint = ContentFingerprint.fromTermMap(termMap);
+        }
+        
+        CachedClassification cached = _cache.get(fingerprint);
+        if (cached != null) {
+            _flowProcess.increment(ClassifyCounters.CLASSIFICATION_CACHE_HIT, 1);
+            return new DocDatum(cached.getLabel(), cached.getScore());
+        }
+        
+        _flowProcess.increment(ClassifyCounters.CLASSIFICATION_CACHE_MISS, 1);
+        if (termMap == null) {
+            termMap = _input.getTermMap(tuple);
+        }
+        
+        DocDatum result = _model.classifyTerms(termMap, _stageTimer);
+        _cache.put(fingerprint, new CachedClassification(result.getLabel(), result.getScore()));
+        return result;
+    }
+    
+    private static class CachedClassification {
+        private String _label;
+        private float _score;
+        
+        public CachedClassification(String label, float score) {
+            _label = label;
+            _score = score;
+        }
+        
+        public String getLabel() {
+            return _label;
+        }
+        
+        public float getScore() {
+            return _score;
         }
-        _flowProcess.increment(ClassifyCounters.CLASSIFIED_INPUT_TUPLE, 1);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+/**
+ * Time spent in each {@link StageTimer.Stage}, as total nanoseconds, the
+ * number of timed calls, and (if enabled) a coarse histogram of per-call
+ * latencies.
+ */
+public enum ClassifyTimingCounters {
+    ANALYSIS_NANOS,
+    ANALYSIS_COUNT,
+    ANALYSIS_UNDER_10US,
+    ANALYSIS_UNDER_100US,
+    ANALYSIS_UNDER_1MS,
+    ANALYSIS_UNDER_10MS,
+    ANALYSIS_10MS_OR_MORE,
+    
+    VECTORIZATION_NANOS,
+    VECTORIZATION_COUNT,
+    VECTORIZATION_UNDER_10US,
+    VECTORIZATION_UNDER_100US,
+    VECTORIZATION_UNDER_1MS,
+    VECTORIZATION_UNDER_10MS,
+    VECTORIZATION_10MS_OR_MORE,
+    
+    NORMALIZATION_NANOS,
+    NORMALIZATION_COUNT,
+    NORMALIZATION_UNDER_10US,
+    NORMALIZATION_UNDER_100US,
+    NORMALIZATION_UNDER_1MS,
+    NORMALIZATION_UNDER_10MS,
+    NORMALIZATION_10MS_OR_MORE,
+    
+    FEATURE_NODES_NANOS,
+    FEATURE_NODES_COUNT,
+    FEATURE_NODES_UNDER_10US,
+    FEATURE_NODES_UNDER_100US,
+    FEATURE_NODES_UNDER_1MS,
+    FEATURE_NODES_UNDER_10MS,
+    FEATURE_NODES_10MS_OR_MORE,
+    
+    PREDICTION_NANOS,
+    PREDICTION_COUNT,
+    PREDICTION_UNDER_10US,
+    PREDICTION_UNDER_100US,
+    PREDICTION_UNDER_1MS,
+    PREDICTION_UNDER_10MS,
+    PREDICTION_10MS_OR_MORE,
+    
+    CLASSIFICATION_NANOS,
+    CLASSIFICATION_COUNT,
+    CLASSIFICATION_UNDER_10US,
+    CLASSIFICATION_UNDER_100US,
+    CLASSIFICATION_UNDER_1MS,
+    CLASSIFICATION_UNDER_10MS,
+    CLASSIFICATION_10MS_OR_MORE,
+    
+    TRAINING_NANOS,
+    TRAINING_COUNT,
+    TRAINING_UNDER_10US,
+    TRAINING_UNDER_100US,
+    TRAINING_UNDER_1MS,
+    TRAINING_UNDER_10MS,
+    TRAINING_10MS_OR_MORE,
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+
+import com.scaleunlimited.cascading.NullContext;
+import com.scaleunlimited.classify.datum.CompactTermsDatum;
+import com.scaleunlimited.classify.datum.TermsDatum;
+
+/**
+ * Converts each {@link TermsDatum} into the equivalent {@link CompactTermsDatum},
+ * typically right before it's written out or shuffled.
+ */
+@SuppressWarnings({"serial", "rawtypes"})
+public class CompactTerms extends BaseOperation<NullContext> implements Function<NullContext> {
+
+    public CompactTerms() {
+        super(CompactTermsDatum.FIELDS);
+    }
+    
+    @Override
+    public void operate(FlowProcess flowProcess,
+                        FunctionCall<NullContext> functionCall) {
+        TermsDatum termsDatum = new TermsDatum(functionCall.getArguments().getTuple());
+        functionCall.getOutputCollector().add(new CompactTermsDatum(termsDatum).getTuple());
+    }
+}
@@ -0,0 +1,405 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cascading.flow.FlowProcess;
+import cascading.stats.CascadingStats;
+
+/**
+ * Counts of actual versus predicted labels, for evaluating a model while
+ * it's classifying documents. Labels are mapped to indexes once, so each
+ * document just increments a primitive cell. Labels that weren't known up
+ * front (e.g. an input label that the model never saw) get added as needed.
+ * 
+ * Documents without a label (null or {@link BaseModel#NOT_YET_LABELED}) are
+ * only counted by their predicted label, and don't affect any metrics.
+ * 
+ * Since precision and recall can't be summed across tasks, what gets
+ * reported to Cascading are the per-label true positive, false positive and
+ * false negative counts. The static getPrecision/getRecall/getF1 methods
+ * turn those back into metrics once the flow has completed. Since Hadoop
+ * limits the number of counters per job, only the first
+ * {@link #DEFAULT_MAX_LABEL_COUNTERS} labels (by default) get their own
+ * counters, and the rest are summed as {@link #OTHER_LABELS}. The full
+ * matrix is available via {@link #toString()}, e.g. for logging.
+ * 
+ * Counters go in the {@link #COUNTER_GROUP} group by default; when several
+ * models are evaluated by the same flow, each matrix needs its own group.
+ */
+public class ConfusionMatrix {
+
+    public static final String COUNTER_GROUP = "ClassifyEvaluation";
+    
+    public static final String OTHER_LABELS = "(other labels)";
+    
+    // Three counters per label.
+    public static final int DEFAULT_MAX_LABEL_COUNTERS = 10;
+    
+    private static final String TRUE_POSITIVES = "true positives";
+    private static final String FALSE_POSITIVES = "false positives";
+    private static final String FALSE_NEGATIVES = "false negatives";
+
+    private static final int MIN_CAPACITY = 4;
+    
+    private List<String> _labels;
+    private Map<String, Integer> _labelIndexes;
+    private int _maxLabelCounters = DEFAULT_MAX_LABEL_COUNTERS;
+    private String _counterGroup = COUNTER_GROUP;
+    
+    // [actual][predicted] counts for labeled documents.
+    private long[][] _counts;
+    
+    // [predicted] counts for unlabeled documents.
+    private long[] _unlabeledCounts;
+    
+    public ConfusionMatrix() {
+        this(new ArrayList<String>());
+    }
+    
+    /**
+     * @param labels labels that are expected, typically those of the model
+     */
+    public ConfusionMatrix(List<String> labels) {
+        _labels = new ArrayList<String>(labels.size());
+        _labelIndexes = new HashMap<String, Integer>();
+        
+        int capacity = Math.max(MIN_CAPACITY, labels.size());
+        _counts = new long[capacity][capacity];
+        _unlabeledCounts = new long[capacity];
+        
+        for (String label : labels) {
+            getIndex(label);
+        }
+    }
+    
+    /**
+     * @param actualLabel label the document came with, or null/empty if it's unlabeled
+     * @param predictedLabel label assigned by the model
+     */
+    public void add(String actualLabel, String predictedLabel) {
+        int predictedIndex = getIndex(predictedLabel);
+        if (isUnlabeled(actualLabel)) {
+            _unlabeledCounts[predictedIndex] += 1;
+        } else {
+            _counts[getIndex(actualLabel)][predictedIndex] += 1;
+        }
+    }
+    
+    public List<String> getLabels() {
+        return _labels;
+    }
+    
+    /**
+     * @param maxLabelCounters max number of labels that get their own
+     * counters when reported, in the order the labels were added (so the
+     * model's labels come first).
+     * @return this matrix
+     */
+    public ConfusionMatrix setMaxLabelCounters(int maxLabelCounters) {
+        if (maxLabelCounters < 0) {
+            throw new IllegalArgumentException("Max label counters can't be negative: " + maxLabelCounters);
+        }
+        
+        _maxLabelCounters = maxLabelCounters;
+        return this;
+    }
+    
+    public int getMaxLabelCounters() {
+        return _maxLabelCounters;
+    }
+    
+    /**
+     * @param counterGroup group for the counters added by {@link #report(FlowProcess)}
+     * @return this matrix
+     */
+    public ConfusionMatrix setCounterGroup(String counterGroup) {
+        if ((counterGroup == null) || counterGroup.isEmpty()) {
+            throw new IllegalArgumentException("Counter group can't be null or empty");
+        }
+        
+        _counterGroup = counterGroup;
+        return this;
+    }
+    
+    public String getCounterGroup() {
+        return _counterGroup;
+    }
+    
+    /**
+     * @return number of labeled documents where the actual label was
+     * <actualLabel> and the predicted label was <predictedLabel>
+     */
+    public long getCount(String actualLabel, String predictedLabel) {
+        Integer actualIndex = _labelIndexes.get(actualLabel);
+        Integer predictedIndex = _labelIndexes.get(predictedLabel);
+        if ((actualIndex == null) || (predictedIndex == null)) {
+            return 0;
+        }
+        
+        return _counts[actualIndex][predictedIndex];
+    }
+    
+    /**
+     * @return number of documents (labeled or not) classified as <label>
+     */
+    public long getNumClassified(String label) {
+        Integer index = _labelIndexes.get(label);
+        if (index == null) {
+            return 0;
+        }
+        
+        return _unlabeledCounts[index] + getColumnTotal(index);
+    }
+    
+    public long getNumLabeled() {
+        long result = 0;
+        for (int i = 0; i < _labels.size(); i++) {
+            result += getRowTotal(i);
+        }
+        
+        return result;
+    }
+    
+    public long getNumCorrect() {
+        long result = 0;
+        for (int i = 0; i < _labels.size(); i++) {
+            result += _counts[i][i];
+        }
+        
+        return result;
+    }
+    
+    public float getAccuracy() {
+        return ratio(getNumCorrect(), getNumLabeled());
+    }
+    
+    public long getTruePositives(String label) {
+        Integer index = _labelIndexes.get(label);
+        return (index == null ? 0 : _counts[index][index]);
+    }
+    
+    public long getFalsePositives(String label) {
+        Integer index = _labelIndexes.get(label);
+        return (index == null ? 0 : getColumnTotal(index) - _counts[index][index]);
+    }
+    
+    public long getFalseNegatives(String label) {
+        Integer index = _labelIndexes.get(label);
+        return (index == null ? 0 : getRowTotal(index) - _counts[index][index]);
+    }
+    
+    public float getPrecision(String label) {
+        return precision(getTruePositives(label), getFalsePositives(label));
+    }
+    
+    public float getRecall(String label) {
+        return recall(getTruePositives(label), getFalseNegatives(label));
+    }
+    
+    public float getF1(String label) {
+        return f1(getPrecision(label), getRecall(label));
+    }
+    
+    /**
+     * Add the per-label counts for labeled documents to the flow's counters.
+     * Nothing is reported if no labeled documents were seen, so that plain
+     * classification runs don't get a pile of empty counters. Labels past
+     * the max number of label counters are summed as {@link #OTHER_LABELS}.
+     * 
+     * @param flowProcess where the counters live
+     */
+    public void report(FlowProcess flowProcess) {
+        if (getNumLabeled() == 0) {
+            return;
+        }
+        
+        long otherTruePositives = 0;
+        long otherFalsePositives = 0;
+        long otherFalseNegatives = 0;
+        for (int i = 0; i < _labels.size(); i++) {
+            String label = _labels.get(i);
+            if (i < _maxLabelCounters) {
+                increment(flowProcess, label, TRUE_POSITIVES, getTruePositives(label));
+                increment(flowProcess, label, FALSE_POSITIVES, getFalsePositives(label));
+                increment(flowProcess, label, FALSE_NEGATIVES, getFalseNegatives(label));
+            } else {
+                otherTruePositives += getTruePositives(label);
+                otherFalsePositives += getFalsePositives(label);
+                otherFalseNegatives += getFalseNegatives(label);
+            }
+        }
+        
+        increment(flowProcess, OTHER_LABELS, TRUE_POSITIVES, otherTruePositives);
+        increment(flowProcess, OTHER_LABELS, FALSE_POSITIVES, otherFalsePositives);
+        increment(flowProcess, OTHER_LABELS, FALSE_NEGATIVES, otherFalseNegatives);
+    }
+    
+    /**
+     * @param stats stats of a completed flow
+     * @param label label of interest
+     * @return precision for <label>, summed across all tasks that reported
+     * via {@link #report(FlowProcess)}. If the label didn't get its own
+     * counters, this will be 0 (and {@link #OTHER_LABELS} has the
+     * combined precision of all such labels).
+     */
+    public static float getPrecision(CascadingStats stats, String label) {
+        return getPrecision(stats, COUNTER_GROUP, label);
+    }
+    
+    public static float getRecall(CascadingStats stats, String label) {
+        return getRecall(stats, COUNTER_GROUP, label);
+    }
+    
+    public static float getF1(CascadingStats stats, String label) {
+        return getF1(stats, COUNTER_GROUP, label);
+    }
+    
+    /**
+     * @param stats stats of a completed flow
+     * @param counterGroup group the matrices reported to (see {@link #setCounterGroup(String)})
+     * @param label label of interest
+     * @return precision for <label>, as per {@link #getPrecision(CascadingStats, String)}
+     */
+    public static float getPrecision(CascadingStats stats, String counterGroup, String label) {
+        return precision(getCounterValue(stats, counterGroup, label, TRUE_POSITIVES), getCounterValue(stats, counterGroup, label, FALSE_POSITIVES));
+    }
+    
+    public static float getRecall(CascadingStats stats, String counterGroup, String label) {
+        return recall(getCounterValue(stats, counterGroup, label, TRUE_POSITIVES), getCounterValue(stats, counterGroup, label, FALSE_NEGATIVES));
+    }
+    
+    public static float getF1(CascadingStats stats, String counterGroup, String label) {
+        return f1(getPrecision(stats, counterGroup, label), getRecall(stats, counterGroup, label));
+    }
+    
+    private static String getCounterName(String label, String countName) {
+        return label + " " + countName;
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append("actual \\ predicted");
+        for (String label : _labels) {
+            result.append('\t');
+            result.append(label);
+        }
+        result.append('\n');
+        
+        for (int i = 0; i < _labels.size(); i++) {
+            result.append(_labels.get(i));
+            for (int j = 0; j < _labels.size(); j++) {
+                result.append('\t');
+                result.append(_counts[i][j]);
+            }
+            result.append('\n');
+        }
+        
+        result.append("(unlabeled)");
+        for (int j = 0; j < _labels.size(); j++) {
+            result.append('\t');
+            result.append(_unlabeledCounts[j]);
+        }
+        result.append('\n');
+        
+        return result.toString();
+    }
+    
+    private static boolean isUnlabeled(String label) {
+        return (label == null) || label.equals(BaseModel.NOT_YET_LABELED);
+    }
+    
+    private int getIndex(String label) {
+        Integer index = _labelIndexes.get(label);
+        if (index != null) {
+            return index;
+        }
+        
+        int newIndex = _labels.size();
+        if (newIndex == _unlabeledCounts.length) {
+            grow(newIndex * 2);
+        }
+        
+        _labels.add(label);
+        _labelIndexes.put(label, newIndex);
+        return newIndex;
+    }
+    
+    private void grow(int capacity) {
+        long[][] counts = new long[capacity][];
+        for (int i = 0; i < capacity; i++) {
+            counts[i] = (i < _counts.length ? Arrays.copyOf(_counts[i], capacity) : new long[capacity]);
+        }
+        
+        _counts = counts;
+        _unlabeledCounts = Arrays.copyOf(_unlabeledCounts, capacity);
+    }
+    
+    private long getRowTotal(int index) {
+        long result = 0;
+        for (int j = 0; j < _labels.size(); j++) {
+            result += _counts[index][j];
+        }
+        
+        return result;
+    }
+    
+    private long getColumnTotal(int index) {
+        long result = 0;
+        for (int i = 0; i < _labels.size(); i++) {
+            result += _counts[i][index];
+        }
+        
+        return result;
+    }
+    
+    private void increment(FlowProcess flowProcess, String label, String countName, long count) {
+        if (count > 0) {
+            flowProcess.increment(_counterGroup, getCounterName(label, countName), count);
+        }
+    }
+    
+    private static long getCounterValue(CascadingStats stats, String counterGroup, String label, String countName) {
+        return stats.getCounterValue(counterGroup, getCounterName(label, countName));
+    }
+    
+    private static float precision(long truePositives, long falsePositives) {
+        return ratio(truePositives, truePositives + falsePositives);
+    }
+    
+    private static float recall(long truePositives, long falseNegatives) {
+        return ratio(truePositives, truePositives + falseNegatives);
+    }
+    
+    private static float f1(float precision, float recall) {
+        if ((precision + recall) == 0.0f) {
+            return 0.0f;
+        }
+        
+        return (2 * precision * recall) / (precision + recall);
+    }
+    
+    // Metrics for something that never happened are 0, not NaN.
+    private static float ratio(long numerator, long denominator) {
+        return (denominator == 0 ? 0.0f : (float)numerator / (float)denominator);
+    }
+}
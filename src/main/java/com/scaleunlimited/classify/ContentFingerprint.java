@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import com.scaleunlimited.classify.datum.CompactTermsDatum;
+
+/**
+ * A 128-bit fingerprint of document content (or of the terms extracted from
+ * it), used as a cache key so that duplicate documents only get analyzed and
+ * classified once. The two halves come from unrelated hash functions, which
+ * makes an accidental collision vanishingly unlikely for the number of
+ * documents seen by a single task.
+ */
+@SuppressWarnings("serial")
+public final class ContentFingerprint implements Serializable {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long POLYNOMIAL_SEED = 0x9e3779b97f4a7c15L;
+    private static final long POLYNOMIAL_MULTIPLIER = 0x5bd1e9955bd1e995L;
+    
+    private final long _high;
+    private final long _low;
+    
+    private ContentFingerprint(long high, long low) {
+        _high = high;
+        _low = low;
+    }
+    
+    /**
+     * @param text content to fingerprint
+     * @return fingerprint of the exact sequence of chars in text
+     */
+    public static ContentFingerprint fromText(CharSequence text) {
+        long fnvHash = FNV_OFFSET_BASIS;
+        long polyHash = POLYNOMIAL_SEED;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            fnvHash = (fnvHash ^ c) * FNV_PRIME;
+            polyHash = (polyHash * POLYNOMIAL_MULTIPLIER) + c;
+        }
+        
+        return new ContentFingerprint(mix(fnvHash ^ length), mix(polyHash + length));
+    }
+    
+    /**
+     * @param data bytes to fingerprint (e.g. serialized model data)
+     * @param offset offset of the first byte in data
+     * @param length number of bytes to use
+     * @return fingerprint of the exact sequence of bytes
+     */
+    public static ContentFingerprint fromBytes(byte[] data, int offset, int length) {
+        long fnvHash = FNV_OFFSET_BASIS;
+        long polyHash = POLYNOMIAL_SEED;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int b = data[i] & 0xFF;
+            fnvHash = (fnvHash ^ b) * FNV_PRIME;
+            polyHash = (polyHash * POLYNOMIAL_MULTIPLIER) + b;
+        }
+        
+        return new ContentFingerprint(mix(fnvHash ^ length), mix(polyHash + length));
+    }
+    
+    /**
+     * @param termMap terms and their counts
+     * @return fingerprint that only depends on the map's entries, not on
+     * the order in which they're iterated.
+     */
+    public static ContentFingerprint fromTermMap(Map<String, ? extends Number> termMap) {
+        long high = termMap.size();
+        long low = termMap.size();
+        for (Map.Entry<String, ? extends Number> entry : termMap.entrySet()) {
+            ContentFingerprint termFingerprint = fromText(entry.getKey());
+            long count = entry.getValue().longValue();
+            
+            // Addition is commutative, so iteration order doesn't matter.
+            high += mix(termFingerprint._high + count);
+            low += mix(termFingerprint._low ^ count);
+        }
+        
+        return new ContentFingerprint(mix(high), mix(low));
+    }
+    
+    /**
+     * @param terms compact terms and their counts, which are consumed
+     * @return same fingerprint as {@link #fromTermMap(Map)} would return for
+     * the equivalent map, but without building one.
+     */
+    public static ContentFingerprint fromTerms(CompactTermsDatum.TermIterator terms) {
+        long high = terms.getNumTerms();
+        long low = terms.getNumTerms();
+        while (terms.next()) {
+            ContentFingerprint termFingerprint = fromText(terms.getTerm());
+            long count = terms.getCount();
+            high += mix(termFingerprint._high + count);
+            low += mix(termFingerprint._low ^ count);
+        }
+        
+        return new ContentFingerprint(mix(high), mix(low));
+    }
+    
+    // MurmurHash3's 64-bit finalizer, so every input bit affects every output bit.
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+    
+    public long getHigh() {
+        return _high;
+    }
+    
+    public long getLow() {
+        return _low;
+    }
+    
+    @Override
+    public int hashCode() {
+        return (int)(_low ^ (_low >>> 32));
+    }
+    
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        ContentFingerprint other = (ContentFingerprint) obj;
+        return (_high == other._high) && (_low == other._low);
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", _high, _low);
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+
+import com.scaleunlimited.cascading.NullContext;
+import com.scaleunlimited.classify.datum.CompactTermsDatum;
+import com.scaleunlimited.classify.datum.TermsDatum;
+
+/**
+ * Converts each {@link CompactTermsDatum} back into the equivalent
+ * {@link TermsDatum}.
+ */
+@SuppressWarnings({"serial", "rawtypes"})
+public class ExpandTerms extends BaseOperation<NullContext> implements Function<NullContext> {
+
+    public ExpandTerms() {
+        super(TermsDatum.FIELDS);
+    }
+    
+    @Override
+    public void operate(FlowProcess flowProcess,
+                        FunctionCall<NullContext> functionCall) {
+        CompactTermsDatum compactTermsDatum = new CompactTermsDatum(functionCall.getArguments().getTuple());
+        functionCall.getOutputCollector().add(compactTermsDatum.toTermsDatum().getTuple());
+    }
+}
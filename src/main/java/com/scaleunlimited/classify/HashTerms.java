@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import java.util.Map;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+import cascading.operation.OperationCall;
+import cascading.tuple.Tuple;
+
+import com.scaleunlimited.cascading.NullContext;
+import com.scaleunlimited.classify.datum.CompactTermsDatum;
+import com.scaleunlimited.classify.datum.LabeledDatum;
+import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.datum.VectorDatum;
+import com.scaleunlimited.classify.model.HashedFeaturesLibLinearModel;
+
+/**
+ * Converts each {@link TermsDatum} (or {@link CompactTermsDatum}, which is
+ * hashed straight from its terms block) into a {@link VectorDatum}, where each
+ * term's feature id is its (non-negative) hash, and its value is the term
+ * count. The ids aren't reduced to the size of any particular model's
+ * feature space, so the same vectors can be used to train a
+ * {@link HashedFeaturesLibLinearModel} of whatever size.
+ */
+@SuppressWarnings({"serial", "rawtypes"})
+public class HashTerms extends BaseOperation<NullContext> implements Function<NullContext> {
+
+    public HashTerms() {
+        super(VectorDatum.FIELDS);
+    }
+    
+    private transient boolean _compactTerms;
+    
+    @Override
+    public void prepare(FlowProcess flowProcess, OperationCall<NullContext> operationCall) {
+        super.prepare(flowProcess, operationCall);
+        _compactTerms = (ModelInput.fromFields(operationCall.getArgumentFields()) == ModelInput.COMPACT_TERMS);
+    }
+    
+    @Override
+    public void operate(FlowProcess flowProcess,
+                        FunctionCall<NullContext> functionCall) {
+        Tuple tuple = functionCall.getArguments().getTuple();
+        LabeledDatum inputDatum;
+        VectorDatum vectorDatum;
+        if (_compactTerms) {
+            CompactTermsDatum compactDatum = new CompactTermsDatum(tuple);
+            inputDatum = compactDatum;
+            vectorDatum = hashTerms(compactDatum.iterator(), compactDatum.getLabel());
+        } else {
+            TermsDatum termsDatum = new TermsDatum(tuple);
+            inputDatum = termsDatum;
+            vectorDatum = hashTerms(termsDatum.getTermMap(), termsDatum.getLabel());
+        }
+        
+        vectorDatum.setPayload(inputDatum.getPayload());
+        functionCall.getOutputCollector().add(vectorDatum.getTuple());
+    }
+    
+    public static VectorDatum hashTerms(Map<String, Integer> termMap, String label) {
+        int[] ids = new int[termMap.size()];
+        float[] values = new float[termMap.size()];
+        int numFeatures = 0;
+        for (Map.Entry<String, Integer> entry : termMap.entrySet()) {
+            ids[numFeatures] = HashedFeaturesLibLinearModel.calcHashJoaat(entry.getKey());
+            values[numFeatures] = entry.getValue();
+            numFeatures++;
+        }
+        
+        return new VectorDatum(ids, values, numFeatures, label);
+    }
+    
+    public static VectorDatum hashTerms(CompactTermsDatum.TermIterator terms, String label) {
+        int[] ids = new int[terms.getNumTerms()];
+        float[] values = new float[terms.getNumTerms()];
+        int numFeatures = 0;
+        while (terms.next()) {
+            ids[numFeatures] = HashedFeaturesLibLinearModel.calcHashJoaat(terms.getTerm());
+            values[numFeatures] = terms.getCount();
+            numFeatures++;
+        }
+        
+        return new VectorDatum(ids, values, numFeatures, label);
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+import cascading.operation.filter.FilterNotNull;
+import cascading.operation.filter.FilterNull;
+import cascading.operation.state.Counter;
+import cascading.pipe.CoGroup;
+import cascading.pipe.Each;
+import cascading.pipe.Merge;
+import cascading.pipe.Pipe;
+import cascading.pipe.SubAssembly;
+import cascading.pipe.assembly.Discard;
+import cascading.pipe.assembly.Rename;
+import cascading.pipe.assembly.Retain;
+import cascading.pipe.assembly.Unique;
+import cascading.pipe.joiner.LeftJoin;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+
+import com.scaleunlimited.cascading.NullContext;
+import com.scaleunlimited.classify.analyzer.IAnalyzer;
+import com.scaleunlimited.classify.datum.ClassificationStateDatum;
+import com.scaleunlimited.classify.datum.DocDatum;
+import com.scaleunlimited.classify.datum.ModelDatum;
+import com.scaleunlimited.classify.datum.TextDatum;
+
+/**
+ * Classifies {@link TextDatum} documents like {@link ClassifyDocsPipe}, but
+ * reuses the classification from a previous run for any document whose
+ * content hasn't changed (as long as the model hasn't changed either).
+ * 
+ * The input is CoGrouped with the previous run's {@link ClassificationStateDatum}s
+ * on a key made from a fingerprint of the document's content plus a checksum
+ * of the model and analyzer. Matching documents get the previous label and
+ * score (but their current payload), and only new or changed documents are
+ * analyzed and classified. There are two tails: the output {@link DocDatum}s,
+ * and the state to use for the next run.
+ * 
+ * Analysis and classification are always done by a single operation, so
+ * there's no support for multiple analysis threads, or for a {@link LabelPolicy}.
+ */
+@SuppressWarnings({"serial", "rawtypes"})
+public class IncrementalClassifyDocsPipe extends SubAssembly {
+
+    public static final String DOC_KEY_FN = "IncrementalClassifyDocsPipe-dockey";
+    
+    public static final String OUTPUT_PIPE_NAME = "output docs";
+    public static final String STATE_PIPE_NAME = "classification state";
+    
+    private static final Fields KEYED_DOC_FIELDS = DocDatum.FIELDS.append(new Fields(DOC_KEY_FN));
+    
+    /**
+     * Adds the key used to find a document's previous classification.
+     */
+    private static class MakeDocKey
+        extends BaseOperation<NullContext>
+        implements Function<NullContext> {
+        
+        private String _modelChecksum;
+        
+        public MakeDocKey(String modelChecksum) {
+            super(new Fields(DOC_KEY_FN));
+            _modelChecksum = modelChecksum;
+        }
+
+        @Override
+        public void operate(FlowProcess flowProcess, FunctionCall<NullContext> functionCall) {
+            String content = functionCall.getArguments().getString(TextDatum.CONTENT_FN);
+            
+            // Documents without content never match anything.
+            String key = null;
+            if (content != null) {
+                key = ContentFingerprint.fromText(content).toString() + "-" + _modelChecksum;
+            }
+            
+            functionCall.getOutputCollector().add(new Tuple(key));
+        }
+    }
+    
+    /**
+     * @param inputPipe documents to be classified
+     * @param previousStatePipe {@link ClassificationStateDatum}s from the
+     * previous run (which can be empty).
+     * @param analyzer used to convert each document into terms
+     * @param model used to classify the terms
+     * @param modelChecksum from {@link #getModelChecksum(ModelDatum)}
+     * @param cacheSize max number of documents per task whose analysis and
+     * classification results are cached; 0 => no caching.
+     * @param loggingPolicy how much (debug) logging of tuples to plan into the flow
+     */
+    public IncrementalClassifyDocsPipe(Pipe inputPipe, Pipe previousStatePipe, IAnalyzer analyzer, BaseModel model, String modelChecksum, int cacheSize, TupleLoggingPolicy loggingPolicy) {
+        this(inputPipe, previousStatePipe, new AnalyzeAndClassify(analyzer, model).setCacheSize(cacheSize), modelChecksum, loggingPolicy);
+    }
+    
+    /**
+     * @param inputPipe documents to be classified
+     * @param previousStatePipe {@link ClassificationStateDatum}s from the
+     * previous run (which can be empty).
+     * @param analyzer used to convert each document into terms
+     * @param modelReference reference to the model used to classify the terms
+     * @param modelChecksum from {@link #getModelChecksum(ModelDatum)}
+     * @param cacheSize max number of documents per task whose analysis and
+     * classification results are cached; 0 => no caching.
+     * @param loggingPolicy how much (debug) logging of tuples to plan into the flow
+     */
+    public IncrementalClassifyDocsPipe(Pipe inputPipe, Pipe previousStatePipe, IAnalyzer analyzer, ModelReference modelReference, String modelChecksum, int cacheSize, TupleLoggingPolicy loggingPolicy) {
+        this(inputPipe, previousStatePipe, new AnalyzeAndClassify(analyzer, modelReference).setCacheSize(cacheSize), modelChecksum, loggingPolicy);
+    }
+    
+    private IncrementalClassifyDocsPipe(Pipe inputPipe, Pipe previousStatePipe, AnalyzeAndClassify classifier, String modelChecksum, TupleLoggingPolicy loggingPolicy) {
+        super(inputPipe, previousStatePipe);
+        
+        // Find each document's previous classification, if any.
+        Pipe keyedPipe = new Pipe("keyed docs", inputPipe);
+        keyedPipe = new Each(keyedPipe, new Fields(TextDatum.CONTENT_FN), new MakeDocKey(modelChecksum), Fields.ALL);
+        Pipe joinedPipe = new CoGroup(  "joined docs",
+                                        keyedPipe,
+                                        new Fields(DOC_KEY_FN),
+                                        previousStatePipe,
+                                        new Fields(ClassificationStateDatum.KEY_FN),
+                                        new LeftJoin());
+        
+        // Documents we've seen before just get their previous label and score.
+        Pipe reusedPipe = new Pipe("reused docs", joinedPipe);
+        reusedPipe = new Each(reusedPipe, new Fields(ClassificationStateDatum.KEY_FN), new FilterNull());
+        reusedPipe = new Each(reusedPipe, new Counter(ClassifyCounters.REUSED_CLASSIFICATION));
+        reusedPipe = new Rename(reusedPipe,
+                                new Fields(ClassificationStateDatum.LABEL_FN, ClassificationStateDatum.SCORE_FN),
+                                new Fields(DocDatum.LABEL_FN, DocDatum.SCORE_FN));
+        reusedPipe = new Retain(reusedPipe, KEYED_DOC_FIELDS);
+        
+        // Everything else gets analyzed and classified, keeping the key.
+        Pipe freshPipe = new Pipe("fresh docs", joinedPipe);
+        freshPipe = new Each(freshPipe, new Fields(ClassificationStateDatum.KEY_FN), new FilterNotNull());
+        freshPipe = new Each(freshPipe, new Counter(ClassifyCounters.FRESH_CLASSIFICATION));
+        freshPipe = new Discard(freshPipe, ClassificationStateDatum.FIELDS);
+        freshPipe = new Each(freshPipe, TextDatum.FIELDS, classifier, Fields.SWAP);
+        freshPipe = new Retain(freshPipe, KEYED_DOC_FIELDS);
+        
+        Pipe classifiedPipe = new Merge("classified docs", reusedPipe, freshPipe);
+        
+        Pipe outputPipe = new Retain(classifiedPipe, DocDatum.FIELDS);
+        outputPipe = loggingPolicy.makePipe(outputPipe);
+        outputPipe = new Pipe(OUTPUT_PIPE_NAME, outputPipe);
+        
+        // Save one classification per key for next time.
+        Pipe statePipe = new Pipe("new state", classifiedPipe);
+        statePipe = new Each(statePipe, new Fields(DOC_KEY_FN), new FilterNull());
+        Fields stateFields = new Fields(DOC_KEY_FN, DocDatum.LABEL_FN, DocDatum.SCORE_FN);
+        statePipe = new Retain(statePipe, stateFields);
+        statePipe = new Rename(statePipe, stateFields, ClassificationStateDatum.FIELDS);
+        statePipe = new Unique(statePipe, new Fields(ClassificationStateDatum.KEY_FN));
+        statePipe = new Pipe(STATE_PIPE_NAME, statePipe);
+        
+        setTails(outputPipe, statePipe);
+    }
+    
+    public Pipe getOutputPipe() {
+        return getTails()[0];
+    }
+    
+    public Pipe getStatePipe() {
+        return getTails()[1];
+    }
+    
+    /**
+     * @param modelDatum model (and analyzer) used to classify documents
+     * @return checksum that changes if either the model or the analyzer
+     * (including its settings) changes, since then earlier classifications
+     * can't be reused.
+     * @throws Exception
+     */
+    public static String getModelChecksum(ModelDatum modelDatum) throws Exception {
+        IAnalyzer analyzer = modelDatum.getAnalyzer();
+        DataOutputBuffer dob = new DataOutputBuffer();
+        dob.writeUTF(analyzer.getClass().getName());
+        analyzer.write(dob);
+        ContentFingerprint analyzerFingerprint = ContentFingerprint.fromBytes(dob.getData(), 0, dob.getLength());
+        return modelDatum.getModelFingerprint().toString() + analyzerFingerprint.toString();
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides which classified documents are kept, based on the label they
+ * were assigned and its score. Documents are kept if their label is one of
+ * the target labels (or there are no target labels), and their score is at
+ * least the minimum score for that label.
+ * 
+ * When a {@link ClassifyDocsPipe} has a policy with target labels, the kept
+ * documents are routed to a separate tail for each label.
+ */
+@SuppressWarnings("serial")
+public class LabelPolicy implements Serializable {
+
+    private List<String> _targetLabels = new ArrayList<String>();
+    private Map<String, Float> _minScores = new HashMap<String, Float>();
+    private float _defaultMinScore = 0.0f;
+    
+    public LabelPolicy() {
+    }
+    
+    /**
+     * @param label label of documents that should be kept. Once a target
+     * label has been added, documents with any other label are discarded.
+     * @return this policy
+     */
+    public LabelPolicy addTargetLabel(String label) {
+        if (_targetLabels.contains(label)) {
+            throw new IllegalArgumentException("Target label has already been added: " + label);
+        }
+        
+        _targetLabels.add(label);
+        return this;
+    }
+    
+    public List<String> getTargetLabels() {
+        return _targetLabels;
+    }
+    
+    public boolean hasTargetLabels() {
+        return !_targetLabels.isEmpty();
+    }
+    
+    /**
+     * @param label label that the min score applies to
+     * @param minScore documents assigned this label with a lower score are discarded
+     * @return this policy
+     */
+    public LabelPolicy setMinScore(String label, float minScore) {
+        _minScores.put(label, minScore);
+        return this;
+    }
+    
+    /**
+     * @param minScore min score for labels without their own min score
+     * @return this policy
+     */
+    public LabelPolicy setDefaultMinScore(float minScore) {
+        _defaultMinScore = minScore;
+        return this;
+    }
+    
+    public float getMinScore(String label) {
+        Float result = _minScores.get(label);
+        return (result == null ? _defaultMinScore : result);
+    }
+    
+    /**
+     * @param label label assigned to the document
+     * @param score score of the assigned label
+     * @return true if the document should be kept
+     */
+    public boolean isAccepted(String label, float score) {
+        if (hasTargetLabels() && !_targetLabels.contains(label)) {
+            return false;
+        }
+        
+        return score >= getMinScore(label);
+    }
+    
+    /**
+     * @param targetLabels comma-separated target labels, or null
+     * @param minScores comma-separated list of label=score min scores, where
+     * a score without a label sets the default min score; or null
+     * @return policy, or null if neither target labels nor min scores were given
+     */
+    public static LabelPolicy parse(String targetLabels, String minScores) {
+        if ((targetLabels == null) && (minScores == null)) {
+            return null;
+        }
+        
+        LabelPolicy result = new LabelPolicy();
+        if (targetLabels != null) {
+            for (String label : targetLabels.split(",")) {
+                if (!label.trim().isEmpty()) {
+                    result.addTargetLabel(label.trim());
+                }
+            }
+        }
+        
+        if (minScores != null) {
+            for (String minScore : minScores.split(",")) {
+                if (minScore.trim().isEmpty()) {
+                    continue;
+                }
+                
+                int equalsPos = minScore.lastIndexOf('=');
+                try {
+                    if (equalsPos == -1) {
+                        result.setDefaultMinScore(Float.parseFloat(minScore.trim()));
+                    } else {
+                        result.setMinScore( minScore.substring(0, equalsPos).trim(),
+                                            Float.parseFloat(minScore.substring(equalsPos + 1).trim()));
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid min score: " + minScore);
+                }
+            }
+        }
+        
+        return result;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format(   "target labels: %s, min scores: %s, default min score: %f",
+                                _targetLabels,
+                                _minScores,
+                                _defaultMinScore);
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded map that evicts its least recently used entry when full.
+ * Not thread-safe, so each operation should have its own instance.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+@SuppressWarnings("serial")
+public class LruCache<K, V> extends LinkedHashMap<K, V> {
+
+    private static final float LOAD_FACTOR = 0.75f;
+    
+    private final int _maxEntries;
+    
+    public LruCache(int maxEntries) {
+        super(Math.min(maxEntries, 1024), LOAD_FACTOR, true);
+        
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Max cache entries must be at least 1: " + maxEntries);
+        }
+        
+        _maxEntries = maxEntries;
+    }
+    
+    public int getMaxEntries() {
+        return _maxEntries;
+    }
+    
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > _maxEntries;
+    }
+}
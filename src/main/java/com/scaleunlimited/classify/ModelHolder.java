@@ -0,0 +1,316 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import java.io.Closeable;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cascading.tap.Tap;
+
+import com.scaleunlimited.cascading.BasePath;
+import com.scaleunlimited.cascading.BasePlatform;
+import com.scaleunlimited.classify.analyzer.IAnalyzer;
+import com.scaleunlimited.classify.datum.ModelDatum;
+
+/**
+ * Holds the current model for long-running classification (e.g. a
+ * {@link ClassifyEngine}), and optionally watches the model directory so
+ * that a new model can be pushed without a restart.
+ * 
+ * New models are read (via {@link ClassifyDocsPipe#readModel(BasePlatform, BasePath)}),
+ * parsed and validated in the background, and only then swapped in. Readers
+ * get the current {@link LoadedModel} once per classification and use it for
+ * the whole classification, so anything in flight during a swap completes
+ * against the old model.
+ * 
+ * Checking is cheap when nothing has changed, as the model directory is only
+ * re-read if its modification time is different from when the current model
+ * was read. A new model is only swapped in if its fingerprint differs from the
+ * current model's, its data matches the checksum saved when it was trained,
+ * it has the same set of labels (unless label changes are allowed), and it
+ * passes the optional {@link ModelValidator}. Otherwise the current model is
+ * kept, and the failure is logged and counted. A model that fails is tried
+ * again on the next check, in case it was still being written.
+ */
+@SuppressWarnings("rawtypes")
+public class ModelHolder implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ModelHolder.class);
+
+    /**
+     * Extra checks on a new model, before it's swapped in.
+     */
+    public interface ModelValidator {
+        /**
+         * @param newModel the parsed model that would replace the current one
+         * @param currentModel the current model
+         * @throws Exception if the new model shouldn't be used
+         */
+        public void validate(LoadedModel newModel, LoadedModel currentModel) throws Exception;
+    }
+    
+    /**
+     * A model, ready to classify with, and the data it was loaded from.
+     */
+    public static final class LoadedModel {
+        private final ModelDatum _modelDatum;
+        private final BaseModel _model;
+        private final ContentFingerprint _fingerprint;
+        private final List<String> _labelNames;
+        
+        private LoadedModel(ModelDatum modelDatum) throws Exception {
+            _modelDatum = modelDatum;
+            _fingerprint = modelDatum.getModelFingerprint();
+            _labelNames = modelDatum.getLabelNames();
+            _model = modelDatum.getModel();
+            _model.reset();
+            
+            // Make sure the analyzer can be created before anybody needs one.
+            modelDatum.getAnalyzer();
+        }
+        
+        public BaseModel getModel() {
+            return _model;
+        }
+        
+        public ContentFingerprint getFingerprint() {
+            return _fingerprint;
+        }
+        
+        public List<String> getLabelNames() {
+            return _labelNames;
+        }
+        
+        /**
+         * @return a new analyzer for this model, ready to use. Analyzers keep
+         * per-document state, so each thread needs its own.
+         */
+        public IAnalyzer makeAnalyzer() {
+            try {
+                IAnalyzer result;
+                synchronized (_modelDatum) {
+                    result = _modelDatum.getAnalyzer();
+                }
+                
+                result.reset();
+                return result;
+            } catch (Exception e) {
+                throw new RuntimeException("Can't create analyzer", e);
+            }
+        }
+    }
+    
+    private final BasePlatform _platform;
+    private final BasePath _modelPath;
+    private final AtomicReference<LoadedModel> _currentModel = new AtomicReference<LoadedModel>();
+    private final AtomicLong _numReloads = new AtomicLong();
+    private final AtomicLong _numFailedReloads = new AtomicLong();
+    
+    private long _modelModifiedTime = 0;
+    private ModelValidator _validator = null;
+    private boolean _allowLabelChanges = false;
+    private ScheduledExecutorService _watcher = null;
+    
+    /**
+     * Hold a fixed model, which is never reloaded.
+     * 
+     * @param modelDatum the model (and analyzer)
+     * @throws Exception if the model can't be parsed
+     */
+    public ModelHolder(ModelDatum modelDatum) throws Exception {
+        _platform = null;
+        _modelPath = null;
+        _currentModel.set(new LoadedModel(modelDatum));
+    }
+    
+    /**
+     * Hold the model in <modelPath>, which is loaded now, and reloaded by
+     * {@link #checkForNewModel()} (or by watching, see {@link #startWatching(long, TimeUnit)}).
+     * 
+     * @param platform platform for reading the model
+     * @param modelPath model directory, as written by {@link TrainModelPipe}
+     * @throws Exception if the model can't be read or parsed
+     */
+    public ModelHolder(BasePlatform platform, BasePath modelPath) throws Exception {
+        _platform = platform;
+        _modelPath = modelPath;
+        
+        // Get the time before reading, so a change made while we're reading
+        // gets picked up by the next check.
+        _modelModifiedTime = getModelModifiedTime();
+        _currentModel.set(new LoadedModel(ClassifyDocsPipe.readModel(platform, modelPath)));
+    }
+    
+    /**
+     * @return the current model. Callers should use the result for an entire
+     * classification, versus calling this method more than once.
+     */
+    public LoadedModel getModel() {
+        return _currentModel.get();
+    }
+    
+    public ModelHolder setValidator(ModelValidator validator) {
+        _validator = validator;
+        return this;
+    }
+    
+    /**
+     * @param allowLabelChanges true => a new model doesn't need to have the
+     * same set of labels as the current model.
+     * @return this holder
+     */
+    public ModelHolder setAllowLabelChanges(boolean allowLabelChanges) {
+        _allowLabelChanges = allowLabelChanges;
+        return this;
+    }
+    
+    /**
+     * @return number of times a new model has been swapped in
+     */
+    public long getNumReloads() {
+        return _numReloads.get();
+    }
+    
+    /**
+     * @return number of times a new model couldn't be read or used
+     */
+    public long getNumFailedReloads() {
+        return _numFailedReloads.get();
+    }
+    
+    /**
+     * If the model directory has been modified, read it, and swap in the
+     * model if it's new and valid.
+     * 
+     * @return true if a new model was swapped in
+     * @throws Exception if the new model can't be read, parsed or validated,
+     * in which case the current model is kept.
+     */
+    public synchronized boolean checkForNewModel() throws Exception {
+        if (_modelPath == null) {
+            throw new IllegalStateException("Holder has a fixed model");
+        }
+        
+        LoadedModel currentModel = _currentModel.get();
+        LoadedModel newModel;
+        try {
+            long modifiedTime = getModelModifiedTime();
+            if (modifiedTime == _modelModifiedTime) {
+                return false;
+            }
+            
+            ModelDatum modelDatum = ClassifyDocsPipe.readModel(_platform, _modelPath);
+            if (modelDatum.getModelFingerprint().equals(currentModel.getFingerprint())) {
+                // Rewritten, but with the same model.
+                _modelModifiedTime = modifiedTime;
+                return false;
+            }
+            
+            // This verifies the model's checksum.
+            newModel = new LoadedModel(modelDatum);
+            if  (   !_allowLabelChanges
+                &&  !new HashSet<String>(newModel.getLabelNames()).equals(new HashSet<String>(currentModel.getLabelNames()))) {
+                throw new IllegalStateException(String.format(  "New model labels %s don't match current model labels %s",
+                                                                newModel.getLabelNames(),
+                                                                currentModel.getLabelNames()));
+            }
+            
+            if (_validator != null) {
+                _validator.validate(newModel, currentModel);
+            }
+            
+            _currentModel.set(newModel);
+            _modelModifiedTime = modifiedTime;
+        } catch (Exception e) {
+            _numFailedReloads.incrementAndGet();
+            throw e;
+        }
+        
+        _numReloads.incrementAndGet();
+        LOGGER.info(String.format(  "Swapped in new model %s from %s (replacing %s)",
+                                    newModel.getFingerprint(),
+                                    _modelPath,
+                                    currentModel.getFingerprint()));
+        return true;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private long getModelModifiedTime() throws Exception {
+        // Use a new tap each time, as a tap can cache what's in the directory.
+        Tap modelTap = _platform.makeTap(_platform.makeBinaryScheme(ModelDatum.FIELDS), _modelPath);
+        return modelTap.getModifiedTime(_platform.makeFlowProcess().getConfigCopy());
+    }
+    
+    /**
+     * Check the model directory for a new model every <interval>, in a
+     * background thread.
+     * 
+     * @param interval time between checks
+     * @param unit units of <interval>
+     */
+    public synchronized void startWatching(long interval, TimeUnit unit) {
+        if (_modelPath == null) {
+            throw new IllegalStateException("Holder has a fixed model");
+        }
+        
+        if (_watcher != null) {
+            throw new IllegalStateException("Already watching " + _modelPath);
+        }
+        
+        _watcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread result = new Thread(r, "ModelHolder-watcher");
+                result.setDaemon(true);
+                return result;
+            }
+        });
+        
+        _watcher.scheduleWithFixedDelay(new Runnable() {
+            
+            @Override
+            public void run() {
+                try {
+                    checkForNewModel();
+                } catch (Exception e) {
+                    // Keep using the current model, and try again next time.
+                    LOGGER.error("Can't load new model from " + _modelPath, e);
+                }
+            }
+        }, interval, interval, unit);
+    }
+    
+    /**
+     * Stop watching the model directory, if we were.
+     */
+    @Override
+    public synchronized void close() {
+        if (_watcher != null) {
+            _watcher.shutdownNow();
+            _watcher = null;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import java.util.Map;
+
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+
+import com.scaleunlimited.classify.datum.CompactTermsDatum;
+import com.scaleunlimited.classify.datum.DocDatum;
+import com.scaleunlimited.classify.datum.FeaturesDatum;
+import com.scaleunlimited.classify.datum.LabeledDatum;
+import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.datum.VectorDatum;
+
+/**
+ * The forms of pre-analyzed documents that a model can be trained on or
+ * used to classify. Operations figure out which one they've been given
+ * from their argument fields, so the same pipe can be fed any of them.
+ */
+public enum ModelInput {
+    
+    TERMS(TermsDatum.FIELDS),
+    COMPACT_TERMS(CompactTermsDatum.FIELDS),
+    VECTOR(VectorDatum.FIELDS),
+    FEATURES(FeaturesDatum.FIELDS);
+    
+    private static final Fields COMPACT_TERMS_FIELDS = new Fields(CompactTermsDatum.TERMS_BLOCK_FN);
+    private static final Fields VECTOR_FIELDS = new Fields(VectorDatum.FEATURES_FN);
+    private static final Fields FEATURES_FIELDS = new Fields(FeaturesDatum.FEATURE_VALUES_FN);
+    
+    private Fields _fields;
+    
+    private ModelInput(Fields fields) {
+        _fields = fields;
+    }
+    
+    public Fields getFields() {
+        return _fields;
+    }
+    
+    /**
+     * @return true if documents in this form have terms (versus hashed
+     * feature vectors or pre-computed feature values).
+     */
+    public boolean hasTerms() {
+        return (this == TERMS) || (this == COMPACT_TERMS);
+    }
+    
+    /**
+     * @param tuple document in this form
+     * @return document with just its label and payload accessible
+     */
+    public LabeledDatum makeLabeledDatum(Tuple tuple) {
+        return new LabeledDatum(_fields, tuple);
+    }
+    
+    /**
+     * @param tuple document in this form
+     * @return the document's terms and their counts, decoded straight from
+     * the tuple.
+     * @throws IllegalStateException if the document has been hashed into a vector,
+     * as the terms can't be recovered, or only has feature values.
+     */
+    public Map<String, Integer> getTermMap(Tuple tuple) {
+        switch (this) {
+            case TERMS:
+                return new TermsDatum(tuple).getTermMap();
+                
+            case COMPACT_TERMS:
+                return new CompactTermsDatum(tuple).getTermMap();
+                
+            case VECTOR:
+                throw new IllegalStateException("Can't get terms from feature vectors");
+                
+            default:
+                throw new IllegalStateException("Can't get terms from feature values");
+        }
+    }
+    
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void addTrainingDatum(BaseModel model, Tuple tuple) {
+        if (this == VECTOR) {
+            model.addTrainingVector(new VectorDatum(tuple));
+        } else if (this == FEATURES) {
+            model.addTrainingFeatures(new FeaturesDatum(tuple));
+        } else if (this == COMPACT_TERMS) {
+            CompactTermsDatum datum = new CompactTermsDatum(tuple);
+            model.addTrainingTerms(datum.getTermMap(), datum.getLabel());
+        } else {
+            model.addTrainingTerms(new TermsDatum(tuple));
+        }
+    }
+    
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public DocDatum classify(BaseModel model, Tuple tuple) {
+        return classify(model, tuple, StageTimer.DISABLED);
+    }
+    
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public DocDatum classify(BaseModel model, Tuple tuple, StageTimer timer) {
+        if (this == VECTOR) {
+            return model.classifyVector(new VectorDatum(tuple), timer);
+        } else if (this == FEATURES) {
+            return model.classifyFeatures(new FeaturesDatum(tuple), timer);
+        } else {
+            return model.classifyTerms(getTermMap(tuple), timer);
+        }
+    }
+    
+    /**
+     * @param fields argument fields of an operation
+     * @return form of the documents with those fields
+     */
+    public static ModelInput fromFields(Fields fields) {
+        if (fields.contains(VECTOR_FIELDS)) {
+            return VECTOR;
+        } else if (fields.contains(FEATURES_FIELDS)) {
+            return FEATURES;
+        } else if (fields.contains(COMPACT_TERMS_FIELDS)) {
+            return COMPACT_TERMS;
+        } else {
+            return TERMS;
+        }
+    }
+}
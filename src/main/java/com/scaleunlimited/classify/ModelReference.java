@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cascading.flow.FlowProcess;
+import cascading.tap.Tap;
+import cascading.tuple.TupleEntryIterator;
+
+import com.scaleunlimited.cascading.BasePath;
+import com.scaleunlimited.cascading.BasePlatform;
+import com.scaleunlimited.classify.datum.ModelDatum;
+
+/**
+ * Reference to a model stored in a model directory (as a {@link ModelDatum}),
+ * which operations can carry instead of the model itself. Only the tap and a
+ * fingerprint of the model data get serialized into the job, and each task
+ * reads the model from the tap (e.g. an HDFS side file) in its prepare().
+ * 
+ * The fingerprint is checked when the model is loaded, so a task fails
+ * (versus silently using a different model) if the model directory was
+ * changed after the job was submitted.
+ * 
+ * Optionally the loaded model is shared via the {@link ModelRegistry}, so
+ * that with JVM reuse only the first task in each JVM has to read and parse it.
+ */
+@SuppressWarnings({"serial", "rawtypes"})
+public class ModelReference implements Serializable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ModelReference.class);
+
+    private Tap _modelTap;
+    private ContentFingerprint _fingerprint;
+    private boolean _sharedPerJvm = false;
+    
+    /**
+     * @param modelTap tap for the model directory
+     * @param modelDatum the model that should be found in that directory
+     */
+    public ModelReference(Tap modelTap, ModelDatum modelDatum) {
+        _modelTap = modelTap;
+        _fingerprint = modelDatum.getModelFingerprint();
+    }
+    
+    /**
+     * @param platform platform used to read the model directory
+     * @param modelPath model directory
+     * @param modelDatum the model that should be found in that directory
+     * @return reference to the model
+     * @throws Exception
+     */
+    public static ModelReference create(BasePlatform platform, BasePath modelPath, ModelDatum modelDatum) throws Exception {
+        return new ModelReference(platform.makeTap(platform.makeBinaryScheme(ModelDatum.FIELDS), modelPath), modelDatum);
+    }
+    
+    public ContentFingerprint getFingerprint() {
+        return _fingerprint;
+    }
+    
+    public boolean isSharedPerJvm() {
+        return _sharedPerJvm;
+    }
+    
+    /**
+     * @param sharedPerJvm true => keep the loaded model in the
+     * {@link ModelRegistry}, for use by later tasks running in the same JVM.
+     * @return this reference
+     */
+    public ModelReference setSharedPerJvm(boolean sharedPerJvm) {
+        _sharedPerJvm = sharedPerJvm;
+        return this;
+    }
+    
+    /**
+     * @param flowProcess flow process of the task that needs the model
+     * @return the referenced model
+     */
+    public BaseModel getModel(final FlowProcess flowProcess) {
+        if (!_sharedPerJvm) {
+            return loadModel(flowProcess);
+        }
+        
+        return ModelRegistry.getModel(_fingerprint, new ModelRegistry.ModelLoader() {
+
+            @Override
+            public BaseModel loadModel() throws Exception {
+                return ModelReference.this.loadModel(flowProcess);
+            }
+        });
+    }
+    
+    @SuppressWarnings("unchecked")
+    private BaseModel loadModel(FlowProcess flowProcess) {
+        LOGGER.info("Loading model from " + _modelTap.getIdentifier());
+        ModelDatum modelDatum = null;
+        try (TupleEntryIterator iter = flowProcess.openTapForRead(_modelTap)) {
+            if (!iter.hasNext()) {
+                throw new IllegalStateException(String.format(  "Model directory %s doesn't contain any classifiers",
+                                                                _modelTap.getIdentifier()));
+            }
+            
+            modelDatum = new ModelDatum(iter.next().getTuple());
+            if (iter.hasNext()) {
+                throw new IllegalStateException(String.format(  "Model directory %s has more than one classifier",
+                                                                _modelTap.getIdentifier()));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Can't read model from " + _modelTap.getIdentifier(), e);
+        }
+        
+        if (!_fingerprint.equals(modelDatum.getModelFingerprint())) {
+            throw new IllegalStateException(String.format(  "Model in %s has changed since the flow was created",
+                                                            _modelTap.getIdentifier()));
+        }
+        
+        try {
+            return modelDatum.getModel();
+        } catch (Exception e) {
+            throw new RuntimeException("Can't load model from " + _modelTap.getIdentifier(), e);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-JVM registry of loaded models, keyed by a fingerprint of the model
+ * data. With Hadoop JVM reuse, this lets each task after the first one get
+ * the model that was already parsed (and set up) by an earlier task, versus
+ * doing all of that work again.
+ * 
+ * Models are held via soft references, so they'll get dropped if the JVM
+ * runs short of memory. Models from the registry can be shared by any number
+ * of operations, so they must only be used to classify, not trained.
+ */
+@SuppressWarnings("rawtypes")
+public class ModelRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ModelRegistry.class);
+
+    /**
+     * Loads the model for a fingerprint, when it's not in the registry.
+     */
+    public interface ModelLoader {
+        public BaseModel loadModel() throws Exception;
+    }
+    
+    private static final Map<ContentFingerprint, SoftReference<BaseModel>> MODELS = new HashMap<>();
+    
+    private ModelRegistry() {
+        // Enforce class isn't instantiated
+    }
+    
+    /**
+     * @param fingerprint fingerprint of the model data
+     * @param loader used to load the model, if it's not already registered
+     * @return the registered model for <fingerprint>
+     */
+    public static synchronized BaseModel getModel(ContentFingerprint fingerprint, ModelLoader loader) {
+        BaseModel result = getModel(fingerprint);
+        if (result != null) {
+            LOGGER.info("Using model already loaded by this JVM: " + fingerprint);
+            return result;
+        }
+        
+        removeClearedModels();
+        
+        try {
+            result = loader.loadModel();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Can't load model " + fingerprint, e);
+        }
+        
+        MODELS.put(fingerprint, new SoftReference<BaseModel>(result));
+        return result;
+    }
+    
+    /**
+     * @param fingerprint fingerprint of the model data
+     * @return the registered model, or null if there isn't one.
+     */
+    public static synchronized BaseModel getModel(ContentFingerprint fingerprint) {
+        SoftReference<BaseModel> ref = MODELS.get(fingerprint);
+        return (ref == null ? null : ref.get());
+    }
+    
+    public static synchronized int size() {
+        removeClearedModels();
+        return MODELS.size();
+    }
+    
+    public static synchronized void clear() {
+        MODELS.clear();
+    }
+    
+    private static void removeClearedModels() {
+        Iterator<SoftReference<BaseModel>> iter = MODELS.values().iterator();
+        while (iter.hasNext()) {
+            if (iter.next().get() == null) {
+                iter.remove();
+            }
+        }
+    }
+}
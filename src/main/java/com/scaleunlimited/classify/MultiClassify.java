@@ -0,0 +1,303 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+import cascading.operation.OperationCall;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntryCollector;
+
+import com.scaleunlimited.cascading.LoggingFlowProcess;
+import com.scaleunlimited.cascading.LoggingFlowReporter;
+import com.scaleunlimited.cascading.NullContext;
+import com.scaleunlimited.classify.StageTimer.Stage;
+import com.scaleunlimited.classify.analyzer.IAnalyzer;
+import com.scaleunlimited.classify.analyzer.TextDatumAnalyzer;
+import com.scaleunlimited.classify.datum.DocDatum;
+import com.scaleunlimited.classify.datum.LabeledDatum;
+import com.scaleunlimited.classify.datum.ModelDocDatum;
+import com.scaleunlimited.classify.datum.MultiDocDatum;
+import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.datum.TextDatum;
+
+/**
+ * Classifies each input tuple with several named models. Models that use
+ * the same analyzer (same class and same serialized settings) share one
+ * analysis of the document, so each document is analyzed once per distinct
+ * analyzer, versus once per model.
+ * 
+ * The output is either one {@link MultiDocDatum} per document, with a label
+ * and score for every model, or one {@link ModelDocDatum} per document and
+ * model. Either way the payload is passed through.
+ * 
+ * The input/analysis counters are incremented once per document, however
+ * many analyzers it went through. Each model gets its own {@link ConfusionMatrix},
+ * which reports to the counter group from {@link #getCounterGroup(String)}.
+ * Since Hadoop limits the number of counters per job, the models split the
+ * per-label counters of a single matrix between them (see
+ * {@link #getMaxLabelCounters(int)}); the full matrices are logged at debug level.
+ */
+@SuppressWarnings({"serial", "rawtypes"})
+public class MultiClassify
+    extends BaseOperation<NullContext>
+    implements Function<NullContext> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MultiClassify.class);
+
+    private String[] _modelNames;
+    private BaseModel[] _models;
+    private IAnalyzer[] _analyzers;
+    
+    // Index into _analyzers for each model.
+    private int[] _modelAnalyzers;
+    private boolean _tuplePerModel;
+    
+    private transient List<Map<String, Integer>> _termMaps;
+    private transient LoggingFlowProcess _flowProcess;
+    private transient StageTimer _stageTimer;
+    private transient ConfusionMatrix[] _confusionMatrices;
+    
+    /**
+     * @param modelNames names of the models, which are used to name the
+     * output fields (or are set in each output tuple).
+     * @param analyzers analyzer used by each model
+     * @param models the models, in the same order as their names
+     * @param tuplePerModel true => emit one {@link ModelDocDatum} per model,
+     * false => emit one {@link MultiDocDatum} per document.
+     * @throws Exception if an analyzer can't be serialized
+     */
+    public MultiClassify(List<String> modelNames, List<IAnalyzer> analyzers, List<BaseModel> models, boolean tuplePerModel) throws Exception {
+        super(tuplePerModel ? ModelDocDatum.FIELDS : MultiDocDatum.makeFields(modelNames));
+        
+        if (modelNames.isEmpty()) {
+            throw new IllegalArgumentException("At least one model is required");
+        }
+        
+        if ((analyzers.size() != modelNames.size()) || (models.size() != modelNames.size())) {
+            throw new IllegalArgumentException(String.format(   "Got %d model names, %d analyzers and %d models",
+                                                                modelNames.size(),
+                                                                analyzers.size(),
+                                                                models.size()));
+        }
+        
+        _modelNames = modelNames.toArray(new String[modelNames.size()]);
+        _models = models.toArray(new BaseModel[models.size()]);
+        _modelAnalyzers = new int[_models.length];
+        _tuplePerModel = tuplePerModel;
+        
+        // Find the distinct analyzers, by class and serialized settings.
+        List<IAnalyzer> distinctAnalyzers = new ArrayList<IAnalyzer>();
+        List<byte[]> distinctAnalyzerData = new ArrayList<byte[]>();
+        for (int i = 0; i < _models.length; i++) {
+            IAnalyzer analyzer = analyzers.get(i);
+            byte[] analyzerData = getAnalyzerData(analyzer);
+            
+            int analyzerIndex = -1;
+            for (int j = 0; (j < distinctAnalyzers.size()) && (analyzerIndex == -1); j++) {
+                if  (   (distinctAnalyzers.get(j).getClass() == analyzer.getClass())
+                    &&  (Arrays.equals(distinctAnalyzerData.get(j), analyzerData))) {
+                    analyzerIndex = j;
+                }
+            }
+            
+            if (analyzerIndex == -1) {
+                analyzerIndex = distinctAnalyzers.size();
+                distinctAnalyzers.add(analyzer);
+                distinctAnalyzerData.add(analyzerData);
+            }
+            
+            _modelAnalyzers[i] = analyzerIndex;
+        }
+        
+        _analyzers = distinctAnalyzers.toArray(new IAnalyzer[distinctAnalyzers.size()]);
+    }
+    
+    /**
+     * @param modelName name of one of the models
+     * @return group for the evaluation counters of <modelName>, for use with
+     * {@link ConfusionMatrix#getPrecision(cascading.stats.CascadingStats, String, String)} etc.
+     */
+    public static String getCounterGroup(String modelName) {
+        return ConfusionMatrix.COUNTER_GROUP + " " + modelName;
+    }
+    
+    /**
+     * @param numModels number of models being evaluated by the same job
+     * @return max number of labels that get their own counters in each
+     * model's {@link ConfusionMatrix}, so that all of the models together
+     * use about as many counters as one matrix does by default.
+     */
+    static int getMaxLabelCounters(int numModels) {
+        return Math.max(1, ConfusionMatrix.DEFAULT_MAX_LABEL_COUNTERS / numModels);
+    }
+    
+    /**
+     * @return number of times each document gets analyzed
+     */
+    int getNumAnalyzers() {
+        return _analyzers.length;
+    }
+    
+    // Classification is an expensive operation, so we don't want it repeated
+    // if our output ends up getting split into two pipes.
+    @Override
+    public boolean isSafe() {
+        return false;
+    }
+
+    @Override
+    public void prepare(FlowProcess flowProcess, OperationCall<NullContext> operationCall) {
+        super.prepare(flowProcess, operationCall);
+        _flowProcess = new LoggingFlowProcess(flowProcess);
+        _flowProcess.addReporter(new LoggingFlowReporter());
+        
+        for (IAnalyzer analyzer : _analyzers) {
+            analyzer.reset();
+        }
+        
+        _stageTimer = StageTimer.fromFlow(flowProcess);
+        _confusionMatrices = new ConfusionMatrix[_models.length];
+        int maxLabelCounters = getMaxLabelCounters(_models.length);
+        for (int i = 0; i < _models.length; i++) {
+            _models[i].reset();
+            _confusionMatrices[i] = new ConfusionMatrix(_models[i].getLabelNames())
+                .setCounterGroup(getCounterGroup(_modelNames[i]))
+                .setMaxLabelCounters(maxLabelCounters);
+        }
+        
+        _termMaps = new ArrayList<Map<String, Integer>>(_analyzers.length);
+    }
+
+    @Override
+    public void operate(FlowProcess flowProcess, FunctionCall<NullContext> functionCall) {
+        Tuple tuple = functionCall.getArguments().getTuple();
+        
+        // Analyze the document once for each distinct analyzer, and keep
+        // track of something we can use to get at the payload.
+        LabeledDatum inputDatum = null;
+        TextDatum textDatum = null;
+        boolean truncated = false;
+        _termMaps.clear();
+        for (IAnalyzer analyzer : _analyzers) {
+            long startTime = _stageTimer.start();
+            Map<String, Integer> termMap;
+            if (analyzer instanceof TextDatumAnalyzer) {
+                if (textDatum == null) {
+                    textDatum = new TextDatum(tuple);
+                }
+                
+                termMap = ((TextDatumAnalyzer)analyzer).getTermMap(textDatum);
+                if (termMap != null) {
+                    inputDatum = textDatum;
+                }
+            } else {
+                TermsDatum termsDatum = analyzer.getTermsDatum(tuple);
+                termMap = (termsDatum == null ? null : termsDatum.getTermMap());
+                if ((termsDatum != null) && (inputDatum == null)) {
+                    inputDatum = termsDatum;
+                }
+            }
+            
+            _stageTimer.stop(Stage.ANALYSIS, startTime);
+            truncated |= analyzer.wasTruncated();
+            _termMaps.add(termMap);
+        }
+        
+        if (truncated) {
+            _flowProcess.increment(ClassifyCounters.TRUNCATED_INPUT_TUPLE, 1);
+        }
+        
+        // Every analyzer skipped the document, so there's nothing to classify.
+        if (inputDatum == null) {
+            _flowProcess.increment(ClassifyCounters.SKIPPED_INPUT_TUPLE, 1);
+            return;
+        }
+        
+        _flowProcess.increment(ClassifyCounters.ANALYZED_INPUT_TUPLE, 1);
+        
+        TupleEntryCollector collector = functionCall.getOutputCollector();
+        MultiDocDatum multiDocDatum = null;
+        if (!_tuplePerModel) {
+            multiDocDatum = new MultiDocDatum(getFieldDeclaration());
+            multiDocDatum.setPayload(inputDatum.getPayload());
+        }
+        
+        for (int i = 0; i < _models.length; i++) {
+            Map<String, Integer> termMap = _termMaps.get(_modelAnalyzers[i]);
+            DocDatum docDatum = null;
+            if (termMap != null) {
+                long startTime = _stageTimer.start();
+                docDatum = _models[i].classifyTerms(termMap, _stageTimer);
+                _stageTimer.stop(Stage.CLASSIFICATION, startTime);
+                _confusionMatrices[i].add(inputDatum.getLabel(), docDatum.getLabel());
+                _flowProcess.increment(ClassifyCounters.CLASSIFIED_INPUT_TUPLE, 1);
+            }
+            
+            if (_tuplePerModel) {
+                if (docDatum != null) {
+                    ModelDocDatum modelDocDatum = new ModelDocDatum(_modelNames[i], docDatum.getLabel(), docDatum.getScore());
+                    modelDocDatum.setPayload(inputDatum.getPayload());
+                    collector.add(modelDocDatum.getTuple());
+                }
+            } else {
+                multiDocDatum.setLabel(_modelNames[i], docDatum == null ? null : docDatum.getLabel());
+                multiDocDatum.setScore(_modelNames[i], docDatum == null ? 0.0f : docDatum.getScore());
+            }
+        }
+        
+        if (!_tuplePerModel) {
+            collector.add(multiDocDatum.getTuple());
+        }
+    }
+
+    @Override
+    public void cleanup(FlowProcess flowProcess, OperationCall<NullContext> operationCall) {
+        for (int i = 0; i < _models.length; i++) {
+            ConfusionMatrix confusionMatrix = _confusionMatrices[i];
+            if (confusionMatrix.getNumLabeled() > 0) {
+                LOGGER.info(String.format(  "Accuracy of model %s for %d labeled documents: %.3f",
+                                            _modelNames[i],
+                                            confusionMatrix.getNumLabeled(),
+                                            confusionMatrix.getAccuracy()));
+            }
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(String.format("Confusion matrix for model %s:\n%s", _modelNames[i], confusionMatrix));
+            }
+            confusionMatrix.report(_flowProcess);
+        }
+        _stageTimer.report(_flowProcess);
+        _flowProcess.dumpCounters();
+        super.cleanup(flowProcess, operationCall);
+    }
+    
+    private static byte[] getAnalyzerData(IAnalyzer analyzer) throws Exception {
+        DataOutputBuffer dob = new DataOutputBuffer();
+        analyzer.write(dob);
+        return Arrays.copyOf(dob.getData(), dob.getLength());
+    }
+}
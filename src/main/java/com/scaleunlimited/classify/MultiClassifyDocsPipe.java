@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import cascading.flow.Flow;
+import cascading.flow.FlowConnector;
+import cascading.pipe.Each;
+import cascading.pipe.Pipe;
+import cascading.pipe.SubAssembly;
+import cascading.tap.SinkMode;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+
+import com.scaleunlimited.cascading.BasePath;
+import com.scaleunlimited.cascading.BasePlatform;
+import com.scaleunlimited.classify.analyzer.IAnalyzer;
+import com.scaleunlimited.classify.datum.ModelDatum;
+import com.scaleunlimited.classify.datum.ModelDocDatum;
+import com.scaleunlimited.classify.datum.MultiDocDatum;
+import com.scaleunlimited.classify.datum.SerializationTokens;
+
+/**
+ * Classifies each input {@link Tuple} using several models in a single pass,
+ * versus running a {@link ClassifyDocsPipe} (and re-reading and re-analyzing
+ * the input) for each model. Models whose analyzers have the same class and
+ * settings share the analysis of each document.
+ * 
+ * The output is either one {@link MultiDocDatum} per document, with a label
+ * and score field for each model, or one {@link ModelDocDatum} per document
+ * and model. Models are classified using the document's terms, so models
+ * trained on pre-computed feature values aren't supported.
+ */
+@SuppressWarnings({"serial", "rawtypes"})
+public class MultiClassifyDocsPipe extends SubAssembly {
+
+    /**
+     * @param inputPipe documents to be classified
+     * @param modelDatums models (with their analyzers) keyed by name, in
+     * the order their output fields should appear.
+     * @param tuplePerModel true => output one {@link ModelDocDatum} per
+     * document and model, false => one {@link MultiDocDatum} per document.
+     * @throws Exception
+     */
+    public MultiClassifyDocsPipe(Pipe inputPipe, Map<String, ModelDatum> modelDatums, boolean tuplePerModel) throws Exception {
+        this(inputPipe, modelDatums, tuplePerModel, TupleLoggingPolicy.FULL);
+    }
+    
+    /**
+     * @param inputPipe documents to be classified
+     * @param modelDatums models (with their analyzers) keyed by name, in
+     * the order their output fields should appear.
+     * @param tuplePerModel true => output one {@link ModelDocDatum} per
+     * document and model, false => one {@link MultiDocDatum} per document.
+     * @param loggingPolicy how much (debug) logging of tuples to plan into the flow
+     * @throws Exception
+     */
+    public MultiClassifyDocsPipe(Pipe inputPipe, Map<String, ModelDatum> modelDatums, boolean tuplePerModel, TupleLoggingPolicy loggingPolicy) throws Exception {
+        super(inputPipe);
+        
+        List<String> modelNames = new ArrayList<String>(modelDatums.size());
+        List<IAnalyzer> analyzers = new ArrayList<IAnalyzer>(modelDatums.size());
+        List<BaseModel> models = new ArrayList<BaseModel>(modelDatums.size());
+        for (Map.Entry<String, ModelDatum> entry : modelDatums.entrySet()) {
+            modelNames.add(entry.getKey());
+            analyzers.add(entry.getValue().getAnalyzer());
+            
+            // The models aren't deserialized until a task uses them.
+            models.add(entry.getValue().getLazyModel());
+        }
+        
+        Pipe outputPipe = new Pipe("output docs", inputPipe);
+        outputPipe = new Each(outputPipe, new MultiClassify(modelNames, analyzers, models, tuplePerModel));
+        outputPipe = loggingPolicy.makePipe(outputPipe);
+        setTails(outputPipe);
+    }
+    
+    public Pipe getOutputPipe() {
+        return getTails()[0];
+    }
+
+    /**
+     * Return a workflow that classifies documents with several models, each
+     * read from its own model directory (as written by {@link TrainModelPipe}).
+     * 
+     * @param platform the cascading platform to use for running the flow
+     * @param inputPath sequence file(s) with the unclassified documents
+     * @param inputFields {@link Fields} in each input {@link Tuple}
+     * @param modelPaths model directories keyed by model name, in the order
+     * their output fields should appear.
+     * @param outputPath where the classified documents will be written
+     * @param tuplePerModel true => one output tuple per document and model
+     * @return call its {@link Flow#complete()} method to execute the workflow
+     * @throws Exception
+     */
+    public static Flow createFlow(  BasePlatform platform,
+                                    BasePath inputPath,
+                                    Fields inputFields,
+                                    Map<String, BasePath> modelPaths,
+                                    BasePath outputPath,
+                                    boolean tuplePerModel)
+        throws Exception {
+        
+        Map<String, ModelDatum> modelDatums = new LinkedHashMap<String, ModelDatum>();
+        for (Map.Entry<String, BasePath> entry : modelPaths.entrySet()) {
+            modelDatums.put(entry.getKey(), ClassifyDocsPipe.readModel(platform, entry.getValue()));
+        }
+        
+        inputPath.assertExists("Input directory");
+        Tap inputSource = platform.makeTap(platform.makeBinaryScheme(inputFields), inputPath);
+        
+        MultiClassifyDocsPipe classifierPipe = new MultiClassifyDocsPipe(new Pipe("input pipe"), modelDatums, tuplePerModel);
+        
+        Fields outputFields = (tuplePerModel ?
+                                ModelDocDatum.FIELDS :
+                                MultiDocDatum.makeFields(new ArrayList<String>(modelDatums.keySet())));
+        Tap outputSink = platform.makeTap(  platform.makeBinaryScheme(outputFields),
+                                            outputPath,
+                                            SinkMode.REPLACE);
+        
+        FlowConnector flowConnector = platform.makeFlowConnector();
+        SerializationTokens.register(flowConnector.getProperties());
+        return flowConnector.connect(   inputSource,
+                                        outputSink,
+                                        classifierPipe.getOutputPipe());
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import cascading.flow.FlowProcess;
+
+/**
+ * Cumulative timing of the stages that documents go through while being
+ * analyzed, classified, or used for training. Each {@link #stop(Stage, long)}
+ * just updates a few longs, and the totals only get pushed into Cascading
+ * counters (see {@link ClassifyTimingCounters}) when {@link #report(FlowProcess)}
+ * is called, typically from an operation's cleanup.
+ * 
+ * Latency histograms add five counters per stage, so they're only kept if
+ * the flow's {@link #HISTOGRAMS_PROPERTY} property is true (see
+ * {@link #setHistograms(Map, boolean)}).
+ * 
+ * A timer isn't thread-safe, so it should only be used by the thread that
+ * owns it (normally the operation's thread), and passed to models with each
+ * call versus being stored in them.
+ */
+public class StageTimer {
+
+    public enum Stage {
+        ANALYSIS,
+        VECTORIZATION,
+        NORMALIZATION,
+        FEATURE_NODES,
+        PREDICTION,
+        CLASSIFICATION,
+        TRAINING,
+    }
+    
+    // Upper (exclusive) limits of each histogram bucket, except the last one.
+    private static final long[] BUCKET_LIMITS = {
+        TimeUnit.MICROSECONDS.toNanos(10),
+        TimeUnit.MICROSECONDS.toNanos(100),
+        TimeUnit.MILLISECONDS.toNanos(1),
+        TimeUnit.MILLISECONDS.toNanos(10),
+    };
+    
+    public static final int NUM_BUCKETS = BUCKET_LIMITS.length + 1;
+    
+    public static final String HISTOGRAMS_PROPERTY = "classify.timing.histograms";
+    
+    // For each stage, the counters for total nanos, count, and then each bucket.
+    private static final ClassifyTimingCounters[][] COUNTERS = makeCounters();
+    
+    /**
+     * Timer that ignores everything, for when nobody asked for timing.
+     */
+    public static final StageTimer DISABLED = new StageTimer(false, false);
+    
+    private final boolean _enabled;
+    private final boolean _histograms;
+    private final long[] _totalNanos;
+    private final long[] _counts;
+    private final long[][] _buckets;
+    
+    public StageTimer() {
+        this(false);
+    }
+    
+    /**
+     * @param histograms true => also count calls per latency bucket
+     */
+    public StageTimer(boolean histograms) {
+        this(true, histograms);
+    }
+    
+    private StageTimer(boolean enabled, boolean histograms) {
+        _enabled = enabled;
+        _histograms = histograms;
+        
+        int numStages = Stage.values().length;
+        _totalNanos = new long[numStages];
+        _counts = new long[numStages];
+        _buckets = new long[numStages][NUM_BUCKETS];
+    }
+    
+    /**
+     * @param flowProcess flow the timer will be used in
+     * @return timer that keeps histograms if the flow's properties asked for them
+     */
+    public static StageTimer fromFlow(FlowProcess flowProcess) {
+        return new StageTimer(Boolean.parseBoolean(flowProcess.getStringProperty(HISTOGRAMS_PROPERTY)));
+    }
+    
+    /**
+     * @param properties flow connector properties
+     * @param histograms true => timers created via {@link #fromFlow(FlowProcess)}
+     * keep latency histograms
+     */
+    public static void setHistograms(Map<Object, Object> properties, boolean histograms) {
+        properties.put(HISTOGRAMS_PROPERTY, Boolean.toString(histograms));
+    }
+    
+    public boolean isEnabled() {
+        return _enabled;
+    }
+    
+    public boolean hasHistograms() {
+        return _histograms;
+    }
+    
+    /**
+     * @return start time to pass to {@link #stop(Stage, long)}
+     */
+    public long start() {
+        return _enabled ? System.nanoTime() : 0;
+    }
+    
+    /**
+     * @param stage what was being done
+     * @param startTime value returned by {@link #start()}
+     */
+    public void stop(Stage stage, long startTime) {
+        if (_enabled) {
+            addTime(stage, System.nanoTime() - startTime);
+        }
+    }
+    
+    /**
+     * @param stage what was being done
+     * @param elapsedNanos time spent doing it, e.g. as measured on some
+     * other thread.
+     */
+    public void addTime(Stage stage, long elapsedNanos) {
+        if (!_enabled) {
+            return;
+        }
+        
+        int index = stage.ordinal();
+        _totalNanos[index] += elapsedNanos;
+        _counts[index] += 1;
+        if (_histograms) {
+            _buckets[index][getBucket(elapsedNanos)] += 1;
+        }
+    }
+    
+    public long getTotalNanos(Stage stage) {
+        return _totalNanos[stage.ordinal()];
+    }
+    
+    public long getCount(Stage stage) {
+        return _counts[stage.ordinal()];
+    }
+    
+    /**
+     * @param stage what was being done
+     * @return number of calls in each latency bucket, from fastest to slowest
+     * (all zero if this timer doesn't keep histograms)
+     */
+    public long[] getHistogram(Stage stage) {
+        return Arrays.copyOf(_buckets[stage.ordinal()], NUM_BUCKETS);
+    }
+    
+    /**
+     * Add everything timed since the last report to the flow's counters, and
+     * then reset this timer.
+     * 
+     * @param flowProcess where the counters live
+     */
+    public void report(FlowProcess flowProcess) {
+        for (Stage stage : Stage.values()) {
+            int index = stage.ordinal();
+            if (_counts[index] == 0) {
+                continue;
+            }
+            
+            ClassifyTimingCounters[] counters = COUNTERS[index];
+            flowProcess.increment(counters[0], _totalNanos[index]);
+            flowProcess.increment(counters[1], _counts[index]);
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                if (_buckets[index][i] > 0) {
+                    flowProcess.increment(counters[2 + i], _buckets[index][i]);
+                }
+            }
+        }
+        
+        reset();
+    }
+    
+    public void reset() {
+        Arrays.fill(_totalNanos, 0);
+        Arrays.fill(_counts, 0);
+        for (long[] buckets : _buckets) {
+            Arrays.fill(buckets, 0);
+        }
+    }
+    
+    static int getBucket(long elapsedNanos) {
+        for (int i = 0; i < BUCKET_LIMITS.length; i++) {
+            if (elapsedNanos < BUCKET_LIMITS[i]) {
+                return i;
+            }
+        }
+        
+        return BUCKET_LIMITS.length;
+    }
+    
+    private static ClassifyTimingCounters[][] makeCounters() {
+        String[] suffixes = {"NANOS", "COUNT", "UNDER_10US", "UNDER_100US", "UNDER_1MS", "UNDER_10MS", "10MS_OR_MORE"};
+        
+        Stage[] stages = Stage.values();
+        ClassifyTimingCounters[][] result = new ClassifyTimingCounters[stages.length][];
+        for (Stage stage : stages) {
+            ClassifyTimingCounters[] counters = new ClassifyTimingCounters[suffixes.length];
+            for (int i = 0; i < suffixes.length; i++) {
+                counters[i] = ClassifyTimingCounters.valueOf(stage.name() + "_" + suffixes[i]);
+            }
+            
+            result[stage.ordinal()] = counters;
+        }
+        
+        return result;
+    }
+}
@@ -24,13 +24,17 @@ import cascading.pipe.Each;
 import cascading.pipe.GroupBy;
 import cascading.pipe.Pipe;
 import cascading.pipe.SubAssembly;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
 
 import com.scaleunlimited.cascading.LoggingFlowProcess;
 import com.scaleunlimited.cascading.LoggingFlowReporter;
 import com.scaleunlimited.cascading.NullContext;
-import com.scaleunlimited.cascading.TupleLogger;
 import com.scaleunlimited.classify.analyzer.IAnalyzer;
+import com.scaleunlimited.classify.analyzer.NullAnalyzer;
 import com.scaleunlimited.classify.datum.DocDatum;
+import com.scaleunlimited.classify.datum.LabeledDatum;
 import com.scaleunlimited.classify.datum.TermsDatum;
 
 @SuppressWarnings({"serial", "rawtypes"})
@@ -80,6 +84,10 @@ public class TrainLogisticModelPipe extends SubAssembly {
                 }
                 functionCall.getOutputCollector().add(termsDatum.getTuple());
             }
+            
+            if (_analyzer.wasTruncated()) {
+                _flowProcess.increment(ClassifyCounters.TRUNCATED_INPUT_TUPLE, 1);
+            }
         }
 
         @Override
@@ -90,6 +98,55 @@ public class TrainLogisticModelPipe extends SubAssembly {
         }
     }    
     
+    /**
+     * Labels training documents that have already been analyzed, leaving
+     * them in whatever form (terms, compact terms or feature vectors) they
+     * arrived in.
+     */
+    public static class LabelTrainingDatums
+        extends BaseOperation<NullContext>
+        implements Function<NullContext> {
+        
+        private boolean _positive;
+        private transient LoggingFlowProcess _flowProcess;
+    
+        public LabelTrainingDatums(boolean positive) {
+            super(Fields.ARGS);
+            _positive = positive;
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        public void prepare(FlowProcess flowProcess,
+                            OperationCall<NullContext> operationCall) {
+            super.prepare(flowProcess, operationCall);
+            _flowProcess = new LoggingFlowProcess(flowProcess);
+            _flowProcess.addReporter(new LoggingFlowReporter());
+        }
+        
+        @Override
+        public void operate(FlowProcess flowProcess,
+                            FunctionCall<NullContext> functionCall) {
+            TupleEntry arguments = functionCall.getArguments();
+            TupleEntry result = new TupleEntry(arguments.getFields(), new Tuple(arguments.getTuple()));
+            if (_positive) {
+                result.setString(LabeledDatum.LABEL_FN, POSITIVE_LABEL);
+                _flowProcess.increment(LogisticCounters.POSITIVE_TRAINING_TERMS_DATUM, 1);
+            } else {
+                result.setString(LabeledDatum.LABEL_FN, NEGATIVE_LABEL);
+                _flowProcess.increment(LogisticCounters.NEGATIVE_TRAINING_TERMS_DATUM, 1);
+            }
+            functionCall.getOutputCollector().add(result.getTuple());
+        }
+
+        @Override
+        public void cleanup(FlowProcess flowProcess,
+                            OperationCall<NullContext> operationCall) {
+            _flowProcess.dumpCounters();
+            super.cleanup(flowProcess, operationCall);
+        }
+    }
+    
     public static float getPositiveScore(DocDatum docDatum) {
         float positiveScore;
         if (docDatum.getLabel().equals(POSITIVE_LABEL)) {
@@ -112,16 +169,43 @@ public class TrainLogisticModelPipe extends SubAssembly {
                                     IAnalyzer analyzer,
                                     BaseModel model,
                                     String modelTailPipeName) {
+        this(positivePipe, negativePipe, analyzer, model, modelTailPipeName, TupleLoggingPolicy.FULL);
+    }
+    
+    public TrainLogisticModelPipe(  Pipe positivePipe,
+                                    Pipe negativePipe,
+                                    IAnalyzer analyzer,
+                                    BaseModel model,
+                                    String modelTailPipeName,
+                                    TupleLoggingPolicy loggingPolicy) {
         super(positivePipe, negativePipe);
         
-        // Analyze the training text into terms
-        positivePipe =
-            new Each(positivePipe, new GetAndLabelTrainingTerms(analyzer, true));
-        positivePipe = TupleLogger.makePipe(positivePipe, true);
-        
-        negativePipe =
-            new Each(negativePipe, new GetAndLabelTrainingTerms(analyzer, false));
-        negativePipe = TupleLogger.makePipe(negativePipe, true);
+        if (analyzer instanceof NullAnalyzer) {
+            
+            // Already analyzed, maybe into compact terms or feature vectors,
+            // so just label the training documents.
+            positivePipe =
+                new Each(positivePipe, new LabelTrainingDatums(true));
+            positivePipe = loggingPolicy.makePipe(positivePipe);
+            
+            negativePipe =
+                new Each(negativePipe, new LabelTrainingDatums(false));
+            negativePipe = loggingPolicy.makePipe(negativePipe);
+        } else {
+            
+            // Analyze the training text into terms
+            positivePipe =
+                new Each(positivePipe, new GetAndLabelTrainingTerms(analyzer, true));
+            positivePipe = loggingPolicy.makePipe(positivePipe);
+            
+            negativePipe =
+                new Each(negativePipe, new GetAndLabelTrainingTerms(analyzer, false));
+            negativePipe = loggingPolicy.makePipe(negativePipe);
+            
+            // Shrink the terms we're about to shuffle
+            positivePipe = new Each(positivePipe, new CompactTerms());
+            negativePipe = new Each(negativePipe, new CompactTerms());
+        }
         
         // Train a new model using those terms
         Pipe[] trainingPipes = Pipe.pipes(positivePipe, negativePipe);
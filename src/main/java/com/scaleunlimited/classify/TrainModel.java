@@ -31,9 +31,9 @@ import cascading.tuple.TupleEntryCollector;
 import com.scaleunlimited.cascading.LoggingFlowProcess;
 import com.scaleunlimited.cascading.LoggingFlowReporter;
 import com.scaleunlimited.cascading.NullContext;
+import com.scaleunlimited.classify.StageTimer.Stage;
 import com.scaleunlimited.classify.analyzer.IAnalyzer;
 import com.scaleunlimited.classify.datum.ModelDatum;
-import com.scaleunlimited.classify.datum.TermsDatum;
 
 @SuppressWarnings({"serial", "rawtypes"})
 public class TrainModel
@@ -45,7 +45,9 @@ public class TrainModel
     private IAnalyzer _analyzer;
     private BaseModel _model;
     private TupleEntryCollector _outputCollector;
+    private transient ModelInput _input;
     private transient LoggingFlowProcess _flowProcess;
+    private transient StageTimer _stageTimer;
 
     public TrainModel(IAnalyzer analyzer, BaseModel model) {
         super(ModelDatum.FIELDS);
@@ -60,27 +62,33 @@ public class TrainModel
         super.prepare(flowProcess, operationCall);
         _flowProcess = new LoggingFlowProcess(flowProcess);
         _flowProcess.addReporter(new LoggingFlowReporter());
+        
+        // We accept TermsDatums, (smaller to shuffle) CompactTermsDatums,
+        // pre-hashed VectorDatums, or FeaturesDatums with computed values.
+        _input = ModelInput.fromFields(operationCall.getArgumentFields());
         _analyzer.reset();
         _model.reset();
+        _stageTimer = StageTimer.fromFlow(flowProcess);
     }
 
     @SuppressWarnings("unchecked")
 	@Override
     public void operate(FlowProcess flowProcess,
                         FunctionCall<NullContext> functionCall) {
-        TermsDatum termsDatum =
-            new TermsDatum(functionCall.getArguments().getTuple());
         if (_outputCollector == null) {
             _outputCollector = functionCall.getOutputCollector();
         }
-        _model.addTrainingTerms(termsDatum);
+        _input.addTrainingDatum(_model, functionCall.getArguments().getTuple());
         _flowProcess.increment(ClassifyCounters.TRAINING_TERMS_DATUM, 1);
     }
 
     @Override
     public void cleanup(FlowProcess flowProcess,
                         OperationCall<NullContext> operationCall) {
+        long startTime = _stageTimer.start();
         _model.train();
+        _stageTimer.stop(Stage.TRAINING, startTime);
+        
         _analyzer.reset();
         try {
             ModelDatum modelDatum = new ModelDatum(_analyzer, _model);
@@ -88,6 +96,7 @@ public class TrainModel
         } catch (IOException e) {
             LOGGER.error("Unable to serialize model", e);
         }
+        _stageTimer.report(_flowProcess);
         _flowProcess.dumpCounters();
         super.cleanup(flowProcess, operationCall);
     }
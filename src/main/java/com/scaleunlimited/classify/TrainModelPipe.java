@@ -27,9 +27,13 @@ import cascading.tuple.Tuple;
 
 import com.scaleunlimited.cascading.BasePath;
 import com.scaleunlimited.cascading.BasePlatform;
-import com.scaleunlimited.cascading.TupleLogger;
+import com.scaleunlimited.classify.analyzer.AnalysisBudget;
 import com.scaleunlimited.classify.analyzer.IAnalyzer;
+import com.scaleunlimited.classify.analyzer.NullAnalyzer;
+import com.scaleunlimited.classify.analyzer.TextDatumAnalyzer;
+import com.scaleunlimited.classify.datum.FeaturesDatum;
 import com.scaleunlimited.classify.datum.ModelDatum;
+import com.scaleunlimited.classify.datum.SerializationTokens;
 import com.scaleunlimited.classify.datum.TextDatum;
 
 /**
@@ -53,12 +57,23 @@ public class TrainModelPipe extends SubAssembly {
                             IAnalyzer analyzer,
                             BaseModel model,
                             String modelTailPipeName) {
+        this(trainingPipe, analyzer, model, modelTailPipeName, TupleLoggingPolicy.FULL);
+    }
+    
+    public TrainModelPipe(  Pipe trainingPipe,
+                            IAnalyzer analyzer,
+                            BaseModel model,
+                            String modelTailPipeName,
+                            TupleLoggingPolicy loggingPolicy) {
         super(trainingPipe);
         
-        // Analyze the training text into terms
+        // Analyze the training text into terms, unless it's already been
+        // analyzed (or has pre-computed feature values).
         Pipe termsPipe = new Pipe("training terms", trainingPipe);
-        termsPipe = new Each(termsPipe, new AnalyzeTuple(analyzer));
-        termsPipe = TupleLogger.makePipe(termsPipe, true);
+        if (!(analyzer instanceof NullAnalyzer)) {
+            termsPipe = new Each(termsPipe, new AnalyzeTuple(analyzer));
+            termsPipe = loggingPolicy.makePipe(termsPipe);
+        }
         
         // Train a new model using those terms
         Pipe modelPipe = new Pipe(modelTailPipeName, termsPipe);
@@ -77,6 +92,30 @@ public class TrainModelPipe extends SubAssembly {
         return createFlow(platform, options, TextDatum.FIELDS);
     }
 
+    /**
+     * Return a workflow that builds a new model from pre-labeled
+     * {@link FeaturesDatum} training documents, which already have their
+     * (double) feature values, so no analyzer is used.
+     * 
+     * @param platform      The cascading platform to use when creating the flow
+     * @param options       same as for {@link #createFlow(BasePlatform, TrainModelOptions, Fields)},
+     * except that the analyzer name is ignored.
+     * @return              call its {@link Flow#complete()} method to execute
+     * the workflow
+     * @throws Exception 
+     */
+    public static Flow createFeaturesFlow(BasePlatform platform, TrainModelOptions options)
+        throws Exception {
+        
+        BaseModel model = makeModel(options.getModelName());
+        if (!model.supportsFeatures()) {
+            throw new IllegalArgumentException(String.format(  "Model named %s can't be trained on feature values",
+                                                                options.getModelName()));
+        }
+        
+        return createFlow(platform, options, FeaturesDatum.FIELDS, new NullAnalyzer(), model);
+    }
+
     /**
      * Return a workflow that builds a new model based on pre-labeled
      * training {@link Tuple} documents read from a sequence file,
@@ -103,12 +142,21 @@ public class TrainModelPipe extends SubAssembly {
                                     Fields inputFields)
         throws Exception {
     
-        BasePath workingDirPath = platform.makePath(options.getWorkingDir());
-        workingDirPath.assertExists("Working directory");
-
         // Try to instantiate the analyzer and modeler
-        IAnalyzer analyzer = makeAnalyzer(options.getAnalyzerName());
+        IAnalyzer analyzer = makeAnalyzer(options.getAnalyzerName(), options.getAnalysisBudget());
         BaseModel model = makeModel(options.getModelName());
+        return createFlow(platform, options, inputFields, analyzer, model);
+    }
+    
+    private static Flow createFlow( BasePlatform platform,
+                                    TrainModelOptions options,
+                                    Fields inputFields,
+                                    IAnalyzer analyzer,
+                                    BaseModel model)
+        throws Exception {
+    
+        BasePath workingDirPath = platform.makePath(options.getWorkingDir());
+        workingDirPath.assertExists("Working directory");
 
         // Set up the input source
         BasePath trainingPath = platform.makePath(workingDirPath, ClassifyConfig.TRAINING_SUBDIR_NAME);
@@ -119,7 +167,7 @@ public class TrainModelPipe extends SubAssembly {
         // Analyze the training text into terms and train the model from them
         Pipe trainingPipe = new Pipe("training pipe");
         TrainModelPipe trainerPipe =
-            new TrainModelPipe(trainingPipe, analyzer, model);
+            new TrainModelPipe(trainingPipe, analyzer, model, "model", options.getTupleLoggingPolicy());
 
         // Set up the output sink
         BasePath modelPath = platform.makePath(workingDirPath, ClassifyConfig.MODEL_SUBDIR_NAME);
@@ -129,6 +177,8 @@ public class TrainModelPipe extends SubAssembly {
         
         // Build and return the workflow
         FlowConnector flowConnector = platform.makeFlowConnector();
+        SerializationTokens.register(flowConnector.getProperties());
+        StageTimer.setHistograms(flowConnector.getProperties(), options.isTimingHistograms());
         return flowConnector.connect(   trainingSource,
                                         modelSink,
                                         trainerPipe.getModelTailPipe());
@@ -157,4 +207,16 @@ public class TrainModelPipe extends SubAssembly {
         result.reset();
         return result;
     }
+
+    public static IAnalyzer makeAnalyzer(String analyzerName, AnalysisBudget budget) {
+        IAnalyzer result = makeAnalyzer(analyzerName);
+        if (!budget.isUnlimited()) {
+            if (!(result instanceof TextDatumAnalyzer)) {
+                throw new IllegalArgumentException("Analysis budget isn't supported by Analyzer named " + analyzerName);
+            }
+            
+            ((TextDatumAnalyzer)result).setBudget(budget);
+        }
+        return result;
+    }
 }
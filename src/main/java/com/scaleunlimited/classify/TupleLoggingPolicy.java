@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Filter;
+import cascading.operation.FilterCall;
+import cascading.operation.OperationCall;
+import cascading.pipe.Each;
+import cascading.pipe.Pipe;
+
+import com.scaleunlimited.cascading.NullContext;
+import com.scaleunlimited.cascading.TupleLogger;
+
+/**
+ * How much (debug) logging of tuples gets planned into the flows built by
+ * this project's SubAssemblies. With {@link Mode#OFF} no logging operation
+ * is added at all, {@link Mode#SAMPLED} logs one out of every N tuples, and
+ * {@link Mode#FULL} adds a {@link TupleLogger}, which logs every tuple.
+ * 
+ * The policy is passed to a SubAssembly's constructor (or comes from
+ * {@link ClassifyOptions#getTupleLoggingPolicy()} when a workflow is created),
+ * and SubAssemblies that aren't given one use {@link #FULL}.
+ */
+public class TupleLoggingPolicy {
+
+    public enum Mode {
+        OFF,
+        SAMPLED,
+        FULL,
+    }
+    
+    public static final int DEFAULT_SAMPLE_INTERVAL = 1000;
+    
+    public static final TupleLoggingPolicy OFF = new TupleLoggingPolicy(Mode.OFF, 0);
+    public static final TupleLoggingPolicy FULL = new TupleLoggingPolicy(Mode.FULL, 1);
+    
+    private final Mode _mode;
+    private final int _sampleInterval;
+    
+    private TupleLoggingPolicy(Mode mode, int sampleInterval) {
+        _mode = mode;
+        _sampleInterval = sampleInterval;
+    }
+    
+    /**
+     * @param sampleInterval log one out of every <sampleInterval> tuples
+     * @return sampled logging policy
+     */
+    public static TupleLoggingPolicy sampled(int sampleInterval) {
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("Sample interval must be at least 1: " + sampleInterval);
+        }
+        
+        return new TupleLoggingPolicy(Mode.SAMPLED, sampleInterval);
+    }
+    
+    /**
+     * @param policy "off", "full", "sampled" (one in {@link #DEFAULT_SAMPLE_INTERVAL}),
+     * or a number N to log one out of every N tuples.
+     * @return the corresponding logging policy
+     */
+    public static TupleLoggingPolicy parse(String policy) {
+        String trimmed = policy.trim();
+        if (trimmed.equalsIgnoreCase("off")) {
+            return OFF;
+        } else if (trimmed.equalsIgnoreCase("full")) {
+            return FULL;
+        } else if (trimmed.equalsIgnoreCase("sampled")) {
+            return sampled(DEFAULT_SAMPLE_INTERVAL);
+        }
+        
+        try {
+            return sampled(Integer.parseInt(trimmed));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid tuple logging policy: " + policy);
+        }
+    }
+    
+    public Mode getMode() {
+        return _mode;
+    }
+    
+    public int getSampleInterval() {
+        return _sampleInterval;
+    }
+    
+    /**
+     * @param pipe pipe whose tuples might get logged
+     * @return <pipe> with a logging operation appended, or just <pipe> if
+     * logging is off.
+     */
+    public Pipe makePipe(Pipe pipe) {
+        switch (_mode) {
+            case OFF:
+                return pipe;
+                
+            case SAMPLED:
+                return new Each(pipe, new SampledTupleLogger(pipe.getName(), _sampleInterval));
+                
+            case FULL:
+                return TupleLogger.makePipe(pipe, true);
+                
+            default:
+                throw new IllegalStateException("Unknown tuple logging mode: " + _mode);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return (_mode == Mode.SAMPLED ? String.format("sampled 1 in %d", _sampleInterval) : _mode.name().toLowerCase());
+    }
+    
+    /**
+     * Filter that never removes anything, but logs (at debug level) the first
+     * tuple and then one out of every <sampleInterval> tuples.
+     */
+    @SuppressWarnings({"serial", "rawtypes"})
+    private static class SampledTupleLogger extends BaseOperation<NullContext> implements Filter<NullContext> {
+        private static final Logger LOGGER = LoggerFactory.getLogger(SampledTupleLogger.class);
+        
+        private static final int MAX_LOG_LENGTH = 1000;
+        
+        private String _prefix;
+        private int _sampleInterval;
+        
+        private transient boolean _enabled;
+        private transient long _numTuples;
+        
+        public SampledTupleLogger(String prefix, int sampleInterval) {
+            _prefix = prefix;
+            _sampleInterval = sampleInterval;
+        }
+        
+        @Override
+        public void prepare(FlowProcess flowProcess, OperationCall<NullContext> operationCall) {
+            super.prepare(flowProcess, operationCall);
+            
+            // Only check once, so there's nothing but a test of a boolean per tuple.
+            _enabled = LOGGER.isDebugEnabled();
+            _numTuples = 0;
+        }
+        
+        @Override
+        public boolean isRemove(FlowProcess flowProcess, FilterCall<NullContext> filterCall) {
+            if (_enabled && ((_numTuples++ % _sampleInterval) == 0)) {
+                String tuple = filterCall.getArguments().getTuple().toString();
+                if (tuple.length() > MAX_LOG_LENGTH) {
+                    tuple = tuple.substring(0, MAX_LOG_LENGTH) + "...";
+                }
+                
+                LOGGER.debug(String.format("%s (tuple %d): %s", _prefix, _numTuples, tuple));
+            }
+            
+            return false;
+        }
+    }
+}
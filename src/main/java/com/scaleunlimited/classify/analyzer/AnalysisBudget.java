@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.analyzer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+import org.apache.hadoop.io.Writable;
+
+/**
+ * Limits on how much of each document a {@link TextDatumAnalyzer} will
+ * analyze, so that a few giant documents can't dominate analysis time.
+ * The budget is saved with the analyzer in the model, so training and
+ * classification always see the same features.
+ */
+@SuppressWarnings("serial")
+public class AnalysisBudget implements Writable, Serializable {
+
+    public static final int NO_LIMIT = 0;
+
+    // Used to join the head and tail of sampled content, so that the last
+    // term of the head doesn't get glued to the first term of the tail.
+    private static final char HEAD_TAIL_SEPARATOR = '\n';
+
+    private int _maxChars = NO_LIMIT;
+    private int _maxTokens = NO_LIMIT;
+    private boolean _headAndTail = false;
+
+    public AnalysisBudget() {
+    }
+
+    public AnalysisBudget(int maxChars, int maxTokens, boolean headAndTail) {
+        setMaxChars(maxChars);
+        setMaxTokens(maxTokens);
+        setHeadAndTail(headAndTail);
+    }
+
+    public int getMaxChars() {
+        return _maxChars;
+    }
+
+    public AnalysisBudget setMaxChars(int maxChars) {
+        if (maxChars < 0) {
+            throw new IllegalArgumentException("Max chars can't be negative: " + maxChars);
+        }
+
+        _maxChars = maxChars;
+        return this;
+    }
+
+    public int getMaxTokens() {
+        return _maxTokens;
+    }
+
+    public AnalysisBudget setMaxTokens(int maxTokens) {
+        if (maxTokens < 0) {
+            throw new IllegalArgumentException("Max tokens can't be negative: " + maxTokens);
+        }
+
+        _maxTokens = maxTokens;
+        return this;
+    }
+
+    public boolean isHeadAndTail() {
+        return _headAndTail;
+    }
+
+    /**
+     * @param headAndTail true => content that's longer than the max chars
+     * is sampled from both its start and its end, versus just being truncated.
+     * @return this budget
+     */
+    public AnalysisBudget setHeadAndTail(boolean headAndTail) {
+        _headAndTail = headAndTail;
+        return this;
+    }
+
+    public boolean isUnlimited() {
+        return (_maxChars == NO_LIMIT) && (_maxTokens == NO_LIMIT);
+    }
+
+    /**
+     * @param content text to be analyzed
+     * @return content cut down to fit within the max chars limit, or
+     * the original content if it already fits.
+     */
+    public String limitContent(String content) {
+        if  (   (_maxChars == NO_LIMIT)
+            ||  (content == null)
+            ||  (content.length() <= _maxChars)) {
+            return content;
+        }
+
+        if (!_headAndTail) {
+            return content.substring(0, safeEnd(content, _maxChars));
+        }
+
+        int headLength = _maxChars / 2;
+        int tailLength = _maxChars - headLength;
+        int headEnd = safeEnd(content, headLength);
+        int tailStart = safeStart(content, content.length() - tailLength);
+
+        StringBuilder result = new StringBuilder(_maxChars + 1);
+        result.append(content, 0, headEnd);
+        result.append(HEAD_TAIL_SEPARATOR);
+        result.append(content, tailStart, content.length());
+        return result.toString();
+    }
+
+    /**
+     * @param numTokens number of tokens extracted so far
+     * @return true if no more tokens should be extracted
+     */
+    public boolean isTokenLimitReached(int numTokens) {
+        return (_maxTokens != NO_LIMIT) && (numTokens >= _maxTokens);
+    }
+
+    // Don't split a surrogate pair at the end of the head.
+    private static int safeEnd(String content, int end) {
+        if ((end > 0) && Character.isHighSurrogate(content.charAt(end - 1))) {
+            return end - 1;
+        }
+
+        return end;
+    }
+
+    // Don't split a surrogate pair at the start of the tail.
+    private static int safeStart(String content, int start) {
+        if ((start < content.length()) && Character.isLowSurrogate(content.charAt(start))) {
+            return start + 1;
+        }
+
+        return start;
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        _maxChars = in.readInt();
+        _maxTokens = in.readInt();
+        _headAndTail = in.readBoolean();
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(_maxChars);
+        out.writeInt(_maxTokens);
+        out.writeBoolean(_headAndTail);
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + (_headAndTail ? 1231 : 1237);
+        result = prime * result + _maxChars;
+        result = prime * result + _maxTokens;
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        AnalysisBudget other = (AnalysisBudget) obj;
+        if (_headAndTail != other._headAndTail)
+            return false;
+        if (_maxChars != other._maxChars)
+            return false;
+        if (_maxTokens != other._maxTokens)
+            return false;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(   "max chars: %d, max tokens: %d, head and tail: %b",
+                                _maxChars,
+                                _maxTokens,
+                                _headAndTail);
+    }
+}
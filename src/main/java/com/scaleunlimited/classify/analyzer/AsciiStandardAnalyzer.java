@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.analyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.util.CharArraySet;
+
+/**
+ * A {@link StandardAnalyzer} with a fast path for pure ASCII content, which
+ * is most of what we see. ASCII content is tokenized and lower-cased by a
+ * table-driven scanner that follows the same UAX#29 word break rules as
+ * Lucene's StandardTokenizer, and then filtered by the same common words
+ * list, so the resulting terms are identical. Anything else goes through
+ * the regular Lucene analyzer chain.
+ */
+@SuppressWarnings("serial")
+public class AsciiStandardAnalyzer extends StandardAnalyzer {
+
+    // Lucene's StandardTokenizer skips tokens longer than this.
+    private static final int MAX_TOKEN_LENGTH =
+        org.apache.lucene.analysis.standard.StandardAnalyzer.DEFAULT_MAX_TOKEN_LENGTH;
+
+    // UAX#29 word break classes, for the ASCII chars that matter.
+    private static final byte OTHER = 0;
+    private static final byte LETTER = 1;
+    private static final byte DIGIT = 2;
+    private static final byte EXTEND_NUM_LET = 3;   // '_'
+    private static final byte MID_LETTER = 4;       // ':'
+    private static final byte MID_NUM = 5;          // ',' ';'
+    private static final byte MID_NUM_LET = 6;      // '.' and single quote (same rules for non-Hebrew letters)
+
+    private static final int NUM_ASCII_CHARS = 128;
+    private static final byte[] CHAR_CLASSES = new byte[NUM_ASCII_CHARS];
+    private static final char[] LOWER_CASE = new char[NUM_ASCII_CHARS];
+
+    static {
+        for (char c = 0; c < NUM_ASCII_CHARS; c++) {
+            LOWER_CASE[c] = c;
+            CHAR_CLASSES[c] = OTHER;
+        }
+
+        for (char c = 'a'; c <= 'z'; c++) {
+            CHAR_CLASSES[c] = LETTER;
+        }
+
+        for (char c = 'A'; c <= 'Z'; c++) {
+            CHAR_CLASSES[c] = LETTER;
+            LOWER_CASE[c] = (char)(c + ('a' - 'A'));
+        }
+
+        for (char c = '0'; c <= '9'; c++) {
+            CHAR_CLASSES[c] = DIGIT;
+        }
+
+        CHAR_CLASSES['_'] = EXTEND_NUM_LET;
+        CHAR_CLASSES[':'] = MID_LETTER;
+        CHAR_CLASSES[','] = MID_NUM;
+        CHAR_CLASSES[';'] = MID_NUM;
+        CHAR_CLASSES['.'] = MID_NUM_LET;
+        CHAR_CLASSES['\''] = MID_NUM_LET;
+    }
+
+    @Override
+    public List<String> getTermList(String contentText) {
+        char[] chars = contentText.toCharArray();
+        if (!isAscii(chars)) {
+            return super.getTermList(contentText);
+        }
+
+        CharArraySet commonWords = getCommonWords();
+        AnalysisBudget budget = getBudget();
+        List<String> result = new ArrayList<String>(chars.length / 10);
+
+        int length = chars.length;
+        int pos = 0;
+        while (pos < length) {
+            byte charClass = CHAR_CLASSES[chars[pos]];
+            if (!isWordChar(charClass)) {
+                pos += 1;
+                continue;
+            }
+
+            int start = pos;
+            boolean hasAlphaNum = (charClass != EXTEND_NUM_LET);
+            byte prevClass = charClass;
+            pos += 1;
+
+            while (pos < length) {
+                byte curClass = CHAR_CLASSES[chars[pos]];
+                if (isWordChar(curClass)) {
+                    // WB5, WB8, WB9, WB10, WB13a, WB13b
+                    hasAlphaNum |= (curClass != EXTEND_NUM_LET);
+                    prevClass = curClass;
+                    pos += 1;
+                } else if ((pos + 1 < length) && joinsAcross(prevClass, curClass, CHAR_CLASSES[chars[pos + 1]])) {
+                    // WB6, WB7, WB11, WB12
+                    prevClass = CHAR_CLASSES[chars[pos + 1]];
+                    pos += 2;
+                } else {
+                    break;
+                }
+            }
+
+            // StandardTokenizer ignores runs of just underscores, and tokens that are too long.
+            int tokenLength = pos - start;
+            if (!hasAlphaNum || (tokenLength > MAX_TOKEN_LENGTH)) {
+                continue;
+            }
+
+            for (int i = start; i < pos; i++) {
+                chars[i] = LOWER_CASE[chars[i]];
+            }
+
+            if (commonWords.contains(chars, start, tokenLength)) {
+                continue;
+            }
+
+            if (budget.isTokenLimitReached(result.size())) {
+                setTruncated();
+                break;
+            }
+
+            result.add(new String(chars, start, tokenLength));
+        }
+
+        return result;
+    }
+
+    private static boolean isAscii(char[] chars) {
+        for (char c : chars) {
+            if (c >= NUM_ASCII_CHARS) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isWordChar(byte charClass) {
+        return (charClass == LETTER) || (charClass == DIGIT) || (charClass == EXTEND_NUM_LET);
+    }
+
+    private static boolean joinsAcross(byte prevClass, byte midClass, byte nextClass) {
+        if ((prevClass == LETTER) && (nextClass == LETTER)) {
+            return (midClass == MID_LETTER) || (midClass == MID_NUM_LET);
+        } else if ((prevClass == DIGIT) && (nextClass == DIGIT)) {
+            return (midClass == MID_NUM) || (midClass == MID_NUM_LET);
+        } else {
+            return false;
+        }
+    }
+}
@@ -17,11 +17,20 @@ package com.scaleunlimited.classify.analyzer;
 
 import java.io.Serializable;
 
+import org.apache.hadoop.io.Writable;
+
 import cascading.tuple.Tuple;
 
 import com.scaleunlimited.classify.datum.TermsDatum;
 
-public interface IAnalyzer extends Serializable {
+/**
+ * Extracts terms from an input tuple. Any analyzer settings that affect
+ * which terms get extracted are (de)serialized via {@link Writable}, so that
+ * they're saved with the model that was trained using the analyzer. An
+ * analyzer with default settings should write nothing, in which case only
+ * its class name is saved, and readFields() isn't called when it's loaded.
+ */
+public interface IAnalyzer extends Writable, Serializable {
 
     /**
      * @param tuple to be parsed into terms
@@ -30,6 +39,12 @@ public interface IAnalyzer extends Serializable {
      */
     public TermsDatum getTermsDatum(Tuple tuple);
     
+    /**
+     * @return true if the content of the tuple most recently passed to
+     * {@link #getTermsDatum(Tuple)} was cut down to fit the analysis budget.
+     */
+    public boolean wasTruncated();
+    
     /**
      * Initialize the newly constructed (e.g., recently deserialized) analyzer,
      * particularly its transient fields.
@@ -25,13 +25,14 @@ import java.util.Map;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.RAMDirectory;
 
 @SuppressWarnings("serial")
 public abstract class LuceneAnalyzer extends TextDatumAnalyzer {
 
-    private transient Directory _ramDir;
+    // Lucene analyzers are thread-safe (they keep their token stream components
+    // in a per-thread cache), so we only need one of each type per JVM.
+    private static final Map<Class<?>, Analyzer> SHARED_ANALYZERS = new HashMap<Class<?>, Analyzer>();
+    
     private transient Analyzer _analyzer; 
     
     public LuceneAnalyzer() {
@@ -39,20 +40,31 @@ public abstract class LuceneAnalyzer extends TextDatumAnalyzer {
     }
     
     public LuceneAnalyzer(boolean useCommonWordsList) {
-        _ramDir = null;
         _analyzer = null;
     }
     
     private synchronized void init() {
-        if (_ramDir == null) {
-            _ramDir = new RAMDirectory();
-        }
-        
         if (_analyzer == null) {
-            _analyzer = createAnalyzer();
+            _analyzer = getSharedAnalyzer(this);
         }
     }
     
+    private static Analyzer getSharedAnalyzer(LuceneAnalyzer analyzer) {
+        synchronized (SHARED_ANALYZERS) {
+            Analyzer result = SHARED_ANALYZERS.get(analyzer.getClass());
+            if (result == null) {
+                result = analyzer.createAnalyzer();
+                SHARED_ANALYZERS.put(analyzer.getClass(), result);
+            }
+            
+            return result;
+        }
+    }
+    
+    /**
+     * @return Lucene analyzer for this class, which is shared by every instance
+     * of the class in this JVM, so it can't depend on any instance settings.
+     */
     abstract public Analyzer createAnalyzer();
     
     /**
@@ -70,8 +82,14 @@ public abstract class LuceneAnalyzer extends TextDatumAnalyzer {
 			CharTermAttribute termAtt = (CharTermAttribute) stream
 					.addAttribute(CharTermAttribute.class);
 
+			AnalysisBudget budget = getBudget();
 			stream.reset();
 			while (stream.incrementToken()) {
+				if (budget.isTokenLimitReached(result.size())) {
+					setTruncated();
+					break;
+				}
+				
 				if (termAtt.length() > 0) {
 					String term = termAtt.toString();
 					// Here we skip runs of position increment markers created
@@ -15,6 +15,10 @@
  */
 package com.scaleunlimited.classify.analyzer;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import cascading.tuple.Tuple;
 
 import com.scaleunlimited.classify.datum.TermsDatum;
@@ -32,6 +36,11 @@ public class NullAnalyzer implements IAnalyzer {
         return new TermsDatum(new Tuple(tuple));
     }
 
+    @Override
+    public boolean wasTruncated() {
+        return false;
+    }
+
     @Override
     public void reset() {
         // Nothing to do here
@@ -42,4 +51,14 @@ public class NullAnalyzer implements IAnalyzer {
         // No statistics either
     }
 
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        // No settings to read
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        // No settings to write
+    }
+
 }
@@ -21,6 +21,8 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.util.CharArraySet;
+import org.apache.lucene.analysis.util.WordlistLoader;
 import org.apache.lucene.util.Version;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,49 +33,57 @@ public class StandardAnalyzer extends LuceneAnalyzer {
     
     private static final String COMMON_WORDS_FILENAME = "common-words.txt";
 
+    // The common words list is parsed once per JVM, the first time it's needed,
+    // versus every time we create an analyzer.
+    private static class CommonWordsHolder {
+        static final CharArraySet COMMON_WORDS = loadCommonWords();
+    }
+    
     @Override
     public Analyzer createAnalyzer() {
         return createStandardAnalyzer(true);
     }
 
     public static Analyzer createStandardAnalyzer(boolean useFullStopWords) {
-        Analyzer result;
-        
         if (useFullStopWords) {
-            InputStream fis = StandardAnalyzer.class.getResourceAsStream("/" + COMMON_WORDS_FILENAME);
-            if (fis == null) {
-                String message = String.format(  "Unable to find common words file resource '%s'",
-                                COMMON_WORDS_FILENAME);
-                throw new RuntimeException(message);
-            }
+            return new org.apache.lucene.analysis.standard.StandardAnalyzer(Version.LUCENE_CURRENT, getCommonWords());
+        } else {
+            return new org.apache.lucene.analysis.standard.StandardAnalyzer(Version.LUCENE_CURRENT);
+        }
+    }
+    
+    /**
+     * @return immutable set of common (stop) words, shared by all analyzers
+     */
+    public static CharArraySet getCommonWords() {
+        return CommonWordsHolder.COMMON_WORDS;
+    }
+    
+    private static CharArraySet loadCommonWords() {
+        InputStream fis = StandardAnalyzer.class.getResourceAsStream("/" + COMMON_WORDS_FILENAME);
+        if (fis == null) {
+            String message = String.format(  "Unable to find common words file resource '%s'",
+                            COMMON_WORDS_FILENAME);
+            throw new RuntimeException(message);
+        }
 
-            Reader in = new InputStreamReader(fis);
+        Reader in = new InputStreamReader(fis);
+        try {
+            return CharArraySet.unmodifiableSet(WordlistLoader.getWordSet(in, Version.LUCENE_CURRENT));
+        } catch (Exception e) {
+            String message =
+                String.format("Error while reading from common words file '%s'", COMMON_WORDS_FILENAME);
+            throw new RuntimeException(message, e);
+        } finally {
             try {
-                result = new org.apache.lucene.analysis.standard.StandardAnalyzer(Version.LUCENE_CURRENT, in);
-            } catch (Exception e) {
-                String message =
-                    String.format("Error while reading from common words file '%s'", COMMON_WORDS_FILENAME);
-                throw new RuntimeException(message, e);
-            } finally {
-                try {
-                    if (in != null) {
-                        in.close();
-                    }
-                    if (fis != null) {
-                        fis.close();
-                    }
-                } catch (IOException e) {
-                    LOGGER.debug(String.format( "Error while closing common words file '%s': %s",
-                                    COMMON_WORDS_FILENAME,
-                                    e));
-                }
+                in.close();
+                fis.close();
+            } catch (IOException e) {
+                LOGGER.debug(String.format( "Error while closing common words file '%s': %s",
+                                COMMON_WORDS_FILENAME,
+                                e));
             }
-        } else {
-            result = new org.apache.lucene.analysis.standard.StandardAnalyzer(Version.LUCENE_CURRENT);
         }
-        
-        return result;
     }
-    
 
 }
@@ -15,6 +15,9 @@
  */
 package com.scaleunlimited.classify.analyzer;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Map;
 
 import cascading.tuple.Tuple;
@@ -32,6 +35,22 @@ import com.scaleunlimited.classify.datum.TextDatum;
 @SuppressWarnings("serial")
 public abstract class TextDatumAnalyzer implements IAnalyzer {
 
+    private AnalysisBudget _budget = new AnalysisBudget();
+    private transient boolean _truncated = false;
+
+    public AnalysisBudget getBudget() {
+        return _budget;
+    }
+
+    /**
+     * @param budget limits on how much of each document gets analyzed
+     * @return this analyzer
+     */
+    public TextDatumAnalyzer setBudget(AnalysisBudget budget) {
+        _budget = budget;
+        return this;
+    }
+
     /**
      * @param contentText input text to be parsed into terms
      * @return salient terms and their frequencies
@@ -48,13 +67,41 @@ public abstract class TextDatumAnalyzer implements IAnalyzer {
     public TermsDatum getTermsDatum(Tuple tuple) {
         TermsDatum result = null;
         TextDatum textDatum = new TextDatum(tuple);
-        Map<String, Integer> termMap = getTermMap(textDatum.getContent());
+        Map<String, Integer> termMap = getTermMap(textDatum);
         if (termMap != null) {
             result = new TermsDatum(termMap, textDatum.getLabel());
             result.setPayload(textDatum.getPayload());
         }
         return result;
     }
+    
+    /**
+     * @param textDatum contains input text to be parsed into terms, which is
+     * first limited by the analysis budget.
+     * @return salient terms and their frequencies
+     * (or null if this content should be ignored)
+     */
+    public Map<String, Integer> getTermMap(TextDatum textDatum) {
+        String content = textDatum.getContent();
+        String limitedContent = _budget.limitContent(content);
+        
+        // We get back the same string if nothing had to be cut.
+        _truncated = (limitedContent != content);
+        return getTermMap(limitedContent);
+    }
+    
+    @Override
+    public boolean wasTruncated() {
+        return _truncated;
+    }
+    
+    /**
+     * Subclasses call this when they stop extracting terms early
+     * (e.g., because the budget's token limit was reached).
+     */
+    protected void setTruncated() {
+        _truncated = true;
+    }
         
     /**
      * Initialize the newly constructed (e.g., recently deserialized) analyzer,
@@ -72,4 +119,19 @@ public abstract class TextDatumAnalyzer implements IAnalyzer {
     public void stats() {
         // Base does nothing.
     }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        _budget = new AnalysisBudget();
+        _budget.readFields(in);
+    }
+
+    // Nothing is written for an unlimited budget, so that the analyzer is
+    // saved with the model as just its class name.
+    @Override
+    public void write(DataOutput out) throws IOException {
+        if (!_budget.isUnlimited()) {
+            _budget.write(out);
+        }
+    }
 }
@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.datum;
+
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+
+import com.scaleunlimited.cascading.BaseDatum;
+
+/**
+ * The classification of a document's content by a given model, keyed by
+ * fingerprints of both, so that an incremental classification run can
+ * reuse it for documents that haven't changed since the previous run.
+ */
+@SuppressWarnings("serial")
+public class ClassificationStateDatum extends BaseDatum {
+
+    public static final String KEY_FN = fieldName(ClassificationStateDatum.class, "key");
+    public static final String LABEL_FN = fieldName(ClassificationStateDatum.class, "label");
+    public static final String SCORE_FN = fieldName(ClassificationStateDatum.class, "score");
+
+    public static final Fields FIELDS = new Fields(KEY_FN, LABEL_FN, SCORE_FN);
+    
+    public ClassificationStateDatum(Tuple tuple) {
+        super(FIELDS, tuple);
+    }
+    
+    public ClassificationStateDatum(String key, String label, float score) {
+        super(FIELDS);
+        setKey(key);
+        setLabel(label);
+        setScore(score);
+    }
+
+    public String getKey() {
+        return _tupleEntry.getString(KEY_FN);
+    }
+
+    public void setKey(String key) {
+        _tupleEntry.setString(KEY_FN, key);
+    }
+
+    public String getLabel() {
+        return _tupleEntry.getString(LABEL_FN);
+    }
+
+    public void setLabel(String label) {
+        _tupleEntry.setString(LABEL_FN, label);
+    }
+
+    public float getScore() {
+        return _tupleEntry.getFloat(SCORE_FN);
+    }
+
+    public void setScore(float score) {
+        _tupleEntry.setFloat(SCORE_FN, score);
+    }
+}
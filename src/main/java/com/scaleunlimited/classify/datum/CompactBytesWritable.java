@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.datum;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * {@link BytesWritable} that writes a varint length, versus a fixed four
+ * byte length. Since the format comes from the class (not from a separate
+ * Hadoop serialization), data written as a plain BytesWritable is still
+ * read the same way it was written.
+ */
+public class CompactBytesWritable extends BytesWritable {
+
+    public CompactBytesWritable() {
+        super();
+    }
+    
+    public CompactBytesWritable(byte[] bytes) {
+        super(bytes);
+    }
+    
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, getLength());
+        out.write(getBytes(), 0, getLength());
+    }
+    
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        int length = WritableUtils.readVInt(in);
+        setSize(0);
+        setSize(length);
+        in.readFully(getBytes(), 0, length);
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.datum;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+
+import com.scaleunlimited.classify.BaseModel;
+
+/**
+ * Same information as a {@link TermsDatum}, but with the terms and their
+ * counts packed into a single binary block, versus two nested Tuples of
+ * Strings and boxed Integers. The block holds the number of terms, and then
+ * for each term (in sorted order) the length of the prefix it shares with
+ * the previous term, the remaining UTF-8 bytes, and its count, all lengths
+ * and counts being varints. Use {@link #iterator()} to walk the terms without
+ * building a map.
+ */
+@SuppressWarnings("serial")
+public class CompactTermsDatum extends LabeledDatum {
+
+    public static final String TERMS_BLOCK_FN = fieldName(CompactTermsDatum.class, "termsblock");
+
+    public static final Fields FIELDS =
+        LabeledDatum.FIELDS.append(new Fields(TERMS_BLOCK_FN));
+    
+    public CompactTermsDatum(Fields fields) {
+        super(fields);
+    }
+
+    public CompactTermsDatum(Tuple tuple) {
+        super(FIELDS, tuple);
+    }
+
+    public CompactTermsDatum(Fields fields, Tuple tuple) {
+        super(fields, tuple);
+    }
+    
+    public CompactTermsDatum(Map<String, Integer> termMap) {
+        this(termMap, BaseModel.NOT_YET_LABELED);
+    }
+
+    public CompactTermsDatum(Map<String, Integer> termMap, String label) {
+        super(FIELDS);
+        setLabel(label);
+        setTermMap(termMap);
+    }
+    
+    public CompactTermsDatum(TermsDatum termsDatum) {
+        this(termsDatum.getTermMap(), termsDatum.getLabel());
+        setPayload(termsDatum.getPayload());
+    }
+
+    public TermsDatum toTermsDatum() {
+        TermsDatum result = new TermsDatum(getTermMap(), getLabel());
+        result.setPayload(getPayload());
+        return result;
+    }
+    
+    public TermIterator iterator() {
+        BytesWritable termsBlock = getTermsBlock();
+        return new TermIterator(termsBlock.getBytes(), termsBlock.getLength());
+    }
+    
+    public int getNumTerms() {
+        return iterator().getNumTerms();
+    }
+    
+    public Map<String, Integer> getTermMap() {
+        BytesWritable termsBlock = getTermsBlock();
+        return decodeTerms(termsBlock.getBytes(), termsBlock.getLength());
+    }
+
+    public void setTermMap(Map<String, Integer> termMap) {
+        byte[] termsBlock = encodeTerms(termMap);
+        _tupleEntry.setObject(TERMS_BLOCK_FN, new CompactBytesWritable(termsBlock));
+    }
+    
+    private BytesWritable getTermsBlock() {
+        return (BytesWritable)_tupleEntry.getObject(TERMS_BLOCK_FN);
+    }
+    
+    /**
+     * @param termMap terms and their counts
+     * @return sorted, front-coded block of terms and counts
+     */
+    public static byte[] encodeTerms(Map<String, Integer> termMap) {
+        List<String> terms = new ArrayList<String>(termMap.keySet());
+        Collections.sort(terms);
+        
+        try {
+            DataOutputBuffer out = new DataOutputBuffer();
+            WritableUtils.writeVInt(out, terms.size());
+            
+            byte[] prevTermBytes = new byte[0];
+            for (String term : terms) {
+                byte[] termBytes = term.getBytes(StandardCharsets.UTF_8);
+                int prefixLength = sharedPrefixLength(prevTermBytes, termBytes);
+                WritableUtils.writeVInt(out, prefixLength);
+                WritableUtils.writeVInt(out, termBytes.length - prefixLength);
+                out.write(termBytes, prefixLength, termBytes.length - prefixLength);
+                WritableUtils.writeVInt(out, termMap.get(term));
+                prevTermBytes = termBytes;
+            }
+            
+            byte[] result = new byte[out.getLength()];
+            System.arraycopy(out.getData(), 0, result, 0, out.getLength());
+            return result;
+        } catch (IOException e) {
+            throw new RuntimeException("Impossible error", e);
+        }
+    }
+    
+    private static int sharedPrefixLength(byte[] prevTermBytes, byte[] termBytes) {
+        int maxLength = Math.min(prevTermBytes.length, termBytes.length);
+        int result = 0;
+        while ((result < maxLength) && (prevTermBytes[result] == termBytes[result])) {
+            result++;
+        }
+        
+        return result;
+    }
+    
+    /**
+     * @param block sorted, front-coded block of terms and counts, as created
+     * by {@link #encodeTerms(Map)}
+     * @param length number of bytes in <block>
+     * @return terms and their counts
+     */
+    public static Map<String, Integer> decodeTerms(byte[] block, int length) {
+        TermIterator iter = new TermIterator(block, length);
+        Map<String, Integer> result = new HashMap<String, Integer>(iter.getNumTerms());
+        while (iter.next()) {
+            result.put(iter.getTerm(), iter.getCount());
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Walks the terms in a block in sorted order, reusing a single buffer
+     * for the term bytes. The term String is only created if requested.
+     */
+    public static class TermIterator {
+        private byte[] _block;
+        private int _pos;
+        private int _numTerms;
+        private int _remainingTerms;
+        
+        private byte[] _termBytes = new byte[32];
+        private int _termLength;
+        private int _count;
+        private String _term;
+        
+        public TermIterator(byte[] block, int length) {
+            _block = block;
+            _pos = 0;
+            _numTerms = (length == 0 ? 0 : readVInt());
+            _remainingTerms = _numTerms;
+        }
+        
+        public int getNumTerms() {
+            return _numTerms;
+        }
+        
+        /**
+         * @return true if we advanced to the next term, false if there are no more.
+         */
+        public boolean next() {
+            if (_remainingTerms == 0) {
+                return false;
+            }
+            
+            int prefixLength = readVInt();
+            int suffixLength = readVInt();
+            _termLength = prefixLength + suffixLength;
+            if (_termLength > _termBytes.length) {
+                byte[] newTermBytes = new byte[Math.max(_termLength, _termBytes.length * 2)];
+                System.arraycopy(_termBytes, 0, newTermBytes, 0, prefixLength);
+                _termBytes = newTermBytes;
+            }
+            
+            System.arraycopy(_block, _pos, _termBytes, prefixLength, suffixLength);
+            _pos += suffixLength;
+            _count = readVInt();
+            _term = null;
+            _remainingTerms--;
+            return true;
+        }
+        
+        public String getTerm() {
+            if (_term == null) {
+                _term = new String(_termBytes, 0, _termLength, StandardCharsets.UTF_8);
+            }
+            
+            return _term;
+        }
+        
+        public int getCount() {
+            return _count;
+        }
+        
+        private int readVInt() {
+            try {
+                int result = WritableComparator.readVInt(_block, _pos);
+                _pos += WritableUtils.decodeVIntSize(_block[_pos]);
+                return result;
+            } catch (IOException e) {
+                throw new RuntimeException("Impossible error", e);
+            }
+        }
+    }
+}
@@ -15,7 +15,17 @@
  */
 package com.scaleunlimited.classify.datum;
 
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.DataInputBuffer;
@@ -26,14 +36,23 @@ import cascading.tuple.Tuple;
 
 import com.scaleunlimited.cascading.BaseDatum;
 import com.scaleunlimited.classify.BaseModel;
+import com.scaleunlimited.classify.ContentFingerprint;
 import com.scaleunlimited.classify.analyzer.IAnalyzer;
 import com.scaleunlimited.classify.analyzer.TextDatumAnalyzer;
+import com.scaleunlimited.classify.model.LazyModel;
 
 /**
  * Convenience datum for holding a classification model ({@link BaseModel} subclass)
  * as well as the analyzer ({@link TextDatumAnalyzer} subclass) that should be used to
  * pre-process (i.e., create {@link TermsDatum} documents for) the {@link TextDatum}
  * documents to be classified.
+ * 
+ * The model data starts with a header (magic number, format version, flags,
+ * model class name, label names and a CRC32 checksum of the rest), followed
+ * by the model in the form written by {@link BaseModel#writeModel(java.io.DataOutput)},
+ * optionally deflated. Model data written before checksums were added is read
+ * without checking. Model data from before this format was added (just the output of
+ * {@link BaseModel#write(java.io.DataOutput)}) can still be read.
  */
 @SuppressWarnings({"serial", "rawtypes"})
 public class ModelDatum extends BaseDatum {
@@ -46,6 +65,14 @@ public class ModelDatum extends BaseDatum {
                                                     MODEL_FN,
                                                     MODEL_DATA_FN);
     
+    // "CLMD" - no old format model data can start with this, as it would be
+    // the length of a (giant) normalizer class name.
+    private static final int MODEL_MAGIC = 0x434C4D44;
+    private static final int MODEL_FORMAT_VERSION = 2;
+    
+    private static final int COMPRESSED_FLAG = 0x01;
+    private static final int CHECKSUM_FLAG = 0x02;
+    
     public ModelDatum(Fields fields) {
         super(fields);
     }
@@ -65,30 +92,238 @@ public class ModelDatum extends BaseDatum {
     }
 
     public IAnalyzer getAnalyzer() throws Exception {
-        String className = _tupleEntry.getString(ANALYZER_FN);
-        return (IAnalyzer)Class.forName(className).newInstance();
+        Object analyzerValue = _tupleEntry.getObject(ANALYZER_FN);
+        if (!(analyzerValue instanceof BytesWritable)) {
+            // Just the class name, so the analyzer uses its default settings.
+            return (IAnalyzer)Class.forName(analyzerValue.toString()).newInstance();
+        }
+        
+        BytesWritable analyzerData = (BytesWritable)analyzerValue;
+        DataInputBuffer dib = new DataInputBuffer();
+        dib.reset(analyzerData.getBytes(), analyzerData.getLength());
+        IAnalyzer analyzer = (IAnalyzer)Class.forName(dib.readUTF()).newInstance();
+        analyzer.readFields(dib);
+        return analyzer;
     }
 
-    public void setAnalyzer(IAnalyzer analyzer) {
-        _tupleEntry.setString(ANALYZER_FN, analyzer.getClass().getName());
+    /**
+     * Save the analyzer's class name, and (if it has any) its settings. To
+     * keep the same fields as older model data, which only has the class name,
+     * settings are saved in the same field, following the class name.
+     * 
+     * @param analyzer analyzer used to train the model
+     * @throws IOException
+     */
+    public void setAnalyzer(IAnalyzer analyzer) throws IOException {
+        String className = analyzer.getClass().getName();
+        DataOutputBuffer settings = new DataOutputBuffer();
+        analyzer.write(settings);
+        if (settings.getLength() == 0) {
+            _tupleEntry.setString(ANALYZER_FN, className);
+            return;
+        }
+        
+        DataOutputBuffer dob = new DataOutputBuffer();
+        dob.writeUTF(className);
+        dob.write(settings.getData(), 0, settings.getLength());
+        BytesWritable analyzerData = new CompactBytesWritable(Arrays.copyOf(dob.getData(), dob.getLength()));
+        _tupleEntry.setObject(ANALYZER_FN, analyzerData);
+    }
+    
+    public String getModelClassName() {
+        return _tupleEntry.getString(MODEL_FN);
     }
     
     public BaseModel getModel() throws Exception {
-        String className = _tupleEntry.getString(MODEL_FN);
-        BytesWritable modelData = (BytesWritable)(_tupleEntry.getObject(MODEL_DATA_FN));
-        DataInputBuffer dib = new DataInputBuffer();
-        dib.reset(modelData.getBytes(), modelData.getLength());
+        BytesWritable modelData = getModelData();
+        return parseModel(getModelClassName(), modelData.getBytes(), modelData.getLength());
+    }
+    
+    /**
+     * @return names of the model's labels, which only requires reading the
+     * header (unless the model data is in the original format).
+     * @throws Exception
+     */
+    public List<String> getLabelNames() throws Exception {
+        if (!hasHeader()) {
+            return getModel().getLabelNames();
+        }
+        
+        DataInputBuffer dib = getModelDataInput();
+        readHeader(dib);
+        return readLabelNames(dib);
+    }
+    
+    /**
+     * @return fingerprint of the serialized model, which changes if the
+     * model (or how it's serialized) changes.
+     */
+    public ContentFingerprint getModelFingerprint() {
+        BytesWritable modelData = getModelData();
+        return ContentFingerprint.fromBytes(modelData.getBytes(), 0, modelData.getLength());
+    }
+    
+    /**
+     * @return model that's only deserialized when it's first used to classify
+     * something, and which is cheap to serialize (e.g. as part of a Cascading
+     * operation), since it holds the (compressed) model data.
+     * @throws Exception
+     */
+    public LazyModel getLazyModel() throws Exception {
+        BytesWritable modelData = getModelData();
+        byte[] bytes = Arrays.copyOf(modelData.getBytes(), modelData.getLength());
+        return new LazyModel(getModelClassName(), bytes, getLabelNames());
+    }
+    
+    /**
+     * @param className class of model
+     * @param data model data, as stored in a ModelDatum (either format)
+     * @param length number of bytes in <data>
+     * @return deserialized model
+     * @throws Exception
+     */
+    public static BaseModel parseModel(String className, byte[] data, int length) throws Exception {
         BaseModel model = (BaseModel)Class.forName(className).newInstance();
-        model.readFields(dib);
+        DataInputBuffer dib = new DataInputBuffer();
+        dib.reset(data, length);
+        if (!hasHeader(data, length)) {
+            model.readFields(dib);
+            return model;
+        }
+        
+        int flags = readHeader(dib);
+        readLabelNames(dib);
+        if ((flags & CHECKSUM_FLAG) != 0) {
+            long expected = dib.readLong();
+            long actual = checksum(data, dib.getPosition(), length);
+            if (actual != expected) {
+                throw new IOException(String.format("Model data checksum %016x doesn't match expected checksum %016x",
+                                                    actual,
+                                                    expected));
+            }
+        }
+        
+        if ((flags & COMPRESSED_FLAG) != 0) {
+            InflaterInputStream iis = new InflaterInputStream(dib);
+            model.readModel(new DataInputStream(iis));
+            iis.close();
+        } else {
+            model.readModel(dib);
+        }
+        
         return model;
     }
 
     public void setModel(BaseModel model) throws IOException {
-        _tupleEntry.setString(MODEL_FN, model.getClass().getName());
+        setModel(model, true);
+    }
+    
+    /**
+     * The header includes a checksum of the (possibly deflated) model, which
+     * is verified when the model is parsed, so a truncated or corrupted model
+     * directory is caught before the model is used.
+     * 
+     * @param model trained model
+     * @param compress true => deflate the model (but not the header)
+     * @throws IOException
+     */
+    public void setModel(BaseModel model, boolean compress) throws IOException {
+        String className = model.getClass().getName();
+        _tupleEntry.setString(MODEL_FN, className);
+        
         DataOutputBuffer dob = new DataOutputBuffer();
-        model.write(dob);
-        BytesWritable modelData = new BytesWritable(dob.getData());
+        dob.writeInt(MODEL_MAGIC);
+        dob.writeByte(MODEL_FORMAT_VERSION);
+        dob.writeByte(CHECKSUM_FLAG | (compress ? COMPRESSED_FLAG : 0));
+        dob.writeUTF(className);
+        List<String> labelNames = model.getLabelNames();
+        dob.writeInt(labelNames.size());
+        for (String labelName : labelNames) {
+            dob.writeUTF(labelName);
+        }
+        
+        DataOutputBuffer body = new DataOutputBuffer();
+        if (compress) {
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            DeflaterOutputStream dos = new DeflaterOutputStream(body, deflater);
+            DataOutputStream out = new DataOutputStream(dos);
+            model.writeModel(out);
+            out.flush();
+            dos.finish();
+            deflater.end();
+        } else {
+            model.writeModel(body);
+        }
+        
+        dob.writeLong(checksum(body.getData(), 0, body.getLength()));
+        dob.write(body.getData(), 0, body.getLength());
+        
+        // Only keep the bytes we've written, not the rest of the buffer.
+        BytesWritable modelData = new CompactBytesWritable(Arrays.copyOf(dob.getData(), dob.getLength()));
         _tupleEntry.setObject(MODEL_DATA_FN, modelData);
     }
     
+    private BytesWritable getModelData() {
+        return (BytesWritable)(_tupleEntry.getObject(MODEL_DATA_FN));
+    }
+    
+    private DataInputBuffer getModelDataInput() {
+        BytesWritable modelData = getModelData();
+        DataInputBuffer dib = new DataInputBuffer();
+        dib.reset(modelData.getBytes(), modelData.getLength());
+        return dib;
+    }
+    
+    /**
+     * @return true if the model data is in the current format (with a header),
+     * versus the original format of just the model's {@link BaseModel#write(java.io.DataOutput)} output.
+     */
+    public boolean hasHeader() {
+        BytesWritable modelData = getModelData();
+        return hasHeader(modelData.getBytes(), modelData.getLength());
+    }
+    
+    private static boolean hasHeader(byte[] bytes, int length) {
+        if (length < 4) {
+            return false;
+        }
+        
+        int magic = ((bytes[0] & 0xFF) << 24)
+                    | ((bytes[1] & 0xFF) << 16)
+                    | ((bytes[2] & 0xFF) << 8)
+                    | (bytes[3] & 0xFF);
+        return magic == MODEL_MAGIC;
+    }
+    
+    // Read up through the model class name, and return the flags.
+    private static int readHeader(DataInput in) throws IOException {
+        in.readInt();
+        int version = in.readByte();
+        if (version > MODEL_FORMAT_VERSION) {
+            throw new IOException(String.format("Model format version %d is newer than supported version %d",
+                                                version,
+                                                MODEL_FORMAT_VERSION));
+        }
+        
+        int flags = in.readByte();
+        in.readUTF();
+        return flags;
+    }
+    
+    private static long checksum(byte[] data, int start, int end) {
+        CRC32 crc = new CRC32();
+        crc.update(data, start, end - start);
+        return crc.getValue();
+    }
+    
+    private static List<String> readLabelNames(DataInput in) throws IOException {
+        int numLabels = in.readInt();
+        List<String> result = new ArrayList<String>(numLabels);
+        for (int i = 0; i < numLabels; i++) {
+            result.add(in.readUTF());
+        }
+        
+        return result;
+    }
+    
 }
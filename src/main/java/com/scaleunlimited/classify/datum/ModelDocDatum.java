@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.datum;
+
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+
+/**
+ * The classification of a single document by one of several named models,
+ * as output by {@link com.scaleunlimited.classify.MultiClassifyDocsPipe}
+ * when it emits one tuple per model.
+ */
+@SuppressWarnings("serial")
+public class ModelDocDatum extends DocDatum {
+
+    public static final String MODEL_NAME_FN = fieldName(ModelDocDatum.class, "modelname");
+
+    public static final Fields FIELDS = DocDatum.FIELDS.append(new Fields(MODEL_NAME_FN));
+    
+    public ModelDocDatum(Fields fields) {
+        super(fields);
+    }
+
+    public ModelDocDatum(Tuple tuple) {
+        super(FIELDS, tuple);
+    }
+    
+    public ModelDocDatum(Fields fields, Tuple tuple) {
+        super(fields, tuple);
+    }
+    
+    public ModelDocDatum(String modelName, String label, float score) {
+        super(FIELDS);
+        setModelName(modelName);
+        setLabel(label);
+        setScore(score);
+    }
+
+    public String getModelName() {
+        return _tupleEntry.getString(MODEL_NAME_FN);
+    }
+
+    public void setModelName(String modelName) {
+        _tupleEntry.setString(MODEL_NAME_FN, modelName);
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.datum;
+
+import java.util.List;
+
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+
+import com.scaleunlimited.cascading.PayloadDatum;
+
+/**
+ * The classification of a single document by each of several named models,
+ * as output by {@link com.scaleunlimited.classify.MultiClassifyDocsPipe}
+ * when it emits one tuple per document. Each model gets a label field and
+ * a score field, so the fields depend on the model names (see
+ * {@link #makeFields(List)}).
+ */
+@SuppressWarnings("serial")
+public class MultiDocDatum extends PayloadDatum {
+
+    public MultiDocDatum(Fields fields) {
+        super(fields);
+    }
+
+    public MultiDocDatum(Fields fields, Tuple tuple) {
+        super(fields, tuple);
+    }
+    
+    /**
+     * @param modelNames names of the models, in output order
+     * @return payload fields, followed by a label and score field for each model
+     */
+    public static Fields makeFields(List<String> modelNames) {
+        Fields result = PayloadDatum.FIELDS;
+        for (String modelName : modelNames) {
+            result = result.append(new Fields(  getLabelFieldName(modelName),
+                                                getScoreFieldName(modelName)));
+        }
+        
+        return result;
+    }
+    
+    public static String getLabelFieldName(String modelName) {
+        return DocDatum.LABEL_FN + "-" + modelName;
+    }
+    
+    public static String getScoreFieldName(String modelName) {
+        return DocDatum.SCORE_FN + "-" + modelName;
+    }
+    
+    /**
+     * @param modelName name of the model
+     * @return label assigned by the model, or null if the document wasn't
+     * classified by it (e.g. the model's analyzer skipped the document).
+     */
+    public String getLabel(String modelName) {
+        return _tupleEntry.getString(getLabelFieldName(modelName));
+    }
+
+    public void setLabel(String modelName, String label) {
+        _tupleEntry.setString(getLabelFieldName(modelName), label);
+    }
+
+    public float getScore(String modelName) {
+        return _tupleEntry.getFloat(getScoreFieldName(modelName));
+    }
+
+    public void setScore(String modelName, float score) {
+        _tupleEntry.setFloat(getScoreFieldName(modelName), score);
+    }
+}
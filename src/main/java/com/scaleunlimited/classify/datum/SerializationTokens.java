@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.datum;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import cascading.flow.FlowProcess;
+
+import com.scaleunlimited.cascading.BasePlatform;
+
+/**
+ * Cascading serialization token for the {@link CompactBytesWritable} fields
+ * in our datums (e.g. {@link CompactTermsDatum} terms, {@link ModelDatum}
+ * data), so that each one isn't preceded by its full class name.
+ * 
+ * Flows that write these datums should call {@link #register(Map)} on the
+ * flow connector's properties, and anything that reads them outside of a
+ * flow should use {@link #makeFlowProcess(BasePlatform)}, since the token
+ * has to be known when reading. Hadoop's own WritableSerialization does the
+ * actual (de)serialization, so data written without the token, or as a
+ * plain BytesWritable, can still be read.
+ */
+public class SerializationTokens {
+
+    // Cascading reserves tokens below 128 for its own types.
+    public static final int COMPACT_BYTES_WRITABLE_TOKEN = 180;
+    
+    private static final String CASCADING_TOKENS_KEY = "cascading.serialization.tokens";
+    
+    private SerializationTokens() {
+        // Only static methods
+    }
+    
+    /**
+     * Add our token to <properties>.
+     * 
+     * @param properties flow connector properties
+     */
+    public static void register(Map<Object, Object> properties) {
+        String token = COMPACT_BYTES_WRITABLE_TOKEN + "=" + CompactBytesWritable.class.getName();
+        Object tokens = properties.get(CASCADING_TOKENS_KEY);
+        if (tokens == null) {
+            properties.put(CASCADING_TOKENS_KEY, token);
+        } else if (!tokens.toString().contains(token)) {
+            properties.put(CASCADING_TOKENS_KEY, tokens + "," + token);
+        }
+    }
+    
+    /**
+     * @param platform platform whose taps will be read (or written)
+     * @return flow process for opening taps outside of a flow, which knows
+     * about our token.
+     * @throws Exception
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public static FlowProcess makeFlowProcess(BasePlatform platform) throws Exception {
+        FlowProcess flowProcess = platform.makeFlowProcess();
+        
+        Map<Object, Object> properties = new HashMap<Object, Object>();
+        Object tokens = flowProcess.getProperty(CASCADING_TOKENS_KEY);
+        if (tokens != null) {
+            properties.put(CASCADING_TOKENS_KEY, tokens);
+        }
+        register(properties);
+        
+        Map<String, String> config = new HashMap<String, String>();
+        config.put(CASCADING_TOKENS_KEY, properties.get(CASCADING_TOKENS_KEY).toString());
+        return flowProcess.copyWith(flowProcess.mergeMapIntoConfig(flowProcess.getConfigCopy(), config));
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.datum;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.WritableUtils;
+
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+
+import com.scaleunlimited.classify.BaseModel;
+import com.scaleunlimited.classify.vectors.SparseVectorWritable;
+
+/**
+ * A document that's already been converted into a fixed feature space, as
+ * a sparse vector of (non-negative) int feature ids and float values, plus
+ * the usual label and payload. The features are stored as a serialized
+ * {@link SparseVectorWritable}, in increasing id order. The same id can
+ * appear more than once, e.g. when two terms hash to the same id, so that
+ * models can handle such collisions the same way as they would for the
+ * original terms.
+ */
+@SuppressWarnings("serial")
+public class VectorDatum extends LabeledDatum {
+
+    public static final String FEATURES_FN = fieldName(VectorDatum.class, "features");
+
+    public static final Fields FIELDS =
+        LabeledDatum.FIELDS.append(new Fields(FEATURES_FN));
+    
+    public VectorDatum(Fields fields) {
+        super(fields);
+    }
+
+    public VectorDatum(Tuple tuple) {
+        super(FIELDS, tuple);
+    }
+
+    public VectorDatum(Fields fields, Tuple tuple) {
+        super(fields, tuple);
+    }
+    
+    public VectorDatum(int[] ids, float[] values, int numFeatures) {
+        this(ids, values, numFeatures, BaseModel.NOT_YET_LABELED);
+    }
+
+    public VectorDatum(int[] ids, float[] values, int numFeatures, String label) {
+        this(new SparseVectorWritable(ids, values, numFeatures), label);
+    }
+    
+    public VectorDatum(SparseVectorWritable vector, String label) {
+        super(FIELDS);
+        setLabel(label);
+        setVector(vector);
+    }
+    
+    public int getNumFeatures() {
+        BytesWritable featuresBlock = getFeaturesBlock();
+        if (featuresBlock.getLength() == 0) {
+            return 0;
+        }
+        
+        try {
+            return WritableUtils.readVInt(makeInput(featuresBlock));
+        } catch (IOException e) {
+            throw new RuntimeException("Invalid features block", e);
+        }
+    }
+    
+    /**
+     * Decode the features into <reuse>, without any intermediate objects.
+     * 
+     * @param reuse vector whose arrays are (re)used to hold the features
+     * @return <reuse>
+     */
+    public SparseVectorWritable getVector(SparseVectorWritable reuse) {
+        BytesWritable featuresBlock = getFeaturesBlock();
+        if (featuresBlock.getLength() == 0) {
+            reuse.set(new int[0], new float[0], 0);
+            return reuse;
+        }
+        
+        try {
+            reuse.readFields(makeInput(featuresBlock));
+            return reuse;
+        } catch (IOException e) {
+            throw new RuntimeException("Invalid features block", e);
+        }
+    }
+    
+    public SparseVectorWritable getVector() {
+        return getVector(new SparseVectorWritable());
+    }
+    
+    public int[] getIds() {
+        SparseVectorWritable vector = getVector();
+        return Arrays.copyOf(vector.getIndexes(), vector.getNumEntries());
+    }
+    
+    public float[] getValues() {
+        SparseVectorWritable vector = getVector();
+        return Arrays.copyOf(vector.getValues(), vector.getNumEntries());
+    }
+    
+    public void setVector(SparseVectorWritable vector) {
+        _tupleEntry.setObject(FEATURES_FN, new CompactBytesWritable(vector.toBytes()));
+    }
+    
+    private BytesWritable getFeaturesBlock() {
+        return (BytesWritable)_tupleEntry.getObject(FEATURES_FN);
+    }
+    
+    private static DataInputBuffer makeInput(BytesWritable featuresBlock) {
+        DataInputBuffer result = new DataInputBuffer();
+        result.reset(featuresBlock.getBytes(), featuresBlock.getLength());
+        return result;
+    }
+}
@@ -84,12 +84,22 @@ public abstract class BaseLibLinearModel extends BaseModel<TermsDatum> {
         _featuresList.add(datum.getTermMap());
     }
 
+	@Override
+	public void addTrainingTerms(Map<String, Integer> termMap, String label) {
+        _labelList.add(label);
+        _featuresList.add(termMap);
+    }
+
 	@Override
 	public String getDetails() {
 		// TODO output info about label names and model
 		return "";
 	}
 
+    String getNormalizerClassname() {
+        return _normalizerClassname;
+    }
+    
     public BaseLibLinearModel setNormalizerClassname(Class<? extends BaseNormalizer> normalizerClass) {
         _normalizerClassname  = normalizerClass.getCanonicalName();
         return this;
@@ -129,6 +139,27 @@ public abstract class BaseLibLinearModel extends BaseModel<TermsDatum> {
         return new Parameter(_solverType, _constraintsViolation, _eps);
     }
 
+	@Override
+	public List<String> getLabelNames() {
+	    return (_labelNames == null ? super.getLabelNames() : _labelNames);
+	}
+	
+	@Override
+	public void readModel(DataInput in) throws IOException {
+        _normalizerClassname = in.readUTF();
+        _normalizer = null;
+        _labelNames = readStrings(in);
+        _model = LibLinearModelCodec.read(in);
+        _modelLabelIndexes = null;
+	}
+
+	@Override
+	public void writeModel(DataOutput out) throws IOException {
+		out.writeUTF(_normalizerClassname);
+        writeStrings(out, _labelNames);
+        LibLinearModelCodec.write(out, _model);
+	}
+
 	@Override
 	public void readFields(DataInput in) throws IOException {
         _normalizerClassname = in.readUTF();
@@ -37,8 +37,12 @@ import org.apache.mahout.math.Vector.Element;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.scaleunlimited.classify.StageTimer;
+import com.scaleunlimited.classify.StageTimer.Stage;
 import com.scaleunlimited.classify.datum.DocDatum;
 import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.datum.VectorDatum;
+import com.scaleunlimited.classify.vectors.SparseVectorWritable;
 
 import de.bwaldvogel.liblinear.Feature;
 import de.bwaldvogel.liblinear.FeatureNode;
@@ -61,11 +65,21 @@ public class HashedFeaturesLibLinearModel extends BaseLibLinearModel {
     // Values we need during training only, thus not saved
     private transient float _percentReduction = 0.10f;
     private transient boolean _averageCollisions = true;
+    private transient List<SparseVectorWritable> _vectorsList;
     
     public HashedFeaturesLibLinearModel() {
         super();
+        _vectorsList = new ArrayList<SparseVectorWritable>();
     }
 
+    int getMaxFeatureIndex() {
+        return _maxFeatureIndex;
+    }
+    
+    boolean isAverageCollisions() {
+        return _averageCollisions;
+    }
+    
     public HashedFeaturesLibLinearModel setPercentReduction(float percentReduction) {
     	_percentReduction = percentReduction;
     	return this;
@@ -76,6 +90,35 @@ public class HashedFeaturesLibLinearModel extends BaseLibLinearModel {
     	return this;
     }
     
+    @Override
+    public void reset() {
+        super.reset();
+        
+        if (_vectorsList != null) {
+            _vectorsList.clear();
+        }
+    }
+    
+    @Override
+    public boolean supportsVectors() {
+        return true;
+    }
+    
+    /**
+     * The vector's feature ids must be unreduced term hashes, as generated by
+     * {@link #calcHashJoaat(String)}, so that the resulting model can also
+     * classify regular {@link TermsDatum}s.
+     */
+    @Override
+    public void addTrainingVector(VectorDatum datum) {
+        if (_vectorsList == null) {
+            _vectorsList = new ArrayList<SparseVectorWritable>();
+        }
+        
+        _labelList.add(datum.getLabel());
+        _vectorsList.add(datum.getVector());
+    }
+    
     @Override
     public void readFields(DataInput in) throws IOException {
     	super.readFields(in);
@@ -88,6 +131,18 @@ public class HashedFeaturesLibLinearModel extends BaseLibLinearModel {
         out.writeInt(_maxFeatureIndex);
     }
 
+    @Override
+    public void readModel(DataInput in) throws IOException {
+        super.readModel(in);
+        _maxFeatureIndex = in.readInt();
+    }
+
+    @Override
+    public void writeModel(DataOutput out) throws IOException {
+        super.writeModel(out);
+        out.writeInt(_maxFeatureIndex);
+    }
+
     @Override
     public void train() {
     	train(_crossValidationRequired);
@@ -119,9 +174,23 @@ public class HashedFeaturesLibLinearModel extends BaseLibLinearModel {
         // down to some percentage of this count. But we want at least MIN_FEATURE_SIZE, so if
         // we're below that, just set it to the # of features - 1 (so some hashing
         // will occur, for testing).
-        Set<String> uniqueFeatures = new HashSet<String>();
-        for (Map<String, Integer> termsMap : _featuresList) {
-        	uniqueFeatures.addAll(termsMap.keySet());
+        boolean hasVectors = (_vectorsList != null) && !_vectorsList.isEmpty();
+        if (hasVectors && !_featuresList.isEmpty()) {
+            throw new IllegalStateException("Can't train on a mix of terms and feature vectors");
+        }
+        
+        Set<Object> uniqueFeatures = new HashSet<Object>();
+        if (hasVectors) {
+            for (SparseVectorWritable vector : _vectorsList) {
+                int[] ids = vector.getIndexes();
+                for (int i = 0; i < vector.getNumEntries(); i++) {
+                    uniqueFeatures.add(ids[i]);
+                }
+            }
+        } else {
+            for (Map<String, Integer> termsMap : _featuresList) {
+                uniqueFeatures.addAll(termsMap.keySet());
+            }
         }
         
         _maxFeatureIndex = Math.round(uniqueFeatures.size() * _percentReduction);
@@ -131,13 +200,21 @@ public class HashedFeaturesLibLinearModel extends BaseLibLinearModel {
         	LOGGER.debug(String.format("Resetting max feature index to be %d", _maxFeatureIndex));
         }
         
-        List<Feature[]> features = new ArrayList<Feature[]>(_featuresList.size());
-        for (Map<String, Integer> termsMap : _featuresList) {
-        	features.add(getFeatures(termsMap));
+        List<Feature[]> features = new ArrayList<Feature[]>(_labelList.size());
+        if (hasVectors) {
+            for (SparseVectorWritable vector : _vectorsList) {
+                features.add(getFeatures(vector, StageTimer.DISABLED));
+            }
+            
+            _vectorsList.clear();
+        } else {
+            for (Map<String, Integer> termsMap : _featuresList) {
+                features.add(getFeatures(termsMap, StageTimer.DISABLED));
+            }
+            
+            _featuresList.clear();
         }
         
-        _featuresList.clear();
-        
         if (_quietMode) {
             Linear.disableDebugOutput();
         }
@@ -175,12 +252,42 @@ public class HashedFeaturesLibLinearModel extends BaseLibLinearModel {
     
     @Override
     public DocDatum classify(TermsDatum datum) {
-        Feature[] features = getFeatures(datum.getTermMap());
+        return classify(datum, StageTimer.DISABLED);
+    }
+    
+    @Override
+    public DocDatum classify(TermsDatum datum, StageTimer timer) {
+        return classify(getFeatures(datum.getTermMap(), timer), timer);
+    }
+    
+    @Override
+    public DocDatum classifyTerms(Map<String, Integer> termMap) {
+        return classifyTerms(termMap, StageTimer.DISABLED);
+    }
+    
+    @Override
+    public DocDatum classifyTerms(Map<String, Integer> termMap, StageTimer timer) {
+        return classify(getFeatures(termMap, timer), timer);
+    }
+    
+    @Override
+    public DocDatum classifyVector(VectorDatum datum) {
+        return classifyVector(datum, StageTimer.DISABLED);
+    }
+    
+    @Override
+    public DocDatum classifyVector(VectorDatum datum, StageTimer timer) {
+        return classify(getFeatures(datum.getVector(), timer), timer);
+    }
+    
+    private DocDatum classify(Feature[] features, StageTimer timer) {
         double[] probEstimates = new double[_labelNames.size()];
         
+        long startTime = timer.start();
         int labelIndex = (int)Linear.predictProbability(_model,
                                                     	features,
                                                     	probEstimates);
+        timer.stop(Stage.PREDICTION, startTime);
         String labelName = _labelNames.get(labelIndex);
         
         if (_modelLabelIndexes == null) {
@@ -199,7 +306,7 @@ public class HashedFeaturesLibLinearModel extends BaseLibLinearModel {
     }
     
     public DocDatum[] classifyNResults(TermsDatum datum, int n) {
-        Feature[] features = getFeatures(datum.getTermMap());
+        Feature[] features = getFeatures(datum.getTermMap(), StageTimer.DISABLED);
         double[] probEstimates = new double[_labelNames.size()];
         
 //        int topScoreIndex = 
@@ -301,6 +408,15 @@ public class HashedFeaturesLibLinearModel extends BaseLibLinearModel {
 	}
     
     public static int calcHashJoaat(String term, int modulo) {
+        return calcHashJoaat(term) % modulo;
+    }
+    
+    /**
+     * @param term term to hash
+     * @return non-negative hash of the term, before it's reduced to fit
+     * a model's feature space.
+     */
+    public static int calcHashJoaat(String term) {
     	byte[] key;
     	
     	try {
@@ -321,7 +437,7 @@ public class HashedFeaturesLibLinearModel extends BaseLibLinearModel {
         hash ^= (hash >> 11);
         hash += (hash << 15);
         
-        return Math.abs(hash) % modulo;
+        return (hash == Integer.MIN_VALUE ? 0 : Math.abs(hash));
     }
 
     /**
@@ -332,16 +448,83 @@ public class HashedFeaturesLibLinearModel extends BaseLibLinearModel {
      * @return array of LibLinear features
      */
     
-    private Feature[] getFeatures(Map<String, Integer> terms) {
+    private Feature[] getFeatures(Map<String, Integer> terms, StageTimer timer) {
+        int[] ids = new int[terms.size()];
+        float[] values = new float[terms.size()];
+        int numFeatures = 0;
+        for (Map.Entry<String, Integer> entry : terms.entrySet()) {
+            ids[numFeatures] = calcHashJoaat(entry.getKey());
+            values[numFeatures] = entry.getValue();
+            numFeatures++;
+        }
+        
+        return getFeatures(ids, values, numFeatures, timer);
+    }
+    
+    private Feature[] getFeatures(SparseVectorWritable vector, StageTimer timer) {
+        return getFeatures(vector.getIndexes(), vector.getValues(), vector.getNumEntries(), timer);
+    }
+    
+    /**
+     * Given unreduced feature ids (term hashes) and their values, generate a
+     * feature array using _maxFeatureIndex as the max index.
+     * 
+     * @param ids feature ids, from {@link #calcHashJoaat(String)}
+     * @param values feature values (e.g. term counts)
+     * @param numFeatures number of entries to use from ids and values
+     * @param timer where to record time spent in each stage
+     * @return array of LibLinear features
+     */
+    private Feature[] getFeatures(int[] ids, float[] values, int numFeatures, StageTimer timer) {
+    	long startTime = timer.start();
+    	Vector v = makeHashedVector(ids, values, numFeatures, _maxFeatureIndex, _averageCollisions);
+    	timer.stop(Stage.VECTORIZATION, startTime);
+
+    	// Apply the term vector normalizer.
+    	startTime = timer.start();
+    	getNormalizer().normalize(v);
+    	timer.stop(Stage.NORMALIZATION, startTime);
 
-    	// First create the vector, where each term's index is the hash
-    	// of the term, and the value is the term count.
+    	startTime = timer.start();
+    	List<FeatureNode> features = new ArrayList<FeatureNode>(numFeatures);
+    	for (Element e : v.nonZeroes()) {
+    		features.add(new FeatureNode(e.index() + 1, e.get()));
+    	}
+
+    	// We need to sort by increasing index.
+    	Collections.sort(features, new Comparator<FeatureNode>() {
+
+    		@Override
+    		public int compare(FeatureNode o1, FeatureNode o2) {
+    			return o1.index - o2.index;
+    		}
+    	});
+
+    	Feature[] result = features.toArray(new FeatureNode[features.size()]);
+    	timer.stop(Stage.FEATURE_NODES, startTime);
+    	return result;
+    }
+
+    /**
+     * Create the (un-normalized) vector for unreduced feature ids and their
+     * values, where each feature's index is its id reduced to the feature
+     * space of <maxFeatureIndex>.
+     * 
+     * @param ids feature ids, from {@link #calcHashJoaat(String)}
+     * @param values feature values (e.g. term counts)
+     * @param numFeatures number of entries to use from ids and values
+     * @param maxFeatureIndex size of the reduced feature space
+     * @param averageCollisions true => average the values of ids that reduce
+     * to the same index, versus the last one winning.
+     * @return vector with cardinality of <maxFeatureIndex>
+     */
+    static Vector makeHashedVector(int[] ids, float[] values, int numFeatures, int maxFeatureIndex, boolean averageCollisions) {
     	Map<Integer, Integer> collisionCount = new HashMap<>();
-    	Vector v = new RandomAccessSparseVector(_maxFeatureIndex);
-    	for (String term: terms.keySet()) {
-    		int index = calcHashJoaat(term, _maxFeatureIndex);
+    	Vector v = new RandomAccessSparseVector(maxFeatureIndex);
+    	for (int i = 0; i < numFeatures; i++) {
+    		int index = ids[i] % maxFeatureIndex;
     		double curValue = v.getQuick(index);
-    		if (_averageCollisions && (curValue != 0.0)) {
+    		if (averageCollisions && (curValue != 0.0)) {
     			Integer curCollisionCount = collisionCount.get(index);
     			if (curCollisionCount == null) {
     				// Number of values we'll need to divide by
@@ -350,38 +533,20 @@ public class HashedFeaturesLibLinearModel extends BaseLibLinearModel {
     				collisionCount.put(index, curCollisionCount + 1);
     			}
 
-    			v.setQuick(index, curValue + terms.get(term));
+    			v.setQuick(index, curValue + values[i]);
     		} else {
-    			v.setQuick(index, terms.get(term));
+    			v.setQuick(index, values[i]);
     		}
     	}
 
     	// Now adjust the vector for collisions, if needed.
-    	if (_averageCollisions && !collisionCount.isEmpty()) {
+    	if (averageCollisions && !collisionCount.isEmpty()) {
     		for (Integer index : collisionCount.keySet()) {
     			double curValue = v.getQuick(index);
     			v.setQuick(index, curValue / collisionCount.get(index));
     		}
     	}
 
-    	// Apply the term vector normalizer.
-    	getNormalizer().normalize(v);
-
-    	List<FeatureNode> features = new ArrayList<FeatureNode>(terms.size());
-    	for (Element e : v.nonZeroes()) {
-    		features.add(new FeatureNode(e.index() + 1, e.get()));
-    	}
-
-    	// We need to sort by increasing index.
-    	Collections.sort(features, new Comparator<FeatureNode>() {
-
-    		@Override
-    		public int compare(FeatureNode o1, FeatureNode o2) {
-    			return o1.index - o2.index;
-    		}
-    	});
-
-    	return features.toArray(new FeatureNode[features.size()]);
+    	return v;
     }
-
 }
@@ -0,0 +1,222 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import com.scaleunlimited.classify.BaseModel;
+import com.scaleunlimited.classify.ContentFingerprint;
+import com.scaleunlimited.classify.ModelRegistry;
+import com.scaleunlimited.classify.StageTimer;
+import com.scaleunlimited.classify.datum.DocDatum;
+import com.scaleunlimited.classify.datum.FeaturesDatum;
+import com.scaleunlimited.classify.datum.ModelDatum;
+import com.scaleunlimited.classify.datum.VectorDatum;
+
+/**
+ * Read-only view of a trained model, which holds onto the model data from
+ * a {@link ModelDatum} and only deserializes the actual model the first time
+ * it's needed to classify something. The label names (from the model data
+ * header) are available immediately.
+ * 
+ * This lets driver-side code inspect a model without paying the full load
+ * cost, and keeps the (Java) serialized form of operations that hold the
+ * model down to the size of the compressed model data.
+ */
+@SuppressWarnings({"serial", "rawtypes", "unchecked"})
+public class LazyModel<T> extends BaseModel<T> {
+
+    private String _modelClassName;
+    private byte[] _modelData;
+    private List<String> _labelNames;
+    private boolean _sharedPerJvm = false;
+    
+    private transient BaseModel<T> _model;
+    
+    public LazyModel() {
+        super();
+    }
+    
+    public LazyModel(String modelClassName, byte[] modelData, List<String> labelNames) {
+        super();
+        
+        _modelClassName = modelClassName;
+        _modelData = modelData;
+        _labelNames = labelNames;
+    }
+    
+    public String getModelClassName() {
+        return _modelClassName;
+    }
+    
+    public boolean isSharedPerJvm() {
+        return _sharedPerJvm;
+    }
+    
+    /**
+     * @param sharedPerJvm true => get the model from the {@link ModelRegistry},
+     * so that it's only deserialized once per JVM, versus once per instance.
+     * @return this model
+     */
+    public LazyModel<T> setSharedPerJvm(boolean sharedPerJvm) {
+        _sharedPerJvm = sharedPerJvm;
+        return this;
+    }
+    
+    public boolean isLoaded() {
+        return _model != null;
+    }
+    
+    /**
+     * @return the actual model, deserializing it if that hasn't happened yet.
+     */
+    public synchronized BaseModel<T> getModel() {
+        if (_model == null) {
+            if (_sharedPerJvm) {
+                ContentFingerprint fingerprint = ContentFingerprint.fromBytes(_modelData, 0, _modelData.length);
+                _model = ModelRegistry.getModel(fingerprint, new ModelRegistry.ModelLoader() {
+
+                    @Override
+                    public BaseModel loadModel() throws Exception {
+                        return parseModel();
+                    }
+                });
+            } else {
+                _model = parseModel();
+            }
+        }
+        
+        return _model;
+    }
+    
+    private BaseModel<T> parseModel() {
+        try {
+            return ModelDatum.parseModel(_modelClassName, _modelData, _modelData.length);
+        } catch (Exception e) {
+            throw new RuntimeException("Can't load model of class " + _modelClassName, e);
+        }
+    }
+    
+    @Override
+    public List<String> getLabelNames() {
+        return _labelNames;
+    }
+    
+    @Override
+    public boolean supportsVectors() {
+        try {
+            return ((BaseModel)Class.forName(_modelClassName).newInstance()).supportsVectors();
+        } catch (Exception e) {
+            throw new RuntimeException("Can't create model of class " + _modelClassName, e);
+        }
+    }
+    
+    @Override
+    public boolean supportsFeatures() {
+        try {
+            return ((BaseModel)Class.forName(_modelClassName).newInstance()).supportsFeatures();
+        } catch (Exception e) {
+            throw new RuntimeException("Can't create model of class " + _modelClassName, e);
+        }
+    }
+    
+    @Override
+    public void addTrainingTerms(T datum) {
+        throw new UnsupportedOperationException("Lazy models can't be trained");
+    }
+
+    @Override
+    public void train() {
+        throw new UnsupportedOperationException("Lazy models can't be trained");
+    }
+
+    @Override
+    public DocDatum classify(T datum) {
+        return getModel().classify(datum);
+    }
+
+    @Override
+    public DocDatum classify(T datum, StageTimer timer) {
+        return getModel().classify(datum, timer);
+    }
+
+    @Override
+    public DocDatum classifyTerms(Map<String, Integer> termMap) {
+        return getModel().classifyTerms(termMap);
+    }
+
+    @Override
+    public DocDatum classifyTerms(Map<String, Integer> termMap, StageTimer timer) {
+        return getModel().classifyTerms(termMap, timer);
+    }
+
+    @Override
+    public DocDatum[] classifyNResults(T datum, int n) {
+        return getModel().classifyNResults(datum, n);
+    }
+    
+    @Override
+    public DocDatum classifyVector(VectorDatum datum) {
+        return getModel().classifyVector(datum);
+    }
+
+    @Override
+    public DocDatum classifyVector(VectorDatum datum, StageTimer timer) {
+        return getModel().classifyVector(datum, timer);
+    }
+
+    @Override
+    public DocDatum classifyFeatures(FeaturesDatum datum) {
+        return getModel().classifyFeatures(datum);
+    }
+
+    @Override
+    public DocDatum classifyFeatures(FeaturesDatum datum, StageTimer timer) {
+        return getModel().classifyFeatures(datum, timer);
+    }
+
+    @Override
+    public String getDetails() {
+        return getModel().getDetails();
+    }
+    
+    @Override
+    public void reset() {
+        // Lazy models can't be trained, so there's nothing to reset, and a
+        // shared model may be in use by other tasks in this JVM.
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        _modelClassName = in.readUTF();
+        _modelData = new byte[in.readInt()];
+        in.readFully(_modelData);
+        _labelNames = readStrings(in);
+        _model = null;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(_modelClassName);
+        out.writeInt(_modelData.length);
+        out.write(_modelData);
+        writeStrings(out, _labelNames);
+    }
+}
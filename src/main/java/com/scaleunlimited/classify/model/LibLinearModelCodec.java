@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+
+import org.apache.hadoop.io.WritableUtils;
+
+import de.bwaldvogel.liblinear.Linear;
+import de.bwaldvogel.liblinear.Model;
+import de.bwaldvogel.liblinear.SolverType;
+
+/**
+ * Binary encoding of a liblinear {@link Model}, as a much smaller and faster
+ * to parse alternative to the text format of {@link Linear#saveModel}. Weights
+ * are stored as floats, either densely or (if most of them are zero) as
+ * delta-coded indexes with their values.
+ * 
+ * liblinear doesn't give us a way to set a model's fields, or get its solver
+ * type, so we have to use reflection for those.
+ */
+class LibLinearModelCodec {
+
+    private static final byte DENSE_WEIGHTS = 0;
+    private static final byte SPARSE_WEIGHTS = 1;
+    
+    // Bytes per sparse weight (assuming a 2 byte index delta) vs. a dense weight
+    private static final int SPARSE_WEIGHT_SIZE = 6;
+    private static final int DENSE_WEIGHT_SIZE = 4;
+    
+    private LibLinearModelCodec() {
+        // Enforce class isn't instantiated
+    }
+    
+    public static void write(DataOutput out, Model model) throws IOException {
+        out.writeUTF(getSolverType(model).name());
+        out.writeInt(model.getNrClass());
+        out.writeInt(model.getNrFeature());
+        out.writeDouble(model.getBias());
+        
+        int[] labels = model.getLabels();
+        WritableUtils.writeVInt(out, labels.length);
+        for (int label : labels) {
+            WritableUtils.writeVInt(out, label);
+        }
+        
+        double[] weights = model.getFeatureWeights();
+        int numNonZero = 0;
+        for (double weight : weights) {
+            if ((float)weight != 0.0f) {
+                numNonZero++;
+            }
+        }
+        
+        WritableUtils.writeVInt(out, weights.length);
+        if ((numNonZero * SPARSE_WEIGHT_SIZE) < (weights.length * DENSE_WEIGHT_SIZE)) {
+            out.writeByte(SPARSE_WEIGHTS);
+            WritableUtils.writeVInt(out, numNonZero);
+            int prevIndex = 0;
+            for (int i = 0; i < weights.length; i++) {
+                float weight = (float)weights[i];
+                if (weight != 0.0f) {
+                    WritableUtils.writeVInt(out, i - prevIndex);
+                    out.writeFloat(weight);
+                    prevIndex = i;
+                }
+            }
+        } else {
+            out.writeByte(DENSE_WEIGHTS);
+            for (double weight : weights) {
+                out.writeFloat((float)weight);
+            }
+        }
+    }
+    
+    public static Model read(DataInput in) throws IOException {
+        SolverType solverType = SolverType.valueOf(in.readUTF());
+        int numClasses = in.readInt();
+        int numFeatures = in.readInt();
+        double bias = in.readDouble();
+        
+        int[] labels = new int[WritableUtils.readVInt(in)];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = WritableUtils.readVInt(in);
+        }
+        
+        double[] weights = new double[WritableUtils.readVInt(in)];
+        byte encoding = in.readByte();
+        if (encoding == SPARSE_WEIGHTS) {
+            int numNonZero = WritableUtils.readVInt(in);
+            int index = 0;
+            for (int i = 0; i < numNonZero; i++) {
+                index += WritableUtils.readVInt(in);
+                weights[index] = in.readFloat();
+            }
+        } else if (encoding == DENSE_WEIGHTS) {
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = in.readFloat();
+            }
+        } else {
+            throw new IOException("Unknown weights encoding: " + encoding);
+        }
+        
+        Model result = newModel();
+        setField(result, "solverType", solverType);
+        setField(result, "nr_class", numClasses);
+        setField(result, "nr_feature", numFeatures);
+        setField(result, "bias", bias);
+        setField(result, "label", labels);
+        setField(result, "w", weights);
+        return result;
+    }
+    
+    static SolverType getSolverType(Model model) throws IOException {
+        return (SolverType)getField(model, "solverType");
+    }
+    
+    private static Model newModel() throws IOException {
+        try {
+            Constructor<Model> constructor = Model.class.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor.newInstance();
+        } catch (Exception e) {
+            throw new IOException("Can't create liblinear model", e);
+        }
+    }
+    
+    private static Object getField(Model model, String fieldName) throws IOException {
+        try {
+            Field field = Model.class.getDeclaredField(fieldName);
+            field.setAccessible(true);
+            return field.get(model);
+        } catch (Exception e) {
+            throw new IOException("Can't get liblinear model field " + fieldName, e);
+        }
+    }
+    
+    private static void setField(Model model, String fieldName, Object value) throws IOException {
+        try {
+            Field field = Model.class.getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(model, value);
+        } catch (Exception e) {
+            throw new IOException("Can't set liblinear model field " + fieldName, e);
+        }
+    }
+}
@@ -0,0 +1,773 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.model;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.Vector.Element;
+
+import com.scaleunlimited.cascading.BasePath;
+import com.scaleunlimited.cascading.BasePlatform;
+import com.scaleunlimited.classify.BaseModel;
+import com.scaleunlimited.classify.StageTimer;
+import com.scaleunlimited.classify.StageTimer.Stage;
+import com.scaleunlimited.classify.datum.DocDatum;
+import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.datum.VectorDatum;
+import com.scaleunlimited.classify.vectors.BaseNormalizer;
+import com.scaleunlimited.classify.vectors.SparseVectorWritable;
+
+import de.bwaldvogel.liblinear.Model;
+import de.bwaldvogel.liblinear.SolverType;
+
+/**
+ * Read-only version of a trained {@link RawFeaturesLibLinearModel} or
+ * {@link HashedFeaturesLibLinearModel}, which scores documents using weights
+ * read directly from a memory-mapped model file. The file holds the term
+ * dictionary (for raw feature models) and the weight matrix, so nothing but
+ * the header is copied onto the heap, and every JVM on a node that maps the
+ * same local file (e.g. a copy from the distributed cache) shares one copy
+ * of it in the OS page cache.
+ * 
+ * Use {@link #writeModelFile(BaseLibLinearModel, File)} to create the file,
+ * or {@link #createShipped(BasePlatform, BasePath, BaseLibLinearModel, Map)}
+ * to also have it copied to every task via the distributed cache. Only the
+ * path is serialized with the model, and a relative path is resolved against
+ * the working directory of the JVM that uses the model, which is where
+ * Hadoop links the distributed cache files for a task.
+ * 
+ * The file is mapped in segments of at most 1GB, so it can be bigger than
+ * a single MappedByteBuffer allows.
+ * 
+ * Weights are stored as floats, so scores can differ very slightly from the
+ * original model.
+ */
+@SuppressWarnings("serial")
+public class MappedLibLinearModel extends BaseModel<TermsDatum> {
+
+    public static final int MAPPED_MODEL_MAGIC = 0x434C4D4D; // "CLMM"
+    public static final byte MAPPED_MODEL_VERSION = 1;
+    
+    private static final byte TERM_FEATURES = 0;
+    private static final byte HASHED_FEATURES = 1;
+    
+    // Preamble is magic, version, then length of the header.
+    private static final int PREAMBLE_SIZE = 4 + 1 + 4;
+    
+    // Everything after the preamble that we read as an int or float is
+    // 4-byte aligned, so with power of two segments no value is split
+    // between two of them.
+    private static final int DEFAULT_SEGMENT_SHIFT = 30;
+    
+    // We only support solvers that liblinear can generate probabilities for,
+    // since that's what we use for scores.
+    private static final Set<SolverType> PROBABILITY_SOLVER_TYPES = EnumSet.of(SolverType.L2R_LR,
+                                                                               SolverType.L1R_LR,
+                                                                               SolverType.L2R_LR_DUAL);
+
+    private String _modelPath;
+    
+    private int _segmentShift = DEFAULT_SEGMENT_SHIFT;
+    private transient volatile ModelFile _modelFile;
+    
+    public MappedLibLinearModel() {
+        super();
+    }
+    
+    public MappedLibLinearModel(File modelFile) {
+        this(modelFile.getAbsolutePath());
+    }
+    
+    /**
+     * @param modelPath path to the model file, which if relative is resolved
+     * against the working directory of the JVM that uses the model (e.g. the
+     * link name of a distributed cache file).
+     */
+    public MappedLibLinearModel(String modelPath) {
+        super();
+        
+        _modelPath = modelPath;
+    }
+    
+    // Only for testing segment boundaries with small files.
+    MappedLibLinearModel(File modelFile, int segmentShift) {
+        this(modelFile);
+        
+        _segmentShift = segmentShift;
+    }
+    
+    public String getModelPath() {
+        return _modelPath;
+    }
+    
+    public boolean isMapped() {
+        return _modelFile != null;
+    }
+    
+    @Override
+    public List<String> getLabelNames() {
+        return getModelFile().getLabelNames();
+    }
+    
+    @Override
+    public boolean supportsVectors() {
+        return getModelFile().isHashed();
+    }
+    
+    @Override
+    public void addTrainingTerms(TermsDatum datum) {
+        throw new UnsupportedOperationException("Mapped models can't be trained");
+    }
+
+    @Override
+    public void train() {
+        throw new UnsupportedOperationException("Mapped models can't be trained");
+    }
+
+    @Override
+    public DocDatum classify(TermsDatum datum) {
+        return classify(datum, StageTimer.DISABLED);
+    }
+
+    @Override
+    public DocDatum classify(TermsDatum datum, StageTimer timer) {
+        ModelFile modelFile = getModelFile();
+        return classify(modelFile, modelFile.getVector(datum.getTermMap(), timer), timer);
+    }
+
+    @Override
+    public DocDatum classifyTerms(Map<String, Integer> termMap) {
+        return classifyTerms(termMap, StageTimer.DISABLED);
+    }
+
+    @Override
+    public DocDatum classifyTerms(Map<String, Integer> termMap, StageTimer timer) {
+        ModelFile modelFile = getModelFile();
+        return classify(modelFile, modelFile.getVector(termMap, timer), timer);
+    }
+
+    @Override
+    public DocDatum[] classifyNResults(TermsDatum datum, int n) {
+        ModelFile modelFile = getModelFile();
+        return modelFile.classifyNResults(modelFile.getVector(datum.getTermMap(), StageTimer.DISABLED), n);
+    }
+
+    @Override
+    public DocDatum classifyVector(VectorDatum datum) {
+        return classifyVector(datum, StageTimer.DISABLED);
+    }
+
+    @Override
+    public DocDatum classifyVector(VectorDatum datum, StageTimer timer) {
+        ModelFile modelFile = getModelFile();
+        if (!modelFile.isHashed()) {
+            return super.classifyVector(datum);
+        }
+        
+        return classify(modelFile, modelFile.getVector(datum.getVector(), timer), timer);
+    }
+    
+    private DocDatum classify(ModelFile modelFile, Vector vector, StageTimer timer) {
+        long startTime = timer.start();
+        DocDatum result = modelFile.classify(vector);
+        timer.stop(Stage.PREDICTION, startTime);
+        return result;
+    }
+    
+    @Override
+    public String getDetails() {
+        ModelFile modelFile = getModelFile();
+        return String.format(   "Mapped model file %s: %s features, %d labels, %d bytes",
+                                _modelPath,
+                                modelFile.isHashed() ? "hashed" : "term",
+                                modelFile.getLabelNames().size(),
+                                modelFile.getSize());
+    }
+    
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        _modelPath = in.readUTF();
+        _segmentShift = DEFAULT_SEGMENT_SHIFT;
+        _modelFile = null;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(_modelPath);
+    }
+    
+    private ModelFile getModelFile() {
+        ModelFile result = _modelFile;
+        if (result == null) {
+            synchronized (this) {
+                result = _modelFile;
+                if (result == null) {
+                    if (_modelPath == null) {
+                        throw new IllegalStateException("Mapped model has no model file");
+                    }
+                    
+                    try {
+                        result = new ModelFile(new File(_modelPath), _segmentShift);
+                    } catch (IOException e) {
+                        throw new RuntimeException("Can't map model file " + _modelPath, e);
+                    }
+                    
+                    _modelFile = result;
+                }
+            }
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Write <model> to a mapped model file at <filePath>, and make it
+     * available to the tasks of flows created with <properties>. With Hadoop
+     * the file is added to the distributed cache, linked as its file name in
+     * each task's working directory, and otherwise the tasks run in this JVM
+     * and just use the file where it is.
+     * 
+     * @param platform platform the flow will run on
+     * @param filePath where to write the model file (e.g. in the working directory)
+     * @param model trained raw or hashed features model
+     * @param properties flow connector properties
+     * @return mapped model that uses the file
+     * @throws Exception
+     */
+    public static MappedLibLinearModel createShipped(   BasePlatform platform,
+                                                        BasePath filePath,
+                                                        BaseLibLinearModel model,
+                                                        Map<Object, Object> properties)
+        throws Exception {
+        
+        Object config = platform.makeFlowProcess().getConfigCopy();
+        if (!(config instanceof Configuration)) {
+            File file = new File(filePath.getAbsolutePath());
+            file.getParentFile().mkdirs();
+            writeModelFile(model, file);
+            return new MappedLibLinearModel(file);
+        }
+        
+        Path path = new Path(filePath.getAbsolutePath());
+        File localFile = File.createTempFile("mapped-", ".model");
+        try {
+            writeModelFile(model, localFile);
+            FileSystem fs = path.getFileSystem((Configuration)config);
+            fs.copyFromLocalFile(false, true, new Path(localFile.getAbsolutePath()), path);
+            path = fs.makeQualified(path);
+        } finally {
+            localFile.delete();
+        }
+        
+        String linkName = path.getName();
+        String cacheFile = new URI(path.toUri().toString() + "#" + linkName).toString();
+        Object cacheFiles = properties.get(MRJobConfig.CACHE_FILES);
+        if (cacheFiles == null) {
+            properties.put(MRJobConfig.CACHE_FILES, cacheFile);
+        } else if (!cacheFiles.toString().contains(cacheFile)) {
+            properties.put(MRJobConfig.CACHE_FILES, cacheFiles + "," + cacheFile);
+        }
+        
+        return new MappedLibLinearModel(linkName);
+    }
+    
+    /**
+     * Write out <model> in the format used by {@link MappedLibLinearModel}.
+     * 
+     * @param model trained raw or hashed features model
+     * @param file local file to write
+     * @throws IOException
+     */
+    public static void writeModelFile(BaseLibLinearModel model, File file) throws IOException {
+        Model libLinearModel = model._model;
+        if (libLinearModel == null) {
+            throw new IllegalStateException("Model hasn't been trained");
+        }
+        
+        SolverType solverType = LibLinearModelCodec.getSolverType(libLinearModel);
+        if (!PROBABILITY_SOLVER_TYPES.contains(solverType)) {
+            throw new IllegalArgumentException(String.format(  "Mapped models require a logistic regression solver, not %s",
+                                                                solverType));
+        }
+        
+        byte featureType;
+        int numFeatures;
+        boolean averageCollisions = false;
+        List<String> terms = null;
+        if (model instanceof RawFeaturesLibLinearModel) {
+            featureType = TERM_FEATURES;
+            terms = ((RawFeaturesLibLinearModel)model).getUniqueTerms();
+            numFeatures = terms.size();
+        } else if (model instanceof HashedFeaturesLibLinearModel) {
+            HashedFeaturesLibLinearModel hashedModel = (HashedFeaturesLibLinearModel)model;
+            featureType = HASHED_FEATURES;
+            numFeatures = hashedModel.getMaxFeatureIndex();
+            averageCollisions = hashedModel.isAverageCollisions();
+        } else {
+            throw new IllegalArgumentException("Unsupported model class for mapping: " + model.getClass().getName());
+        }
+        
+        int nrClass = libLinearModel.getNrClass();
+        int nrFeature = libLinearModel.getNrFeature();
+        int nrW = getNumWeightColumns(nrClass);
+        
+        // Terms are stored sorted by their UTF-8 bytes, so we can binary
+        // search them without decoding, along with their original index.
+        final byte[][] termBytes = new byte[terms == null ? 0 : numFeatures][];
+        Integer[] termOrder = new Integer[termBytes.length];
+        int termBytesLength = 0;
+        if (featureType == TERM_FEATURES) {
+            for (int i = 0; i < numFeatures; i++) {
+                termBytes[i] = terms.get(i).getBytes(StandardCharsets.UTF_8);
+                termBytesLength += termBytes[i].length;
+                termOrder[i] = i;
+            }
+            
+            Arrays.sort(termOrder, new Comparator<Integer>() {
+
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    return compareBytes(termBytes[o1], termBytes[o2]);
+                }
+            });
+        }
+        
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeByte(featureType);
+        header.writeUTF(model.getNormalizerClassname());
+        writeStrings(header, model.getLabelNames());
+        header.writeBoolean(averageCollisions);
+        header.writeInt(numFeatures);
+        header.writeInt(nrClass);
+        header.writeInt(nrFeature);
+        for (int label : libLinearModel.getLabels()) {
+            header.writeInt(label);
+        }
+        
+        header.writeInt(termBytesLength);
+        header.close();
+        
+        long termsOffset = align(PREAMBLE_SIZE + headerBytes.size());
+        long weightsOffset = getWeightsOffset(headerBytes.size(), featureType, numFeatures, termBytesLength);
+        long fileSize = weightsOffset + (4L * nrFeature * nrW);
+        
+        double[] weights = libLinearModel.getFeatureWeights();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAPPED_MODEL_MAGIC);
+            out.writeByte(MAPPED_MODEL_VERSION);
+            out.writeInt(headerBytes.size());
+            headerBytes.writeTo(out);
+            writePadding(out, PREAMBLE_SIZE + headerBytes.size());
+            
+            if (featureType == TERM_FEATURES) {
+                int termOffset = 0;
+                for (int i = 0; i < numFeatures; i++) {
+                    out.writeInt(termOffset);
+                    termOffset += termBytes[termOrder[i]].length;
+                }
+                
+                out.writeInt(termOffset);
+                
+                for (int i = 0; i < numFeatures; i++) {
+                    out.writeInt(termOrder[i]);
+                }
+                
+                for (int i = 0; i < numFeatures; i++) {
+                    out.write(termBytes[termOrder[i]]);
+                }
+                
+                writePadding(out, termsOffset + (4L * (numFeatures + 1)) + (4L * numFeatures) + termBytesLength);
+            }
+            
+            // liblinear stores the weights for feature <f> (1-based) and class
+            // column <c> at w[(f - 1) * nrW + c], which is what we want for
+            // scoring, so just use the same layout. Weights for the bias term
+            // (if any) come after the real features, and aren't needed.
+            int numWeights = nrFeature * nrW;
+            for (int i = 0; i < numWeights; i++) {
+                out.writeFloat((float)weights[i]);
+            }
+        }
+        
+        // DataOutputStream.size() stops counting at 2GB, so check the file.
+        if (file.length() != fileSize) {
+            throw new IllegalStateException(String.format(  "Wrote %d bytes to mapped model file, expected %d",
+                                                            file.length(), fileSize));
+        }
+    }
+    
+    private static int getNumWeightColumns(int nrClass) {
+        // Same as liblinear, for the solvers we support.
+        return (nrClass == 2) ? 1 : nrClass;
+    }
+    
+    private static long align(long offset) {
+        return (offset + 3) & ~3L;
+    }
+    
+    private static long getWeightsOffset(int headerLength, byte featureType, int numFeatures, int termBytesLength) {
+        long result = align(PREAMBLE_SIZE + headerLength);
+        if (featureType == TERM_FEATURES) {
+            // Term offsets (one extra for the end), term indexes, and term bytes
+            result = align(result + (4L * (numFeatures + 1)) + (4L * numFeatures) + termBytesLength);
+        }
+        
+        return result;
+    }
+    
+    // Pad from <offset> (the number of bytes written so far) to the next 4-byte boundary.
+    private static void writePadding(DataOutputStream out, long offset) throws IOException {
+        for (long i = offset; i < align(offset); i++) {
+            out.writeByte(0);
+        }
+    }
+    
+    private static int compareBytes(byte[] a, byte[] b) {
+        int len = Math.min(a.length, b.length);
+        for (int i = 0; i < len; i++) {
+            int delta = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (delta != 0) {
+                return delta;
+            }
+        }
+        
+        return a.length - b.length;
+    }
+    
+    /**
+     * The parsed header of a mapped model file, plus the mapped segments
+     * that we use (only via absolute gets, so they can be shared by threads)
+     * for term lookups and weights.
+     */
+    private static class ModelFile {
+        
+        private final ByteBuffer[] _segments;
+        private final int _segmentShift;
+        private final long _segmentMask;
+        private final long _size;
+        
+        private final boolean _hashed;
+        private final BaseNormalizer _normalizer;
+        private final List<String> _labelNames;
+        private final boolean _averageCollisions;
+        private final int _numFeatures;
+        private final int _nrClass;
+        private final int _nrFeature;
+        private final int _nrW;
+        private final int[] _labels;
+        
+        private final long _termOffsetsOffset;
+        private final long _termIndexesOffset;
+        private final long _termBytesOffset;
+        private final long _weightsOffset;
+        
+        public ModelFile(File file, int segmentShift) throws IOException {
+            _segmentShift = segmentShift;
+            _segmentMask = (1L << segmentShift) - 1;
+            
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                FileChannel channel = raf.getChannel();
+                _size = channel.size();
+                
+                // The mappings stay valid after the channel is closed.
+                long segmentSize = 1L << segmentShift;
+                _segments = new ByteBuffer[(int)((_size + segmentSize - 1) >>> segmentShift)];
+                for (int i = 0; i < _segments.length; i++) {
+                    long start = i * segmentSize;
+                    _segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, _size - start));
+                }
+            }
+            
+            // The preamble is always in the first segment.
+            if ((_size < PREAMBLE_SIZE) || (_segments[0].getInt(0) != MAPPED_MODEL_MAGIC)) {
+                throw new IOException("Not a mapped model file: " + file);
+            }
+            
+            int version = _segments[0].get(4);
+            if (version != MAPPED_MODEL_VERSION) {
+                throw new IOException(String.format("Unsupported mapped model version %d in %s", version, file));
+            }
+            
+            int headerLength = _segments[0].getInt(5);
+            if ((headerLength < 0) || (PREAMBLE_SIZE + (long)headerLength > _size)) {
+                throw new IOException("Invalid mapped model header length in " + file);
+            }
+            
+            byte[] headerBytes = new byte[headerLength];
+            for (int i = 0; i < headerLength; i++) {
+                headerBytes[i] = getByte(PREAMBLE_SIZE + i);
+            }
+            
+            DataInputStream header = new DataInputStream(new ByteArrayInputStream(headerBytes));
+            byte featureType = header.readByte();
+            _hashed = (featureType == HASHED_FEATURES);
+            _normalizer = makeNormalizer(header.readUTF());
+            _labelNames = Collections.unmodifiableList(readStrings(header));
+            _averageCollisions = header.readBoolean();
+            _numFeatures = header.readInt();
+            _nrClass = header.readInt();
+            _nrFeature = header.readInt();
+            _nrW = getNumWeightColumns(_nrClass);
+            _labels = new int[_nrClass];
+            for (int i = 0; i < _nrClass; i++) {
+                _labels[i] = header.readInt();
+            }
+            
+            int termBytesLength = header.readInt();
+            
+            _termOffsetsOffset = align(PREAMBLE_SIZE + headerBytes.length);
+            _termIndexesOffset = _termOffsetsOffset + (4L * (_numFeatures + 1));
+            _termBytesOffset = _termIndexesOffset + (4L * _numFeatures);
+            _weightsOffset = getWeightsOffset(headerBytes.length, featureType, _numFeatures, termBytesLength);
+            
+            long expectedSize = _weightsOffset + (4L * _nrFeature * _nrW);
+            if (_size != expectedSize) {
+                throw new IOException(String.format("Mapped model file %s has %d bytes, expected %d",
+                                                    file, _size, expectedSize));
+            }
+        }
+        
+        private byte getByte(long offset) {
+            return _segments[(int)(offset >>> _segmentShift)].get((int)(offset & _segmentMask));
+        }
+        
+        private int getInt(long offset) {
+            return _segments[(int)(offset >>> _segmentShift)].getInt((int)(offset & _segmentMask));
+        }
+        
+        private float getFloat(long offset) {
+            return _segments[(int)(offset >>> _segmentShift)].getFloat((int)(offset & _segmentMask));
+        }
+        
+        public boolean isHashed() {
+            return _hashed;
+        }
+        
+        public List<String> getLabelNames() {
+            return _labelNames;
+        }
+        
+        public long getSize() {
+            return _size;
+        }
+        
+        public Vector getVector(Map<String, Integer> termMap, StageTimer timer) {
+            long startTime = timer.start();
+            Vector result;
+            if (_hashed) {
+                int[] ids = new int[termMap.size()];
+                float[] values = new float[termMap.size()];
+                int numFeatures = 0;
+                for (Map.Entry<String, Integer> entry : termMap.entrySet()) {
+                    ids[numFeatures] = HashedFeaturesLibLinearModel.calcHashJoaat(entry.getKey());
+                    values[numFeatures] = entry.getValue();
+                    numFeatures++;
+                }
+                
+                result = HashedFeaturesLibLinearModel.makeHashedVector(ids, values, numFeatures, _numFeatures, _averageCollisions);
+            } else {
+                result = new RandomAccessSparseVector(_numFeatures);
+                for (Map.Entry<String, Integer> entry : termMap.entrySet()) {
+                    int index = findTerm(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                    if (index >= 0) {
+                        result.setQuick(index, entry.getValue());
+                    }
+                }
+            }
+            
+            timer.stop(Stage.VECTORIZATION, startTime);
+            return normalize(result, timer);
+        }
+        
+        public Vector getVector(SparseVectorWritable vector, StageTimer timer) {
+            long startTime = timer.start();
+            Vector result = HashedFeaturesLibLinearModel.makeHashedVector(  vector.getIndexes(),
+                                                                            vector.getValues(),
+                                                                            vector.getNumEntries(),
+                                                                            _numFeatures,
+                                                                            _averageCollisions);
+            timer.stop(Stage.VECTORIZATION, startTime);
+            return normalize(result, timer);
+        }
+        
+        private Vector normalize(Vector vector, StageTimer timer) {
+            long startTime = timer.start();
+            _normalizer.normalize(vector);
+            timer.stop(Stage.NORMALIZATION, startTime);
+            return vector;
+        }
+        
+        public DocDatum classify(Vector vector) {
+            double[] probEstimates = getProbabilities(vector);
+            
+            // Same as liblinear's predict, for two classes the decision is
+            // based on the sign of the one decision value, otherwise it's the
+            // class with the highest value (first one wins on ties).
+            int bestIndex = 0;
+            if (_nrClass == 2) {
+                bestIndex = (probEstimates[0] > 0.5) ? 0 : 1;
+            } else {
+                for (int i = 1; i < _nrClass; i++) {
+                    if (probEstimates[i] > probEstimates[bestIndex]) {
+                        bestIndex = i;
+                    }
+                }
+            }
+            
+            return new DocDatum(_labelNames.get(_labels[bestIndex]), (float)probEstimates[bestIndex]);
+        }
+        
+        public DocDatum[] classifyNResults(Vector vector, int n) {
+            final double[] probEstimates = getProbabilities(vector);
+            
+            List<Integer> indexes = new ArrayList<Integer>(_nrClass);
+            for (int i = 0; i < _nrClass; i++) {
+                indexes.add(i);
+            }
+            
+            Collections.sort(indexes, new Comparator<Integer>() {
+
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    return Double.compare(probEstimates[o2], probEstimates[o1]);
+                }
+            });
+            
+            int size = Math.min(n, _nrClass);
+            DocDatum[] result = new DocDatum[size];
+            for (int i = 0; i < size; i++) {
+                int index = indexes.get(i);
+                result[i] = new DocDatum(_labelNames.get(_labels[index]), (float)probEstimates[index]);
+            }
+            
+            return result;
+        }
+        
+        /**
+         * Calculate the probability of each class (in model label order), the
+         * same way as liblinear's predictProbability.
+         */
+        private double[] getProbabilities(Vector vector) {
+            double[] decValues = new double[_nrW];
+            for (Element e : vector.nonZeroes()) {
+                int feature = e.index();
+                if (feature < _nrFeature) {
+                    long offset = _weightsOffset + (4L * feature * _nrW);
+                    double value = e.get();
+                    for (int i = 0; i < _nrW; i++) {
+                        decValues[i] += getFloat(offset + (4 * i)) * value;
+                    }
+                }
+            }
+            
+            double[] result = new double[_nrClass];
+            for (int i = 0; i < _nrW; i++) {
+                result[i] = 1.0 / (1.0 + Math.exp(-decValues[i]));
+            }
+            
+            if (_nrClass == 2) {
+                result[1] = 1.0 - result[0];
+            } else {
+                double sum = 0.0;
+                for (int i = 0; i < _nrClass; i++) {
+                    sum += result[i];
+                }
+                
+                for (int i = 0; i < _nrClass; i++) {
+                    result[i] = result[i] / sum;
+                }
+            }
+            
+            return result;
+        }
+        
+        /**
+         * @param term UTF-8 bytes of the term
+         * @return the term's feature index, or -1 if it's not in the dictionary.
+         */
+        private int findTerm(byte[] term) {
+            int low = 0;
+            int high = _numFeatures - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int result = compareTerm(mid, term);
+                if (result < 0) {
+                    low = mid + 1;
+                } else if (result > 0) {
+                    high = mid - 1;
+                } else {
+                    return getInt(_termIndexesOffset + (4L * mid));
+                }
+            }
+            
+            return -1;
+        }
+        
+        private int compareTerm(int sortedIndex, byte[] term) {
+            int start = getInt(_termOffsetsOffset + (4L * sortedIndex));
+            int end = getInt(_termOffsetsOffset + (4L * (sortedIndex + 1)));
+            int termLength = end - start;
+            int len = Math.min(termLength, term.length);
+            for (int i = 0; i < len; i++) {
+                int delta = (getByte(_termBytesOffset + start + i) & 0xFF) - (term[i] & 0xFF);
+                if (delta != 0) {
+                    return delta;
+                }
+            }
+            
+            return termLength - term.length;
+        }
+        
+        @SuppressWarnings("unchecked")
+        private static BaseNormalizer makeNormalizer(String normalizerClassname) {
+            try {
+                Class<? extends BaseNormalizer> normalizerClass = (Class<? extends BaseNormalizer>)Class.forName(normalizerClassname);
+                return normalizerClass.newInstance();
+            } catch (Exception e) {
+                throw new RuntimeException("Can't instantiate normalizer: " + normalizerClassname, e);
+            }
+        }
+    }
+}
@@ -32,8 +32,12 @@ import org.apache.mahout.math.Vector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.scaleunlimited.classify.StageTimer;
+import com.scaleunlimited.classify.StageTimer.Stage;
 import com.scaleunlimited.classify.datum.DocDatum;
+import com.scaleunlimited.classify.datum.FeaturesDatum;
 import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.vectors.NullNormalizer;
 import com.scaleunlimited.classify.vectors.VectorUtils;
 
 import de.bwaldvogel.liblinear.Feature;
@@ -54,6 +58,37 @@ public class RawFeaturesLibLinearModel extends BaseLibLinearModel {
     // Data we need to save to recreate the model
     private List<String> _uniqueTerms;
     
+    // Data used during training, when we're given feature values versus terms
+    private transient List<Map<String, Double>> _featureValuesList;
+    
+    @Override
+    public void reset() {
+        super.reset();
+        
+        if (_featureValuesList != null) {
+            _featureValuesList.clear();
+        }
+    }
+    
+    @Override
+    public boolean supportsFeatures() {
+        return true;
+    }
+    
+    /**
+     * Feature values go through the same normalizer as term counts, so use
+     * a {@link NullNormalizer} if they shouldn't be changed.
+     */
+    @Override
+    public void addTrainingFeatures(FeaturesDatum datum) {
+        if (_featureValuesList == null) {
+            _featureValuesList = new ArrayList<Map<String, Double>>();
+        }
+        
+        _labelList.add(datum.getLabel());
+        _featureValuesList.add(datum.getFeatureMap());
+    }
+    
     @Override
     public void readFields(DataInput in) throws IOException {
     	super.readFields(in);
@@ -68,6 +103,20 @@ public class RawFeaturesLibLinearModel extends BaseLibLinearModel {
         writeStrings(out, _uniqueTerms);
     }
     
+    @Override
+    public void readModel(DataInput in) throws IOException {
+        super.readModel(in);
+        
+        _uniqueTerms = readStrings(in);
+    }
+
+    @Override
+    public void writeModel(DataOutput out) throws IOException {
+        super.writeModel(out);
+
+        writeStrings(out, _uniqueTerms);
+    }
+    
     
 	@Override
 	public int hashCode() {
@@ -98,10 +147,26 @@ public class RawFeaturesLibLinearModel extends BaseLibLinearModel {
 	@Override
 	public double train(boolean doCrossValidation) {
 
-        _uniqueTerms = buildUniqueTerms(_featuresList);
-        List<Vector> vectors = new ArrayList<Vector>(_featuresList.size());
-        for (Map<String, Integer> termMap : _featuresList) {
-            vectors.add(makeNormalizedVector(termMap));
+        boolean hasFeatureValues = (_featureValuesList != null) && !_featureValuesList.isEmpty();
+        if (hasFeatureValues && !_featuresList.isEmpty()) {
+            throw new IllegalStateException("Can't train on a mix of terms and feature values");
+        }
+        
+        List<Vector> vectors;
+        if (hasFeatureValues) {
+            _uniqueTerms = buildUniqueTerms(_featureValuesList);
+            vectors = new ArrayList<Vector>(_featureValuesList.size());
+            for (Map<String, Double> featureMap : _featureValuesList) {
+                vectors.add(makeNormalizedFeaturesVector(featureMap, StageTimer.DISABLED));
+            }
+            
+            _featureValuesList.clear();
+        } else {
+            _uniqueTerms = buildUniqueTerms(_featuresList);
+            vectors = new ArrayList<Vector>(_featuresList.size());
+            for (Map<String, Integer> termMap : _featuresList) {
+                vectors.add(makeNormalizedVector(termMap, StageTimer.DISABLED));
+            }
         }
         
         _labelNames = new ArrayList<String>();
@@ -160,29 +225,78 @@ public class RawFeaturesLibLinearModel extends BaseLibLinearModel {
         return result;
     }
     
-    protected Vector makeNormalizedVector(Map<String, Integer> termMap) {
+    List<String> getUniqueTerms() {
+        return _uniqueTerms;
+    }
+    
+    protected Vector makeNormalizedVector(Map<String, Integer> termMap, StageTimer timer) {
     	// We assume that _uniqueTerms has been set up, as a sorted list, so
     	// we can use that to create an appropriate vector.
+    	long startTime = timer.start();
     	Vector result = VectorUtils.makeVector(_uniqueTerms, termMap);
-    	getNormalizer().normalize(result);
+    	timer.stop(Stage.VECTORIZATION, startTime);
     	
-		return result;
+		return normalize(result, timer);
+	}
+    
+    protected Vector makeNormalizedFeaturesVector(Map<String, Double> featureMap, StageTimer timer) {
+    	long startTime = timer.start();
+    	Vector result = VectorUtils.makeVectorDouble(_uniqueTerms, featureMap);
+    	timer.stop(Stage.VECTORIZATION, startTime);
+    	
+		return normalize(result, timer);
 	}
     
+    private Vector normalize(Vector vector, StageTimer timer) {
+        long startTime = timer.start();
+        getNormalizer().normalize(vector);
+        timer.stop(Stage.NORMALIZATION, startTime);
+        return vector;
+    }
+    
     public void train() {
     	train(_crossValidationRequired);
     }
     
     @Override
     public DocDatum classify(TermsDatum datum) {
-        Vector docVector = makeNormalizedVector(datum.getTermMap());
-        
-        FeatureNode[] features = vectorToFeatureNodes(docVector);
+        return classify(datum, StageTimer.DISABLED);
+    }
+    
+    @Override
+    public DocDatum classify(TermsDatum datum, StageTimer timer) {
+        return classify(makeNormalizedVector(datum.getTermMap(), timer), timer);
+    }
+    
+    @Override
+    public DocDatum classifyTerms(Map<String, Integer> termMap) {
+        return classifyTerms(termMap, StageTimer.DISABLED);
+    }
+    
+    @Override
+    public DocDatum classifyTerms(Map<String, Integer> termMap, StageTimer timer) {
+        return classify(makeNormalizedVector(termMap, timer), timer);
+    }
+    
+    @Override
+    public DocDatum classifyFeatures(FeaturesDatum datum) {
+        return classifyFeatures(datum, StageTimer.DISABLED);
+    }
+    
+    @Override
+    public DocDatum classifyFeatures(FeaturesDatum datum, StageTimer timer) {
+        return classify(makeNormalizedFeaturesVector(datum.getFeatureMap(), timer), timer);
+    }
+    
+    private DocDatum classify(Vector docVector, StageTimer timer) {
+        FeatureNode[] features = vectorToFeatureNodes(docVector, timer);
         double[] probEstimates = new double[_labelNames.size()];
         
+        long startTime = timer.start();
         int labelIndex = (int)Linear.predictProbability( _model,
                                                     features,
                                                     probEstimates);
+        timer.stop(Stage.PREDICTION, startTime);
         String labelName = _labelNames.get(labelIndex);
         
         if (_modelLabelIndexes == null) {
@@ -201,8 +315,8 @@ public class RawFeaturesLibLinearModel extends BaseLibLinearModel {
     
     @Override
 	public DocDatum[] classifyNResults(TermsDatum datum, int n) {
-        Vector docVector = makeNormalizedVector(datum.getTermMap());
-        FeatureNode[] features = vectorToFeatureNodes(docVector);
+        Vector docVector = makeNormalizedVector(datum.getTermMap(), StageTimer.DISABLED);
+        FeatureNode[] features = vectorToFeatureNodes(docVector, StageTimer.DISABLED);
         double[] probEstimates = new double[_labelNames.size()];
         
 //        int topScoreIndex = 
@@ -269,13 +383,14 @@ public class RawFeaturesLibLinearModel extends BaseLibLinearModel {
     private List<Feature[]> getFeaturesList(List<Vector> vectors) {
         List<Feature[]> result = new ArrayList<Feature[]>();
         for (Vector vector : vectors) {
-            FeatureNode[] x = vectorToFeatureNodes(vector);
+            FeatureNode[] x = vectorToFeatureNodes(vector, StageTimer.DISABLED);
             result.add(x);
         }
         return result;
     }
 
-    private FeatureNode[] vectorToFeatureNodes(Vector vector) {
+    private FeatureNode[] vectorToFeatureNodes(Vector vector, StageTimer timer) {
+        long startTime = timer.start();
         int featureCount = vector.getNumNondefaultElements();
         FeatureNode[] x = new FeatureNode[featureCount];
         int arrayIndex = 0;
@@ -289,12 +404,13 @@ public class RawFeaturesLibLinearModel extends BaseLibLinearModel {
                 x[arrayIndex++] = new FeatureNode(i+1, value);
             }
         }
+        timer.stop(Stage.FEATURE_NODES, startTime);
         return x;
     }
     
-    private List<String> buildUniqueTerms(List<Map<String, Integer>> featuresList) {
+    private List<String> buildUniqueTerms(List<? extends Map<String, ?>> featuresList) {
         Set<String> uniqueTerms = new HashSet<String>();
-        for (Map<String, Integer> termMap : featuresList) {
+        for (Map<String, ?> termMap : featuresList) {
             uniqueTerms.addAll(termMap.keySet());
         }
         List<String> sortedTerms = new ArrayList<String>(uniqueTerms);
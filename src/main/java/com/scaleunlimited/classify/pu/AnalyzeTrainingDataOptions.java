@@ -24,6 +24,8 @@ public class AnalyzeTrainingDataOptions extends ClassifyOptions {
     private static final String DEFAULT_ANALYZER_NAME = "Standard";
 
     private String _analyzerName = DEFAULT_ANALYZER_NAME;
+    private boolean _compactTerms = false;
+    private boolean _hashFeatures = false;
 
     @Option(name = "-analyzer", usage = "analyzer to use (class will be XXXAnalyzer)", required = false)
     public void setAnalyzerName(String analyzerName) {
@@ -33,4 +35,26 @@ public class AnalyzeTrainingDataOptions extends ClassifyOptions {
     public String getAnalyzerName() {
         return _analyzerName;
     }
+
+    @Option(name = "-compactterms", usage = "store analyzed terms in compact binary form", required = false)
+    public void setCompactTerms(boolean compactTerms) {
+        _compactTerms = compactTerms;
+    }
+
+    @Option(name = "-hashfeatures", usage = "store analyzed terms as hashed feature vectors (requires a hashed features model)", required = false)
+    public void setHashFeatures(boolean hashFeatures) {
+        _hashFeatures = hashFeatures;
+    }
+
+    public TermsFormat getTermsFormat() {
+        if (_hashFeatures) {
+            if (_compactTerms) {
+                throw new IllegalArgumentException("Can't use both -compactterms and -hashfeatures");
+            }
+            
+            return TermsFormat.HASHED;
+        }
+        
+        return (_compactTerms ? TermsFormat.COMPACT : TermsFormat.TUPLES);
+    }
 }
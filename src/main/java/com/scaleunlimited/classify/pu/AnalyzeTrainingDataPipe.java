@@ -33,11 +33,11 @@ import cascading.tuple.Fields;
 
 import com.scaleunlimited.cascading.BasePath;
 import com.scaleunlimited.cascading.BasePlatform;
-import com.scaleunlimited.cascading.TupleLogger;
 import com.scaleunlimited.classify.AnalyzeTuple;
 import com.scaleunlimited.classify.TrainModelPipe;
+import com.scaleunlimited.classify.TupleLoggingPolicy;
 import com.scaleunlimited.classify.analyzer.IAnalyzer;
-import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.datum.SerializationTokens;
 import com.scaleunlimited.classify.datum.TextDatum;
 
 @SuppressWarnings({"serial", "rawtypes"})
@@ -52,19 +52,29 @@ public class AnalyzeTrainingDataPipe extends SubAssembly {
     public AnalyzeTrainingDataPipe( Pipe positivePipe,
                                     Pipe unlabeledPipe,
                                     IAnalyzer analyzer) {
+        this(positivePipe, unlabeledPipe, analyzer, TermsFormat.TUPLES, TupleLoggingPolicy.FULL);
+    }
+    
+    public AnalyzeTrainingDataPipe( Pipe positivePipe,
+                                    Pipe unlabeledPipe,
+                                    IAnalyzer analyzer,
+                                    TermsFormat termsFormat,
+                                    TupleLoggingPolicy loggingPolicy) {
         super(positivePipe, unlabeledPipe);
 
         Pipe positiveTermsPipe =
             new Pipe(POSITIVE_TERMS_PIPE_NAME, positivePipe);
         positiveTermsPipe =
             new Each(positiveTermsPipe, new AnalyzeTuple(analyzer));
-        positiveTermsPipe = TupleLogger.makePipe(positiveTermsPipe, true);
+        positiveTermsPipe = loggingPolicy.makePipe(positiveTermsPipe);
+        positiveTermsPipe = termsFormat.fromTermsDatums(positiveTermsPipe);
         
         Pipe unlabeledTermsPipe =
             new Pipe(UNLABELED_TERMS_PIPE_NAME, unlabeledPipe);
         unlabeledTermsPipe =
             new Each(unlabeledTermsPipe, new AnalyzeTuple(analyzer));
-        unlabeledTermsPipe = TupleLogger.makePipe(unlabeledTermsPipe, true);
+        unlabeledTermsPipe = loggingPolicy.makePipe(unlabeledTermsPipe);
+        unlabeledTermsPipe = termsFormat.fromTermsDatums(unlabeledTermsPipe);
         
         setTails(positiveTermsPipe, unlabeledTermsPipe);
     }
@@ -102,7 +112,7 @@ public class AnalyzeTrainingDataPipe extends SubAssembly {
         
         // Try to instantiate the analyzer
         IAnalyzer analyzer =
-            TrainModelPipe.makeAnalyzer(options.getAnalyzerName());
+            TrainModelPipe.makeAnalyzer(options.getAnalyzerName(), options.getAnalysisBudget());
 
         // Set up the input sources
         BasePath positivePath = platform.makePath(workingDirPath, ClassifyPUConfig.POSITIVE_SUBDIR_NAME);
@@ -134,19 +144,23 @@ public class AnalyzeTrainingDataPipe extends SubAssembly {
             }
         }
                 
+        // Record how the terms are stored, for the downstream flows
+        TermsFormat termsFormat = options.getTermsFormat();
+        termsFormat.write(platform, workingDirPath);
+        
         // Analyze the input text into terms
         Pipe positivePipe = new Pipe("positive pipe");
         Pipe unlabeledPipe = new Pipe("unlabeled pipe");
         AnalyzeTrainingDataPipe analyzerPipe =
-            new AnalyzeTrainingDataPipe(positivePipe, unlabeledPipe, analyzer);
+            new AnalyzeTrainingDataPipe(positivePipe, unlabeledPipe, analyzer, termsFormat, options.getTupleLoggingPolicy());
         
         // Set up the output sinks
         BasePath unlabeledTermsPath = platform.makePath(workingDirPath, ClassifyPUConfig.UNLABELED_TERMS_SUBDIR_NAME);
-        Tap unlabledTermsSink = platform.makeTap(platform.makeBinaryScheme(TermsDatum.FIELDS), 
+        Tap unlabledTermsSink = platform.makeTap(platform.makeBinaryScheme(termsFormat.getFields()), 
                                         unlabeledTermsPath,
                                         SinkMode.REPLACE);
         BasePath positiveTermsPath = platform.makePath(workingDirPath, ClassifyPUConfig.POSITIVE_TERMS_SUBDIR_NAME);
-        Tap positiveTermsSink = platform.makeTap(platform.makeBinaryScheme(TermsDatum.FIELDS),
+        Tap positiveTermsSink = platform.makeTap(platform.makeBinaryScheme(termsFormat.getFields()),
                                         positiveTermsPath,
                                         SinkMode.REPLACE);
         
@@ -162,6 +176,7 @@ public class AnalyzeTrainingDataPipe extends SubAssembly {
                     unlabledTermsSink);
         
         FlowConnector flowConnector = platform.makeFlowConnector();
+        SerializationTokens.register(flowConnector.getProperties());
 
         return flowConnector.connect(   sources,
                                         sinks,
@@ -35,5 +35,11 @@ public class ClassifyPUConfig extends ClassifyConfig {
         "reliably-negative-terms";
     
     public static final String RELIABLY_NEGATIVE_SUBDIR_NAME = "reliably-negative";
+    
+    // Exists if the analyzed training terms are stored as CompactTermsDatums.
+    public static final String COMPACT_TERMS_MARKER_SUBDIR_NAME = "compact-terms-format";
+
+    // Exists if the analyzed training terms are stored as hashed VectorDatums.
+    public static final String HASHED_FEATURES_MARKER_SUBDIR_NAME = "hashed-features-format";
 
 }
@@ -32,6 +32,7 @@ import cascading.pipe.Each;
 import cascading.pipe.Pipe;
 import cascading.tap.SinkMode;
 import cascading.tap.Tap;
+import cascading.tuple.Tuple;
 import cascading.tuple.TupleEntry;
 
 import com.scaleunlimited.cascading.BasePath;
@@ -39,14 +40,15 @@ import com.scaleunlimited.cascading.BasePlatform;
 import com.scaleunlimited.cascading.LoggingFlowProcess;
 import com.scaleunlimited.cascading.LoggingFlowReporter;
 import com.scaleunlimited.cascading.NullContext;
-import com.scaleunlimited.cascading.TupleLogger;
 import com.scaleunlimited.classify.BaseModel;
 import com.scaleunlimited.classify.ClassifyDocsPipe;
 import com.scaleunlimited.classify.ClassifyOptions;
+import com.scaleunlimited.classify.ModelInput;
+import com.scaleunlimited.classify.ModelReference;
 import com.scaleunlimited.classify.TrainLogisticModelPipe;
 import com.scaleunlimited.classify.datum.DocDatum;
 import com.scaleunlimited.classify.datum.ModelDatum;
-import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.datum.SerializationTokens;
 import com.scaleunlimited.classify.datum.ThresholdDatum;
 
 @SuppressWarnings({"serial", "rawtypes"})
@@ -61,7 +63,9 @@ public class ExtractRNTermsWorkflow {
         implements Filter<NullContext> {
         
         private BaseModel _model;
+        private ModelReference _modelReference;
         private double _threshold;
+        private transient ModelInput _input;
         private transient LoggingFlowProcess _flowProcess;
 
         public FilterRNTerms(BaseModel model, double threshold) {
@@ -70,6 +74,12 @@ public class ExtractRNTermsWorkflow {
             _threshold = threshold;
         }
 
+        public FilterRNTerms(ModelReference modelReference, double threshold) {
+            super();
+            _modelReference = modelReference;
+            _threshold = threshold;
+        }
+
         @SuppressWarnings("unchecked")
 		@Override
         public void prepare(FlowProcess flowProcess,
@@ -77,16 +87,22 @@ public class ExtractRNTermsWorkflow {
             super.prepare(flowProcess, operationCall);
             _flowProcess = new LoggingFlowProcess(flowProcess);
             _flowProcess.addReporter(new LoggingFlowReporter());
-            _model.reset();
+            _input = ModelInput.fromFields(operationCall.getArgumentFields());
+            // Models from a reference may be shared with other tasks (via the
+            // ModelRegistry), so they're read-only.
+            if (_modelReference != null) {
+                _model = _modelReference.getModel(flowProcess);
+            } else {
+                _model.reset();
+            }
         }
 
         @SuppressWarnings("unchecked")
 		@Override
         public boolean isRemove(FlowProcess flowProcess,
                                 FilterCall<NullContext> filterCall) {
-            TermsDatum termsDatum =
-                new TermsDatum(filterCall.getArguments().getTuple());
-            DocDatum docDatum = _model.classify(termsDatum);
+            Tuple tuple = filterCall.getArguments().getTuple();
+            DocDatum docDatum = _input.classify(_model, tuple);
             boolean result =
                 (TrainLogisticModelPipe.getPositiveScore(docDatum) >= _threshold);
             if (result) {
@@ -140,26 +156,34 @@ public class ExtractRNTermsWorkflow {
         } else {
             unlabeledPath.assertExists("Unlabeled training directory");
         }
-        Tap unlabeledSource = platform.makeTap(  platform.makeBinaryScheme(TermsDatum.FIELDS),
+        TermsFormat termsFormat = TermsFormat.read(platform, workingDirPath);
+        Tap unlabeledSource = platform.makeTap(  platform.makeBinaryScheme(termsFormat.getFields()),
                                         unlabeledPath);
         
         // If M-Prob(U[i]) < t, then RN.add(U[i])
-        // Note that training data has been pre-analyzed.
+        // Note that training data has been pre-analyzed, and the filtered
+        // data stays in the same format.
         Pipe unlabeledPipe = new Pipe("unlabeled");
         Pipe reliablyNegativePipe = new Pipe("reliably negative", unlabeledPipe);
-        reliablyNegativePipe =
-            new Each(   reliablyNegativePipe,
-                        new FilterRNTerms(  modelDatum.getModel(),
-                                            thresholdDatum.getThreshold()));
-        reliablyNegativePipe = TupleLogger.makePipe(reliablyNegativePipe, true);
+        FilterRNTerms filter;
+        if (options.isModelByReference()) {
+            ModelReference modelReference = ModelReference.create(platform, modelPath, modelDatum);
+            modelReference.setSharedPerJvm(options.isShareModel());
+            filter = new FilterRNTerms(modelReference, thresholdDatum.getThreshold());
+        } else {
+            filter = new FilterRNTerms(modelDatum.getLazyModel().setSharedPerJvm(options.isShareModel()), thresholdDatum.getThreshold());
+        }
+        reliablyNegativePipe = new Each(reliablyNegativePipe, filter);
+        reliablyNegativePipe = options.getTupleLoggingPolicy().makePipe(reliablyNegativePipe);
     
         // Set up the output sink
-        Tap reliablyNegativeSink = platform.makeTap( platform.makeBinaryScheme(TermsDatum.FIELDS),
+        Tap reliablyNegativeSink = platform.makeTap( platform.makeBinaryScheme(termsFormat.getFields()),
                                             reliablyNegativePath,
                                             SinkMode.REPLACE);
         
         // Build and return the workflow
         FlowConnector flowConnector = platform.makeFlowConnector();
+        SerializationTokens.register(flowConnector.getProperties());
         return flowConnector.connect(   unlabeledSource,
                                         reliablyNegativeSink,
                                         reliablyNegativePipe);
@@ -208,7 +232,7 @@ public class ExtractRNTermsWorkflow {
         thresholdPath.assertExists("Threshold directory");
         Tap thresholdSource = platform.makeTap(  platform.makeBinaryScheme(ThresholdDatum.FIELDS),
                                         thresholdPath);
-        Iterator<TupleEntry> iter = thresholdSource.openForRead(platform.makeFlowProcess());
+        Iterator<TupleEntry> iter = thresholdSource.openForRead(SerializationTokens.makeFlowProcess(platform));
         if (!(iter.hasNext())) {
             throw new IllegalStateException(String.format(  "Threshold directory %s doesn't contain any classifiers",
                                                             thresholdPath));
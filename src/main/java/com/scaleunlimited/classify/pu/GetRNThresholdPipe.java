@@ -41,15 +41,15 @@ import com.scaleunlimited.cascading.BasePlatform;
 import com.scaleunlimited.cascading.LoggingFlowProcess;
 import com.scaleunlimited.cascading.LoggingFlowReporter;
 import com.scaleunlimited.cascading.NullContext;
-import com.scaleunlimited.cascading.TupleLogger;
 import com.scaleunlimited.classify.BaseModel;
 import com.scaleunlimited.classify.ClassifyDocsPipe;
 import com.scaleunlimited.classify.ClassifyOptions;
 import com.scaleunlimited.classify.TrainLogisticModelPipe;
+import com.scaleunlimited.classify.TupleLoggingPolicy;
 import com.scaleunlimited.classify.analyzer.IAnalyzer;
 import com.scaleunlimited.classify.datum.DocDatum;
 import com.scaleunlimited.classify.datum.ModelDatum;
-import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.datum.SerializationTokens;
 import com.scaleunlimited.classify.datum.ThresholdDatum;
 
 //import edu.emory.mathcs.backport.java.util.Collections;
@@ -120,14 +120,22 @@ public class GetRNThresholdPipe extends SubAssembly {
                                 IAnalyzer analyzer,
                                 BaseModel model,
                                 double noiseLevel) {
+        this(spiesPipe, analyzer, model, noiseLevel, TupleLoggingPolicy.FULL);
+    }
+    
+    public GetRNThresholdPipe(  Pipe spiesPipe,
+                                IAnalyzer analyzer,
+                                BaseModel model,
+                                double noiseLevel,
+                                TupleLoggingPolicy loggingPolicy) {
         super(spiesPipe);
 
         ClassifyDocsPipe classifyPipe =
-            new ClassifyDocsPipe(spiesPipe, analyzer, model);
+            new ClassifyDocsPipe(spiesPipe, analyzer, model, new ClassifyDocsPipe.Settings().setLoggingPolicy(loggingPolicy));
         Pipe classifiedSpiesPipe = classifyPipe.getOutputPipe();
         Pipe thresholdPipe = new Pipe("threshold", classifiedSpiesPipe);
         thresholdPipe = new Each(thresholdPipe, new GetThreshold(noiseLevel));
-        thresholdPipe = TupleLogger.makePipe(thresholdPipe, true);
+        thresholdPipe = loggingPolicy.makePipe(thresholdPipe);
         setTails(thresholdPipe);
     }
     
@@ -148,20 +156,22 @@ public class GetRNThresholdPipe extends SubAssembly {
             ClassifyDocsPipe.readModel(platform, modelPath);
         
         // Set up the input source
+        TermsFormat termsFormat = TermsFormat.read(platform, workingDirPath);
         BasePath spiesPath = platform.makePath(workingDirPath, ClassifyPUConfig.SPIES_SUBDIR_NAME);
         spiesPath.assertExists("Positive spies training terms directory");
-        Tap spiesSource = platform.makeTap( platform.makeBinaryScheme(TermsDatum.FIELDS), spiesPath);
+        Tap spiesSource = platform.makeTap( platform.makeBinaryScheme(termsFormat.getFields()), spiesPath);
         
         // Classify the spies to determine a positive scoring threshold that
         // woud make only the outlier spies negative (i.e., assume 15% are noise).
-        // Note that although the spies are pre-analyzed, the spy model analyzer
-        // is just NullAnalyzer.
+        // Note that the spies are pre-analyzed, and the spy model analyzer
+        // is just NullAnalyzer, so they're classified in whatever format they're in.
         Pipe spiesPipe = new Pipe("spies pipe");
         GetRNThresholdPipe thresholdPipe =
             new GetRNThresholdPipe( spiesPipe,
                                     modelDatum.getAnalyzer(),
-                                    modelDatum.getModel(),
-                                    NOISE_LEVEL);
+                                    modelDatum.getLazyModel(),
+                                    NOISE_LEVEL,
+                                    options.getTupleLoggingPolicy());
 
         // Set up the output sink
         BasePath thresholdPath = platform.makePath(   workingDirPath,
@@ -171,6 +181,7 @@ public class GetRNThresholdPipe extends SubAssembly {
                                     SinkMode.REPLACE);
         
         FlowConnector flowConnector = platform.makeFlowConnector();
+        SerializationTokens.register(flowConnector.getProperties());
         return flowConnector.connect(   spiesSource,
                                         thresholdSink,
                                         thresholdPipe.getThresholdTailPipe());
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.pu;
+
+import cascading.pipe.Each;
+import cascading.pipe.Pipe;
+import cascading.tuple.Fields;
+
+import com.scaleunlimited.cascading.BasePath;
+import com.scaleunlimited.cascading.BasePlatform;
+import com.scaleunlimited.classify.BaseModel;
+import com.scaleunlimited.classify.CompactTerms;
+import com.scaleunlimited.classify.HashTerms;
+import com.scaleunlimited.classify.datum.CompactTermsDatum;
+import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.datum.VectorDatum;
+
+/**
+ * How the analyzed training terms are stored in the PU working directory
+ * (positive, unlabeled, spies and reliably negative terms). The format is
+ * chosen when the training data is analyzed, and recorded in the working
+ * directory so that the downstream flows know which fields to read. The
+ * downstream flows train and classify using whatever format was stored,
+ * without converting back to {@link TermsDatum}s. Note that HASHED terms
+ * can only be used with models that support feature vectors.
+ */
+public enum TermsFormat {
+    
+    TUPLES(TermsDatum.FIELDS, null),
+    COMPACT(CompactTermsDatum.FIELDS, ClassifyPUConfig.COMPACT_TERMS_MARKER_SUBDIR_NAME),
+    HASHED(VectorDatum.FIELDS, ClassifyPUConfig.HASHED_FEATURES_MARKER_SUBDIR_NAME);
+    
+    private Fields _fields;
+    private String _markerSubdirName;
+    
+    private TermsFormat(Fields fields, String markerSubdirName) {
+        _fields = fields;
+        _markerSubdirName = markerSubdirName;
+    }
+    
+    public Fields getFields() {
+        return _fields;
+    }
+    
+    /**
+     * @param pipe {@link TermsDatum} tuples
+     * @return pipe of the equivalent datums in this format
+     */
+    public Pipe fromTermsDatums(Pipe pipe) {
+        switch (this) {
+            case COMPACT:
+                return new Each(pipe, new CompactTerms());
+                
+            case HASHED:
+                return new Each(pipe, new HashTerms());
+                
+            default:
+                return pipe;
+        }
+    }
+    
+    /**
+     * @param model model that will be trained on, or classify, datums in this format
+     * @throws IllegalArgumentException if the model can't handle this format
+     */
+    @SuppressWarnings("rawtypes")
+    public void checkModel(BaseModel model) {
+        if ((this == HASHED) && !model.supportsVectors()) {
+            throw new IllegalArgumentException(String.format(   "%s can't be used with hashed features",
+                                                                model.getClass().getSimpleName()));
+        }
+    }
+    
+    public static TermsFormat read(BasePlatform platform, BasePath workingDirPath) throws Exception {
+        for (TermsFormat format : values()) {
+            if  (   (format._markerSubdirName != null)
+                &&  platform.makePath(workingDirPath, format._markerSubdirName).exists()) {
+                return format;
+            }
+        }
+        
+        return TUPLES;
+    }
+    
+    public void write(BasePlatform platform, BasePath workingDirPath) throws Exception {
+        for (TermsFormat format : values()) {
+            if (format._markerSubdirName == null) {
+                continue;
+            }
+            
+            BasePath markerPath = platform.makePath(workingDirPath, format._markerSubdirName);
+            if (format == this) {
+                markerPath.mkdirs();
+            } else if (markerPath.exists()) {
+                markerPath.delete(true);
+            }
+        }
+    }
+}
@@ -29,16 +29,16 @@ import cascading.tap.Tap;
 
 import com.scaleunlimited.cascading.BasePath;
 import com.scaleunlimited.cascading.BasePlatform;
-import com.scaleunlimited.cascading.TupleLogger;
 import com.scaleunlimited.classify.BaseModel;
+import com.scaleunlimited.classify.CompactTerms;
 import com.scaleunlimited.classify.TrainLogisticModelPipe;
 import com.scaleunlimited.classify.TrainModel;
 import com.scaleunlimited.classify.TrainModelOptions;
 import com.scaleunlimited.classify.TrainModelPipe;
+import com.scaleunlimited.classify.TupleLoggingPolicy;
 import com.scaleunlimited.classify.analyzer.IAnalyzer;
-import com.scaleunlimited.classify.analyzer.NullAnalyzer;
 import com.scaleunlimited.classify.datum.ModelDatum;
-import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.datum.SerializationTokens;
 
 @SuppressWarnings({"serial", "rawtypes"})
 public class TrainFinalModelPipe extends SubAssembly {
@@ -47,22 +47,35 @@ public class TrainFinalModelPipe extends SubAssembly {
                                 Pipe reliablyNegativePipe,
                                 IAnalyzer analyzer,
                                 BaseModel model) {
+        this(positivePipe, reliablyNegativePipe, analyzer, model, TermsFormat.TUPLES, TupleLoggingPolicy.FULL);
+    }
+    
+    public TrainFinalModelPipe( Pipe positivePipe,
+                                Pipe reliablyNegativePipe,
+                                IAnalyzer analyzer,
+                                BaseModel model,
+                                TermsFormat termsFormat,
+                                TupleLoggingPolicy loggingPolicy) {
         super(positivePipe);
         
         // Label the positive/negative training terms
         // Note that we've already analyzed this training data
-        IAnalyzer nullAnalyzer = new NullAnalyzer();
         positivePipe =
             new Each(   positivePipe,
-                        new TrainLogisticModelPipe.GetAndLabelTrainingTerms(nullAnalyzer,
-                                                                            true));
-        positivePipe = TupleLogger.makePipe(positivePipe, true);
+                        new TrainLogisticModelPipe.LabelTrainingDatums(true));
+        positivePipe = loggingPolicy.makePipe(positivePipe);
         
         reliablyNegativePipe =
             new Each(   reliablyNegativePipe,
-                        new TrainLogisticModelPipe.GetAndLabelTrainingTerms(nullAnalyzer,
-                                                                            false));
-        reliablyNegativePipe = TupleLogger.makePipe(reliablyNegativePipe, true);
+                        new TrainLogisticModelPipe.LabelTrainingDatums(false));
+        reliablyNegativePipe = loggingPolicy.makePipe(reliablyNegativePipe);
+        
+        // Shrink the terms we're about to shuffle (the other formats are
+        // already compact).
+        if (termsFormat == TermsFormat.TUPLES) {
+            positivePipe = new Each(positivePipe, new CompactTerms());
+            reliablyNegativePipe = new Each(reliablyNegativePipe, new CompactTerms());
+        }
         
         // Train a new model using those terms
         Pipe[] trainingPipes = Pipe.pipes(positivePipe, reliablyNegativePipe);
@@ -84,17 +97,19 @@ public class TrainFinalModelPipe extends SubAssembly {
         workingDirPath.assertExists("Working directory");
     
         // Try to instantiate the analyzer and modeler
-        IAnalyzer analyzer = TrainModelPipe.makeAnalyzer(options.getAnalyzerName());
+        IAnalyzer analyzer = TrainModelPipe.makeAnalyzer(options.getAnalyzerName(), options.getAnalysisBudget());
         BaseModel model = TrainModelPipe.makeModel(options.getModelName());
     
         // Set up the input sources
+        TermsFormat termsFormat = TermsFormat.read(platform, workingDirPath);
+        termsFormat.checkModel(model);
         BasePath positivePath = platform.makePath(workingDirPath, ClassifyPUConfig.POSITIVE_TERMS_SUBDIR_NAME);
         positivePath.assertExists("Positive training terms directory");
-        Tap positiveSource = platform.makeTap(platform.makeBinaryScheme(TermsDatum.FIELDS), positivePath);
+        Tap positiveSource = platform.makeTap(platform.makeBinaryScheme(termsFormat.getFields()), positivePath);
         
         BasePath reliablyNegativePath = platform.makePath(workingDirPath, ClassifyPUConfig.RELIABLY_NEGATIVE_TERMS_SUBDIR_NAME);
         reliablyNegativePath.assertExists("Reliably negative training terms directory");
-        Tap reliablyNegativeSource = platform.makeTap(platform.makeBinaryScheme(TermsDatum.FIELDS),
+        Tap reliablyNegativeSource = platform.makeTap(platform.makeBinaryScheme(termsFormat.getFields()),
                                                 reliablyNegativePath);
         
         // Label the training terms and train the model from them
@@ -105,7 +120,9 @@ public class TrainFinalModelPipe extends SubAssembly {
             new TrainFinalModelPipe(positivePipe,
                                     reliablyNegativePipe,
                                     analyzer,
-                                    model);
+                                    model,
+                                    termsFormat,
+                                    options.getTupleLoggingPolicy());
     
         // Set up the output sink
         BasePath modelPath = platform.makePath(workingDirPath, ClassifyPUConfig.MODEL_SUBDIR_NAME);
@@ -118,6 +135,7 @@ public class TrainFinalModelPipe extends SubAssembly {
         sources.put(reliablyNegativePipe.getName(), reliablyNegativeSource);
         sources.put(positivePipe.getName(), positiveSource);
         FlowConnector flowConnector = platform.makeFlowConnector();
+        SerializationTokens.register(flowConnector.getProperties());
         return flowConnector.connect(   sources,
                                         modelSink,
                                         trainerPipe.getModelTailPipe());
@@ -21,6 +21,7 @@ import java.util.Random;
 
 import cascading.flow.Flow;
 import cascading.flow.FlowConnector;
+import cascading.pipe.Each;
 import cascading.pipe.GroupBy;
 import cascading.pipe.Pipe;
 import cascading.pipe.SubAssembly;
@@ -32,13 +33,15 @@ import com.scaleunlimited.cascading.BasePath;
 import com.scaleunlimited.cascading.BasePlatform;
 import com.scaleunlimited.cascading.BaseSplitter;
 import com.scaleunlimited.cascading.SplitterAssembly;
-import com.scaleunlimited.cascading.TupleLogger;
 import com.scaleunlimited.classify.BaseModel;
+import com.scaleunlimited.classify.CompactTerms;
+import com.scaleunlimited.classify.ExpandTerms;
 import com.scaleunlimited.classify.TrainLogisticModelPipe;
 import com.scaleunlimited.classify.TrainModelPipe;
+import com.scaleunlimited.classify.TupleLoggingPolicy;
 import com.scaleunlimited.classify.analyzer.NullAnalyzer;
 import com.scaleunlimited.classify.datum.ModelDatum;
-import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.datum.SerializationTokens;
 
 @SuppressWarnings({"serial", "rawtypes"})
 public class TrainSpyModelPipe extends SubAssembly {
@@ -79,13 +82,31 @@ public class TrainSpyModelPipe extends SubAssembly {
                 System.currentTimeMillis());
     }
     
-    // Grab a random sample S of P, then train a model based on P-S and U+S.
     public TrainSpyModelPipe(   Pipe positivePipe,
                                 Pipe unlabeledPipe,
                                 BaseModel model,
                                 long randomSeed) {
+        this(positivePipe, unlabeledPipe, model, randomSeed, TermsFormat.TUPLES, TupleLoggingPolicy.FULL);
+    }
+    
+    // Grab a random sample S of P, then train a model based on P-S and U+S.
+    // The spies are output in the same format as the input terms.
+    public TrainSpyModelPipe(   Pipe positivePipe,
+                                Pipe unlabeledPipe,
+                                BaseModel model,
+                                long randomSeed,
+                                TermsFormat termsFormat,
+                                TupleLoggingPolicy loggingPolicy) {
         super(positivePipe, unlabeledPipe);
         
+        // Shrink the terms we're about to shuffle (the other formats are
+        // already compact).
+        boolean needsCompaction = (termsFormat == TermsFormat.TUPLES);
+        if (needsCompaction) {
+            positivePipe = new Each(positivePipe, new CompactTerms());
+            unlabeledPipe = new Each(unlabeledPipe, new CompactTerms());
+        }
+        
         // Choose random sample S of the positive docs P
         SplitterAssembly splitter =
             new SplitterAssembly(   positivePipe,
@@ -93,7 +114,11 @@ public class TrainSpyModelPipe extends SubAssembly {
                                     ClassifyPUCounters.POSITIVE_SPY,
                                     ClassifyPUCounters.POSITIVE_NON_SPY);
         Pipe spiesPipe = new Pipe(SPIES_PIPE_NAME, splitter.getLHSPipe());
-        spiesPipe = TupleLogger.makePipe(spiesPipe, true);
+        spiesPipe = loggingPolicy.makePipe(spiesPipe);
+        Pipe spiesTailPipe = spiesPipe;
+        if (needsCompaction) {
+            spiesTailPipe = new Each(spiesTailPipe, new ExpandTerms());
+        }
         
         // Train a model M based on P-S and U+S
         Pipe remainingPositivePipe = new Pipe(  "remaining positive",
@@ -105,8 +130,9 @@ public class TrainSpyModelPipe extends SubAssembly {
                                         unlabeledAndSpiesPipe,
                                         new NullAnalyzer(),
                                         model,
-                                        MODEL_PIPE_NAME);
-        setTails(trainModelPipe.getModelTailPipe(), spiesPipe);
+                                        MODEL_PIPE_NAME,
+                                        loggingPolicy);
+        setTails(trainModelPipe.getModelTailPipe(), spiesTailPipe);
     }
     
     public Pipe getModelTailPipe() {
@@ -137,12 +163,14 @@ public class TrainSpyModelPipe extends SubAssembly {
         BaseModel model = TrainModelPipe.makeModel(options.getModelName());
 
         // Set up the input sources
+        TermsFormat termsFormat = TermsFormat.read(platform, workingDirPath);
+        termsFormat.checkModel(model);
         BasePath unlabeledPath = platform.makePath(workingDirPath, ClassifyPUConfig.UNLABELED_TERMS_SUBDIR_NAME);
         unlabeledPath.assertExists("Unlabeled training terms directory");
-        Tap unlabeledSource = platform.makeTap(platform.makeBinaryScheme(TermsDatum.FIELDS), unlabeledPath);
+        Tap unlabeledSource = platform.makeTap(platform.makeBinaryScheme(termsFormat.getFields()), unlabeledPath);
         BasePath positivePath = platform.makePath(workingDirPath, ClassifyPUConfig.POSITIVE_TERMS_SUBDIR_NAME);
         positivePath.assertExists("Positive training terms directory");
-        Tap positiveSource = platform.makeTap(platform.makeBinaryScheme(TermsDatum.FIELDS), positivePath);
+        Tap positiveSource = platform.makeTap(platform.makeBinaryScheme(termsFormat.getFields()), positivePath);
         
         // Grab a random sample S of P, then train a model based on P-S and U+S.
         // Note that training data has been pre-analyzed.
@@ -152,7 +180,10 @@ public class TrainSpyModelPipe extends SubAssembly {
             new TrainSpyModelPipe(  positivePipe,
                                     unlabeledPipe,
                                     model,
-                                    options.getRandomSeed());
+                                    options.getRandomSeed(),
+                                    termsFormat,
+                                    options.getTupleLoggingPolicy());
+        Pipe spiesTailPipe = trainModelPipe.getSpiesTailPipe();
 
         // Set up the output sinks
         BasePath modelPath = platform.makePath(workingDirPath, ClassifyPUConfig.SPY_MODEL_SUBDIR_NAME);
@@ -160,7 +191,7 @@ public class TrainSpyModelPipe extends SubAssembly {
                                 modelPath,
                                 SinkMode.REPLACE);
         BasePath spiesPath = platform.makePath(workingDirPath, ClassifyPUConfig.SPIES_SUBDIR_NAME);
-        Tap spiesSink = platform.makeTap(platform.makeBinaryScheme(TermsDatum.FIELDS),
+        Tap spiesSink = platform.makeTap(platform.makeBinaryScheme(termsFormat.getFields()),
                                 spiesPath,
                                 SinkMode.REPLACE);
         
@@ -170,10 +201,12 @@ public class TrainSpyModelPipe extends SubAssembly {
         sources.put(positivePipe.getName(), positiveSource);
         Map<String, Tap> sinks = new HashMap<String, Tap>();
         sinks.put(trainModelPipe.getModelTailPipe().getName(), modelSink);
-        sinks.put(trainModelPipe.getSpiesTailPipe().getName(), spiesSink);
+        sinks.put(spiesTailPipe.getName(), spiesSink);
         FlowConnector flowConnector = platform.makeFlowConnector();
+        SerializationTokens.register(flowConnector.getProperties());
         return flowConnector.connect(   sources,
                                         sinks,
-                                        trainModelPipe.getTails());
+                                        trainModelPipe.getModelTailPipe(),
+                                        spiesTailPipe);
     }
 }
@@ -0,0 +1,468 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.vectors;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.Vector.Element;
+
+/**
+ * Sparse vector of (non-negative) int indexes and float values, serialized
+ * as the number of entries, the value encoding, and then for each entry (in
+ * increasing index order) the delta from the previous index as a varint,
+ * followed by its value. Values are either 4-byte floats, or quantized to
+ * 2-byte fractions of the vector's largest absolute value. A quantized
+ * vector holds its quantized values in memory too, so it's the same (and
+ * compares the same) before and after being serialized.
+ * 
+ * Vectors are ordered by number of entries, then value encoding, then entry
+ * by entry (index, then value), which is consistent with equals. A raw
+ * comparator that decodes the same fields is registered, so they can be used
+ * as keys. The same index can appear more than once (e.g. for hashed features
+ * that collide).
+ * 
+ * {@link #readFields(DataInput)} decodes directly into arrays that are reused
+ * across calls, and {@link #getIndexes()} and {@link #getValues()} return
+ * those arrays, so only the first {@link #getNumEntries()} entries are valid.
+ */
+public class SparseVectorWritable implements WritableComparable<SparseVectorWritable> {
+
+    private static final byte FLOAT_VALUES = 0;
+    private static final byte QUANTIZED_VALUES = 1;
+    
+    private static final int QUANTIZED_MAX = Short.MAX_VALUE;
+    
+    static {
+        WritableComparator.define(SparseVectorWritable.class, new Comparator());
+    }
+    
+    private int[] _indexes = new int[0];
+    private float[] _values = new float[0];
+    private int _numEntries = 0;
+    private boolean _quantized = false;
+    private float _scale = 0.0f;
+    
+    public SparseVectorWritable() {
+    }
+    
+    public SparseVectorWritable(int[] indexes, float[] values, int numEntries) {
+        set(indexes, values, numEntries);
+    }
+    
+    public SparseVectorWritable(Vector vector) {
+        int numEntries = vector.getNumNondefaultElements();
+        int[] indexes = new int[numEntries];
+        float[] values = new float[numEntries];
+        numEntries = 0;
+        for (Element e : vector.nonZeroes()) {
+            indexes[numEntries] = e.index();
+            values[numEntries] = (float)e.get();
+            numEntries++;
+        }
+        
+        set(indexes, values, numEntries);
+    }
+    
+    /**
+     * @param indexes entry indexes, which must be non-negative but needn't be sorted
+     * @param values entry values
+     * @param numEntries number of entries to use from indexes and values
+     */
+    public void set(int[] indexes, float[] values, int numEntries) {
+        for (int i = 0; i < numEntries; i++) {
+            if (indexes[i] < 0) {
+                throw new IllegalArgumentException("Vector indexes can't be negative: " + indexes[i]);
+            }
+        }
+        
+        ensureCapacity(numEntries);
+        System.arraycopy(indexes, 0, _indexes, 0, numEntries);
+        System.arraycopy(values, 0, _values, 0, numEntries);
+        _numEntries = numEntries;
+        
+        if (_quantized) {
+            quantize();
+        }
+        
+        sortEntries();
+    }
+    
+    // Sort by index (then value, so the encoding is deterministic) by
+    // packing each pair into a long, if they aren't already in that order.
+    private void sortEntries() {
+        boolean sorted = true;
+        for (int i = 1; (i < _numEntries) && sorted; i++) {
+            sorted = (packEntry(i - 1) <= packEntry(i));
+        }
+        
+        if (sorted) {
+            return;
+        }
+        
+        long[] entries = new long[_numEntries];
+        for (int i = 0; i < _numEntries; i++) {
+            entries[i] = packEntry(i);
+        }
+        
+        Arrays.sort(entries);
+        for (int i = 0; i < _numEntries; i++) {
+            _indexes[i] = (int)(entries[i] >>> 32);
+            _values[i] = Float.intBitsToFloat(flipFloatBits((int)entries[i] ^ Integer.MIN_VALUE));
+        }
+    }
+    
+    // The low half is the value's bits, flipped so that unsigned order is
+    // the same as Float.compare() order.
+    private long packEntry(int i) {
+        int valueBits = flipFloatBits(Float.floatToIntBits(_values[i])) ^ Integer.MIN_VALUE;
+        return ((long)_indexes[i] << 32) | (valueBits & 0xFFFFFFFFL);
+    }
+    
+    // Flip all but the sign bit of negative values, so that float bits
+    // sort as signed ints. Applying it twice gives back the original bits.
+    private static int flipFloatBits(int bits) {
+        return bits ^ ((bits >> 31) & Integer.MAX_VALUE);
+    }
+    
+    // Replace each value with what it will be once it's been written and
+    // read back, using the same arithmetic as readFields().
+    private void quantize() {
+        _scale = 0.0f;
+        for (int i = 0; i < _numEntries; i++) {
+            _scale = Math.max(_scale, Math.abs(_values[i]));
+        }
+        
+        for (int i = 0; i < _numEntries; i++) {
+            short quantized = (_scale == 0.0f ? 0 : (short)Math.round(_values[i] / _scale * QUANTIZED_MAX));
+            _values[i] = quantized * _scale / QUANTIZED_MAX;
+        }
+    }
+    
+    public int getNumEntries() {
+        return _numEntries;
+    }
+    
+    /**
+     * @return indexes in increasing order; only the first {@link #getNumEntries()} are valid,
+     * and the array is reused by the next {@link #readFields(DataInput)}.
+     */
+    public int[] getIndexes() {
+        return _indexes;
+    }
+    
+    /**
+     * @return values; only the first {@link #getNumEntries()} are valid, and
+     * the array is reused by the next {@link #readFields(DataInput)}.
+     */
+    public float[] getValues() {
+        return _values;
+    }
+    
+    public boolean isQuantized() {
+        return _quantized;
+    }
+    
+    /**
+     * @param quantized true => write values as 16 bit fractions of the largest
+     * absolute value, versus as floats. The current values are quantized
+     * immediately, which is lossy.
+     * @return this vector
+     */
+    public SparseVectorWritable setQuantized(boolean quantized) {
+        if (quantized && !_quantized) {
+            _quantized = true;
+            quantize();
+            sortEntries();
+        }
+        
+        _quantized = quantized;
+        return this;
+    }
+    
+    /**
+     * @param cardinality size of the resulting vector, which must be greater
+     * than the largest index.
+     * @return equivalent Mahout vector (with summed values for repeated indexes)
+     */
+    public Vector toVector(int cardinality) {
+        Vector result = new RandomAccessSparseVector(cardinality, _numEntries);
+        for (int i = 0; i < _numEntries; i++) {
+            result.setQuick(_indexes[i], result.getQuick(_indexes[i]) + _values[i]);
+        }
+        
+        return result;
+    }
+    
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, _numEntries);
+        out.writeByte(_quantized ? QUANTIZED_VALUES : FLOAT_VALUES);
+        
+        // Values were quantized using _scale when they were set, so use the
+        // same scale here, versus recalculating it from the quantized values.
+        if (_quantized) {
+            out.writeFloat(_scale);
+        }
+        
+        int prevIndex = 0;
+        for (int i = 0; i < _numEntries; i++) {
+            WritableUtils.writeVInt(out, _indexes[i] - prevIndex);
+            prevIndex = _indexes[i];
+            
+            if (!_quantized) {
+                out.writeFloat(_values[i]);
+            } else if (_scale == 0.0f) {
+                out.writeShort(0);
+            } else {
+                out.writeShort(Math.round(_values[i] / _scale * QUANTIZED_MAX));
+            }
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        int numEntries = WritableUtils.readVInt(in);
+        ensureCapacity(numEntries);
+        
+        byte encoding = in.readByte();
+        if ((encoding != FLOAT_VALUES) && (encoding != QUANTIZED_VALUES)) {
+            throw new IOException("Unknown vector value encoding: " + encoding);
+        }
+        
+        _quantized = (encoding == QUANTIZED_VALUES);
+        _scale = (_quantized ? in.readFloat() : 0.0f);
+        
+        int index = 0;
+        for (int i = 0; i < numEntries; i++) {
+            index += WritableUtils.readVInt(in);
+            _indexes[i] = index;
+            if (_quantized) {
+                _values[i] = in.readShort() * _scale / QUANTIZED_MAX;
+            } else {
+                _values[i] = in.readFloat();
+            }
+        }
+        
+        _numEntries = numEntries;
+    }
+    
+    private void ensureCapacity(int numEntries) {
+        if (_indexes.length < numEntries) {
+            int capacity = Math.max(numEntries, _indexes.length * 2);
+            _indexes = new int[capacity];
+            _values = new float[capacity];
+        }
+    }
+    
+    /**
+     * @return serialized form of this vector
+     */
+    public byte[] toBytes() {
+        try {
+            DataOutputBuffer dob = new DataOutputBuffer();
+            write(dob);
+            return Arrays.copyOf(dob.getData(), dob.getLength());
+        } catch (IOException e) {
+            throw new RuntimeException("Impossible error", e);
+        }
+    }
+    
+    @Override
+    public int compareTo(SparseVectorWritable o) {
+        if (_numEntries != o._numEntries) {
+            return (_numEntries < o._numEntries ? -1 : 1);
+        }
+        
+        if (_quantized != o._quantized) {
+            return (_quantized ? 1 : -1);
+        }
+        
+        for (int i = 0; i < _numEntries; i++) {
+            if (_indexes[i] != o._indexes[i]) {
+                return (_indexes[i] < o._indexes[i] ? -1 : 1);
+            }
+            
+            int result = Float.compare(_values[i], o._values[i]);
+            if (result != 0) {
+                return result;
+            }
+        }
+        
+        return 0;
+    }
+    
+    @Override
+    public int hashCode() {
+        int result = _quantized ? 1231 : 1237;
+        for (int i = 0; i < _numEntries; i++) {
+            result = 31 * result + _indexes[i];
+            result = 31 * result + Float.floatToIntBits(_values[i]);
+        }
+        
+        return result;
+    }
+    
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        SparseVectorWritable other = (SparseVectorWritable) obj;
+        if (_quantized != other._quantized)
+            return false;
+        if (_numEntries != other._numEntries)
+            return false;
+        for (int i = 0; i < _numEntries; i++) {
+            if  (   (_indexes[i] != other._indexes[i])
+                ||  (Float.floatToIntBits(_values[i]) != Float.floatToIntBits(other._values[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("{");
+        for (int i = 0; i < _numEntries; i++) {
+            if (i > 0) {
+                result.append(',');
+            }
+            result.append(_indexes[i]);
+            result.append(':');
+            result.append(_values[i]);
+        }
+        
+        return result.append('}').toString();
+    }
+    
+    /**
+     * Compares serialized vectors in the same order as {@link SparseVectorWritable#compareTo(SparseVectorWritable)},
+     * decoding one entry at a time rather than deserializing them.
+     */
+    public static class Comparator extends WritableComparator {
+        
+        public Comparator() {
+            super(SparseVectorWritable.class);
+        }
+        
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            try {
+                EntryReader reader1 = new EntryReader(b1, s1);
+                EntryReader reader2 = new EntryReader(b2, s2);
+                
+                if (reader1.getNumEntries() != reader2.getNumEntries()) {
+                    return (reader1.getNumEntries() < reader2.getNumEntries() ? -1 : 1);
+                }
+                
+                if (reader1.isQuantized() != reader2.isQuantized()) {
+                    return (reader1.isQuantized() ? 1 : -1);
+                }
+                
+                for (int i = 0; i < reader1.getNumEntries(); i++) {
+                    reader1.next();
+                    reader2.next();
+                    
+                    if (reader1.getIndex() != reader2.getIndex()) {
+                        return (reader1.getIndex() < reader2.getIndex() ? -1 : 1);
+                    }
+                    
+                    int result = Float.compare(reader1.getValue(), reader2.getValue());
+                    if (result != 0) {
+                        return result;
+                    }
+                }
+                
+                return 0;
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Invalid serialized vector", e);
+            }
+        }
+    }
+    
+    /**
+     * Decodes entries from a serialized vector, the same way as {@link SparseVectorWritable#readFields(DataInput)}.
+     */
+    private static class EntryReader {
+        
+        private byte[] _bytes;
+        private int _pos;
+        private int _numEntries;
+        private boolean _quantized;
+        private float _scale;
+        private int _index;
+        private float _value;
+        
+        public EntryReader(byte[] bytes, int start) throws IOException {
+            _bytes = bytes;
+            _pos = start;
+            _numEntries = readVInt();
+            _quantized = (_bytes[_pos++] == QUANTIZED_VALUES);
+            if (_quantized) {
+                _scale = WritableComparator.readFloat(_bytes, _pos);
+                _pos += 4;
+            }
+            
+            _index = 0;
+        }
+        
+        public int getNumEntries() {
+            return _numEntries;
+        }
+        
+        public boolean isQuantized() {
+            return _quantized;
+        }
+        
+        public int getIndex() {
+            return _index;
+        }
+        
+        public float getValue() {
+            return _value;
+        }
+        
+        public void next() throws IOException {
+            _index += readVInt();
+            if (_quantized) {
+                _value = (short)WritableComparator.readUnsignedShort(_bytes, _pos) * _scale / QUANTIZED_MAX;
+                _pos += 2;
+            } else {
+                _value = WritableComparator.readFloat(_bytes, _pos);
+                _pos += 4;
+            }
+        }
+        
+        private int readVInt() throws IOException {
+            int result = WritableComparator.readVInt(_bytes, _pos);
+            _pos += WritableUtils.decodeVIntSize(_bytes[_pos]);
+            return result;
+        }
+    }
+}
@@ -24,6 +24,11 @@ import org.apache.hadoop.io.WritableComparable;
 import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.VectorWritable;
 
+/**
+ * @deprecated Use {@link SparseVectorWritable}, which has a more compact
+ * encoding, doesn't need a Hadoop Configuration, and can be used as a key.
+ */
+@Deprecated
 public class WritableComparableVector implements WritableComparable<WritableComparableVector> {
 
 	private static Configuration CONF = new Configuration();
@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cascading.flow.Flow;
+import cascading.operation.Function;
+import cascading.pipe.Each;
+import cascading.pipe.Pipe;
+import cascading.tap.SinkMode;
+import cascading.tap.Tap;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryCollector;
+
+import com.scaleunlimited.cascading.BasePath;
+import com.scaleunlimited.cascading.local.LocalPlatform;
+import com.scaleunlimited.classify.analyzer.StandardAnalyzer;
+import com.scaleunlimited.classify.datum.DocDatum;
+import com.scaleunlimited.classify.datum.TextDatum;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class AnalyzeAndClassifyTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AnalyzeAndClassifyTest.class);
+
+    private static final String WORKING_DIR = "build/analyze-and-classify-test/";
+    
+    private static final String[] WORDS = {
+        "badger", "mongoose", "hyena", "aardvark", "otter", "weasel", "ferret", "stoat"
+    };
+    
+    @Test
+    public void testSameAsSeparateOperations() throws Exception {
+        LocalPlatform platform = new LocalPlatform(AnalyzeAndClassifyTest.class);
+        BasePath inputPath = writeDocs(platform, "same-input", 500);
+        BaseModel model = trainModel();
+        
+        List<DocDatum> expected = classify(platform, inputPath, "same-separate", new AnalyzeTuple(new StandardAnalyzer()), new ClassifyTerms(model));
+        List<DocDatum> actual = classify(platform, inputPath, "same-fused", new AnalyzeAndClassify(new StandardAnalyzer(), model));
+        checkResults(expected, actual);
+        
+        // And with caching of duplicate documents.
+        actual = classify(platform, inputPath, "same-cached", new AnalyzeAndClassify(new StandardAnalyzer(), model).setCacheSize(10));
+        checkResults(expected, actual);
+    }
+    
+    /**
+     * Compare throughput of separate analyze and classify operations versus
+     * the fused operation, for a single task. This logs the results, versus
+     * asserting anything about relative speed, and runs three 20K document
+     * flows, so it's not part of the normal build. To run it, remove the
+     * Ignore annotation and then:
+     * 
+     * mvn test -Dtest=AnalyzeAndClassifyTest#testThroughput
+     */
+    @Ignore("Benchmark that only logs throughput; see the javadoc for how to run it")
+    @Test
+    public void testThroughput() throws Exception {
+        final int numDocs = 20000;
+        LocalPlatform platform = new LocalPlatform(AnalyzeAndClassifyTest.class);
+        BasePath inputPath = writeDocs(platform, "throughput-input", numDocs);
+        BaseModel model = trainModel();
+        
+        // Warm up the JIT before timing anything.
+        classify(platform, inputPath, "throughput-warmup", new AnalyzeAndClassify(new StandardAnalyzer(), model));
+        
+        long startTime = System.nanoTime();
+        classify(platform, inputPath, "throughput-separate", new AnalyzeTuple(new StandardAnalyzer()), new ClassifyTerms(model));
+        long separateTime = System.nanoTime() - startTime;
+        
+        startTime = System.nanoTime();
+        classify(platform, inputPath, "throughput-fused", new AnalyzeAndClassify(new StandardAnalyzer(), model));
+        long fusedTime = System.nanoTime() - startTime;
+        
+        LOGGER.info(String.format(  "Separate operations: %.0f docs/sec, fused operation: %.0f docs/sec",
+                                    numDocs / (separateTime / 1.0e9),
+                                    numDocs / (fusedTime / 1.0e9)));
+    }
+    
+    private void checkResults(List<DocDatum> expected, List<DocDatum> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getLabel(), actual.get(i).getLabel());
+            assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 0.0f);
+            assertEquals(expected.get(i).getPayload(), actual.get(i).getPayload());
+        }
+    }
+    
+    private List<DocDatum> classify(LocalPlatform platform, BasePath inputPath, String outputName, Function... functions) throws Exception {
+        BasePath outputPath = platform.makePath(platform.makePath(WORKING_DIR), outputName);
+        Tap inputTap = platform.makeTap(platform.makeBinaryScheme(TextDatum.FIELDS), inputPath);
+        Tap outputTap = platform.makeTap(platform.makeBinaryScheme(DocDatum.FIELDS), outputPath, SinkMode.REPLACE);
+        
+        Pipe pipe = new Pipe("classify");
+        for (Function function : functions) {
+            pipe = new Each(pipe, function);
+        }
+        
+        Flow flow = platform.makeFlowConnector().connect(inputTap, outputTap, pipe);
+        flow.complete();
+        
+        List<DocDatum> result = new ArrayList<DocDatum>();
+        Iterator<TupleEntry> iter = outputTap.openForRead(platform.makeFlowProcess());
+        while (iter.hasNext()) {
+            DocDatum docDatum = new DocDatum(iter.next().getTupleCopy());
+            result.add(docDatum);
+        }
+        
+        return result;
+    }
+    
+    private BasePath writeDocs(LocalPlatform platform, String inputName, int numDocs) throws Exception {
+        BasePath inputPath = platform.makePath(platform.makePath(WORKING_DIR), inputName);
+        Tap inputTap = platform.makeTap(platform.makeBinaryScheme(TextDatum.FIELDS), inputPath, SinkMode.REPLACE);
+        TupleEntryCollector writer = inputTap.openForWrite(platform.makeFlowProcess());
+        for (int i = 0; i < numDocs; i++) {
+            // Every 10th document is a duplicate of an earlier one.
+            int docIndex = ((i % 10) == 9 ? i - 5 : i);
+            writer.add(new TextDatum(makeContent(docIndex), "doc-" + i).getTuple());
+        }
+        writer.close();
+        return inputPath;
+    }
+    
+    private String makeContent(int docIndex) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            result.append(WORDS[(docIndex * 7 + i * (docIndex % 5 + 1)) % WORDS.length]);
+            result.append(' ');
+        }
+        
+        return result.toString();
+    }
+    
+    private BaseModel trainModel() {
+        List<TextDatum> docs = new ArrayList<TextDatum>();
+        for (int i = 0; i < 100; i++) {
+            String label = ((i % 5) < 2 ? "small" : "large");
+            docs.add(new TextDatum(makeContent(i), label));
+        }
+        
+        return ModelTestUtils.trainModel(new StandardAnalyzer(), docs);
+    }
+}
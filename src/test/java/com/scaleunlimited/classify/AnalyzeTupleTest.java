@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import cascading.flow.Flow;
+import cascading.pipe.Each;
+import cascading.pipe.Pipe;
+import cascading.tap.SinkMode;
+import cascading.tap.Tap;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryCollector;
+
+import com.scaleunlimited.cascading.BasePath;
+import com.scaleunlimited.cascading.local.LocalPlatform;
+import com.scaleunlimited.classify.analyzer.StandardAnalyzer;
+import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.datum.TextDatum;
+
+public class AnalyzeTupleTest {
+
+    private static final String WORKING_DIR = "build/analyze-tuple-test/";
+    private static final int NUM_DOCS = 500;
+
+    @Test
+    public void testSingleThreaded() throws Exception {
+        runAnalysis(1, true, 0);
+    }
+
+    @Test
+    public void testMultiThreadedOrdered() throws Exception {
+        runAnalysis(4, true, 0);
+    }
+
+    @Test
+    public void testMultiThreadedUnordered() throws Exception {
+        runAnalysis(4, false, 0);
+    }
+
+    @Test
+    public void testCachedDuplicates() throws Exception {
+        runAnalysis(1, true, 10);
+    }
+
+    @Test
+    public void testMultiThreadedCachedDuplicates() throws Exception {
+        runAnalysis(4, true, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidThreadCount() {
+        new AnalyzeTuple(new StandardAnalyzer(), 0, true);
+    }
+
+    private void runAnalysis(int numThreads, boolean ordered, int cacheSize) throws Exception {
+        LocalPlatform platform = new LocalPlatform(AnalyzeTupleTest.class);
+        BasePath workingDirPath = platform.makePath(WORKING_DIR);
+        BasePath inputPath = platform.makePath(workingDirPath, "input");
+        BasePath outputPath = platform.makePath(workingDirPath, "output-" + numThreads + "-" + ordered + "-" + cacheSize);
+
+        Tap inputTap = platform.makeTap(platform.makeBinaryScheme(TextDatum.FIELDS), inputPath, SinkMode.REPLACE);
+        TupleEntryCollector writer = inputTap.openForWrite(platform.makeFlowProcess());
+        for (int i = 0; i < NUM_DOCS; i++) {
+            // Vary the document size, so that with multiple threads
+            // some documents finish before ones that came earlier. This also
+            // means lots of duplicate content, for testing caching.
+            StringBuilder content = new StringBuilder("badger ");
+            for (int j = 0; j < (i % 7) * 50; j++) {
+                content.append("mongoose hyena ");
+            }
+            writer.add(new TextDatum(content.toString(), "doc-" + i).getTuple());
+        }
+        writer.close();
+
+        Pipe pipe = new Pipe("analyze");
+        pipe = new Each(pipe, new AnalyzeTuple(new StandardAnalyzer(), numThreads, ordered).setCacheSize(cacheSize));
+        Tap outputTap = platform.makeTap(platform.makeBinaryScheme(TermsDatum.FIELDS), outputPath, SinkMode.REPLACE);
+        Flow flow = platform.makeFlowConnector().connect(inputTap, outputTap, pipe);
+        flow.complete();
+
+        // Every document that wasn't found in the cache should have been timed.
+        long numAnalyzed = flow.getFlowStats().getCounterValue(ClassifyTimingCounters.ANALYSIS_COUNT);
+        if (cacheSize == 0) {
+            assertEquals(NUM_DOCS, numAnalyzed);
+        } else {
+            assertEquals(flow.getFlowStats().getCounterValue(ClassifyCounters.ANALYSIS_CACHE_MISS), numAnalyzed);
+        }
+
+        boolean[] seen = new boolean[NUM_DOCS];
+        int numDocs = 0;
+        Iterator<TupleEntry> iter = outputTap.openForRead(platform.makeFlowProcess());
+        while (iter.hasNext()) {
+            TermsDatum termsDatum = new TermsDatum(iter.next().getTuple());
+            int docIndex = Integer.parseInt(termsDatum.getLabel().substring("doc-".length()));
+            if (ordered) {
+                assertEquals(numDocs, docIndex);
+            }
+
+            assertFalse(seen[docIndex]);
+            seen[docIndex] = true;
+            assertTrue(termsDatum.getTermMap().containsKey("badger"));
+            assertEquals((docIndex % 7) == 0 ? 1 : 3, termsDatum.getTermMap().size());
+            numDocs += 1;
+        }
+
+        assertEquals(NUM_DOCS, numDocs);
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.scaleunlimited.classify.analyzer.StandardAnalyzer;
+import com.scaleunlimited.classify.datum.DocDatum;
+import com.scaleunlimited.classify.datum.ModelDatum;
+import com.scaleunlimited.classify.datum.TextDatum;
+
+public class ClassifyEngineTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClassifyEngineTest.class);
+
+    private static final String[] WORDS = {
+        "badger", "mongoose", "hyena", "aardvark", "otter", "weasel", "ferret", "stoat"
+    };
+    
+    @Test
+    public void testSyncAndAsyncMatch() throws Exception {
+        ClassifyEngine engine = new ClassifyEngine(makeModelDatum(), 2, 10);
+        
+        List<Future<DocDatum>> futures = new ArrayList<Future<DocDatum>>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(engine.submit(makeText(i)));
+        }
+        
+        for (int i = 0; i < 100; i++) {
+            DocDatum expected = engine.classify(makeText(i));
+            assertNotNull(expected);
+            DocDatum actual = futures.get(i).get();
+            assertEquals(expected.getLabel(), actual.getLabel());
+            assertEquals(expected.getScore(), actual.getScore(), 0.0f);
+        }
+        
+        engine.close();
+        
+        try {
+            engine.classify(makeText(0));
+            fail("Closed engine shouldn't classify text");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+    
+    @Test
+    public void testCloseWakesBlockedSubmitter() throws Exception {
+        // Hold on to the worker, so the queue stays full until we run it.
+        final List<Runnable> workers = new ArrayList<Runnable>();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                workers.add(command);
+            }
+        };
+        
+        final ClassifyEngine engine = new ClassifyEngine(makeModelDatum(), executor, 1, 1);
+        Future<DocDatum> first = engine.submit(makeText(0));
+        
+        final AtomicReference<Throwable> submitError = new AtomicReference<Throwable>();
+        Thread submitter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    engine.submit(makeText(1));
+                } catch (Throwable t) {
+                    submitError.set(t);
+                }
+            }
+        };
+        submitter.start();
+        Thread.sleep(200);
+        
+        Thread closer = new Thread() {
+            @Override
+            public void run() {
+                engine.close();
+            }
+        };
+        closer.start();
+        
+        submitter.join(5000);
+        assertFalse("Submitter still blocked after close", submitter.isAlive());
+        assertTrue(submitError.get() instanceof IllegalStateException);
+        
+        // Now let the worker drain the queue, which lets close() finish.
+        assertEquals(1, workers.size());
+        new Thread(workers.get(0)).start();
+        closer.join(5000);
+        assertFalse("Close never finished", closer.isAlive());
+        assertTrue(first.isDone());
+        assertNotNull(first.get());
+    }
+    
+    /**
+     * Log latency percentiles for synchronous and asynchronous classification.
+     * This doesn't assert anything about the latencies, as they depend on
+     * the machine running the test, and runs 15K classifications, so it's
+     * not part of the normal build. To run it, remove the Ignore annotation
+     * and then:
+     * 
+     * mvn test -Dtest=ClassifyEngineTest#testLatency
+     */
+    @Ignore("Benchmark that only logs latency; see the javadoc for how to run it")
+    @Test
+    public void testLatency() throws Exception {
+        final int numDocs = 5000;
+        ClassifyEngine engine = new ClassifyEngine(makeModelDatum(), 2, 100);
+        
+        // Warm up the JIT before timing anything.
+        for (int i = 0; i < numDocs; i++) {
+            engine.classify(makeText(i));
+        }
+        
+        long[] latencies = new long[numDocs];
+        for (int i = 0; i < numDocs; i++) {
+            long startTime = System.nanoTime();
+            engine.classify(makeText(i));
+            latencies[i] = System.nanoTime() - startTime;
+        }
+        logPercentiles("classify()", latencies);
+        
+        // For submit(), latency includes the time spent in the queue, so
+        // keep a bounded number of requests in flight.
+        final int maxInFlight = 16;
+        List<Future<DocDatum>> futures = new ArrayList<Future<DocDatum>>();
+        long[] startTimes = new long[numDocs];
+        int numDone = 0;
+        for (int i = 0; i < numDocs; i++) {
+            if ((i - numDone) >= maxInFlight) {
+                futures.get(numDone).get();
+                latencies[numDone] = System.nanoTime() - startTimes[numDone];
+                numDone++;
+            }
+            
+            startTimes[i] = System.nanoTime();
+            futures.add(engine.submit(makeText(i)));
+        }
+        
+        while (numDone < numDocs) {
+            futures.get(numDone).get();
+            latencies[numDone] = System.nanoTime() - startTimes[numDone];
+            numDone++;
+        }
+        logPercentiles("submit()", latencies);
+        
+        engine.close();
+    }
+    
+    private void logPercentiles(String name, long[] latencies) {
+        long[] sorted = Arrays.copyOf(latencies, latencies.length);
+        Arrays.sort(sorted);
+        LOGGER.info(String.format(  "%s latency: p50 %dus, p90 %dus, p99 %dus, max %dus",
+                                    name,
+                                    getPercentile(sorted, 50) / 1000,
+                                    getPercentile(sorted, 90) / 1000,
+                                    getPercentile(sorted, 99) / 1000,
+                                    sorted[sorted.length - 1] / 1000));
+    }
+    
+    private long getPercentile(long[] sorted, int percentile) {
+        int index = (int)Math.ceil((percentile / 100.0) * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+    
+    private ModelDatum makeModelDatum() throws Exception {
+        List<TextDatum> docs = new ArrayList<TextDatum>();
+        for (int i = 0; i < 100; i++) {
+            docs.add(new TextDatum(makeText(i), ((i % 5) < 2 ? "small" : "large")));
+        }
+        
+        return ModelTestUtils.makeModelDatum(new StandardAnalyzer(), docs);
+    }
+    
+    private String makeText(int docIndex) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            result.append(WORDS[(docIndex * 7 + i * (docIndex % 5 + 1)) % WORDS.length]);
+            result.append(' ');
+        }
+        
+        return result.toString();
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.scaleunlimited.classify.analyzer.StandardAnalyzer;
+import com.scaleunlimited.classify.datum.DocDatum;
+import com.scaleunlimited.classify.datum.ModelDatum;
+import com.scaleunlimited.classify.datum.TextDatum;
+
+public class ClassifyServerTest {
+
+    private static final int NUM_CLIENTS = 8;
+    private static final int NUM_REQUESTS_PER_CLIENT = 50;
+    
+    @Test
+    public void testConcurrentClients() throws Exception {
+        final ClassifyEngine engine = new ClassifyEngine(makeModelDatum(), 2, 100);
+        final ClassifyServer server = new ClassifyServer(engine, InetAddress.getLoopbackAddress(), 0);
+        server.start();
+        
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> clientThreads = new ArrayList<Thread>();
+        for (int i = 0; i < NUM_CLIENTS; i++) {
+            final int clientIndex = i;
+            Thread clientThread = new Thread(new Runnable() {
+                
+                @Override
+                public void run() {
+                    try (ClassifyClient client = new ClassifyClient("127.0.0.1", server.getPort())) {
+                        for (int j = 0; j < NUM_REQUESTS_PER_CLIENT; j++) {
+                            String text = makeText(clientIndex * NUM_REQUESTS_PER_CLIENT + j);
+                            DocDatum expected = engine.classify(text);
+                            DocDatum actual = client.classify(text);
+                            assertEquals(expected.getLabel(), actual.getLabel());
+                            assertEquals(expected.getScore(), actual.getScore(), 0.0f);
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            });
+            
+            clientThreads.add(clientThread);
+            clientThread.start();
+        }
+        
+        for (Thread clientThread : clientThreads) {
+            clientThread.join();
+        }
+        
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        
+        try (ClassifyClient client = new ClassifyClient("127.0.0.1", server.getPort())) {
+            String stats = client.getStats();
+            assertTrue(stats.contains("requests=" + (NUM_CLIENTS * NUM_REQUESTS_PER_CLIENT) + "\n"));
+            assertTrue(stats.contains("errors=0\n"));
+        }
+        
+        server.close();
+        engine.close();
+    }
+    
+    private ModelDatum makeModelDatum() throws Exception {
+        List<TextDatum> docs = new ArrayList<TextDatum>();
+        for (int i = 0; i < 50; i++) {
+            docs.add(new TextDatum(makeText(i), ((i % 2) == 0 ? "badger" : "hyena")));
+        }
+        
+        return ModelTestUtils.makeModelDatum(new StandardAnalyzer(), docs);
+    }
+    
+    private static String makeText(int docIndex) {
+        String animal = ((docIndex % 2) == 0 ? "badger" : "hyena");
+        return String.format("the %s went to see the %s about %d things", animal, animal, docIndex);
+    }
+}
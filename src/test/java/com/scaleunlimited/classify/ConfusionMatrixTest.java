@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import cascading.flow.Flow;
+import cascading.flow.FlowProcess;
+import cascading.pipe.Each;
+import cascading.pipe.Pipe;
+import cascading.tap.SinkMode;
+import cascading.tap.Tap;
+import cascading.tuple.TupleEntryCollector;
+
+import com.scaleunlimited.cascading.BasePath;
+import com.scaleunlimited.cascading.local.LocalPlatform;
+import com.scaleunlimited.classify.datum.DocDatum;
+import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.model.RawFeaturesLibLinearModel;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class ConfusionMatrixTest {
+
+    private static final String WORKING_DIR = "build/confusion-matrix-test/";
+    
+    @Test
+    public void testMetrics() {
+        ConfusionMatrix matrix = new ConfusionMatrix(Arrays.asList("cat", "dog"));
+        
+        // 3 cats, 2 called cats and 1 called a dog.
+        matrix.add("cat", "cat");
+        matrix.add("cat", "cat");
+        matrix.add("cat", "dog");
+        
+        // 2 dogs, 1 called a cat and 1 called a dog.
+        matrix.add("dog", "cat");
+        matrix.add("dog", "dog");
+        
+        // Unlabeled docs don't change any metrics.
+        matrix.add(null, "dog");
+        matrix.add(BaseModel.NOT_YET_LABELED, "dog");
+        
+        assertEquals(5, matrix.getNumLabeled());
+        assertEquals(3, matrix.getNumCorrect());
+        assertEquals(0.6f, matrix.getAccuracy(), 0.0001f);
+        assertEquals(2, matrix.getCount("cat", "cat"));
+        assertEquals(1, matrix.getCount("dog", "cat"));
+        assertEquals(3, matrix.getNumClassified("cat"));
+        assertEquals(4, matrix.getNumClassified("dog"));
+        
+        assertEquals(2, matrix.getTruePositives("cat"));
+        assertEquals(1, matrix.getFalsePositives("cat"));
+        assertEquals(1, matrix.getFalseNegatives("cat"));
+        assertEquals(2.0f / 3.0f, matrix.getPrecision("cat"), 0.0001f);
+        assertEquals(2.0f / 3.0f, matrix.getRecall("cat"), 0.0001f);
+        assertEquals(2.0f / 3.0f, matrix.getF1("cat"), 0.0001f);
+        
+        assertEquals(0.5f, matrix.getPrecision("dog"), 0.0001f);
+        assertEquals(0.5f, matrix.getRecall("dog"), 0.0001f);
+    }
+    
+    @Test
+    public void testUnknownLabels() {
+        ConfusionMatrix matrix = new ConfusionMatrix();
+        
+        // Force the matrix to grow a few times.
+        for (int i = 0; i < 20; i++) {
+            matrix.add("label-" + i, "label-" + (i % 3));
+        }
+        
+        assertEquals(20, matrix.getLabels().size());
+        assertEquals(20, matrix.getNumLabeled());
+        assertEquals(3, matrix.getNumCorrect());
+        assertEquals(1, matrix.getCount("label-3", "label-0"));
+        assertEquals(0.0f, matrix.getPrecision("label-10"), 0.0f);
+        assertEquals(0.0f, matrix.getRecall("label-10"), 0.0f);
+        assertEquals(0.0f, matrix.getF1("label-10"), 0.0f);
+        assertEquals(0, matrix.getCount("label-0", "no-such-label"));
+    }
+    
+    @Test
+    public void testMaxLabelCounters() {
+        ConfusionMatrix matrix = new ConfusionMatrix(Arrays.asList("cat", "dog", "hamster"));
+        matrix.setMaxLabelCounters(1);
+        matrix.add("cat", "cat");
+        matrix.add("dog", "hamster");
+        matrix.add("hamster", "hamster");
+        
+        final Map<String, Long> counters = new HashMap<String, Long>();
+        matrix.report(new FlowProcess.NullFlowProcess() {
+            
+            @Override
+            public void increment(String group, String counter, long amount) {
+                assertEquals(ConfusionMatrix.COUNTER_GROUP, group);
+                counters.put(counter, amount);
+            }
+        });
+        
+        assertEquals(4, counters.size());
+        assertEquals(1L, (long)counters.get("cat true positives"));
+        assertEquals(1L, (long)counters.get(ConfusionMatrix.OTHER_LABELS + " true positives"));
+        assertEquals(1L, (long)counters.get(ConfusionMatrix.OTHER_LABELS + " false positives"));
+        assertEquals(1L, (long)counters.get(ConfusionMatrix.OTHER_LABELS + " false negatives"));
+    }
+    
+    @Test
+    public void testFlowCounters() throws Exception {
+        RawFeaturesLibLinearModel model = new RawFeaturesLibLinearModel();
+        model.setQuietMode(true);
+        model.setCrossValidation(false);
+        for (int i = 0; i < 10; i++) {
+            model.addTrainingTerms(new TermsDatum(makeTerms("badger", "mongoose", i), "animal"));
+            model.addTrainingTerms(new TermsDatum(makeTerms("bicycle", "tractor", i), "vehicle"));
+        }
+        model.train();
+        
+        // Some of the holdout docs are ambiguous, so not everything is correct.
+        List<TermsDatum> holdout = new ArrayList<TermsDatum>();
+        for (int i = 0; i < 20; i++) {
+            holdout.add(new TermsDatum(makeTerms("badger", (i % 4) == 0 ? "tractor" : "mongoose", i), "animal"));
+            holdout.add(new TermsDatum(makeTerms("bicycle", (i % 3) == 0 ? "mongoose" : "tractor", i), "vehicle"));
+        }
+        
+        ConfusionMatrix expected = new ConfusionMatrix(model.getLabelNames());
+        for (TermsDatum termsDatum : holdout) {
+            expected.add(termsDatum.getLabel(), model.classifyTerms(termsDatum.getTermMap()).getLabel());
+        }
+        
+        LocalPlatform platform = new LocalPlatform(ConfusionMatrixTest.class);
+        BasePath workingDirPath = platform.makePath(WORKING_DIR);
+        Tap inputTap = platform.makeTap(platform.makeBinaryScheme(TermsDatum.FIELDS), platform.makePath(workingDirPath, "input"), SinkMode.REPLACE);
+        TupleEntryCollector writer = inputTap.openForWrite(platform.makeFlowProcess());
+        for (TermsDatum termsDatum : holdout) {
+            writer.add(termsDatum.getTuple());
+        }
+        writer.close();
+        
+        Tap outputTap = platform.makeTap(platform.makeBinaryScheme(DocDatum.FIELDS), platform.makePath(workingDirPath, "output"), SinkMode.REPLACE);
+        Pipe pipe = new Each(new Pipe("classify"), new ClassifyTerms(model));
+        Flow flow = platform.makeFlowConnector().connect(inputTap, outputTap, pipe);
+        flow.complete();
+        
+        for (String label : model.getLabelNames()) {
+            assertEquals(expected.getPrecision(label), ConfusionMatrix.getPrecision(flow.getFlowStats(), label), 0.0001f);
+            assertEquals(expected.getRecall(label), ConfusionMatrix.getRecall(flow.getFlowStats(), label), 0.0001f);
+            assertEquals(expected.getF1(label), ConfusionMatrix.getF1(flow.getFlowStats(), label), 0.0001f);
+        }
+    }
+    
+    private static Map<String, Integer> makeTerms(String term1, String term2, int count) {
+        Map<String, Integer> result = new HashMap<String, Integer>();
+        result.put(term1, (count % 5) + 1);
+        result.put(term2, 2);
+        return result;
+    }
+}
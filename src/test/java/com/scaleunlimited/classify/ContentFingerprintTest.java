@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.scaleunlimited.classify.datum.CompactTermsDatum;
+
+public class ContentFingerprintTest {
+
+    @Test
+    public void testTextFingerprint() {
+        assertEquals(   ContentFingerprint.fromText("The badger ate the mongoose"),
+                        ContentFingerprint.fromText(new StringBuilder("The badger ate the mongoose")));
+        assertFalse(ContentFingerprint.fromText("The badger ate the mongoose").equals(
+                    ContentFingerprint.fromText("The mongoose ate the badger")));
+        assertFalse(ContentFingerprint.fromText("").equals(ContentFingerprint.fromText("\u0000")));
+    }
+
+    @Test
+    public void testTermMapOrderIndependence() {
+        Map<String, Integer> termMap1 = new LinkedHashMap<String, Integer>();
+        termMap1.put("badger", 1);
+        termMap1.put("mongoose", 2);
+        
+        Map<String, Integer> termMap2 = new LinkedHashMap<String, Integer>();
+        termMap2.put("mongoose", 2);
+        termMap2.put("badger", 1);
+        
+        assertEquals(ContentFingerprint.fromTermMap(termMap1), ContentFingerprint.fromTermMap(termMap2));
+        
+        Map<String, Integer> termMap3 = new HashMap<String, Integer>(termMap1);
+        termMap3.put("mongoose", 1);
+        assertFalse(ContentFingerprint.fromTermMap(termMap1).equals(ContentFingerprint.fromTermMap(termMap3)));
+    }
+
+    @Test
+    public void testCompactTermsFingerprint() {
+        Map<String, Integer> termMap = new HashMap<String, Integer>();
+        termMap.put("badger", 1);
+        termMap.put("badgers", 200);
+        termMap.put("mongoose", 70000);
+        
+        assertEquals(   ContentFingerprint.fromTermMap(termMap),
+                        ContentFingerprint.fromTerms(new CompactTermsDatum(termMap).iterator()));
+        assertEquals(   ContentFingerprint.fromTermMap(new HashMap<String, Integer>()),
+                        ContentFingerprint.fromTerms(new CompactTermsDatum(new HashMap<String, Integer>()).iterator()));
+    }
+
+    @Test
+    public void testLruEviction() {
+        LruCache<String, Integer> cache = new LruCache<String, Integer>(2);
+        cache.put("badger", 1);
+        cache.put("mongoose", 2);
+        
+        // Touch badger, so mongoose becomes the eldest entry.
+        cache.get("badger");
+        cache.put("hyena", 3);
+        
+        assertEquals(2, cache.size());
+        assertEquals(1, (int)cache.get("badger"));
+        assertNull(cache.get("mongoose"));
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+import cascading.tap.SinkMode;
+import cascading.tap.Tap;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryCollector;
+
+import com.scaleunlimited.cascading.BasePath;
+import com.scaleunlimited.cascading.local.LocalPlatform;
+import com.scaleunlimited.classify.analyzer.NullAnalyzer;
+import com.scaleunlimited.classify.datum.DocDatum;
+import com.scaleunlimited.classify.datum.FeaturesDatum;
+import com.scaleunlimited.classify.datum.ModelDatum;
+
+/**
+ * Trains a model on {@link FeaturesDatum} input and then uses it to classify
+ * more of the same, so both halves of the features workflow get run.
+ */
+@SuppressWarnings("rawtypes")
+public class FeaturesFlowTest {
+
+    private static final String WORKING_DIR = "build/features-flow-test/";
+
+    private static final int NUM_DOCS = 40;
+
+    @Test
+    public void testTrainAndClassifyFeatures() throws Exception {
+        LocalPlatform platform = new LocalPlatform(FeaturesFlowTest.class);
+        BasePath workingDirPath = platform.makePath(WORKING_DIR);
+        if (workingDirPath.exists()) {
+            workingDirPath.delete(true);
+        }
+        workingDirPath.mkdirs();
+
+        writeDocs(platform, workingDirPath, ClassifyConfig.TRAINING_SUBDIR_NAME, true);
+        TrainModelOptions trainOptions = new TrainModelOptions();
+        trainOptions.setWorkingDir(WORKING_DIR);
+        trainOptions.setModelName("RawFeaturesLibLinear");
+        TrainModelPipe.createFeaturesFlow(platform, trainOptions).complete();
+
+        // The model has no analyzer to speak of, since the features were
+        // computed before they got here.
+        BasePath modelPath = platform.makePath(workingDirPath, ClassifyConfig.MODEL_SUBDIR_NAME);
+        ModelDatum modelDatum = ClassifyDocsPipe.readModel(platform, modelPath);
+        assertTrue(modelDatum.getAnalyzer() instanceof NullAnalyzer);
+        assertEquals(2, modelDatum.getModel().getLabelNames().size());
+
+        writeDocs(platform, workingDirPath, ClassifyConfig.UNCLASSIFIED_SUBDIR_NAME, false);
+        ClassifyDocsOptions classifyOptions = new ClassifyDocsOptions();
+        classifyOptions.setWorkingDir(WORKING_DIR);
+        ClassifyDocsPipe.createFeaturesFlow(platform, classifyOptions).complete();
+
+        Map<String, DocDatum> results = readResults(platform, workingDirPath);
+        assertEquals(NUM_DOCS, results.size());
+        for (int i = 0; i < NUM_DOCS; i++) {
+            DocDatum docDatum = results.get("doc-" + i);
+            assertEquals("doc-" + i, getLabel(i), docDatum.getLabel());
+        }
+    }
+
+    private Map<String, DocDatum> readResults(LocalPlatform platform, BasePath workingDirPath) throws Exception {
+        BasePath outputPath = platform.makePath(workingDirPath, ClassifyConfig.CLASSIFIED_SUBDIR_NAME);
+        Tap outputTap = platform.makeTap(platform.makeBinaryScheme(DocDatum.FIELDS), outputPath);
+        Map<String, DocDatum> result = new HashMap<String, DocDatum>();
+        Iterator<TupleEntry> iter = outputTap.openForRead(platform.makeFlowProcess());
+        while (iter.hasNext()) {
+            DocDatum docDatum = new DocDatum(iter.next().getTupleCopy());
+            result.put((String)docDatum.getPayloadValue("docid"), docDatum);
+        }
+
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeDocs(LocalPlatform platform, BasePath workingDirPath, String subdirName, boolean labeled) throws Exception {
+        BasePath inputPath = platform.makePath(workingDirPath, subdirName);
+        Tap inputTap = platform.makeTap(platform.makeBinaryScheme(FeaturesDatum.FIELDS), inputPath, SinkMode.REPLACE);
+        TupleEntryCollector writer = inputTap.openForWrite(platform.makeFlowProcess());
+        for (int i = 0; i < NUM_DOCS; i++) {
+            FeaturesDatum featuresDatum = labeled ? new FeaturesDatum(makeFeatures(i), getLabel(i)) : new FeaturesDatum(makeFeatures(i));
+            featuresDatum.setPayloadValue("docid", "doc-" + i);
+            writer.add(featuresDatum.getTuple());
+        }
+        writer.close();
+    }
+
+    private Map<String, Double> makeFeatures(int docIndex) {
+        // Badgers are short and stripy, hyenas are tall and spotty, and
+        // both have some amount of fur that doesn't tell them apart.
+        boolean isBadger = getLabel(docIndex).equals("badger");
+        Map<String, Double> result = new HashMap<String, Double>();
+        result.put("height", (isBadger ? 1.0 : 3.0) + ((docIndex % 5) * 0.1));
+        result.put(isBadger ? "stripes" : "spots", 2.0 + (docIndex % 3));
+        result.put("fur", 1.0 + (docIndex % 4));
+        return result;
+    }
+
+    private String getLabel(int docIndex) {
+        return ((docIndex % 2) == 0 ? "badger" : "hyena");
+    }
+}
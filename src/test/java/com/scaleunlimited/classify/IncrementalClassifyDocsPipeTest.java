@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import cascading.flow.Flow;
+import cascading.tap.SinkMode;
+import cascading.tap.Tap;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryCollector;
+
+import com.scaleunlimited.cascading.BasePath;
+import com.scaleunlimited.cascading.local.LocalPlatform;
+import com.scaleunlimited.classify.analyzer.StandardAnalyzer;
+import com.scaleunlimited.classify.datum.ClassificationStateDatum;
+import com.scaleunlimited.classify.datum.DocDatum;
+import com.scaleunlimited.classify.datum.TextDatum;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class IncrementalClassifyDocsPipeTest {
+
+    private static final String WORKING_DIR = "build/incremental-classify-docs-pipe-test/";
+    
+    private static final int NUM_DOCS = 40;
+    
+    @Test
+    public void testReusingClassifications() throws Exception {
+        LocalPlatform platform = new LocalPlatform(IncrementalClassifyDocsPipeTest.class);
+        BasePath workingDirPath = platform.makePath(WORKING_DIR);
+        if (workingDirPath.exists()) {
+            workingDirPath.delete(true);
+        }
+        workingDirPath.mkdirs();
+        writeModel(platform, workingDirPath);
+        
+        ClassifyDocsOptions options = new ClassifyDocsOptions();
+        options.setWorkingDir(WORKING_DIR);
+        options.setIncremental(true);
+        
+        // First time through, everything has to be classified.
+        writeDocs(platform, workingDirPath, 0);
+        Flow flow = ClassifyDocsPipe.createTextFlow(platform, options);
+        flow.complete();
+        assertEquals(NUM_DOCS, flow.getFlowStats().getCounterValue(ClassifyCounters.FRESH_CLASSIFICATION));
+        assertEquals(0, flow.getFlowStats().getCounterValue(ClassifyCounters.REUSED_CLASSIFICATION));
+        Map<String, DocDatum> firstResults = readResults(platform, workingDirPath);
+        assertEquals(NUM_DOCS, firstResults.size());
+        
+        // Now change the content of the first 10 docs.
+        writeDocs(platform, workingDirPath, 10);
+        flow = ClassifyDocsPipe.createTextFlow(platform, options);
+        flow.complete();
+        assertEquals(10, flow.getFlowStats().getCounterValue(ClassifyCounters.FRESH_CLASSIFICATION));
+        assertEquals(NUM_DOCS - 10, flow.getFlowStats().getCounterValue(ClassifyCounters.REUSED_CLASSIFICATION));
+        
+        // Results should be the same as classifying everything from scratch.
+        Map<String, DocDatum> incrementalResults = readResults(platform, workingDirPath);
+        options.setIncremental(false);
+        ClassifyDocsPipe.createTextFlow(platform, options).complete();
+        Map<String, DocDatum> fullResults = readResults(platform, workingDirPath);
+        assertEquals(fullResults.size(), incrementalResults.size());
+        for (Map.Entry<String, DocDatum> entry : fullResults.entrySet()) {
+            DocDatum incrementalResult = incrementalResults.get(entry.getKey());
+            assertEquals(entry.getValue().getLabel(), incrementalResult.getLabel());
+            assertEquals(entry.getValue().getScore(), incrementalResult.getScore(), 0.0f);
+        }
+    }
+    
+    @Test
+    public void testIncompleteStateIsDiscarded() throws Exception {
+        LocalPlatform platform = new LocalPlatform(IncrementalClassifyDocsPipeTest.class);
+        BasePath workingDirPath = platform.makePath(WORKING_DIR + "incomplete/");
+        if (workingDirPath.exists()) {
+            workingDirPath.delete(true);
+        }
+        workingDirPath.mkdirs();
+        writeModel(platform, workingDirPath);
+        
+        ClassifyDocsOptions options = new ClassifyDocsOptions();
+        options.setWorkingDir(WORKING_DIR + "incomplete/");
+        options.setIncremental(true);
+        
+        writeDocs(platform, workingDirPath, 0);
+        ClassifyDocsPipe.createTextFlow(platform, options).complete();
+        
+        // Simulate a run that fails part way through writing the new state,
+        // by creating its flow (which moves the good state aside) and then
+        // leaving behind an empty state.
+        ClassifyDocsPipe.createTextFlow(platform, options);
+        BasePath statePath = platform.makePath(workingDirPath, ClassifyConfig.CLASSIFIED_STATE_SUBDIR_NAME);
+        Tap stateTap = platform.makeTap(platform.makeBinaryScheme(ClassificationStateDatum.FIELDS), statePath, SinkMode.REPLACE);
+        stateTap.openForWrite(platform.makeFlowProcess()).close();
+        
+        // The next run should ignore the partial state, and reuse the last good one.
+        writeDocs(platform, workingDirPath, 10);
+        Flow flow = ClassifyDocsPipe.createTextFlow(platform, options);
+        flow.complete();
+        assertEquals(10, flow.getFlowStats().getCounterValue(ClassifyCounters.FRESH_CLASSIFICATION));
+        assertEquals(NUM_DOCS - 10, flow.getFlowStats().getCounterValue(ClassifyCounters.REUSED_CLASSIFICATION));
+    }
+    
+    private Map<String, DocDatum> readResults(LocalPlatform platform, BasePath workingDirPath) throws Exception {
+        BasePath outputPath = platform.makePath(workingDirPath, ClassifyConfig.CLASSIFIED_SUBDIR_NAME);
+        Tap outputTap = platform.makeTap(platform.makeBinaryScheme(DocDatum.FIELDS), outputPath);
+        Map<String, DocDatum> result = new HashMap<String, DocDatum>();
+        Iterator<TupleEntry> iter = outputTap.openForRead(platform.makeFlowProcess());
+        while (iter.hasNext()) {
+            DocDatum docDatum = new DocDatum(iter.next().getTupleCopy());
+            result.put((String)docDatum.getPayloadValue("docid"), docDatum);
+        }
+        
+        return result;
+    }
+    
+    private void writeDocs(LocalPlatform platform, BasePath workingDirPath, int numChanged) throws Exception {
+        BasePath inputPath = platform.makePath(workingDirPath, ClassifyConfig.UNCLASSIFIED_SUBDIR_NAME);
+        Tap inputTap = platform.makeTap(platform.makeBinaryScheme(TextDatum.FIELDS), inputPath, SinkMode.REPLACE);
+        TupleEntryCollector writer = inputTap.openForWrite(platform.makeFlowProcess());
+        for (int i = 0; i < NUM_DOCS; i++) {
+            TextDatum textDatum = makeDoc(i, i < numChanged);
+            textDatum.setPayloadValue("docid", "doc-" + i);
+            writer.add(textDatum.getTuple());
+        }
+        writer.close();
+    }
+    
+    private void writeModel(LocalPlatform platform, BasePath workingDirPath) throws Exception {
+        List<TextDatum> docs = new ArrayList<TextDatum>();
+        for (int i = 0; i < NUM_DOCS; i++) {
+            TextDatum textDatum = makeDoc(i, false);
+            textDatum.setLabel((i % 2) == 0 ? "badger" : "hyena");
+            docs.add(textDatum);
+        }
+        
+        BasePath modelPath = platform.makePath(workingDirPath, ClassifyConfig.MODEL_SUBDIR_NAME);
+        ModelTestUtils.writeModel(platform, modelPath, ModelTestUtils.makeModelDatum(new StandardAnalyzer(), docs));
+    }
+    
+    private TextDatum makeDoc(int docIndex, boolean changed) {
+        String animal = ((docIndex % 2) == 0 ? "badger" : "hyena");
+        String content = String.format("the %s went to see the %s about %d things", animal, animal, docIndex);
+        if (changed) {
+            content += " and then the mongoose showed up";
+        }
+        
+        return new TextDatum(content);
+    }
+}
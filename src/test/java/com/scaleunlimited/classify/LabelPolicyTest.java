@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import cascading.flow.Flow;
+import cascading.pipe.Pipe;
+import cascading.tap.SinkMode;
+import cascading.tap.Tap;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryCollector;
+
+import com.scaleunlimited.cascading.BasePath;
+import com.scaleunlimited.cascading.local.LocalPlatform;
+import com.scaleunlimited.classify.analyzer.StandardAnalyzer;
+import com.scaleunlimited.classify.datum.DocDatum;
+import com.scaleunlimited.classify.datum.TextDatum;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class LabelPolicyTest {
+
+    private static final String WORKING_DIR = "build/label-policy-test/";
+    
+    @Test
+    public void testMinScores() {
+        LabelPolicy policy = new LabelPolicy().setDefaultMinScore(0.5f).setMinScore("spam", 0.9f);
+        assertFalse(policy.hasTargetLabels());
+        assertTrue(policy.isAccepted("ham", 0.5f));
+        assertFalse(policy.isAccepted("ham", 0.4f));
+        assertTrue(policy.isAccepted("spam", 0.95f));
+        assertFalse(policy.isAccepted("spam", 0.8f));
+    }
+    
+    @Test
+    public void testTargetLabels() {
+        LabelPolicy policy = new LabelPolicy().addTargetLabel("spam");
+        assertTrue(policy.hasTargetLabels());
+        assertTrue(policy.isAccepted("spam", 0.1f));
+        assertFalse(policy.isAccepted("ham", 1.0f));
+    }
+    
+    @Test
+    public void testParsing() {
+        assertNull(LabelPolicy.parse(null, null));
+        
+        LabelPolicy policy = LabelPolicy.parse("spam, ham", "0.6,spam=0.9");
+        assertEquals(2, policy.getTargetLabels().size());
+        assertEquals("spam", policy.getTargetLabels().get(0));
+        assertEquals("ham", policy.getTargetLabels().get(1));
+        assertEquals(0.9f, policy.getMinScore("spam"), 0.0f);
+        assertEquals(0.6f, policy.getMinScore("ham"), 0.0f);
+        
+        try {
+            LabelPolicy.parse(null, "spam=high");
+            fail("Invalid min score should have been rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+    
+    @Test
+    public void testRoutingByLabel() throws Exception {
+        LocalPlatform platform = new LocalPlatform(LabelPolicyTest.class);
+        BasePath workingDirPath = platform.makePath(WORKING_DIR);
+        BasePath inputPath = platform.makePath(workingDirPath, "input");
+        Tap inputTap = platform.makeTap(platform.makeBinaryScheme(TextDatum.FIELDS), inputPath, SinkMode.REPLACE);
+        TupleEntryCollector writer = inputTap.openForWrite(platform.makeFlowProcess());
+        for (int i = 0; i < 30; i++) {
+            writer.add(makeDoc(i).getTuple());
+        }
+        writer.close();
+        
+        LabelPolicy policy = new LabelPolicy().addTargetLabel("badger").addTargetLabel("hyena").setMinScore("hyena", 0.5f);
+        
+        Pipe inputPipe = new Pipe("input");
+        ClassifyDocsPipe classifyPipe = new ClassifyDocsPipe(inputPipe, new StandardAnalyzer(), trainModel(), new ClassifyDocsPipe.Settings().setLabelPolicy(policy));
+        
+        Map<String, Tap> sources = new HashMap<String, Tap>();
+        sources.put(inputPipe.getName(), inputTap);
+        Map<String, Tap> sinks = new HashMap<String, Tap>();
+        Map<String, Tap> labelSinks = new HashMap<String, Tap>();
+        for (String label : policy.getTargetLabels()) {
+            Tap sink = platform.makeTap(platform.makeBinaryScheme(DocDatum.FIELDS), platform.makePath(workingDirPath, label), SinkMode.REPLACE);
+            sinks.put(classifyPipe.getLabelPipe(label).getName(), sink);
+            labelSinks.put(label, sink);
+        }
+        
+        Flow flow = platform.makeFlowConnector().connect(sources, sinks, classifyPipe.getTails());
+        flow.complete();
+        
+        int numRouted = 0;
+        for (Map.Entry<String, Tap> entry : labelSinks.entrySet()) {
+            Iterator<TupleEntry> iter = entry.getValue().openForRead(platform.makeFlowProcess());
+            while (iter.hasNext()) {
+                DocDatum docDatum = new DocDatum(iter.next().getTuple());
+                assertEquals(entry.getKey(), docDatum.getLabel());
+                assertTrue(policy.isAccepted(docDatum.getLabel(), docDatum.getScore()));
+                numRouted++;
+            }
+        }
+        
+        // The mongoose docs should all have been discarded.
+        assertTrue(numRouted > 0);
+        assertTrue(numRouted <= 20);
+        
+        try {
+            classifyPipe.getOutputPipe();
+            fail("Output pipe should be unavailable when split by label");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+    
+    private BaseModel trainModel() {
+        List<TextDatum> docs = new ArrayList<TextDatum>();
+        for (int i = 0; i < 30; i++) {
+            TextDatum textDatum = makeDoc(i);
+            textDatum.setLabel(getAnimal(i));
+            docs.add(textDatum);
+        }
+        
+        return ModelTestUtils.trainModel(new StandardAnalyzer(), docs);
+    }
+    
+    private TextDatum makeDoc(int docIndex) {
+        String animal = getAnimal(docIndex);
+        return new TextDatum(String.format("the %s saw a %s near the %s tree %d", animal, animal, animal, docIndex));
+    }
+    
+    private String getAnimal(int docIndex) {
+        switch (docIndex % 3) {
+            case 0: return "badger";
+            case 1: return "hyena";
+            default: return "mongoose";
+        }
+    }
+}
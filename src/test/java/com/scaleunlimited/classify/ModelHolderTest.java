@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.scaleunlimited.cascading.BasePath;
+import com.scaleunlimited.cascading.local.LocalPlatform;
+import com.scaleunlimited.classify.ModelHolder.LoadedModel;
+import com.scaleunlimited.classify.analyzer.StandardAnalyzer;
+import com.scaleunlimited.classify.datum.DocDatum;
+import com.scaleunlimited.classify.datum.TextDatum;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class ModelHolderTest {
+
+    private static final String WORKING_DIR = "build/model-holder-test/";
+    
+    // File modification times can have one second resolution, so we set the
+    // time of each model we write to be a second after the previous one.
+    private long _modelTime = (System.currentTimeMillis() / 1000L) * 1000L;
+    
+    @Test
+    public void testReloading() throws Exception {
+        LocalPlatform platform = new LocalPlatform(ModelHolderTest.class);
+        BasePath modelPath = platform.makePath(WORKING_DIR + "reloading");
+        writeModel(platform, modelPath, "badger", "hyena", 0);
+        
+        ModelHolder holder = new ModelHolder(platform, modelPath);
+        LoadedModel firstModel = holder.getModel();
+        assertFalse(holder.checkForNewModel());
+        assertSame(firstModel, holder.getModel());
+        
+        // A model with the same labels gets swapped in.
+        writeModel(platform, modelPath, "badger", "hyena", 1);
+        assertTrue(holder.checkForNewModel());
+        LoadedModel secondModel = holder.getModel();
+        assertNotSame(firstModel, secondModel);
+        assertFalse(firstModel.getFingerprint().equals(secondModel.getFingerprint()));
+        assertEquals(1, holder.getNumReloads());
+        
+        // Anything still using the old model can keep using it.
+        StandardAnalyzer analyzer = new StandardAnalyzer();
+        analyzer.reset();
+        assertNotNull(firstModel.getModel().classify(analyzer.getTermsDatum(new TextDatum("the badger").getTuple())));
+        
+        // A model with different labels doesn't.
+        writeModel(platform, modelPath, "badger", "mongoose", 2);
+        try {
+            holder.checkForNewModel();
+            fail("Model with different labels should have been rejected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        
+        assertSame(secondModel, holder.getModel());
+        assertEquals(1, holder.getNumFailedReloads());
+        
+        // Unless label changes are allowed.
+        holder.setAllowLabelChanges(true);
+        assertTrue(holder.checkForNewModel());
+        assertTrue(holder.getModel().getLabelNames().contains("mongoose"));
+        holder.close();
+    }
+    
+    @Test
+    public void testFailedReadIsCounted() throws Exception {
+        LocalPlatform platform = new LocalPlatform(ModelHolderTest.class);
+        BasePath modelPath = platform.makePath(WORKING_DIR + "failed-read");
+        writeModel(platform, modelPath, "badger", "hyena", 0);
+        
+        ModelHolder holder = new ModelHolder(platform, modelPath);
+        LoadedModel firstModel = holder.getModel();
+        
+        modelPath.delete(true);
+        try {
+            holder.checkForNewModel();
+            fail("Missing model directory should have failed");
+        } catch (Exception e) {
+            // expected
+        }
+        
+        assertSame(firstModel, holder.getModel());
+        assertEquals(1, holder.getNumFailedReloads());
+        
+        // Once the model is back, it gets used.
+        writeModel(platform, modelPath, "badger", "hyena", 1);
+        assertTrue(holder.checkForNewModel());
+        assertEquals(1, holder.getNumReloads());
+        holder.close();
+    }
+    
+    @Test
+    public void testEngineUsesNewModel() throws Exception {
+        LocalPlatform platform = new LocalPlatform(ModelHolderTest.class);
+        BasePath modelPath = platform.makePath(WORKING_DIR + "engine");
+        writeModel(platform, modelPath, "badger", "hyena", 0);
+        
+        ModelHolder holder = new ModelHolder(platform, modelPath).setAllowLabelChanges(true);
+        ClassifyEngine engine = new ClassifyEngine(holder, 1, 10);
+        String text = "the badger and the mongoose";
+        assertEquals("badger", engine.submit(text).get().getLabel());
+        
+        writeModel(platform, modelPath, "mongoose", "hyena", 0);
+        assertTrue(holder.checkForNewModel());
+        DocDatum docDatum = engine.submit(text).get();
+        assertEquals("mongoose", docDatum.getLabel());
+        assertEquals("mongoose", engine.classify(text).getLabel());
+        
+        engine.close();
+        holder.close();
+    }
+    
+    private void writeModel(LocalPlatform platform, BasePath modelPath, String label1, String label2, int variant) throws Exception {
+        List<TextDatum> docs = new ArrayList<TextDatum>();
+        for (int i = 0; i < 20 + variant; i++) {
+            String label = ((i % 2) == 0 ? label1 : label2);
+            docs.add(new TextDatum(String.format("the %s went to see the %s about %d things", label, label, i), label));
+        }
+        
+        ModelTestUtils.writeModel(platform, modelPath, ModelTestUtils.makeModelDatum(new StandardAnalyzer(), docs));
+        
+        _modelTime += 1000L;
+        new File(modelPath.getAbsolutePath()).setLastModified(_modelTime);
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.scaleunlimited.cascading.BasePath;
+import com.scaleunlimited.cascading.local.LocalPlatform;
+import com.scaleunlimited.classify.analyzer.NullAnalyzer;
+import com.scaleunlimited.classify.datum.ModelDatum;
+import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.model.RawFeaturesLibLinearModel;
+
+@SuppressWarnings("rawtypes")
+public class ModelReferenceTest {
+
+    private static final String WORKING_DIR = "build/model-reference-test/";
+    
+    @Test
+    public void testLoadingModel() throws Exception {
+        LocalPlatform platform = new LocalPlatform(ModelReferenceTest.class);
+        BasePath modelPath = platform.makePath(WORKING_DIR + "loading");
+        RawFeaturesLibLinearModel model = trainModel("badger", "mongoose");
+        ModelDatum modelDatum = writeModel(platform, modelPath, model);
+        
+        ModelReference modelReference = ModelReference.create(platform, modelPath, modelDatum);
+        assertEquals(modelDatum.getModelFingerprint(), modelReference.getFingerprint());
+        
+        // The reference should survive being serialized into a job.
+        modelReference = serialize(modelReference);
+        
+        BaseModel loadedModel = modelReference.getModel(platform.makeFlowProcess());
+        assertEquals(model.getLabelNames(), loadedModel.getLabelNames());
+        TermsDatum doc = makeDoc("badger");
+        assertEquals(model.classify(doc).getLabel(), ((RawFeaturesLibLinearModel)loadedModel).classify(doc).getLabel());
+        
+        // Without sharing, each task gets its own copy.
+        assertNotSame(loadedModel, modelReference.getModel(platform.makeFlowProcess()));
+    }
+    
+    @Test
+    public void testSharedPerJvm() throws Exception {
+        LocalPlatform platform = new LocalPlatform(ModelReferenceTest.class);
+        BasePath modelPath = platform.makePath(WORKING_DIR + "shared");
+        ModelDatum modelDatum = writeModel(platform, modelPath, trainModel("badger", "mongoose"));
+        
+        ModelReference modelReference = ModelReference.create(platform, modelPath, modelDatum).setSharedPerJvm(true);
+        BaseModel loadedModel = modelReference.getModel(platform.makeFlowProcess());
+        assertSame(loadedModel, serialize(modelReference).getModel(platform.makeFlowProcess()));
+    }
+    
+    @Test
+    public void testChangedModel() throws Exception {
+        LocalPlatform platform = new LocalPlatform(ModelReferenceTest.class);
+        BasePath modelPath = platform.makePath(WORKING_DIR + "changed");
+        ModelDatum modelDatum = writeModel(platform, modelPath, trainModel("badger", "mongoose"));
+        ModelReference modelReference = ModelReference.create(platform, modelPath, modelDatum);
+        
+        // Replace the model after the reference was created.
+        writeModel(platform, modelPath, trainModel("hyena", "aardvark"));
+        
+        try {
+            modelReference.getModel(platform.makeFlowProcess());
+            fail("Should have thrown exception");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+    
+    private ModelReference serialize(ModelReference modelReference) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(modelReference);
+        out.close();
+        
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        return (ModelReference)in.readObject();
+    }
+    
+    private ModelDatum writeModel(LocalPlatform platform, BasePath modelPath, BaseModel model) throws Exception {
+        ModelDatum modelDatum = new ModelDatum(new NullAnalyzer(), model);
+        ModelTestUtils.writeModel(platform, modelPath, modelDatum);
+        return modelDatum;
+    }
+    
+    private RawFeaturesLibLinearModel trainModel(String... labels) {
+        List<TermsDatum> docs = new ArrayList<TermsDatum>();
+        for (int i = 0; i < 20; i++) {
+            for (String label : labels) {
+                docs.add(makeDoc(label));
+            }
+        }
+        
+        return ModelTestUtils.trainModel(new RawFeaturesLibLinearModel(), docs);
+    }
+    
+    private TermsDatum makeDoc(String label) {
+        Map<String, Integer> termMap = new HashMap<String, Integer>();
+        termMap.put(label, 3);
+        termMap.put("common", 1);
+        return new TermsDatum(termMap, label);
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.scaleunlimited.classify.analyzer.NullAnalyzer;
+import com.scaleunlimited.classify.datum.ModelDatum;
+import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.model.LazyModel;
+import com.scaleunlimited.classify.model.RawFeaturesLibLinearModel;
+
+@SuppressWarnings("rawtypes")
+public class ModelRegistryTest {
+
+    @Before
+    public void setUp() {
+        ModelRegistry.clear();
+    }
+    
+    @Test
+    public void testLoadingOnce() {
+        ContentFingerprint fingerprint = ContentFingerprint.fromText("model one");
+        CountingLoader loader = new CountingLoader();
+        
+        BaseModel model = ModelRegistry.getModel(fingerprint, loader);
+        assertSame(model, ModelRegistry.getModel(fingerprint, loader));
+        assertSame(model, ModelRegistry.getModel(fingerprint));
+        assertEquals(1, loader.getNumLoads());
+        
+        BaseModel model2 = ModelRegistry.getModel(ContentFingerprint.fromText("model two"), loader);
+        assertNotSame(model, model2);
+        assertEquals(2, loader.getNumLoads());
+        assertEquals(2, ModelRegistry.size());
+        
+        ModelRegistry.clear();
+        assertNull(ModelRegistry.getModel(fingerprint));
+    }
+    
+    @Test
+    public void testLoaderFailure() {
+        ContentFingerprint fingerprint = ContentFingerprint.fromText("bad model");
+        try {
+            ModelRegistry.getModel(fingerprint, new ModelRegistry.ModelLoader() {
+                
+                @Override
+                public BaseModel loadModel() throws Exception {
+                    throw new Exception("No model for you");
+                }
+            });
+            fail("Should have thrown exception");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        
+        assertNull(ModelRegistry.getModel(fingerprint));
+    }
+    
+    @Test
+    public void testSharedLazyModels() throws Exception {
+        List<TermsDatum> docs = new ArrayList<TermsDatum>();
+        for (int i = 0; i < 20; i++) {
+            docs.add(makeDoc("badger"));
+            docs.add(makeDoc("mongoose"));
+        }
+        RawFeaturesLibLinearModel model = ModelTestUtils.trainModel(new RawFeaturesLibLinearModel(), docs);
+        
+        ModelDatum modelDatum = new ModelDatum(new NullAnalyzer(), model);
+        LazyModel lazyModel1 = modelDatum.getLazyModel().setSharedPerJvm(true);
+        LazyModel lazyModel2 = modelDatum.getLazyModel().setSharedPerJvm(true);
+        assertSame(lazyModel1.getModel(), lazyModel2.getModel());
+        assertSame(lazyModel1.getModel(), ModelRegistry.getModel(modelDatum.getModelFingerprint()));
+        
+        // Without sharing, each lazy model deserializes its own copy.
+        assertNotSame(lazyModel1.getModel(), modelDatum.getLazyModel().getModel());
+        
+        // Resetting a lazy model mustn't clear the shared model's labels.
+        lazyModel1.reset();
+        assertEquals(2, lazyModel2.getModel().getLabelNames().size());
+    }
+    
+    private TermsDatum makeDoc(String label) {
+        Map<String, Integer> termMap = new HashMap<String, Integer>();
+        termMap.put(label, 3);
+        termMap.put("common", 1);
+        return new TermsDatum(termMap, label);
+    }
+    
+    private static class CountingLoader implements ModelRegistry.ModelLoader {
+        private int _numLoads = 0;
+        
+        @Override
+        public BaseModel loadModel() throws Exception {
+            _numLoads += 1;
+            return new RawFeaturesLibLinearModel();
+        }
+        
+        public int getNumLoads() {
+            return _numLoads;
+        }
+    }
+}
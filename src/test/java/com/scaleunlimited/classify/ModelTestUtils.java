@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cascading.tap.SinkMode;
+import cascading.tap.Tap;
+import cascading.tuple.TupleEntryCollector;
+
+import com.scaleunlimited.cascading.BasePath;
+import com.scaleunlimited.cascading.BasePlatform;
+import com.scaleunlimited.classify.analyzer.IAnalyzer;
+import com.scaleunlimited.classify.datum.ModelDatum;
+import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.datum.TextDatum;
+import com.scaleunlimited.classify.model.BaseLibLinearModel;
+import com.scaleunlimited.classify.model.RawFeaturesLibLinearModel;
+
+/**
+ * Shared fixture for tests that need a small trained model, optionally
+ * written out the way {@link TrainModelPipe} would write it. Models are
+ * trained in quiet mode without cross validation, to keep tests fast.
+ */
+public class ModelTestUtils {
+
+    private ModelTestUtils() {
+        // Static methods only.
+    }
+    
+    /**
+     * @param analyzer analyzer used to turn the docs into terms
+     * @param docs labeled training documents
+     * @return model trained on the analyzed docs
+     */
+    public static RawFeaturesLibLinearModel trainModel(IAnalyzer analyzer, List<TextDatum> docs) {
+        List<TermsDatum> termsDatums = new ArrayList<TermsDatum>(docs.size());
+        analyzer.reset();
+        for (TextDatum doc : docs) {
+            termsDatums.add(analyzer.getTermsDatum(doc.getTuple()));
+        }
+        
+        return trainModel(new RawFeaturesLibLinearModel(), termsDatums);
+    }
+    
+    /**
+     * @param model untrained model
+     * @param docs labeled training terms
+     * @return <model>, trained on the terms
+     */
+    public static <T extends BaseLibLinearModel> T trainModel(T model, List<TermsDatum> docs) {
+        model.setQuietMode(true);
+        model.setCrossValidation(false);
+        for (TermsDatum doc : docs) {
+            model.addTrainingTerms(doc);
+        }
+        
+        model.train();
+        return model;
+    }
+    
+    /**
+     * @param analyzer analyzer used to turn the docs into terms
+     * @param docs labeled training documents
+     * @return the analyzer and the model trained with it
+     * @throws Exception if the model can't be serialized
+     */
+    public static ModelDatum makeModelDatum(IAnalyzer analyzer, List<TextDatum> docs) throws Exception {
+        BaseModel model = trainModel(analyzer, docs);
+        return new ModelDatum(analyzer, model);
+    }
+    
+    /**
+     * Write <modelDatum> as the only tuple in <modelPath>, replacing whatever was there.
+     * 
+     * @param platform platform for the model tap
+     * @param modelPath model directory
+     * @param modelDatum model to write
+     * @throws Exception
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public static void writeModel(BasePlatform platform, BasePath modelPath, ModelDatum modelDatum) throws Exception {
+        Tap modelTap = platform.makeTap(platform.makeBinaryScheme(ModelDatum.FIELDS), modelPath, SinkMode.REPLACE);
+        TupleEntryCollector writer = modelTap.openForWrite(platform.makeFlowProcess());
+        writer.add(modelDatum.getTuple());
+        writer.close();
+    }
+}
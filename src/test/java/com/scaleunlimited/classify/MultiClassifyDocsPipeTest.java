@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import cascading.flow.Flow;
+import cascading.tap.SinkMode;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryCollector;
+
+import com.scaleunlimited.cascading.BasePath;
+import com.scaleunlimited.cascading.local.LocalPlatform;
+import com.scaleunlimited.classify.analyzer.IAnalyzer;
+import com.scaleunlimited.classify.analyzer.StandardAnalyzer;
+import com.scaleunlimited.classify.analyzer.TextDatumAnalyzer;
+import com.scaleunlimited.classify.analyzer.WhitespaceAnalyzer;
+import com.scaleunlimited.classify.datum.DocDatum;
+import com.scaleunlimited.classify.datum.ModelDatum;
+import com.scaleunlimited.classify.datum.ModelDocDatum;
+import com.scaleunlimited.classify.datum.MultiDocDatum;
+import com.scaleunlimited.classify.datum.TextDatum;
+import com.scaleunlimited.classify.model.RawFeaturesLibLinearModel;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class MultiClassifyDocsPipeTest {
+
+    private static final String WORKING_DIR = "build/multi-classify-docs-pipe-test/";
+    
+    private static final String[] WORDS = {
+        "badger", "mongoose", "hyena", "aardvark", "otter", "weasel", "ferret", "stoat"
+    };
+    
+    private static final int NUM_DOCS = 100;
+    
+    @Test
+    public void testSharedAnalysis() throws Exception {
+        List<String> modelNames = Arrays.asList("a", "b", "c");
+        List<IAnalyzer> analyzers = Arrays.asList((IAnalyzer)new StandardAnalyzer(),
+                                                    new WhitespaceAnalyzer(),
+                                                    new StandardAnalyzer());
+        List<BaseModel> models = new ArrayList<BaseModel>();
+        for (int i = 0; i < modelNames.size(); i++) {
+            models.add(new RawFeaturesLibLinearModel());
+        }
+        
+        MultiClassify classifier = new MultiClassify(modelNames, analyzers, models, false);
+        assertEquals(2, classifier.getNumAnalyzers());
+    }
+    
+    @Test
+    public void testLabelCounterBudget() throws Exception {
+        assertEquals(ConfusionMatrix.DEFAULT_MAX_LABEL_COUNTERS, MultiClassify.getMaxLabelCounters(1));
+        assertEquals(3, MultiClassify.getMaxLabelCounters(3));
+        
+        // Every model still gets at least one label's counters.
+        assertEquals(1, MultiClassify.getMaxLabelCounters(ConfusionMatrix.DEFAULT_MAX_LABEL_COUNTERS * 2));
+    }
+    
+    @Test
+    public void testTuplePerDocument() throws Exception {
+        LocalPlatform platform = new LocalPlatform(MultiClassifyDocsPipeTest.class);
+        Map<String, ModelDatum> modelDatums = makeModels();
+        
+        List<TupleEntry> results = classify(platform, modelDatums, false, "per-document");
+        assertEquals(NUM_DOCS, results.size());
+        
+        Fields outputFields = MultiDocDatum.makeFields(new ArrayList<String>(modelDatums.keySet()));
+        for (TupleEntry result : results) {
+            MultiDocDatum multiDocDatum = new MultiDocDatum(outputFields, result.getTuple());
+            TextDatum textDatum = makeDoc(Integer.parseInt((String)multiDocDatum.getPayloadValue("docindex")));
+            for (Map.Entry<String, ModelDatum> entry : modelDatums.entrySet()) {
+                DocDatum expected = classify(entry.getValue(), textDatum);
+                assertEquals(expected.getLabel(), multiDocDatum.getLabel(entry.getKey()));
+                assertEquals(expected.getScore(), multiDocDatum.getScore(entry.getKey()), 0.0f);
+            }
+        }
+    }
+    
+    @Test
+    public void testTuplePerModel() throws Exception {
+        LocalPlatform platform = new LocalPlatform(MultiClassifyDocsPipeTest.class);
+        Map<String, ModelDatum> modelDatums = makeModels();
+        
+        List<TupleEntry> results = classify(platform, modelDatums, true, "per-model");
+        assertEquals(NUM_DOCS * modelDatums.size(), results.size());
+        
+        for (TupleEntry result : results) {
+            ModelDocDatum modelDocDatum = new ModelDocDatum(result.getTuple());
+            TextDatum textDatum = makeDoc(Integer.parseInt((String)modelDocDatum.getPayloadValue("docindex")));
+            DocDatum expected = classify(modelDatums.get(modelDocDatum.getModelName()), textDatum);
+            assertEquals(expected.getLabel(), modelDocDatum.getLabel());
+            assertEquals(expected.getScore(), modelDocDatum.getScore(), 0.0f);
+        }
+    }
+    
+    @Test
+    public void testCountersAndEvaluation() throws Exception {
+        LocalPlatform platform = new LocalPlatform(MultiClassifyDocsPipeTest.class);
+        Map<String, ModelDatum> modelDatums = makeModels();
+        
+        Flow flow = runFlow(platform, modelDatums, false, "evaluation", true);
+        
+        // Counted once per document, even though there are two distinct analyzers.
+        assertEquals(NUM_DOCS, flow.getFlowStats().getCounterValue(ClassifyCounters.ANALYZED_INPUT_TUPLE));
+        assertEquals(0, flow.getFlowStats().getCounterValue(ClassifyCounters.SKIPPED_INPUT_TUPLE));
+        assertEquals(NUM_DOCS * modelDatums.size(), flow.getFlowStats().getCounterValue(ClassifyCounters.CLASSIFIED_INPUT_TUPLE));
+        
+        // Each model is evaluated against the same (parity) labels, in its own counter group.
+        for (Map.Entry<String, ModelDatum> entry : modelDatums.entrySet()) {
+            ConfusionMatrix expected = new ConfusionMatrix();
+            for (int i = 0; i < NUM_DOCS; i++) {
+                TextDatum textDatum = makeLabeledDoc(i);
+                expected.add(textDatum.getLabel(), classify(entry.getValue(), textDatum).getLabel());
+            }
+            
+            // So at least one label has non-zero precision to check.
+            assertTrue(expected.getNumCorrect() > 0);
+            
+            String counterGroup = MultiClassify.getCounterGroup(entry.getKey());
+            for (String label : expected.getLabels()) {
+                assertEquals(expected.getPrecision(label), ConfusionMatrix.getPrecision(flow.getFlowStats(), counterGroup, label), 0.0001f);
+                assertEquals(expected.getRecall(label), ConfusionMatrix.getRecall(flow.getFlowStats(), counterGroup, label), 0.0001f);
+            }
+        }
+    }
+    
+    private List<TupleEntry> classify(LocalPlatform platform, Map<String, ModelDatum> modelDatums, boolean tuplePerModel, String outputName) throws Exception {
+        Flow flow = runFlow(platform, modelDatums, tuplePerModel, outputName, false);
+        
+        List<TupleEntry> result = new ArrayList<TupleEntry>();
+        Iterator<TupleEntry> iter = flow.openSink();
+        while (iter.hasNext()) {
+            result.add(new TupleEntry(iter.next()));
+        }
+        
+        return result;
+    }
+    
+    private Flow runFlow(LocalPlatform platform, Map<String, ModelDatum> modelDatums, boolean tuplePerModel, String outputName, boolean labeled) throws Exception {
+        BasePath workingDirPath = platform.makePath(WORKING_DIR);
+        BasePath inputPath = platform.makePath(workingDirPath, "input");
+        Tap inputTap = platform.makeTap(platform.makeBinaryScheme(TextDatum.FIELDS), inputPath, SinkMode.REPLACE);
+        TupleEntryCollector writer = inputTap.openForWrite(platform.makeFlowProcess());
+        for (int i = 0; i < NUM_DOCS; i++) {
+            writer.add((labeled ? makeLabeledDoc(i) : makeDoc(i)).getTuple());
+        }
+        writer.close();
+        
+        Map<String, BasePath> modelPaths = new LinkedHashMap<String, BasePath>();
+        for (Map.Entry<String, ModelDatum> entry : modelDatums.entrySet()) {
+            BasePath modelPath = platform.makePath(workingDirPath, "model-" + entry.getKey());
+            ModelTestUtils.writeModel(platform, modelPath, entry.getValue());
+            modelPaths.put(entry.getKey(), modelPath);
+        }
+        
+        BasePath outputPath = platform.makePath(workingDirPath, outputName);
+        Flow flow = MultiClassifyDocsPipe.createFlow(platform, inputPath, TextDatum.FIELDS, modelPaths, outputPath, tuplePerModel);
+        flow.complete();
+        return flow;
+    }
+    
+    private DocDatum classify(ModelDatum modelDatum, TextDatum textDatum) throws Exception {
+        TextDatumAnalyzer analyzer = (TextDatumAnalyzer)modelDatum.getAnalyzer();
+        analyzer.reset();
+        BaseModel model = modelDatum.getModel();
+        model.reset();
+        return model.classifyTerms(analyzer.getTermMap(textDatum));
+    }
+    
+    private Map<String, ModelDatum> makeModels() throws Exception {
+        Map<String, ModelDatum> result = new LinkedHashMap<String, ModelDatum>();
+        result.put("size", makeModel(new StandardAnalyzer(), 5, 2));
+        result.put("parity", makeModel(new StandardAnalyzer(), 2, 1));
+        result.put("thirds", makeModel(new WhitespaceAnalyzer(), 3, 1));
+        return result;
+    }
+    
+    // Docs are labeled "yes" if (index % modulus) < threshold.
+    private ModelDatum makeModel(TextDatumAnalyzer analyzer, int modulus, int threshold) throws Exception {
+        List<TextDatum> docs = new ArrayList<TextDatum>();
+        for (int i = 0; i < NUM_DOCS; i++) {
+            TextDatum textDatum = makeDoc(i);
+            textDatum.setLabel((i % modulus) < threshold ? "yes" : "no");
+            docs.add(textDatum);
+        }
+        
+        return ModelTestUtils.makeModelDatum(analyzer, docs);
+    }
+    
+    private TextDatum makeLabeledDoc(int docIndex) {
+        TextDatum result = makeDoc(docIndex);
+        result.setLabel((docIndex % 2) < 1 ? "yes" : "no");
+        return result;
+    }
+    
+    private TextDatum makeDoc(int docIndex) {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 30; i++) {
+            content.append(WORDS[(docIndex * 7 + i * (docIndex % 5 + 1)) % WORDS.length]);
+            content.append(' ');
+        }
+        
+        TextDatum result = new TextDatum(content.toString());
+        result.setPayloadValue("docindex", String.valueOf(docIndex));
+        return result;
+    }
+}
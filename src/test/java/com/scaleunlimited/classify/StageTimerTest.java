@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.scaleunlimited.classify.StageTimer.Stage;
+import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.model.HashedFeaturesLibLinearModel;
+import com.scaleunlimited.classify.model.RawFeaturesLibLinearModel;
+
+public class StageTimerTest {
+
+    @Test
+    public void testHistogram() {
+        StageTimer timer = new StageTimer(true);
+        timer.addTime(Stage.PREDICTION, TimeUnit.MICROSECONDS.toNanos(5));
+        timer.addTime(Stage.PREDICTION, TimeUnit.MICROSECONDS.toNanos(50));
+        timer.addTime(Stage.PREDICTION, TimeUnit.MICROSECONDS.toNanos(60));
+        timer.addTime(Stage.PREDICTION, TimeUnit.MILLISECONDS.toNanos(5));
+        timer.addTime(Stage.PREDICTION, TimeUnit.SECONDS.toNanos(1));
+
+        assertEquals(5, timer.getCount(Stage.PREDICTION));
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(5 + 50 + 60 + 5000 + 1000000), timer.getTotalNanos(Stage.PREDICTION));
+        assertArrayEquals(new long[] {1, 2, 0, 1, 1}, timer.getHistogram(Stage.PREDICTION));
+        assertEquals(0, timer.getCount(Stage.ANALYSIS));
+
+        timer.reset();
+        assertEquals(0, timer.getCount(Stage.PREDICTION));
+        assertEquals(0, timer.getTotalNanos(Stage.PREDICTION));
+    }
+
+    @Test
+    public void testHistogramsAreOptional() {
+        StageTimer timer = new StageTimer();
+        assertFalse(timer.hasHistograms());
+        timer.addTime(Stage.PREDICTION, TimeUnit.MICROSECONDS.toNanos(5));
+        assertEquals(1, timer.getCount(Stage.PREDICTION));
+        assertArrayEquals(new long[] {0, 0, 0, 0, 0}, timer.getHistogram(Stage.PREDICTION));
+    }
+
+    @Test
+    public void testDisabled() {
+        assertFalse(StageTimer.DISABLED.isEnabled());
+        assertEquals(0, StageTimer.DISABLED.start());
+
+        StageTimer.DISABLED.addTime(Stage.ANALYSIS, 1000);
+        StageTimer.DISABLED.stop(Stage.ANALYSIS, 0);
+        assertEquals(0, StageTimer.DISABLED.getCount(Stage.ANALYSIS));
+    }
+
+    @Test
+    public void testRawModelStages() {
+        RawFeaturesLibLinearModel model = new RawFeaturesLibLinearModel();
+        model.setQuietMode(true);
+        model.setCrossValidation(false);
+        checkModelStages(model);
+    }
+
+    @Test
+    public void testHashedModelStages() {
+        HashedFeaturesLibLinearModel model = new HashedFeaturesLibLinearModel();
+        model.setQuietMode(true);
+        model.setCrossValidation(false);
+        checkModelStages(model);
+    }
+
+    private void checkModelStages(BaseModel<TermsDatum> model) {
+        for (int i = 0; i < 10; i++) {
+            model.addTrainingTerms(new TermsDatum(makeTerms("badger", i), "animal"));
+            model.addTrainingTerms(new TermsDatum(makeTerms("bicycle", i), "vehicle"));
+        }
+        model.train();
+
+        StageTimer timer = new StageTimer();
+        assertEquals("animal", model.classifyTerms(makeTerms("badger", 3), timer).getLabel());
+        assertEquals(1, timer.getCount(Stage.VECTORIZATION));
+        assertEquals(1, timer.getCount(Stage.NORMALIZATION));
+        assertEquals(1, timer.getCount(Stage.FEATURE_NODES));
+        assertEquals(1, timer.getCount(Stage.PREDICTION));
+        assertTrue(timer.getTotalNanos(Stage.PREDICTION) > 0);
+
+        // The model doesn't hold on to the timer.
+        model.classifyTerms(makeTerms("bicycle", 3));
+        assertEquals(1, timer.getCount(Stage.PREDICTION));
+        
+        model.classify(new TermsDatum(makeTerms("bicycle", 3)), timer);
+        assertEquals(2, timer.getCount(Stage.PREDICTION));
+    }
+
+    private static Map<String, Integer> makeTerms(String term, int count) {
+        Map<String, Integer> result = new HashMap<String, Integer>();
+        result.put(term, count + 1);
+        result.put("common", 1);
+        return result;
+    }
+}
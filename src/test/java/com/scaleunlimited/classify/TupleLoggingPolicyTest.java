@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import cascading.flow.Flow;
+import cascading.operation.Filter;
+import cascading.pipe.Each;
+import cascading.pipe.Pipe;
+import cascading.tap.SinkMode;
+import cascading.tap.Tap;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryCollector;
+
+import com.scaleunlimited.cascading.BasePath;
+import com.scaleunlimited.cascading.local.LocalPlatform;
+import com.scaleunlimited.classify.TupleLoggingPolicy.Mode;
+import com.scaleunlimited.classify.analyzer.StandardAnalyzer;
+import com.scaleunlimited.classify.datum.TextDatum;
+import com.scaleunlimited.classify.model.RawFeaturesLibLinearModel;
+
+@SuppressWarnings("rawtypes")
+public class TupleLoggingPolicyTest {
+
+    private static final String WORKING_DIR = "build/tuple-logging-policy-test/";
+    
+    @Test
+    public void testParsing() {
+        assertSame(TupleLoggingPolicy.OFF, TupleLoggingPolicy.parse("off"));
+        assertSame(TupleLoggingPolicy.FULL, TupleLoggingPolicy.parse(" FULL "));
+        
+        TupleLoggingPolicy policy = TupleLoggingPolicy.parse("sampled");
+        assertEquals(Mode.SAMPLED, policy.getMode());
+        assertEquals(TupleLoggingPolicy.DEFAULT_SAMPLE_INTERVAL, policy.getSampleInterval());
+        
+        policy = TupleLoggingPolicy.parse("50");
+        assertEquals(Mode.SAMPLED, policy.getMode());
+        assertEquals(50, policy.getSampleInterval());
+        
+        try {
+            TupleLoggingPolicy.parse("0");
+            fail("Sample interval must be positive");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        
+        try {
+            TupleLoggingPolicy.parse("sometimes");
+            fail("Invalid policy should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+    
+    @Test
+    public void testOptions() {
+        ClassifyOptions options = new ClassifyOptions();
+        assertSame(TupleLoggingPolicy.FULL, options.getTupleLoggingPolicy());
+        
+        options.setTupleLogging("100");
+        assertEquals(Mode.SAMPLED, options.getTupleLoggingPolicy().getMode());
+        assertEquals(100, options.getTupleLoggingPolicy().getSampleInterval());
+    }
+    
+    @Test
+    public void testNoLoggingOperationWhenOff() {
+        RawFeaturesLibLinearModel model = new RawFeaturesLibLinearModel();
+        
+        ClassifyDocsPipe pipe = new ClassifyDocsPipe(new Pipe("input"), new StandardAnalyzer(), model, new ClassifyDocsPipe.Settings().setLoggingPolicy(TupleLoggingPolicy.OFF));
+        Each tail = (Each)pipe.getOutputPipe();
+        assertTrue(tail.getOperation() instanceof AnalyzeAndClassify);
+        
+        pipe = new ClassifyDocsPipe(new Pipe("input"), new StandardAnalyzer(), model, new ClassifyDocsPipe.Settings().setLoggingPolicy(TupleLoggingPolicy.sampled(10)));
+        tail = (Each)pipe.getOutputPipe();
+        assertTrue(tail.getOperation() instanceof Filter);
+    }
+    
+    @Test
+    public void testSampledLoggingKeepsAllTuples() throws Exception {
+        final int numDocs = 100;
+        
+        LocalPlatform platform = new LocalPlatform(TupleLoggingPolicyTest.class);
+        BasePath workingDirPath = platform.makePath(WORKING_DIR);
+        Tap inputTap = platform.makeTap(platform.makeBinaryScheme(TextDatum.FIELDS), platform.makePath(workingDirPath, "input"), SinkMode.REPLACE);
+        TupleEntryCollector writer = inputTap.openForWrite(platform.makeFlowProcess());
+        for (int i = 0; i < numDocs; i++) {
+            writer.add(new TextDatum("badger mongoose", "doc-" + i).getTuple());
+        }
+        writer.close();
+        
+        Pipe pipe = TupleLoggingPolicy.sampled(7).makePipe(new Pipe("docs"));
+        Tap outputTap = platform.makeTap(platform.makeBinaryScheme(TextDatum.FIELDS), platform.makePath(workingDirPath, "output"), SinkMode.REPLACE);
+        Flow flow = platform.makeFlowConnector().connect(inputTap, outputTap, pipe);
+        flow.complete();
+        
+        int numOutput = 0;
+        Iterator<TupleEntry> iter = outputTap.openForRead(platform.makeFlowProcess());
+        while (iter.hasNext()) {
+            iter.next();
+            numOutput += 1;
+        }
+        
+        assertEquals(numDocs, numOutput);
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.analyzer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Test;
+
+import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.datum.TextDatum;
+
+public class AnalysisBudgetTest {
+
+    @Test
+    public void testNoLimit() {
+        AnalysisBudget budget = new AnalysisBudget();
+        assertTrue(budget.isUnlimited());
+
+        String content = "some content that won't be touched";
+        assertSame(content, budget.limitContent(content));
+        assertFalse(budget.isTokenLimitReached(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testTruncation() {
+        AnalysisBudget budget = new AnalysisBudget(10, 0, false);
+        assertEquals("0123456789", budget.limitContent("0123456789abcdef"));
+
+        String content = "0123456789";
+        assertSame(content, budget.limitContent(content));
+    }
+
+    @Test
+    public void testHeadAndTail() {
+        AnalysisBudget budget = new AnalysisBudget(10, 0, true);
+        assertEquals("01234\nbcdef", budget.limitContent("0123456789abcdef"));
+    }
+
+    @Test
+    public void testSurrogatePairsNotSplit() {
+        AnalysisBudget budget = new AnalysisBudget(3, 0, false);
+
+        // U+1D11E (musical G clef) is a surrogate pair in UTF-16
+        String content = "ab\uD834\uDD1Ecd";
+        assertEquals("ab", budget.limitContent(content));
+    }
+
+    @Test
+    public void testTokenLimit() {
+        StandardAnalyzer analyzer = new StandardAnalyzer();
+        analyzer.setBudget(new AnalysisBudget(0, 2, false));
+        analyzer.reset();
+
+        TextDatum textDatum = new TextDatum("badger mongoose hyena");
+        TermsDatum termsDatum = analyzer.getTermsDatum(textDatum.getTuple());
+        Map<String, Integer> termMap = termsDatum.getTermMap();
+        assertEquals(2, termMap.size());
+        assertTrue(termMap.containsKey("badger"));
+        assertTrue(termMap.containsKey("mongoose"));
+        assertTrue(analyzer.wasTruncated());
+
+        textDatum = new TextDatum("badger mongoose");
+        analyzer.getTermsDatum(textDatum.getTuple());
+        assertFalse(analyzer.wasTruncated());
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        StandardAnalyzer analyzer1 = new StandardAnalyzer();
+        analyzer1.setBudget(new AnalysisBudget(1000, 50, true));
+
+        DataOutputBuffer dob = new DataOutputBuffer();
+        analyzer1.write(dob);
+
+        DataInputBuffer dib = new DataInputBuffer();
+        dib.reset(dob.getData(), dob.getLength());
+        StandardAnalyzer analyzer2 = new StandardAnalyzer();
+        analyzer2.readFields(dib);
+
+        assertEquals(analyzer1.getBudget(), analyzer2.getBudget());
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.analyzer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.scaleunlimited.classify.datum.TextDatum;
+
+public class AsciiStandardAnalyzerTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsciiStandardAnalyzerTest.class);
+
+    private static final String[] TEST_TEXTS = {
+        "The badger is one of the mongoose's enemies",
+        "Don't e-mail JOHN.SMITH@EXAMPLE.COM about the 1,000.50 dollars; it's 10:30 now.",
+        "__init__ a_b _x_ ___ foo_. 3_000 x.y.z a:b:c 1;2;3 a1.b 1.a a..b 1,,2 'quoted' end.",
+        "tabs\tand\nnewlines\r\nand [brackets] {braces} (parens) <angles> \"quotes\" ~!@#$%^&*+=|\\/?",
+        "",
+        "...",
+    };
+
+    // Biased towards the chars that matter for word breaking.
+    private static final String RANDOM_ALPHABET = "aBz09_.,;:' -\"/\t";
+
+    private static final String[] WORDS = {
+        "badger", "Mongoose", "hyena's", "aardvark", "otter", "weasel", "ferret", "stoat",
+        "the", "of", "and", "1,000", "e-mail", "10:30", "U.S.A.", "john.smith@example.com",
+    };
+
+    @Test
+    public void testSameTermsAsStandardAnalyzer() {
+        StandardAnalyzer standard = new StandardAnalyzer();
+        AsciiStandardAnalyzer ascii = new AsciiStandardAnalyzer();
+        standard.reset();
+        ascii.reset();
+
+        for (String text : TEST_TEXTS) {
+            assertEquals(text, standard.getTermList(text), ascii.getTermList(text));
+        }
+    }
+
+    @Test
+    public void testRandomText() {
+        StandardAnalyzer standard = new StandardAnalyzer();
+        AsciiStandardAnalyzer ascii = new AsciiStandardAnalyzer();
+        standard.reset();
+        ascii.reset();
+
+        Random rand = new Random(1L);
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = rand.nextInt(40);
+            for (int j = 0; j < length; j++) {
+                text.append(RANDOM_ALPHABET.charAt(rand.nextInt(RANDOM_ALPHABET.length())));
+            }
+
+            String testText = text.toString();
+            assertEquals(testText, standard.getTermList(testText), ascii.getTermList(testText));
+        }
+    }
+
+    /**
+     * Compare throughput of the ASCII analyzer versus the standard analyzer,
+     * on ASCII text. This logs the results, versus asserting anything about
+     * relative speed, so it's not part of the normal build. To run it, remove
+     * the Ignore annotation and then:
+     * 
+     * mvn test -Dtest=AsciiStandardAnalyzerTest#testThroughput
+     */
+    @Ignore("Benchmark that only logs throughput; see the javadoc for how to run it")
+    @Test
+    public void testThroughput() {
+        final int numDocs = 20000;
+        List<String> docs = new ArrayList<String>(numDocs);
+        Random rand = new Random(1L);
+        for (int i = 0; i < numDocs; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = 0; j < 200; j++) {
+                text.append(WORDS[rand.nextInt(WORDS.length)]);
+                text.append((j % 15) == 14 ? ". " : " ");
+            }
+            
+            docs.add(text.toString());
+        }
+        
+        StandardAnalyzer standard = new StandardAnalyzer();
+        AsciiStandardAnalyzer ascii = new AsciiStandardAnalyzer();
+        standard.reset();
+        ascii.reset();
+        
+        // Warm up the JIT before timing anything.
+        analyze(standard, docs);
+        analyze(ascii, docs);
+        
+        long startTime = System.nanoTime();
+        analyze(standard, docs);
+        long standardTime = System.nanoTime() - startTime;
+        
+        startTime = System.nanoTime();
+        analyze(ascii, docs);
+        long asciiTime = System.nanoTime() - startTime;
+        
+        LOGGER.info(String.format(  "Standard analyzer: %.0f docs/sec, ASCII analyzer: %.0f docs/sec",
+                                    numDocs / (standardTime / 1.0e9),
+                                    numDocs / (asciiTime / 1.0e9)));
+    }
+
+    @Test
+    public void testLongTokensSkipped() {
+        StringBuilder longToken = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            longToken.append('x');
+        }
+
+        String text = "badger " + longToken + " mongoose";
+        assertEquals(new StandardAnalyzer().getTermList(text), new AsciiStandardAnalyzer().getTermList(text));
+    }
+
+    @Test
+    public void testNonAsciiFallback() {
+        String text = "Caf\u00e9 cr\u00e8me for the badger";
+        AsciiStandardAnalyzer ascii = new AsciiStandardAnalyzer();
+        ascii.reset();
+        assertEquals(new StandardAnalyzer().getTermList(text), ascii.getTermList(text));
+        assertTrue(ascii.getTermList(text).contains("caf\u00e9"));
+    }
+
+    @Test
+    public void testTokenLimit() {
+        AsciiStandardAnalyzer ascii = new AsciiStandardAnalyzer();
+        ascii.setBudget(new AnalysisBudget(0, 2, false));
+        ascii.reset();
+
+        assertEquals(2, ascii.getTermMap("badger mongoose hyena").size());
+        assertTrue(ascii.wasTruncated());
+        
+        ascii.getTermsDatum(new TextDatum("badger mongoose").getTuple());
+        assertFalse(ascii.wasTruncated());
+    }
+
+    private static void analyze(StandardAnalyzer analyzer, List<String> docs) {
+        for (String doc : docs) {
+            analyzer.getTermMap(doc);
+        }
+    }
+}
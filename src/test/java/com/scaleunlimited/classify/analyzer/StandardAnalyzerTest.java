@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.analyzer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+
+import org.apache.lucene.analysis.util.CharArraySet;
+import org.junit.Test;
+
+import com.scaleunlimited.classify.datum.TextDatum;
+
+public class StandardAnalyzerTest {
+
+    @Test
+    public void testCommonWordsShared() {
+        CharArraySet commonWords = StandardAnalyzer.getCommonWords();
+        assertSame(commonWords, StandardAnalyzer.getCommonWords());
+        assertTrue(commonWords.contains("the"));
+
+        try {
+            commonWords.add("badger");
+            fail("Common words set should be immutable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testAnalyzersShareResults() {
+        String testText = "The badger is one of the mongoose's enemies";
+
+        StandardAnalyzer analyzer1 = new StandardAnalyzer();
+        analyzer1.reset();
+        Map<String, Integer> termMap1 =
+            analyzer1.getTermsDatum(new TextDatum(testText).getTuple()).getTermMap();
+
+        StandardAnalyzer analyzer2 = new StandardAnalyzer();
+        analyzer2.reset();
+        Map<String, Integer> termMap2 =
+            analyzer2.getTermsDatum(new TextDatum(testText).getTuple()).getTermMap();
+
+        assertEquals(termMap1, termMap2);
+        assertTrue(termMap1.containsKey("badger"));
+        assertFalse(termMap1.containsKey("the"));
+    }
+}
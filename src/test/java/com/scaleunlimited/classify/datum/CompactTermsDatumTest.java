@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.datum;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.scaleunlimited.classify.datum.CompactTermsDatum.TermIterator;
+
+public class CompactTermsDatumTest {
+
+    @Test
+    public void testRoundTrip() {
+        Map<String, Integer> termMap = new HashMap<String, Integer>();
+        termMap.put("mongoose", 3);
+        termMap.put("mongooses", 1);
+        termMap.put("badger", 200);
+        termMap.put("caf\u00e9", 70000);
+        termMap.put("\uD834\uDD1E", 2);
+        
+        TermsDatum termsDatum = new TermsDatum(termMap, "animals");
+        termsDatum.setPayloadValue("key", "value");
+        
+        CompactTermsDatum compactDatum = new CompactTermsDatum(termsDatum);
+        assertEquals(termMap, compactDatum.getTermMap());
+        assertEquals(5, compactDatum.getNumTerms());
+        assertEquals("animals", compactDatum.getLabel());
+        
+        // Make sure we survive being turned into a tuple and back.
+        CompactTermsDatum copy = new CompactTermsDatum(compactDatum.getTuple());
+        TermsDatum expanded = copy.toTermsDatum();
+        assertEquals(termMap, expanded.getTermMap());
+        assertEquals("animals", expanded.getLabel());
+        assertEquals("value", expanded.getPayloadValue("key"));
+    }
+    
+    @Test
+    public void testFrontCoding() {
+        Map<String, Integer> termMap = new HashMap<String, Integer>();
+        termMap.put("mongoose", 3);
+        termMap.put("badger", 1);
+        termMap.put("badgers", 2);
+        
+        // Sorted, with "badgers" only storing the "s" after the shared "badger".
+        byte[] expected = {3, 0, 6, 'b', 'a', 'd', 'g', 'e', 'r', 1,
+                              6, 1, 's', 2,
+                              0, 8, 'm', 'o', 'n', 'g', 'o', 'o', 's', 'e', 3};
+        byte[] termsBlock = CompactTermsDatum.encodeTerms(termMap);
+        assertArrayEquals(expected, termsBlock);
+        assertEquals(termMap, CompactTermsDatum.decodeTerms(termsBlock, termsBlock.length));
+        assertEquals(3, new CompactTermsDatum(termMap).getNumTerms());
+    }
+    
+    @Test
+    public void testSortedIteration() {
+        Map<String, Integer> termMap = new HashMap<String, Integer>();
+        termMap.put("mongoose", 300);
+        termMap.put("badger", 1);
+        termMap.put("badgers", 2);
+        
+        TermIterator iter = new CompactTermsDatum(termMap).iterator();
+        assertEquals(3, iter.getNumTerms());
+        
+        assertTrue(iter.next());
+        assertEquals("badger", iter.getTerm());
+        assertEquals(1, iter.getCount());
+        
+        assertTrue(iter.next());
+        assertEquals("badgers", iter.getTerm());
+        assertEquals(2, iter.getCount());
+        
+        assertTrue(iter.next());
+        assertEquals("mongoose", iter.getTerm());
+        assertEquals(300, iter.getCount());
+        
+        assertFalse(iter.next());
+    }
+    
+    @Test
+    public void testEmptyAndLongTerms() {
+        assertEquals(0, new CompactTermsDatum(new HashMap<String, Integer>()).getNumTerms());
+        
+        StringBuilder longTerm = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            longTerm.append("badger");
+        }
+        
+        Map<String, Integer> termMap = new HashMap<String, Integer>();
+        termMap.put(longTerm.toString(), 1);
+        termMap.put(longTerm.toString() + "s", 1);
+        assertEquals(termMap, new CompactTermsDatum(termMap).getTermMap());
+    }
+    
+    @Test
+    public void testSmallerEncoding() {
+        Map<String, Integer> termMap = new HashMap<String, Integer>();
+        for (int i = 0; i < 100; i++) {
+            termMap.put("term" + i, i);
+        }
+        
+        // 1 + 100 * (prefix + suffix length + 1-2 suffix chars + count)
+        byte[] termsBlock = CompactTermsDatum.encodeTerms(termMap);
+        assertTrue(termsBlock.length < 500);
+    }
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.datum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Test;
+
+import cascading.tap.SinkMode;
+import cascading.tap.Tap;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntryCollector;
+
+import com.scaleunlimited.cascading.BasePath;
+import com.scaleunlimited.cascading.local.LocalPlatform;
+import com.scaleunlimited.classify.BaseModel;
+import com.scaleunlimited.classify.ClassifyDocsPipe;
+import com.scaleunlimited.classify.ModelTestUtils;
+import com.scaleunlimited.classify.analyzer.AnalysisBudget;
+import com.scaleunlimited.classify.analyzer.NullAnalyzer;
+import com.scaleunlimited.classify.analyzer.StandardAnalyzer;
+import com.scaleunlimited.classify.model.BaseLibLinearModel;
+import com.scaleunlimited.classify.model.HashedFeaturesLibLinearModel;
+import com.scaleunlimited.classify.model.LazyModel;
+import com.scaleunlimited.classify.model.RawFeaturesLibLinearModel;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class ModelDatumTest {
+
+    private static final String WORKING_DIR = "build/test/ModelDatumTest/";
+
+    private static final int MODEL_DATA_INDEX = ModelDatum.FIELDS.getPos(ModelDatum.MODEL_DATA_FN);
+    
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<TermsDatum> docs = makeDocs();
+        checkRoundTrip(ModelTestUtils.trainModel(new RawFeaturesLibLinearModel(), docs), docs, true);
+        checkRoundTrip(ModelTestUtils.trainModel(new RawFeaturesLibLinearModel(), docs), docs, false);
+        checkRoundTrip(ModelTestUtils.trainModel(new HashedFeaturesLibLinearModel(), docs), docs, true);
+    }
+    
+    @Test
+    public void testSmallerThanOldFormat() throws Exception {
+        BaseLibLinearModel model = ModelTestUtils.trainModel(new RawFeaturesLibLinearModel(), makeDocs());
+        DataOutputBuffer dob = new DataOutputBuffer();
+        model.write(dob);
+        
+        BytesWritable modelData = getModelData(new ModelDatum(new NullAnalyzer(), model));
+        assertTrue(modelData.getLength() < dob.getLength());
+        
+        // We shouldn't be carrying around any unused buffer space.
+        assertEquals(modelData.getLength(), modelData.getBytes().length);
+    }
+    
+    @Test
+    public void testCorruptModelData() throws Exception {
+        BaseLibLinearModel model = ModelTestUtils.trainModel(new RawFeaturesLibLinearModel(), makeDocs());
+        ModelDatum datum = new ModelDatum(new NullAnalyzer(), model);
+        BytesWritable modelData = getModelData(datum);
+        byte[] bytes = modelData.getBytes();
+        bytes[modelData.getLength() - 10] ^= 0x55;
+        
+        try {
+            datum.getModel();
+            fail("Corrupted model data should fail the checksum");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+    
+    @Test
+    public void testReadingOldFormat() throws Exception {
+        List<TermsDatum> docs = makeDocs();
+        BaseLibLinearModel model = ModelTestUtils.trainModel(new HashedFeaturesLibLinearModel(), docs);
+        ModelDatum oldDatum = new ModelDatum(makeOldTuple(model));
+        assertFalse(oldDatum.hasHeader());
+        assertTrue(oldDatum.getAnalyzer() instanceof NullAnalyzer);
+        
+        // Old format is lossless
+        assertEquals(model, oldDatum.getModel());
+    }
+    
+    @Test
+    public void testReadingOldModelDir() throws Exception {
+        LocalPlatform platform = new LocalPlatform(ModelDatumTest.class);
+        BasePath modelPath = platform.makePath(WORKING_DIR + "old-model");
+        List<TermsDatum> docs = makeDocs();
+        BaseLibLinearModel model = ModelTestUtils.trainModel(new RawFeaturesLibLinearModel(), docs);
+        
+        Tap modelTap = platform.makeTap(platform.makeBinaryScheme(ModelDatum.FIELDS), modelPath, SinkMode.REPLACE);
+        TupleEntryCollector writer = modelTap.openForWrite(platform.makeFlowProcess());
+        writer.add(makeOldTuple(model));
+        writer.close();
+        
+        ModelDatum modelDatum = ClassifyDocsPipe.readModel(platform, modelPath);
+        assertTrue(modelDatum.getAnalyzer() instanceof NullAnalyzer);
+        assertEquals(model, modelDatum.getModel());
+    }
+    
+    @Test
+    public void testAnalyzerSettings() throws Exception {
+        BaseLibLinearModel model = ModelTestUtils.trainModel(new RawFeaturesLibLinearModel(), makeDocs());
+        AnalysisBudget budget = new AnalysisBudget(1000, 50, true);
+        StandardAnalyzer analyzer = new StandardAnalyzer();
+        analyzer.setBudget(budget);
+        
+        ModelDatum datum = new ModelDatum(analyzer, model);
+        assertEquals(3, datum.getTuple().size());
+        ModelDatum copy = new ModelDatum(new Tuple(datum.getTuple()));
+        assertEquals(budget, ((StandardAnalyzer)copy.getAnalyzer()).getBudget());
+        
+        // An analyzer without settings is just saved as its class name.
+        datum.setAnalyzer(new NullAnalyzer());
+        assertEquals(NullAnalyzer.class.getName(), datum.getTuple().getObject(ModelDatum.FIELDS.getPos(ModelDatum.ANALYZER_FN)));
+        assertTrue(datum.getAnalyzer() instanceof NullAnalyzer);
+        
+        // As is one that has an unlimited budget.
+        datum.setAnalyzer(new StandardAnalyzer());
+        assertEquals(StandardAnalyzer.class.getName(), datum.getTuple().getObject(ModelDatum.FIELDS.getPos(ModelDatum.ANALYZER_FN)));
+        assertTrue(((StandardAnalyzer)datum.getAnalyzer()).getBudget().isUnlimited());
+    }
+    
+    @Test
+    public void testLazyModel() throws Exception {
+        List<TermsDatum> docs = makeDocs();
+        BaseLibLinearModel model = ModelTestUtils.trainModel(new RawFeaturesLibLinearModel(), docs);
+        ModelDatum datum = new ModelDatum(new NullAnalyzer(), model);
+        assertEquals(model.getLabelNames(), datum.getLabelNames());
+        assertEquals(RawFeaturesLibLinearModel.class.getName(), datum.getModelClassName());
+        
+        LazyModel lazyModel = datum.getLazyModel();
+        assertEquals(model.getLabelNames(), lazyModel.getLabelNames());
+        lazyModel.reset();
+        assertFalse(lazyModel.isLoaded());
+        
+        for (TermsDatum doc : docs) {
+            assertEquals(model.classify(doc).getLabel(), lazyModel.classify(doc).getLabel());
+        }
+        assertTrue(lazyModel.isLoaded());
+        assertSame(lazyModel.getModel(), lazyModel.getModel());
+        
+        // Writable round trip leaves it unloaded
+        DataOutputBuffer dob = new DataOutputBuffer();
+        lazyModel.write(dob);
+        DataInputBuffer dib = new DataInputBuffer();
+        dib.reset(dob.getData(), dob.getLength());
+        LazyModel lazyModel2 = new LazyModel();
+        lazyModel2.readFields(dib);
+        assertFalse(lazyModel2.isLoaded());
+        assertEquals(model.getLabelNames(), lazyModel2.getLabelNames());
+        assertEquals(model.classify(docs.get(0)).getLabel(), lazyModel2.classify(docs.get(0)).getLabel());
+    }
+    
+    private void checkRoundTrip(BaseLibLinearModel model, List<TermsDatum> docs, boolean compress) throws Exception {
+        ModelDatum datum = new ModelDatum(new NullAnalyzer(), model);
+        datum.setModel(model, compress);
+        ModelDatum copy = new ModelDatum(new Tuple(datum.getTuple()));
+        assertTrue(copy.hasHeader());
+        
+        BaseModel copyModel = copy.getModel();
+        assertEquals(model.getClass(), copyModel.getClass());
+        assertEquals(model.getLabelNames(), copyModel.getLabelNames());
+        for (TermsDatum doc : docs) {
+            DocDatum expected = model.classify(doc);
+            DocDatum actual = ((BaseLibLinearModel)copyModel).classify(doc);
+            assertEquals(expected.getLabel(), actual.getLabel());
+            assertEquals(expected.getScore(), actual.getScore(), 0.0001f);
+        }
+    }
+    
+    // Model data as it was written before model data had a header, or the
+    // analyzer had settings.
+    private Tuple makeOldTuple(BaseLibLinearModel model) throws IOException {
+        DataOutputBuffer dob = new DataOutputBuffer();
+        model.write(dob);
+        BytesWritable oldModelData = new BytesWritable();
+        oldModelData.set(dob.getData(), 0, dob.getLength());
+        return new Tuple(NullAnalyzer.class.getName(), model.getClass().getName(), oldModelData);
+    }
+    
+    private BytesWritable getModelData(ModelDatum datum) {
+        return (BytesWritable)datum.getTuple().getObject(MODEL_DATA_INDEX);
+    }
+    
+    private List<TermsDatum> makeDocs() {
+        Random rand = new Random(0L);
+        String[] labels = {"animal", "mineral", "vegetable"};
+        List<TermsDatum> result = new ArrayList<TermsDatum>();
+        for (int i = 0; i < 60; i++) {
+            String label = labels[i % labels.length];
+            Map<String, Integer> termMap = new HashMap<String, Integer>();
+            for (int j = 0; j < 20; j++) {
+                termMap.put(label + "-term-" + rand.nextInt(100), 1 + rand.nextInt(3));
+                termMap.put("common-term-" + rand.nextInt(100), 1 + rand.nextInt(3));
+            }
+            
+            result.add(new TermsDatum(termMap, label));
+        }
+        
+        return result;
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.datum;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Test;
+
+import cascading.flow.Flow;
+import cascading.flow.FlowConnector;
+import cascading.pipe.Pipe;
+import cascading.tap.SinkMode;
+import cascading.tap.Tap;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntryCollector;
+
+import com.scaleunlimited.cascading.BasePath;
+import com.scaleunlimited.cascading.hadoop.HadoopPlatform;
+import com.scaleunlimited.classify.BaseModel;
+import com.scaleunlimited.classify.ClassifyDocsPipe;
+import com.scaleunlimited.classify.ModelTestUtils;
+import com.scaleunlimited.classify.analyzer.StandardAnalyzer;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class SerializationTokensTest {
+
+    private static final String WORKING_DIR = "build/test/SerializationTokensTest/";
+    
+    @Test
+    public void testCompactRoundTrip() throws Exception {
+        BytesWritable small = new CompactBytesWritable(new byte[] {1, 2, 3});
+        BytesWritable large = new CompactBytesWritable(new byte[1000]);
+        
+        DataOutputBuffer dob = new DataOutputBuffer();
+        small.write(dob);
+        large.write(dob);
+        
+        // One byte length for the small value, two for the large one.
+        assertEquals(1 + 3 + 2 + 1000, dob.getLength());
+        
+        DataInputBuffer dib = new DataInputBuffer();
+        dib.reset(dob.getData(), dob.getLength());
+        BytesWritable value = new CompactBytesWritable();
+        value.readFields(dib);
+        assertEquals(small, value);
+        value.readFields(dib);
+        assertEquals(large, value);
+        
+        // Still equal to the same bytes in a regular BytesWritable
+        assertEquals(new BytesWritable(new byte[] {1, 2, 3}), small);
+    }
+    
+    @Test
+    public void testRegister() {
+        Map<Object, Object> properties = new HashMap<Object, Object>();
+        properties.put("io.serializations", "org.apache.hadoop.io.serializer.WritableSerialization");
+        properties.put("cascading.serialization.tokens", "200=some.other.Class");
+        
+        SerializationTokens.register(properties);
+        SerializationTokens.register(properties);
+        
+        // We must never take over (de)serialization of BytesWritable from Hadoop.
+        assertEquals("org.apache.hadoop.io.serializer.WritableSerialization", properties.get("io.serializations"));
+        assertEquals(   "200=some.other.Class," + SerializationTokens.COMPACT_BYTES_WRITABLE_TOKEN + "=" + CompactBytesWritable.class.getName(),
+                        properties.get("cascading.serialization.tokens"));
+    }
+    
+    @Test
+    public void testHadoopModelRoundTrip() throws Exception {
+        HadoopPlatform platform = new HadoopPlatform(SerializationTokensTest.class);
+        
+        // Write the model the way it was written before we had the token,
+        // as plain BytesWritable values without any registration.
+        BasePath oldModelPath = platform.makePath(WORKING_DIR + "old-model");
+        Tuple oldTuple = new ModelDatum(new StandardAnalyzer(), makeModel()).getTuple();
+        for (int i = 0; i < oldTuple.size(); i++) {
+            if (oldTuple.getObject(i) instanceof BytesWritable) {
+                BytesWritable value = (BytesWritable)oldTuple.getObject(i);
+                oldTuple.set(i, new BytesWritable(value.copyBytes()));
+            }
+        }
+        
+        Tap oldModelTap = platform.makeTap(platform.makeBinaryScheme(ModelDatum.FIELDS), oldModelPath, SinkMode.REPLACE);
+        TupleEntryCollector writer = oldModelTap.openForWrite(platform.makeFlowProcess());
+        writer.add(oldTuple);
+        writer.close();
+        
+        checkModel(ClassifyDocsPipe.readModel(platform, oldModelPath));
+        
+        // Now copy it via a flow that uses our token, which will write
+        // compact values for everything.
+        BasePath newModelPath = platform.makePath(WORKING_DIR + "new-model");
+        Tap newModelTap = platform.makeTap(platform.makeBinaryScheme(ModelDatum.FIELDS), newModelPath, SinkMode.REPLACE);
+        Pipe copyPipe = new Pipe("copy model");
+        FlowConnector flowConnector = platform.makeFlowConnector();
+        SerializationTokens.register(flowConnector.getProperties());
+        Flow flow = flowConnector.connect(oldModelTap, newModelTap, copyPipe);
+        flow.complete();
+        
+        checkModel(ClassifyDocsPipe.readModel(platform, newModelPath));
+        
+        // And that new-style tuples written outside of a flow can be read.
+        writer = newModelTap.openForWrite(SerializationTokens.makeFlowProcess(platform));
+        writer.add(new ModelDatum(new StandardAnalyzer(), makeModel()).getTuple());
+        writer.close();
+        
+        checkModel(ClassifyDocsPipe.readModel(platform, newModelPath));
+    }
+    
+    private BaseModel makeModel() throws Exception {
+        List<TextDatum> docs = new ArrayList<TextDatum>();
+        for (int i = 0; i < 20; i++) {
+            String label = ((i % 2) == 0 ? "badger" : "hyena");
+            docs.add(new TextDatum(String.format("the %s went to see the %s about %d things", label, label, i), label));
+        }
+        
+        return ModelTestUtils.trainModel(new StandardAnalyzer(), docs);
+    }
+    
+    private void checkModel(ModelDatum modelDatum) throws Exception {
+        StandardAnalyzer analyzer = (StandardAnalyzer)modelDatum.getAnalyzer();
+        analyzer.reset();
+        BaseModel model = modelDatum.getModel();
+        assertEquals(2, model.getLabelNames().size());
+        assertEquals("badger", model.classify(analyzer.getTermsDatum(new TextDatum("the badger").getTuple())).getLabel());
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.datum;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import cascading.tuple.Tuple;
+
+import com.scaleunlimited.classify.vectors.SparseVectorWritable;
+
+public class VectorDatumTest {
+
+    @Test
+    public void testRoundTrip() {
+        int[] ids = new int[] {70000, 5, 300, 5, Integer.MAX_VALUE};
+        float[] values = new float[] {1.0f, 2.5f, 0.125f, 3.0f, -4.0f};
+        VectorDatum datum = new VectorDatum(ids, values, ids.length, "label");
+        
+        // Make sure we only rely on what's in the tuple.
+        VectorDatum copy = new VectorDatum(new Tuple(datum.getTuple()));
+        assertEquals("label", copy.getLabel());
+        assertEquals(5, copy.getNumFeatures());
+        assertArrayEquals(new int[] {5, 5, 300, 70000, Integer.MAX_VALUE}, copy.getIds());
+        assertArrayEquals(new float[] {2.5f, 3.0f, 0.125f, 1.0f, -4.0f}, copy.getValues(), 0.0f);
+    }
+    
+    @Test
+    public void testPartialArrays() {
+        int[] ids = new int[] {10, 20, 30};
+        float[] values = new float[] {1.0f, 2.0f, 3.0f};
+        VectorDatum datum = new VectorDatum(ids, values, 2);
+        
+        SparseVectorWritable vector = new SparseVectorWritable(new int[] {1, 2, 3, 4}, new float[4], 4);
+        assertSame(vector, datum.getVector(vector));
+        assertEquals(2, vector.getNumEntries());
+        assertEquals(10, vector.getIndexes()[0]);
+        assertEquals(2.0f, vector.getValues()[1], 0.0f);
+    }
+    
+    @Test
+    public void testEmpty() {
+        VectorDatum datum = new VectorDatum(new int[0], new float[0], 0);
+        assertEquals(0, datum.getNumFeatures());
+        assertEquals(0, datum.getIds().length);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeId() {
+        new VectorDatum(new int[] {-1}, new float[] {1.0f}, 1);
+    }
+}
@@ -15,12 +15,22 @@
  */
 package com.scaleunlimited.classify.model;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
+import org.junit.Assert;
 import org.junit.Test;
 
+import com.scaleunlimited.classify.HashTerms;
+import com.scaleunlimited.classify.datum.CompactTermsDatum;
+import com.scaleunlimited.classify.datum.DocDatum;
+import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.datum.VectorDatum;
 import com.scaleunlimited.classify.model.BaseLibLinearModel;
 import com.scaleunlimited.classify.model.HashedFeaturesLibLinearModel;
 
@@ -46,6 +56,66 @@ public class HashedFeaturesLibLinearModelTest extends BaseLibLinearModelTest {
     	super.testSerializationWithAllNormalizers();
     }
     
+    @Test
+    public void testTrainingOnVectors() throws Exception {
+        Random rand = new Random(0L);
+        List<TermsDatum> docs = new ArrayList<TermsDatum>();
+        for (int i = 0; i < 100; i++) {
+            String label = (i % 2 == 0 ? "even" : "odd");
+            Map<String, Integer> termMap = new HashMap<String, Integer>();
+            for (int j = 0; j < 20; j++) {
+                termMap.put(label + rand.nextInt(50), 1 + rand.nextInt(3));
+                termMap.put("common" + rand.nextInt(50), 1 + rand.nextInt(3));
+            }
+            
+            docs.add(new TermsDatum(termMap, label));
+        }
+        
+        HashedFeaturesLibLinearModel termsModel = makeQuietModel();
+        HashedFeaturesLibLinearModel vectorsModel = makeQuietModel();
+        Assert.assertTrue(vectorsModel.supportsVectors());
+        for (TermsDatum doc : docs) {
+            termsModel.addTrainingTerms(doc);
+            vectorsModel.addTrainingVector(HashTerms.hashTerms(doc.getTermMap(), doc.getLabel()));
+        }
+        termsModel.train();
+        vectorsModel.train();
+        Assert.assertEquals(termsModel, vectorsModel);
+        
+        // The vector-trained model should classify terms and vectors the same way.
+        for (TermsDatum doc : docs) {
+            VectorDatum vector = HashTerms.hashTerms(doc.getTermMap(), doc.getLabel());
+            DocDatum termsResult = vectorsModel.classify(doc);
+            DocDatum vectorResult = vectorsModel.classifyVector(vector);
+            Assert.assertEquals(termsResult.getLabel(), vectorResult.getLabel());
+            Assert.assertEquals(termsResult.getScore(), vectorResult.getScore(), 0.0f);
+            
+            // Hashing compact terms gives the same features, just in sorted term order.
+            VectorDatum compactVector = HashTerms.hashTerms(new CompactTermsDatum(doc).iterator(), doc.getLabel());
+            DocDatum compactResult = vectorsModel.classifyVector(compactVector);
+            Assert.assertEquals(termsResult.getLabel(), compactResult.getLabel());
+            Assert.assertEquals(termsResult.getScore(), compactResult.getScore(), 0.0001f);
+        }
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testMixedTrainingData() throws Exception {
+        Map<String, Integer> termMap = new HashMap<String, Integer>();
+        termMap.put("badger", 1);
+        
+        HashedFeaturesLibLinearModel model = makeQuietModel();
+        model.addTrainingTerms(new TermsDatum(termMap, "animal"));
+        model.addTrainingVector(HashTerms.hashTerms(termMap, "animal"));
+        model.train();
+    }
+    
+    private HashedFeaturesLibLinearModel makeQuietModel() {
+        HashedFeaturesLibLinearModel model = new HashedFeaturesLibLinearModel();
+        model.setQuietMode(true);
+        model.setCrossValidation(false);
+        return model;
+    }
+    
     @Test
     public void testHashFunction1() {
     	Random rand = new Random(0L);
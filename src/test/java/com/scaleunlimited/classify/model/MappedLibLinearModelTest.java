@@ -0,0 +1,308 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Before;
+import org.junit.Test;
+
+import cascading.tap.SinkMode;
+import cascading.tap.Tap;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryCollector;
+
+import com.scaleunlimited.cascading.BasePath;
+import com.scaleunlimited.cascading.local.LocalPlatform;
+import com.scaleunlimited.classify.ClassifyConfig;
+import com.scaleunlimited.classify.ClassifyDocsOptions;
+import com.scaleunlimited.classify.ClassifyDocsPipe;
+import com.scaleunlimited.classify.ModelTestUtils;
+import com.scaleunlimited.classify.analyzer.StandardAnalyzer;
+import com.scaleunlimited.classify.datum.DocDatum;
+import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.datum.TextDatum;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class MappedLibLinearModelTest {
+
+    private static final String WORKING_DIR = "build/mapped-model-test/";
+    
+    @Before
+    public void setUp() {
+        new File(WORKING_DIR).mkdirs();
+    }
+    
+    @Test
+    public void testRawFeaturesModel() throws Exception {
+        List<TermsDatum> docs = makeDocs(3);
+        BaseLibLinearModel model = trainModel(new RawFeaturesLibLinearModel(), docs);
+        MappedLibLinearModel mappedModel = mapModel(model, "raw-features.model");
+        assertFalse(mappedModel.supportsVectors());
+        checkClassification(model, mappedModel, docs);
+    }
+    
+    @Test
+    public void testHashedFeaturesModel() throws Exception {
+        List<TermsDatum> docs = makeDocs(3);
+        BaseLibLinearModel model = trainModel(new HashedFeaturesLibLinearModel(), docs);
+        MappedLibLinearModel mappedModel = mapModel(model, "hashed-features.model");
+        assertTrue(mappedModel.supportsVectors());
+        checkClassification(model, mappedModel, docs);
+    }
+    
+    @Test
+    public void testTwoClasses() throws Exception {
+        List<TermsDatum> docs = makeDocs(2);
+        BaseLibLinearModel model = trainModel(new RawFeaturesLibLinearModel(), docs);
+        checkClassification(model, mapModel(model, "two-classes.model"), docs);
+    }
+    
+    @Test
+    public void testNonAsciiAndUnknownTerms() throws Exception {
+        List<TermsDatum> docs = makeDocs(3);
+        
+        // Terms whose UTF-8 byte order is different from their String order.
+        String[] extraTerms = {"\uD834\uDD1E", "\uFB01", "caf\u00E9"};
+        for (int i = 0; i < extraTerms.length; i++) {
+            Map<String, Integer> termMap = docs.get(i).getTermMap();
+            termMap.put(extraTerms[i], 5);
+            docs.set(i, new TermsDatum(termMap, docs.get(i).getLabel()));
+        }
+        
+        BaseLibLinearModel model = trainModel(new RawFeaturesLibLinearModel(), docs);
+        MappedLibLinearModel mappedModel = mapModel(model, "non-ascii.model");
+        
+        List<TermsDatum> testDocs = new ArrayList<TermsDatum>(docs);
+        for (int i = 0; i < 3; i++) {
+            Map<String, Integer> termMap = new HashMap<String, Integer>(docs.get(i).getTermMap());
+            termMap.put("not-a-training-term", 10);
+            testDocs.add(new TermsDatum(termMap, docs.get(i).getLabel()));
+        }
+        
+        checkClassification(model, mappedModel, testDocs);
+    }
+    
+    @Test
+    public void testTopNResults() throws Exception {
+        List<TermsDatum> docs = makeDocs(3);
+        BaseLibLinearModel model = trainModel(new RawFeaturesLibLinearModel(), docs);
+        MappedLibLinearModel mappedModel = mapModel(model, "top-n.model");
+        
+        for (TermsDatum doc : docs) {
+            DocDatum[] results = mappedModel.classifyNResults(doc, 2);
+            assertEquals(2, results.length);
+            assertTrue(results[0].getScore() >= results[1].getScore());
+            assertEquals(mappedModel.classify(doc).getLabel(), results[0].getLabel());
+        }
+        
+        assertEquals(3, mappedModel.classifyNResults(docs.get(0), 10).length);
+    }
+    
+    @Test
+    public void testSerialization() throws Exception {
+        List<TermsDatum> docs = makeDocs(3);
+        BaseLibLinearModel model = trainModel(new RawFeaturesLibLinearModel(), docs);
+        MappedLibLinearModel mappedModel = mapModel(model, "serialization.model");
+        
+        DataOutputBuffer dob = new DataOutputBuffer();
+        mappedModel.write(dob);
+        DataInputBuffer dib = new DataInputBuffer();
+        dib.reset(dob.getData(), dob.getLength());
+        MappedLibLinearModel mappedModel2 = new MappedLibLinearModel();
+        mappedModel2.readFields(dib);
+        
+        // Only the path gets serialized, and we don't map the file until needed.
+        assertEquals(mappedModel.getModelPath(), mappedModel2.getModelPath());
+        assertFalse(mappedModel2.isMapped());
+        checkClassification(model, mappedModel2, docs);
+        assertTrue(mappedModel2.isMapped());
+    }
+    
+    @Test
+    public void testSmallSegments() throws Exception {
+        // With 64 byte segments, term lookups and weights have to span
+        // lots of segments.
+        List<TermsDatum> docs = makeDocs(3);
+        BaseLibLinearModel model = trainModel(new RawFeaturesLibLinearModel(), docs);
+        File file = new File(WORKING_DIR, "small-segments.model");
+        MappedLibLinearModel.writeModelFile(model, file);
+        checkClassification(model, new MappedLibLinearModel(file, 6), docs);
+        
+        model = trainModel(new HashedFeaturesLibLinearModel(), docs);
+        MappedLibLinearModel.writeModelFile(model, file);
+        checkClassification(model, new MappedLibLinearModel(file, 6), docs);
+    }
+    
+    @Test
+    public void testRelativePath() throws Exception {
+        List<TermsDatum> docs = makeDocs(3);
+        BaseLibLinearModel model = trainModel(new RawFeaturesLibLinearModel(), docs);
+        MappedLibLinearModel.writeModelFile(model, new File(WORKING_DIR, "relative.model"));
+        
+        // Relative paths are left as-is, and resolved against the current
+        // directory (e.g. a task's working directory) when mapped.
+        MappedLibLinearModel mappedModel = new MappedLibLinearModel(WORKING_DIR + "relative.model");
+        assertEquals(WORKING_DIR + "relative.model", mappedModel.getModelPath());
+        checkClassification(model, mappedModel, docs);
+    }
+    
+    @Test
+    public void testMappedModelFlow() throws Exception {
+        LocalPlatform platform = new LocalPlatform(MappedLibLinearModelTest.class);
+        BasePath workingDirPath = platform.makePath(WORKING_DIR + "flow/");
+        if (workingDirPath.exists()) {
+            workingDirPath.delete(true);
+        }
+        workingDirPath.mkdirs();
+        
+        List<TextDatum> docs = new ArrayList<TextDatum>();
+        for (int i = 0; i < 40; i++) {
+            String animal = ((i % 2) == 0 ? "badger" : "hyena");
+            TextDatum doc = new TextDatum(String.format("the %s went to see the %s about %d things", animal, animal, i));
+            doc.setLabel(animal);
+            doc.setPayloadValue("docid", "doc-" + i);
+            docs.add(doc);
+        }
+        
+        BasePath modelPath = platform.makePath(workingDirPath, ClassifyConfig.MODEL_SUBDIR_NAME);
+        ModelTestUtils.writeModel(platform, modelPath, ModelTestUtils.makeModelDatum(new StandardAnalyzer(), docs));
+        
+        BasePath inputPath = platform.makePath(workingDirPath, ClassifyConfig.UNCLASSIFIED_SUBDIR_NAME);
+        Tap inputTap = platform.makeTap(platform.makeBinaryScheme(TextDatum.FIELDS), inputPath, SinkMode.REPLACE);
+        TupleEntryCollector writer = inputTap.openForWrite(platform.makeFlowProcess());
+        for (TextDatum doc : docs) {
+            writer.add(doc.getTuple());
+        }
+        writer.close();
+        
+        ClassifyDocsOptions options = new ClassifyDocsOptions();
+        options.setWorkingDir(WORKING_DIR + "flow/");
+        ClassifyDocsPipe.createTextFlow(platform, options).complete();
+        Map<String, DocDatum> expected = readResults(platform, workingDirPath);
+        
+        options.setMappedModel(true);
+        ClassifyDocsPipe.createTextFlow(platform, options).complete();
+        assertTrue(platform.makePath(workingDirPath, ClassifyConfig.MAPPED_MODEL_FILENAME).exists());
+        Map<String, DocDatum> actual = readResults(platform, workingDirPath);
+        
+        assertEquals(docs.size(), actual.size());
+        for (Map.Entry<String, DocDatum> entry : expected.entrySet()) {
+            DocDatum result = actual.get(entry.getKey());
+            assertEquals(entry.getValue().getLabel(), result.getLabel());
+            assertEquals(entry.getValue().getScore(), result.getScore(), 0.0001f);
+        }
+    }
+    
+    @Test
+    public void testInvalidFile() throws Exception {
+        File file = new File(WORKING_DIR, "invalid.model");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("not a model file".getBytes("UTF-8"));
+        }
+        
+        try {
+            new MappedLibLinearModel(file).getLabelNames();
+            fail("Should have thrown exception");
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+    
+    @Test
+    public void testUnsupportedSolver() throws Exception {
+        BaseLibLinearModel model = new RawFeaturesLibLinearModel().setMultiClassSolverType(true);
+        trainModel(model, makeDocs(3));
+        
+        try {
+            MappedLibLinearModel.writeModelFile(model, new File(WORKING_DIR, "unsupported.model"));
+            fail("Should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+    
+    private Map<String, DocDatum> readResults(LocalPlatform platform, BasePath workingDirPath) throws Exception {
+        BasePath outputPath = platform.makePath(workingDirPath, ClassifyConfig.CLASSIFIED_SUBDIR_NAME);
+        Tap outputTap = platform.makeTap(platform.makeBinaryScheme(DocDatum.FIELDS), outputPath);
+        Map<String, DocDatum> result = new HashMap<String, DocDatum>();
+        Iterator<TupleEntry> iter = outputTap.openForRead(platform.makeFlowProcess());
+        while (iter.hasNext()) {
+            DocDatum docDatum = new DocDatum(iter.next().getTupleCopy());
+            result.put((String)docDatum.getPayloadValue("docid"), docDatum);
+        }
+        
+        return result;
+    }
+    
+    private void checkClassification(BaseLibLinearModel model, MappedLibLinearModel mappedModel, List<TermsDatum> docs) {
+        assertEquals(model.getLabelNames(), mappedModel.getLabelNames());
+        for (TermsDatum doc : docs) {
+            DocDatum expected = model.classify(doc);
+            DocDatum actual = mappedModel.classify(doc);
+            assertEquals(expected.getLabel(), actual.getLabel());
+            assertEquals(expected.getScore(), actual.getScore(), 0.0001f);
+        }
+    }
+    
+    private MappedLibLinearModel mapModel(BaseLibLinearModel model, String filename) throws Exception {
+        File file = new File(WORKING_DIR, filename);
+        MappedLibLinearModel.writeModelFile(model, file);
+        return new MappedLibLinearModel(file);
+    }
+    
+    private BaseLibLinearModel trainModel(BaseLibLinearModel model, List<TermsDatum> docs) {
+        model.setQuietMode(true);
+        model.setCrossValidation(false);
+        for (TermsDatum doc : docs) {
+            model.addTrainingTerms(doc);
+        }
+        model.train();
+        return model;
+    }
+    
+    private List<TermsDatum> makeDocs(int numLabels) {
+        Random rand = new Random(0L);
+        String[] labels = {"animal", "mineral", "vegetable"};
+        List<TermsDatum> result = new ArrayList<TermsDatum>();
+        for (int i = 0; i < 60; i++) {
+            String label = labels[i % numLabels];
+            Map<String, Integer> termMap = new HashMap<String, Integer>();
+            for (int j = 0; j < 20; j++) {
+                termMap.put(label + "-term-" + rand.nextInt(100), 1 + rand.nextInt(3));
+                termMap.put("common-term-" + rand.nextInt(100), 1 + rand.nextInt(3));
+            }
+            
+            result.add(new TermsDatum(termMap, label));
+        }
+        
+        return result;
+    }
+}
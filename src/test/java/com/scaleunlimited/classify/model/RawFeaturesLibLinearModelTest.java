@@ -15,10 +15,20 @@
  */
 package com.scaleunlimited.classify.model;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+
 import org.junit.Test;
 
+import com.scaleunlimited.classify.datum.FeaturesDatum;
+import com.scaleunlimited.classify.datum.TermsDatum;
 import com.scaleunlimited.classify.model.BaseLibLinearModel;
 import com.scaleunlimited.classify.model.RawFeaturesLibLinearModel;
+import com.scaleunlimited.classify.vectors.NullNormalizer;
 
 public class RawFeaturesLibLinearModelTest extends BaseLibLinearModelTest {
     
@@ -42,4 +52,49 @@ public class RawFeaturesLibLinearModelTest extends BaseLibLinearModelTest {
     	super.testSerializationWithAllNormalizers();
     }
     
+    @Test
+    public void testTrainingOnFeatures() throws Exception {
+        RawFeaturesLibLinearModel model = new RawFeaturesLibLinearModel();
+        model.setNormalizerClassname(NullNormalizer.class);
+        model.setQuietMode(true);
+        model.setCrossValidation(false);
+        assertTrue(model.supportsFeatures());
+        
+        // Feature values are less than one, so they'd all be lost if they
+        // were rounded down into term counts.
+        for (int i = 0; i < 20; i++) {
+            model.addTrainingFeatures(makeFeatures(0.2 + (i * 0.005), "small"));
+            model.addTrainingFeatures(makeFeatures(0.7 + (i * 0.005), "large"));
+        }
+        model.train();
+        
+        assertEquals("small", model.classifyFeatures(makeFeatures(0.1, null)).getLabel());
+        assertEquals("large", model.classifyFeatures(makeFeatures(0.9, null)).getLabel());
+    }
+    
+    @Test
+    public void testMixedTrainingData() throws Exception {
+        RawFeaturesLibLinearModel model = new RawFeaturesLibLinearModel();
+        model.setQuietMode(true);
+        model.setCrossValidation(false);
+        
+        Map<String, Integer> termMap = new HashMap<String, Integer>();
+        termMap.put("badger", 1);
+        model.addTrainingTerms(new TermsDatum(termMap, "small"));
+        model.addTrainingFeatures(makeFeatures(0.5, "large"));
+        
+        try {
+            model.train();
+            fail("Should have thrown exception");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+    
+    private FeaturesDatum makeFeatures(double size, String label) {
+        Map<String, Double> featureMap = new HashMap<String, Double>();
+        featureMap.put("size", size);
+        featureMap.put("constant", 1.0);
+        return (label == null ? new FeaturesDatum(featureMap) : new FeaturesDatum(featureMap, label));
+    }
 }
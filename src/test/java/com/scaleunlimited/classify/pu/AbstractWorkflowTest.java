@@ -18,12 +18,15 @@ package com.scaleunlimited.classify.pu;
 import java.util.Iterator;
 import java.util.Random;
 
+import cascading.tap.SinkMode;
 import cascading.tap.Tap;
 import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryCollector;
 
 import com.scaleunlimited.cascading.BasePath;
 import com.scaleunlimited.cascading.local.LocalPlatform;
 import com.scaleunlimited.classify.datum.TermsDatum;
+import com.scaleunlimited.classify.datum.TextDatum;
 
 public abstract class AbstractWorkflowTest {
 
@@ -34,6 +37,13 @@ public abstract class AbstractWorkflowTest {
     protected static final int NUM_UNLABELED_DATUMS = 1000;
     protected static final String POSITIVE_TERM = "lovely";
     protected static final String DOUBLE_FREQUENCY_TERM = "digusting";
+    protected static final String PAYLOAD_KEY = "test-payload";
+    
+    private static final String[] ANIMALS = {   "badger",
+                                                "cat",
+                                                "mongoose",
+                                                "hyena",
+    };
     
     protected LocalPlatform _platform;
     protected Random _random;
@@ -53,11 +63,15 @@ public abstract class AbstractWorkflowTest {
     }
 
     public void setUp() throws Exception {
+        setUp(WORKING_DIR);
+    }
+    
+    protected void setUp(String workingDir) throws Exception {
         _platform = new LocalPlatform(AbstractWorkflowTest.class);
         _platform.setJobPollingInterval(CASCADING_LOCAL_JOB_POLLING_INTERVAL);
         
         _random = new Random(0);
-        _workingDirPath = _platform.makePath(WORKING_DIR);
+        _workingDirPath = _platform.makePath(workingDir);
         _workingDirPath.mkdirs();
         _workingDirPath.assertExists("Working directory");
         _positivePath = _platform.makePath(_workingDirPath, ClassifyPUConfig.POSITIVE_SUBDIR_NAME);
@@ -78,4 +92,37 @@ public abstract class AbstractWorkflowTest {
         return termsSource.openForRead(_platform.makeFlowProcess());
     }
 
+    protected void makeTestData(    BasePath outputPath,
+                                    int numDatums,
+                                    boolean forceAllPositive)
+        throws Exception {
+        
+        Tap sink = _platform.makeTap( _platform.makeBinaryScheme(TextDatum.FIELDS),
+                            outputPath,
+                            SinkMode.REPLACE);
+        TupleEntryCollector outputCollector = sink.openForWrite(_platform.makeFlowProcess());
+        for (int i = 0; i < numDatums; i++) {
+            TextDatum textDatum = makeTextDatum(i, forceAllPositive);
+            outputCollector.add(textDatum.getTuple());
+        }
+        outputCollector.close();
+    }
+
+    protected TextDatum makeTextDatum(int index, boolean forcePositive) {
+        StringBuffer content = new StringBuffer();
+        content.append(String.format("Test datum %d", index));
+        if  (   (forcePositive)
+            ||  (_random.nextBoolean())) {
+            content.append(String.format(" is %s, but", POSITIVE_TERM));
+        }
+        content.append(" might as well be the");
+        content.append(" " + DOUBLE_FREQUENCY_TERM);
+        content.append(" entrails of a");
+        content.append(" " + DOUBLE_FREQUENCY_TERM);
+        content.append(" " + ANIMALS[_random.nextInt(ANIMALS.length)]);
+        TextDatum result = new TextDatum(content.toString());
+        result.setPayloadValue(PAYLOAD_KEY, String.valueOf(index));
+        return result;
+    }
+
 }
\ No newline at end of file
@@ -24,24 +24,13 @@ import org.junit.Before;
 import org.junit.Test;
 
 import cascading.flow.Flow;
-import cascading.tap.SinkMode;
-import cascading.tap.Tap;
 import cascading.tuple.TupleEntry;
-import cascading.tuple.TupleEntryCollector;
 
 import com.scaleunlimited.cascading.BasePath;
 import com.scaleunlimited.classify.datum.TermsDatum;
-import com.scaleunlimited.classify.datum.TextDatum;
 
 public class AnalyzeTrainingDataPipeTest extends AbstractWorkflowTest {
 
-    private static final String[] ANIMALS = {   "badger",
-                                                "cat",
-                                                "mongoose",
-                                                "hyena",
-    };
-    private static final String PAYLOAD_KEY = "test-payload";
-
     @Before
     @Override
     public void setUp() throws Exception {
@@ -126,37 +115,4 @@ public class AnalyzeTrainingDataPipeTest extends AbstractWorkflowTest {
                             termsDatum.getTermMap().containsKey(POSITIVE_TERM));
     }
 
-    private void makeTestData(  BasePath outputPath,
-                                int numDatums,
-                                boolean forceAllPositive)
-        throws Exception {
-        
-        Tap sink = _platform.makeTap( _platform.makeBinaryScheme(TextDatum.FIELDS),
-                            outputPath,
-                            SinkMode.REPLACE);
-        TupleEntryCollector outputCollector = sink.openForWrite(_platform.makeFlowProcess());
-        for (int i = 0; i < numDatums; i++) {
-            TextDatum textDatum = makeTextDatum(i, forceAllPositive);
-            outputCollector.add(textDatum.getTuple());
-        }
-        outputCollector.close();
-    }
-
-    private TextDatum makeTextDatum(int index, boolean forcePositive) {
-        StringBuffer content = new StringBuffer();
-        content.append(String.format("Test datum %d", index));
-        if  (   (forcePositive)
-            ||  (_random.nextBoolean())) {
-            content.append(String.format(" is %s, but", POSITIVE_TERM));
-        }
-        content.append(" might as well be the");
-        content.append(" " + DOUBLE_FREQUENCY_TERM);
-        content.append(" entrails of a");
-        content.append(" " + DOUBLE_FREQUENCY_TERM);
-        content.append(" " + ANIMALS[_random.nextInt(ANIMALS.length)]);
-        TextDatum result = new TextDatum(content.toString());
-        result.setPayloadValue(PAYLOAD_KEY, String.valueOf(index));
-        return result;
-    }
-
 }
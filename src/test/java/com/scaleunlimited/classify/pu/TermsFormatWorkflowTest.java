@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.pu;
+
+import java.util.Iterator;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import cascading.tap.Tap;
+import cascading.tuple.TupleEntry;
+
+import com.scaleunlimited.cascading.BasePath;
+import com.scaleunlimited.classify.BaseModel;
+import com.scaleunlimited.classify.ClassifyDocsPipe;
+import com.scaleunlimited.classify.ClassifyOptions;
+import com.scaleunlimited.classify.TrainLogisticModelPipe;
+import com.scaleunlimited.classify.TrainModelOptions;
+import com.scaleunlimited.classify.analyzer.IAnalyzer;
+import com.scaleunlimited.classify.datum.ModelDatum;
+import com.scaleunlimited.classify.datum.TextDatum;
+
+/**
+ * Runs the whole PU workflow with the analyzed terms stored in each of the
+ * non-default formats, which the downstream flows have to read, train on and
+ * classify without converting back to terms.
+ */
+@SuppressWarnings("rawtypes")
+public class TermsFormatWorkflowTest extends AbstractWorkflowTest {
+
+    private static final String FORMAT_WORKING_DIR = "build/pu-test-terms-format/";
+    
+    @Test
+    public void testCompactTerms() throws Exception {
+        runWorkflow(TermsFormat.COMPACT, "RawFeaturesLibLinear");
+    }
+    
+    @Test
+    public void testHashedFeatures() throws Exception {
+        runWorkflow(TermsFormat.HASHED, "HashedFeaturesLibLinear");
+    }
+    
+    private void runWorkflow(TermsFormat termsFormat, String modelName) throws Exception {
+        String workingDir = FORMAT_WORKING_DIR + termsFormat.name().toLowerCase() + "/";
+        setUp(workingDir);
+        _workingDirPath.delete(true);
+        _workingDirPath.mkdirs();
+        
+        makeTestData(_positivePath, NUM_POSITIVE_DATUMS, true);
+        makeTestData(_unlabeledPath, NUM_UNLABELED_DATUMS, false);
+        
+        AnalyzeTrainingDataOptions analyzeOptions = new AnalyzeTrainingDataOptions();
+        analyzeOptions.setWorkingDir(workingDir);
+        analyzeOptions.setAnalyzerName("Standard");
+        analyzeOptions.setCompactTerms(termsFormat == TermsFormat.COMPACT);
+        analyzeOptions.setHashFeatures(termsFormat == TermsFormat.HASHED);
+        AnalyzeTrainingDataPipe.createTextFlow(_platform, analyzeOptions).complete();
+        Assert.assertEquals(termsFormat, TermsFormat.read(_platform, _workingDirPath));
+        Assert.assertEquals(NUM_POSITIVE_DATUMS, countDatums(_positiveTermsPath, termsFormat));
+        
+        TrainSpyModelOptions spyOptions = new TrainSpyModelOptions();
+        spyOptions.setWorkingDir(workingDir);
+        spyOptions.setModelName(modelName);
+        spyOptions.setRandomSeed(0);
+        TrainSpyModelPipe.createFlow(_platform, spyOptions).complete();
+        Assert.assertTrue("No spies", countDatums(_spiesPath, termsFormat) > 0);
+        
+        ClassifyOptions classifyOptions = new ClassifyOptions();
+        classifyOptions.setWorkingDir(workingDir);
+        GetRNThresholdPipe.createFlow(_platform, classifyOptions).complete();
+        ExtractRNTermsWorkflow.createFlow(_platform, classifyOptions).complete();
+        int numReliablyNegative = countDatums(_reliablyNegativeTermsPath, termsFormat);
+        Assert.assertTrue("No reliably negative docs", numReliablyNegative > 0);
+        Assert.assertTrue("All unlabeled docs are reliably negative", numReliablyNegative < NUM_UNLABELED_DATUMS);
+        
+        TrainModelOptions trainOptions = new TrainModelOptions();
+        trainOptions.setWorkingDir(workingDir);
+        trainOptions.setAnalyzerName("Standard");
+        trainOptions.setModelName(modelName);
+        TrainFinalModelPipe.createFlow(_platform, trainOptions).complete();
+        
+        // The final model should have learned that the positive term matters.
+        ModelDatum modelDatum = ClassifyDocsPipe.readModel(_platform, _modelPath);
+        Assert.assertEquals(modelName + "Model", modelDatum.getModel().getClass().getSimpleName());
+        Assert.assertEquals(TrainLogisticModelPipe.POSITIVE_LABEL,
+                            classify(modelDatum, makeTextDatum(0, true)));
+        Assert.assertEquals(TrainLogisticModelPipe.NEGATIVE_LABEL,
+                            classify(modelDatum, new TextDatum("Test datum 0 might as well be the digusting entrails of a digusting badger")));
+    }
+    
+    private String classify(ModelDatum modelDatum, TextDatum textDatum) throws Exception {
+        IAnalyzer analyzer = modelDatum.getAnalyzer();
+        analyzer.reset();
+        BaseModel model = modelDatum.getModel();
+        model.reset();
+        return model.classifyTerms(analyzer.getTermsDatum(textDatum.getTuple()).getTermMap()).getLabel();
+    }
+    
+    private int countDatums(BasePath termsPath, TermsFormat termsFormat) throws Exception {
+        Tap termsSource = _platform.makeTap(_platform.makeBinaryScheme(termsFormat.getFields()), termsPath);
+        Iterator<TupleEntry> iter = termsSource.openForRead(_platform.makeFlowProcess());
+        int result = 0;
+        while (iter.hasNext()) {
+            iter.next();
+            result += 1;
+        }
+        
+        return result;
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2009-2015 Scale Unlimited, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.scaleunlimited.classify.vectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.junit.Test;
+
+public class SparseVectorWritableTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        SparseVectorWritable vector1 =
+            new SparseVectorWritable(new int[] {300, 2, 70000, 2}, new float[] {1.5f, -2.0f, 0.25f, 3.0f}, 4);
+        SparseVectorWritable vector2 = roundTrip(vector1, new SparseVectorWritable());
+        assertEquals(vector1, vector2);
+        assertEquals(4, vector2.getNumEntries());
+        assertArrayEquals(new int[] {2, 2, 300, 70000}, Arrays.copyOf(vector2.getIndexes(), 4));
+        assertArrayEquals(new float[] {-2.0f, 3.0f, 1.5f, 0.25f}, Arrays.copyOf(vector2.getValues(), 4), 0.0f);
+    }
+    
+    @Test
+    public void testReusesArrays() throws Exception {
+        SparseVectorWritable big = new SparseVectorWritable(new int[] {1, 2, 3}, new float[] {1, 2, 3}, 3);
+        SparseVectorWritable small = new SparseVectorWritable(new int[] {5}, new float[] {5}, 1);
+        
+        SparseVectorWritable reuse = roundTrip(big, new SparseVectorWritable());
+        int[] indexes = reuse.getIndexes();
+        float[] values = reuse.getValues();
+        roundTrip(small, reuse);
+        assertSame(indexes, reuse.getIndexes());
+        assertSame(values, reuse.getValues());
+        assertEquals(small, reuse);
+    }
+    
+    @Test
+    public void testQuantized() throws Exception {
+        float[] values = new float[] {100.0f, -50.0f, 0.5f};
+        SparseVectorWritable vector1 = new SparseVectorWritable(new int[] {1, 2, 3}, values, 3).setQuantized(true);
+        SparseVectorWritable vector2 = roundTrip(vector1, new SparseVectorWritable());
+        assertTrue(vector2.isQuantized());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], vector2.getValues()[i], 100.0f / Short.MAX_VALUE);
+        }
+        
+        SparseVectorWritable unquantized = new SparseVectorWritable(new int[] {1, 2, 3}, values, 3);
+        assertTrue(vector1.toBytes().length < unquantized.toBytes().length);
+    }
+    
+    @Test
+    public void testRawComparison() throws Exception {
+        SparseVectorWritable vector1 = new SparseVectorWritable(new int[] {1, 2}, new float[] {1, 2}, 2);
+        SparseVectorWritable vector2 = new SparseVectorWritable(new int[] {1, 3}, new float[] {1, 2}, 2);
+        
+        WritableComparator comparator = WritableComparator.get(SparseVectorWritable.class);
+        assertTrue(comparator instanceof SparseVectorWritable.Comparator);
+        
+        byte[] bytes1 = vector1.toBytes();
+        byte[] bytes2 = vector2.toBytes();
+        int rawResult = comparator.compare(bytes1, 0, bytes1.length, bytes2, 0, bytes2.length);
+        assertTrue(rawResult != 0);
+        assertEquals(Integer.signum(rawResult), Integer.signum(vector1.compareTo(vector2)));
+        assertEquals(0, comparator.compare(bytes1, 0, bytes1.length, bytes1, 0, bytes1.length));
+    }
+    
+    @Test
+    public void testComparisonConsistentWithEquals() throws Exception {
+        // Both of these quantize to the same values, so they're equal before
+        // and after a round trip.
+        SparseVectorWritable vector1 = new SparseVectorWritable(new int[] {1, 2}, new float[] {1.0f, 1000.0f}, 2).setQuantized(true);
+        SparseVectorWritable vector2 = new SparseVectorWritable(new int[] {1, 2}, new float[] {1.00001f, 1000.0f}, 2).setQuantized(true);
+        assertArrayEquals(vector1.toBytes(), vector2.toBytes());
+        assertEquals(vector1, vector2);
+        assertEquals(0, vector1.compareTo(vector2));
+        
+        SparseVectorWritable copy = roundTrip(vector1, new SparseVectorWritable());
+        assertEquals(vector1, copy);
+        assertEquals(0, vector2.compareTo(copy));
+        assertArrayEquals(vector1.toBytes(), copy.toBytes());
+        
+        // Quantizing after the values are set gives the same result.
+        SparseVectorWritable vector3 = new SparseVectorWritable(new int[] {1, 2}, new float[] {1.00001f, 1000.0f}, 2);
+        assertFalse(vector1.equals(vector3));
+        vector3.setQuantized(true);
+        assertEquals(vector1, vector3);
+    }
+    
+    @Test
+    public void testRawComparisonMatchesCompareTo() throws Exception {
+        SparseVectorWritable[] vectors = new SparseVectorWritable[] {
+            new SparseVectorWritable(new int[] {1}, new float[] {1}, 1),
+            new SparseVectorWritable(new int[] {1}, new float[] {-1}, 1),
+            new SparseVectorWritable(new int[] {1, 200}, new float[] {1, 2}, 2),
+            new SparseVectorWritable(new int[] {1, 200}, new float[] {1, -2}, 2),
+            new SparseVectorWritable(new int[] {1, 200}, new float[] {1, -2}, 2).setQuantized(true),
+            new SparseVectorWritable(new int[] {1, 200}, new float[] {0.5f, -2}, 2).setQuantized(true),
+            new SparseVectorWritable(new int[] {1, 200}, new float[] {0.3f, -2}, 2).setQuantized(true),
+            new SparseVectorWritable(new int[] {1, 70000}, new float[] {1, 2}, 2),
+        };
+        
+        WritableComparator comparator = WritableComparator.get(SparseVectorWritable.class);
+        for (SparseVectorWritable vector1 : vectors) {
+            byte[] bytes1 = vector1.toBytes();
+            SparseVectorWritable copy1 = roundTrip(vector1, new SparseVectorWritable());
+            for (SparseVectorWritable vector2 : vectors) {
+                byte[] bytes2 = vector2.toBytes();
+                SparseVectorWritable copy2 = roundTrip(vector2, new SparseVectorWritable());
+                int rawResult = comparator.compare(bytes1, 0, bytes1.length, bytes2, 0, bytes2.length);
+                assertEquals(Integer.signum(copy1.compareTo(copy2)), Integer.signum(rawResult));
+                assertEquals(Integer.signum(vector1.compareTo(vector2)), Integer.signum(rawResult));
+                assertEquals(copy1.equals(copy2), rawResult == 0);
+                assertEquals(vector1.equals(vector2), rawResult == 0);
+            }
+        }
+    }
+    
+    @Test
+    public void testMahoutVector() {
+        Vector vector = new RandomAccessSparseVector(100);
+        vector.setQuick(10, 5.0);
+        vector.setQuick(90, 0.5);
+        
+        SparseVectorWritable writable = new SparseVectorWritable(vector);
+        assertEquals(2, writable.getNumEntries());
+        
+        Vector result = writable.toVector(100);
+        assertEquals(5.0, result.getQuick(10), 0.0);
+        assertEquals(0.5, result.getQuick(90), 0.0);
+        assertEquals(2, result.getNumNondefaultElements());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeIndex() {
+        new SparseVectorWritable(new int[] {-1}, new float[] {1}, 1);
+    }
+    
+    private SparseVectorWritable roundTrip(SparseVectorWritable vector, SparseVectorWritable result) throws Exception {
+        DataOutputBuffer dob = new DataOutputBuffer();
+        vector.write(dob);
+        DataInputBuffer dib = new DataInputBuffer();
+        dib.reset(dob.getData(), dob.getLength());
+        result.readFields(dib);
+        return result;
+    }
+}
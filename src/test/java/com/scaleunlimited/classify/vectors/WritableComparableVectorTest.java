@@ -26,8 +26,7 @@ import org.apache.mahout.math.RandomAccessSparseVector;
 import org.apache.mahout.math.Vector;
 import org.junit.Test;
 
-import com.scaleunlimited.classify.vectors.WritableComparableVector;
-
+@SuppressWarnings("deprecation")
 public class WritableComparableVectorTest {
 
     @Test